@@ -36,11 +36,14 @@ import static io.javalin.apibuilder.ApiBuilder.get;
 import static io.javalin.apibuilder.ApiBuilder.patch;
 import static io.javalin.apibuilder.ApiBuilder.post;
 import static io.javalin.apibuilder.ApiBuilder.prefixPath;
+import static io.javalin.apibuilder.ApiBuilder.sse;
 import static io.javalin.apibuilder.ApiBuilder.staticInstance;
 import static java.lang.String.format;
 
+import com.codahale.metrics.Histogram;
 import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
 import com.codahale.metrics.servlets.MetricsServlet;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.PropertyNamingStrategies;
@@ -82,11 +85,16 @@ import cwms.cda.api.StreamLocationController;
 import cwms.cda.api.StreamReachController;
 import cwms.cda.api.TextTimeSeriesController;
 import cwms.cda.api.TextTimeSeriesValueController;
+import cwms.cda.api.TimeSeriesBatchController;
+import cwms.cda.api.TimeSeriesBulkController;
 import cwms.cda.api.TimeSeriesCategoryController;
+import cwms.cda.api.TimeSeriesChangesController;
 import cwms.cda.api.TimeSeriesController;
 import cwms.cda.api.TimeSeriesGroupController;
 import cwms.cda.api.TimeSeriesIdentifierDescriptorController;
 import cwms.cda.api.TimeSeriesRecentController;
+import cwms.cda.api.TimeSeriesStatisticsController;
+import cwms.cda.api.TimeSeriesSubscriptionController;
 import cwms.cda.api.TimeZoneController;
 import cwms.cda.api.TurbineChangesDeleteController;
 import cwms.cda.api.TurbineChangesGetController;
@@ -132,6 +140,8 @@ import cwms.cda.api.watersupply.WaterUserCreateController;
 import cwms.cda.api.watersupply.WaterUserDeleteController;
 import cwms.cda.api.watersupply.WaterUserUpdateController;
 import cwms.cda.data.dao.JooqDao;
+import cwms.cda.datasource.RequestScopedDataSource;
+import cwms.cda.datasource.SessionState;
 import cwms.cda.formatters.Formats;
 import cwms.cda.formatters.FormattingException;
 import cwms.cda.formatters.UnsupportedFormatException;
@@ -148,6 +158,7 @@ import io.javalin.core.security.RouteRole;
 import io.javalin.core.util.Header;
 import io.javalin.core.validation.JavalinValidation;
 import io.javalin.http.BadRequestResponse;
+import io.javalin.http.Context;
 import io.javalin.http.Handler;
 import io.javalin.http.JavalinServlet;
 import io.javalin.plugin.openapi.OpenApiOptions;
@@ -232,8 +243,9 @@ public class ApiServlet extends HttpServlet {
     /** Default OFFICE where needed. Based on context. e.g. /cwms-data -> HQ, /spk-data -> SPK */
     public static final String OFFICE_ID = "office_id";
     public static final String DATA_SOURCE = "data_source";
-    public static final String RAW_DATA_SOURCE = "data_source";
+    public static final String RAW_DATA_SOURCE = "raw_data_source";
     public static final String DATABASE = "database";
+    public static final String REQUEST_CONNECTION = "request_connection";
 
     // The VERSION should match the gradle version but not contain the patch version.
     // For example 2.4 not 2.4.13
@@ -243,9 +255,12 @@ public class ApiServlet extends HttpServlet {
     public static final String PROVIDER_KEY = "cwms.dataapi.access.provider";
     public static final String DEFAULT_OFFICE_KEY = "cwms.dataapi.default.office";
     public static final String DEFAULT_PROVIDER = "MultipleAccessManager";
+    public static final String REQUEST_SCOPED_CONNECTION_KEY = "cwms.dataapi.connection.requestScoped";
 
     private MetricRegistry metrics;
     private Meter totalRequests;
+    private Histogram connectionBorrows;
+    private Timer connectionPreparation;
 
     private static final long serialVersionUID = 1L;
 
@@ -267,6 +282,9 @@ public class ApiServlet extends HttpServlet {
         metrics = (MetricRegistry)config.getServletContext()
                 .getAttribute(MetricsServlet.METRICS_REGISTRY);
         totalRequests = metrics.meter("cwms.dataapi.total_requests");
+        connectionBorrows = metrics.histogram("cwms.dataapi.connection.borrows_per_request");
+        connectionPreparation = metrics.timer("cwms.dataapi.connection.preparation");
+        SessionState.registerMetrics(metrics);
         super.init(config);
     }
 
@@ -297,6 +315,7 @@ public class ApiServlet extends HttpServlet {
                     ctx.header("X-Frame-Options", "SAMEORIGIN");
                     ctx.header("X-XSS-Protection", "1; mode=block");
                 })
+                .after(this::releaseRequestConnection)
                 .exception(UnsupportedFormatException.class, (e, ctx) -> {
                     CdaError re = new CdaError(e.getMessage());
                     logger.atInfo().withCause(e).log(re.toString());
@@ -470,6 +489,12 @@ public class ApiServlet extends HttpServlet {
         String recentPath = "/timeseries/recent/";
         get(recentPath, new TimeSeriesRecentController(metrics));
         addCacheControl(recentPath, 5, TimeUnit.MINUTES);
+        post("/timeseries/batch", new TimeSeriesBatchController(metrics));
+        post("/timeseries/bulk", new TimeSeriesBulkController(metrics), requiredRoles);
+        get("/timeseries/changes", new TimeSeriesChangesController(metrics));
+        sse("/timeseries/subscribe", new TimeSeriesSubscriptionController(metrics),
+                requiredRoles);
+        get("/timeseries/stats", new TimeSeriesStatisticsController(metrics));
 
         cdaCrudCache(format("/standard-text-id/{%s}", Controllers.STANDARD_TEXT_ID),
                 new StandardTextController(metrics), requiredRoles,1, TimeUnit.DAYS);
@@ -829,6 +854,26 @@ public class ApiServlet extends HttpServlet {
         }
     }
 
+    /**
+     * Whether all the DAOs of a request share one connection, prepared once.
+     * Off unless {@value #REQUEST_SCOPED_CONNECTION_KEY} is true.
+     */
+    public static boolean isRequestScopedConnection() {
+        return Boolean.parseBoolean(System.getProperty(REQUEST_SCOPED_CONNECTION_KEY,
+                System.getenv(REQUEST_SCOPED_CONNECTION_KEY)));
+    }
+
+    private void releaseRequestConnection(Context ctx) {
+        RequestScopedDataSource connection = ctx.attribute(REQUEST_CONNECTION);
+        if (connection != null) {
+            connection.release();
+            connectionBorrows.update(connection.getBorrows());
+            if (connection.getBorrows() > 0) {
+                connectionPreparation.update(connection.getPreparationNanos(), TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
     public static String officeFromContext(String contextPath) {
         String office = contextPath.split("-")[0].replaceFirst("/","");
         if (office.isEmpty() || office.equalsIgnoreCase("cwms")) {
@@ -3,6 +3,7 @@ package cwms.cda.api;
 import static com.codahale.metrics.MetricRegistry.name;
 import static cwms.cda.api.Controllers.ACCEPT;
 import static cwms.cda.api.Controllers.BOUNDING_OFFICE_LIKE;
+import static cwms.cda.api.Controllers.COUNT;
 import static cwms.cda.api.Controllers.CURSOR;
 import static cwms.cda.api.Controllers.EXCLUDE_EMPTY;
 import static cwms.cda.api.Controllers.GET_ONE;
@@ -19,6 +20,7 @@ import static cwms.cda.api.Controllers.PAGE_SIZE;
 import static cwms.cda.api.Controllers.RESULTS;
 import static cwms.cda.api.Controllers.SIZE;
 import static cwms.cda.api.Controllers.STATUS_200;
+import static cwms.cda.api.Controllers.STATUS_304;
 import static cwms.cda.api.Controllers.TIMESERIES;
 import static cwms.cda.api.Controllers.TIMESERIES_CATEGORY_LIKE;
 import static cwms.cda.api.Controllers.TIMESERIES_GROUP_LIKE;
@@ -28,8 +30,11 @@ import static cwms.cda.api.Controllers.queryParamAsClass;
 import com.codahale.metrics.Histogram;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
+import cwms.cda.ApiServlet;
+import cwms.cda.api.enums.CountMode;
 import cwms.cda.api.enums.UnitSystem;
 import cwms.cda.api.errors.CdaError;
+import cwms.cda.data.dao.CatalogIndex;
 import cwms.cda.data.dao.CatalogRequestParameters;
 import cwms.cda.data.dao.JooqDao;
 import cwms.cda.data.dao.LocationsDao;
@@ -53,6 +58,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.logging.Logger;
+import javax.sql.DataSource;
 import org.jetbrains.annotations.NotNull;
 import org.jooq.DSLContext;
 import org.owasp.html.PolicyFactory;
@@ -75,6 +81,7 @@ public class CatalogController implements CrudHandler {
         String className = this.getClass().getName();
 
         requestResultSize = this.metrics.histogram((name(className, RESULTS, SIZE)));
+        CatalogIndex.registerMetrics(metrics);
     }
 
     private Timer.Context markAndTime(String subject) {
@@ -168,6 +175,10 @@ public class CatalogController implements CrudHandler {
                     description = "Posix <a href=\"regexp.html\">regular expression</a> matching "
                         + "against the location type."
                 ),
+            @OpenApiParam(name = COUNT, type = CountMode.class,
+                    description = CountMode.DESCRIPTION + " Exact totals are cached briefly, "
+                        + "so they may lag recent changes. Default is exact."
+                ),
         },
         pathParams = {
             @OpenApiParam(name = "dataset",
@@ -178,8 +189,16 @@ public class CatalogController implements CrudHandler {
                 description = "A list of elements the data set you've selected.",
                 content = {
                     @OpenApiContent(from = Catalog.class, type = Formats.JSONV2),
-                    @OpenApiContent(from = Catalog.class, type = Formats.XML)
-                })
+                    @OpenApiContent(from = Catalog.class, type = Formats.XML),
+                    @OpenApiContent(from = Catalog.class, type = Formats.CBOR),
+                    @OpenApiContent(from = Catalog.class, type = Formats.SMILE),
+                    @OpenApiContent(from = Catalog.class, type = Formats.ARROW)
+                }),
+            @OpenApiResponse(status = STATUS_304,
+                description = "The time series catalog hasn't changed since the If-None-Match "
+                        + "given. Not given for requests filtered by group, location kind, "
+                        + "location type or bounding office. Changes made to the database "
+                        + "other than through this API may take up to 30 seconds to show.")
         },
         tags = {TAG}
     )
@@ -188,6 +207,7 @@ public class CatalogController implements CrudHandler {
 
         try (final Timer.Context ignored = markAndTime(GET_ONE)) {
             DSLContext dsl = JooqDao.getDslContext(ctx);
+            DataSource dataSource = ctx.attribute(ApiServlet.DATA_SOURCE);
 
             String valDataSet =
                     ((PolicyFactory) ctx.appAttribute("PolicyFactory")).sanitize(dataSet);
@@ -231,6 +251,9 @@ public class CatalogController implements CrudHandler {
             String locationType = queryParamAsClass(ctx, new String[]{LOCATION_TYPE_LIKE},
                     String.class, null, metrics, name(CatalogController.class.getName(), GET_ONE));
 
+            CountMode count = ctx.queryParamAsClass(COUNT, CountMode.class)
+                    .getOrDefault(CountMode.EXACT);
+
             String acceptHeader = ctx.header(ACCEPT);
             ContentType contentType = Formats.parseHeader(acceptHeader, Catalog.class);
             Catalog cat = null;
@@ -254,9 +277,26 @@ public class CatalogController implements CrudHandler {
                         .withExcludeEmpty(excludeExtents)
                         .withLocationKind(locationKind)
                         .withLocationType(locationType)
+                        .withCountMode(count)
                         .build();
 
-                cat = tsDao.getTimeSeriesCatalog(cursor, pageSize, parameters);
+                // Groups and locations have nothing cheap to tell whether they changed
+                boolean idsOnly = tsCategoryLike == null && tsGroupLike == null
+                        && locCategoryLike == null && locGroupLike == null
+                        && boundingOfficeLike == null && locationKind == null
+                        && locationType == null;
+                if (idsOnly) {
+                    String version = CatalogIndex.getTimeSeriesVersion(dataSource, parameters);
+                    if (ConditionalGet.isNotModified(ctx, ConditionalGet.etag(ctx,
+                            version != null ? version : tsDao.getCatalogVersion(office)), null)) {
+                        return;
+                    }
+                }
+
+                cat = CatalogIndex.getTimeSeriesCatalog(dataSource, cursor, pageSize, parameters);
+                if (cat == null) {
+                    cat = tsDao.getTimeSeriesCatalog(cursor, pageSize, parameters);
+                }
 
             } else if (LOCATIONS.equalsIgnoreCase(valDataSet)) {
 
@@ -272,15 +312,19 @@ public class CatalogController implements CrudHandler {
                         .withBoundingOfficeLike(boundingOfficeLike)
                         .withLocationKind(locationKind)
                         .withLocationType(locationType)
+                        .withCountMode(count)
                         .build();
 
-                LocationsDao dao = new LocationsDaoImpl(dsl);
-                cat = dao.getLocationCatalog(cursor, pageSize, parameters);
+                cat = CatalogIndex.getLocationCatalog(dataSource, cursor, pageSize, parameters);
+                if (cat == null) {
+                    LocationsDao dao = new LocationsDaoImpl(dsl);
+                    cat = dao.getLocationCatalog(cursor, pageSize, parameters);
+                }
             }
             if (cat != null) {
-                String data = Formats.format(contentType, cat);
+                byte[] data = Formats.formatBytes(contentType, cat);
                 ctx.result(data).contentType(contentType.toString());
-                requestResultSize.update(data.length());
+                requestResultSize.update(data.length);
             } else {
                 final CdaError re = new CdaError("Cannot create catalog of requested "
                         + "information");
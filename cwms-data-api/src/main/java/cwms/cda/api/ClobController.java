@@ -4,6 +4,7 @@ import com.codahale.metrics.Histogram;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
 import com.google.common.flogger.FluentLogger;
+import cwms.cda.api.enums.CountMode;
 import cwms.cda.api.errors.CdaError;
 import cwms.cda.data.dao.ClobDao;
 import cwms.cda.data.dao.JooqDao;
@@ -80,7 +81,9 @@ public class ClobController implements CrudHandler {
                                 + "clob (default: false)"),
                 @OpenApiParam(name = LIKE,
                         description = "Posix <a href=\"regexp.html\">regular expression</a> "
-                                + "matching against the id")
+                                + "matching against the id"),
+                @OpenApiParam(name = COUNT, type = CountMode.class,
+                        description = CountMode.DESCRIPTION + " Default is exact.")
             },
             responses = {@OpenApiResponse(status = STATUS_200,
                     description = "A list of clobs.",
@@ -118,8 +121,11 @@ public class ClobController implements CrudHandler {
                     name(ClobController.class.getName(), GET_ALL));
             String like = ctx.queryParamAsClass(LIKE, String.class).getOrDefault(".*");
 
+            CountMode count = ctx.queryParamAsClass(COUNT, CountMode.class)
+                    .getOrDefault(CountMode.EXACT);
+
             ClobDao dao = new ClobDao(dsl);
-            Clobs clobs = dao.getClobs(cursor, pageSize, office, includeValues, like);
+            Clobs clobs = dao.getClobs(cursor, pageSize, office, includeValues, like, count);
             String result = Formats.format(contentType, clobs);
 
             ctx.result(result);
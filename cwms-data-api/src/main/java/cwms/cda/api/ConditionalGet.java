@@ -0,0 +1,101 @@
+package cwms.cda.api;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import io.javalin.core.util.Header;
+import io.javalin.http.Context;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import javax.servlet.http.HttpServletResponse;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Answers conditional GETs from validators worked out before the response is, so a client
+ * polling for data that hasn't changed costs neither the value query nor the formatting.
+ * Javalin's generated ETags only save the bandwidth.
+ */
+final class ConditionalGet {
+
+    private ConditionalGet() {
+    }
+
+    /**
+     * Builds a weak entity tag from the request (path, query string and accepted formats) and
+     * the given parts, which must change whenever the response could.
+     */
+    static String etag(Context ctx, Object... parts) {
+        Hasher hasher = Hashing.sha256().newHasher()
+                .putString(ctx.path(), StandardCharsets.UTF_8)
+                .putByte((byte) 0)
+                .putString(String.valueOf(ctx.queryString()), StandardCharsets.UTF_8)
+                .putByte((byte) 0)
+                .putString(String.valueOf(ctx.header(Header.ACCEPT)), StandardCharsets.UTF_8);
+        for (Object part : parts) {
+            hasher.putByte((byte) 0).putString(String.valueOf(part), StandardCharsets.UTF_8);
+        }
+        return "W/\"" + hasher.hash().toString().substring(0, 32) + "\"";
+    }
+
+    /**
+     * Sets the ETag and, if known, the Last-Modified header. When the request's If-None-Match,
+     * or failing that If-Modified-Since, shows the client already has this response, the status
+     * is set to 304 and the caller should stop.
+     *
+     * @return true if the response is not modified
+     */
+    static boolean isNotModified(Context ctx, String etag, @Nullable Instant lastModified) {
+        ctx.header(Header.ETAG, etag);
+        if (lastModified != null) {
+            ctx.header(Header.LAST_MODIFIED, DateTimeFormatter.RFC_1123_DATE_TIME
+                    .format(lastModified.atZone(ZoneOffset.UTC)));
+        }
+
+        boolean notModified;
+        String ifNoneMatch = ctx.header(Header.IF_NONE_MATCH);
+        String ifModifiedSince = ctx.header(Header.IF_MODIFIED_SINCE);
+        if (ifNoneMatch != null) {
+            notModified = matches(ifNoneMatch, etag);
+        } else {
+            notModified = lastModified != null && ifModifiedSince != null
+                    && !isModifiedSince(lastModified, ifModifiedSince);
+        }
+        if (notModified) {
+            ctx.status(HttpServletResponse.SC_NOT_MODIFIED);
+        }
+        return notModified;
+    }
+
+    /**
+     * Weak comparison of each tag of an If-None-Match header with ours.
+     */
+    static boolean matches(String ifNoneMatch, String etag) {
+        String ours = opaque(etag);
+        for (String tag : ifNoneMatch.split(",")) {
+            String theirs = tag.trim();
+            if ("*".equals(theirs) || ours.equals(opaque(theirs))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static boolean isModifiedSince(Instant lastModified, String ifModifiedSince) {
+        try {
+            Instant since = ZonedDateTime.parse(ifModifiedSince.trim(),
+                    DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+            // the header only has whole seconds
+            return lastModified.truncatedTo(ChronoUnit.SECONDS).isAfter(since);
+        } catch (DateTimeParseException e) {
+            return true;
+        }
+    }
+
+    private static String opaque(String tag) {
+        return tag.startsWith("W/") ? tag.substring(2) : tag;
+    }
+}
@@ -29,6 +29,10 @@ import static com.codahale.metrics.MetricRegistry.name;
 import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
+import com.google.common.io.CountingOutputStream;
+import cwms.cda.api.enums.CountMode;
+import cwms.cda.api.enums.ResampleMethod;
+import cwms.cda.api.enums.StatisticsBucket;
 import cwms.cda.api.enums.UnitSystem;
 import cwms.cda.api.enums.VersionType;
 import cwms.cda.api.errors.RequiredQueryParameterException;
@@ -39,6 +43,14 @@ import cwms.cda.helpers.DateUtils;
 import io.javalin.core.validation.JavalinValidation;
 import io.javalin.core.validation.Validator;
 import io.javalin.http.Context;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Clob;
+import java.sql.SQLException;
 import java.time.Instant;
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
@@ -120,6 +132,13 @@ public final class Controllers {
     public static final String CREATE_AS_LRTS = "create-as-lrts";
     public static final String STORE_RULE = "store-rule";
     public static final String OVERRIDE_PROTECTION = "override-protection";
+    public static final String COMMIT_SIZE = "commit-size";
+    public static final String CHUNK_SIZE = "chunk-size";
+    public static final String MAX_POINTS = "max-points";
+    public static final String RESAMPLE = "resample";
+    public static final String CHANGED_SINCE = "changed-since";
+    public static final String RESUME_TOKEN = "resume-token";
+    public static final String BUCKET = "bucket";
     public static final String START_TIME_INCLUSIVE = "start-time-inclusive";
     public static final String END_TIME_INCLUSIVE = "end-time-inclusive";
     public static final String MAX_VERSION = "max-version";
@@ -158,6 +177,7 @@ public final class Controllers {
     public static final String STATUS_200 = "200";
     public static final String STATUS_201 = "201";
     public static final String STATUS_204 = "204";
+    public static final String STATUS_304 = "304";
     public static final String STATUS_404 = "404";
     public static final String STATUS_501 = "501";
     public static final String STATUS_400 = "400";
@@ -198,6 +218,7 @@ public final class Controllers {
     public static final String SOURCE_ID = "source-id";
 
     private static final String DEPRECATED_HEADER = "CWMS-DATA-Format-Deprecated";
+    private static final int CLOB_BUFFER_SIZE = 8192;
     private static final String DEPRECATED_TAB = "2024-11-01 TAB is not used often.";
     private static final String DEPRECATED_CSV = "2024-11-01 CSV is not used often.";
 
@@ -206,6 +227,9 @@ public final class Controllers {
         JavalinValidation.register(JooqDao.DeleteMethod.class, Controllers::getDeleteMethod);
         JavalinValidation.register(VersionType.class, VersionType::versionTypeFor);
         JavalinValidation.register(UnitSystem.class, UnitSystem::systemFor);
+        JavalinValidation.register(CountMode.class, CountMode::countModeFor);
+        JavalinValidation.register(ResampleMethod.class, ResampleMethod::resampleMethodFor);
+        JavalinValidation.register(StatisticsBucket.class, StatisticsBucket::statisticsBucketFor);
     }
 
     private Controllers() {
@@ -435,6 +459,33 @@ public final class Controllers {
         return retval;
     }
 
+    /**
+     * Copies a CLOB to the response, encoded as UTF-8, a buffer at a time instead of reading it
+     * into a String first. The status and headers must be set before.
+     * @param ctx Request Context
+     * @param clob the document, may be null for an empty response
+     * @return the number of bytes written
+     * @throws UncheckedIOException if the response can't be written
+     */
+    static long writeClob(Context ctx, @Nullable Clob clob) throws SQLException {
+        if (clob == null) {
+            return 0;
+        }
+        CountingOutputStream out = new CountingOutputStream(ctx.res.getOutputStream());
+        try (Reader reader = clob.getCharacterStream()) {
+            Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+            char[] buffer = new char[CLOB_BUFFER_SIZE];
+            int read;
+            while ((read = reader.read(buffer)) != -1) {
+                writer.write(buffer, 0, read);
+            }
+            writer.flush();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return out.getCount();
+    }
+
     static void addDeprecatedContentTypeWarning(Context ctx, ContentType type) {
         if (type.getType().equalsIgnoreCase(Formats.TAB)) {
             ctx.res.addHeader(DEPRECATED_HEADER, DEPRECATED_TAB);
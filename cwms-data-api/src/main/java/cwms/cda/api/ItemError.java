@@ -0,0 +1,68 @@
+package cwms.cda.api;
+
+import cwms.cda.api.errors.AlreadyExists;
+import cwms.cda.api.errors.CdaError;
+import cwms.cda.api.errors.FieldException;
+import cwms.cda.api.errors.InvalidItemException;
+import cwms.cda.api.errors.NotFoundException;
+import cwms.cda.data.dao.JooqDao;
+import cwms.cda.security.CwmsAuthException;
+import java.time.DateTimeException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * The status and error of one failed item of a request handling several items, so that one
+ * failure doesn't fail the whole request. Mirrors the exception handling of ApiServlet for a
+ * request handling a single item.
+ */
+final class ItemError {
+    private final int status;
+    private final CdaError error;
+
+    private ItemError(int status, CdaError error) {
+        this.status = status;
+        this.error = error;
+    }
+
+    static ItemError notFound() {
+        return new ItemError(HttpServletResponse.SC_NOT_FOUND, new CdaError("Not Found."));
+    }
+
+    /**
+     * @param ex the exception thrown for the item
+     * @param logger logs unexpected exceptions, with the incident identifier of the error
+     * @param item describes the item in the log message
+     */
+    static ItemError of(RuntimeException ex, Logger logger, String item) {
+        ex = JooqDao.wrapException(ex);
+        if (ex instanceof NotFoundException) {
+            return notFound();
+        } else if (ex instanceof AlreadyExists) {
+            return new ItemError(HttpServletResponse.SC_CONFLICT, new CdaError("Already Exists."));
+        } else if (ex instanceof FieldException) {
+            return new ItemError(HttpServletResponse.SC_BAD_REQUEST,
+                    new CdaError(ex.getMessage(), ((FieldException) ex).getDetails(), true));
+        } else if (ex instanceof IllegalArgumentException || ex instanceof InvalidItemException
+                || ex instanceof DateTimeException) {
+            return new ItemError(HttpServletResponse.SC_BAD_REQUEST,
+                    new CdaError(ex.getMessage() != null ? ex.getMessage() : "Bad Request."));
+        } else if (ex instanceof CwmsAuthException) {
+            return new ItemError(((CwmsAuthException) ex).getAuthFailCode(),
+                    new CdaError("Not Authorized", true));
+        }
+        CdaError error = new CdaError("System Error");
+        logger.log(Level.WARNING, ex, () -> "error on " + item + "["
+                + error.getIncidentIdentifier() + "]");
+        return new ItemError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, error);
+    }
+
+    int getStatus() {
+        return status;
+    }
+
+    CdaError getError() {
+        return error;
+    }
+}
@@ -41,6 +41,7 @@ import static cwms.cda.api.Controllers.UNIT;
 import static cwms.cda.api.Controllers.UPDATE;
 import static cwms.cda.api.Controllers.VERSION;
 import static cwms.cda.api.Controllers.addDeprecatedContentTypeWarning;
+import static cwms.cda.api.Controllers.writeClob;
 import static cwms.cda.data.dao.JooqDao.getDslContext;
 
 import com.codahale.metrics.Histogram;
@@ -185,6 +186,9 @@ public class LocationController implements CrudHandler {
             String version = contentType.getParameters().getOrDefault(VERSION, "");
             boolean isLegacyFormat = version.equalsIgnoreCase("1");
 
+            // Before any of the body, which the legacy formats stream
+            addDeprecatedContentTypeWarning(ctx, contentType);
+
             if (contentType.getType().equals(Formats.GEOJSON)) {
                 FeatureCollection collection = locationsDao.buildFeatureCollection(names, units,
                         office);
@@ -204,9 +208,6 @@ public class LocationController implements CrudHandler {
             else
             {
                 String format = Formats.getLegacyTypeFromContentType(contentType);
-                results = locationsDao.getLocations(names, format, units, datum, office);
-                ctx.result(results);
-                requestResultSize.update(results.length());
                 if (isLegacyFormat)
                 {
                     ctx.contentType(contentType.toString());
@@ -215,10 +216,13 @@ public class LocationController implements CrudHandler {
                 {
                     ctx.contentType(contentType.getType());
                 }
+                ctx.status(HttpServletResponse.SC_OK);
+                long[] written = {0};
+                locationsDao.getLocations(names, format, units, datum, office,
+                        clob -> written[0] = writeClob(ctx, clob));
+                requestResultSize.update(written[0]);
             }
 
-            addDeprecatedContentTypeWarning(ctx, contentType);
-
             ctx.status(HttpServletResponse.SC_OK);
 
         } catch (Exception ex) {
@@ -51,6 +51,7 @@ import static cwms.cda.api.Controllers.UNIT;
 import static cwms.cda.api.Controllers.UPDATE;
 import static cwms.cda.api.Controllers.VERSION_DATE;
 import static cwms.cda.api.Controllers.addDeprecatedContentTypeWarning;
+import static cwms.cda.api.Controllers.writeClob;
 import static cwms.cda.data.dao.JooqDao.getDslContext;
 
 import com.codahale.metrics.Histogram;
@@ -310,13 +311,12 @@ public class RatingController implements CrudHandler {
             //At the moment, we still use the legacy formatting here, since we don't have a newer API for serializing/deserializing
             //a collection of rating sets - unlike getOne.
             String legacyFormat = Formats.getLegacyTypeFromContentType(contentType);
-            String results = ratingDao.retrieveRatings(legacyFormat, names, unit, datum, office, start,
-                    end, timezone);
-
             ctx.status(HttpServletResponse.SC_OK);
-            ctx.result(results);
             addDeprecatedContentTypeWarning(ctx, contentType);
-            requestResultSize.update(results.length());
+            long[] written = {0};
+            ratingDao.retrieveRatings(legacyFormat, names, unit, datum, office, start,
+                    end, timezone, clob -> written[0] = writeClob(ctx, clob));
+            requestResultSize.update(written[0]);
         }
     }
 
@@ -0,0 +1,349 @@
+package cwms.cda.api;
+
+import static com.codahale.metrics.MetricRegistry.name;
+import static cwms.cda.api.Controllers.GET_ALL;
+import static cwms.cda.api.Controllers.RESULTS;
+import static cwms.cda.api.Controllers.SIZE;
+import static cwms.cda.api.Controllers.STATUS_200;
+import static cwms.cda.api.Controllers.STATUS_400;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.io.CountingOutputStream;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import cwms.cda.api.enums.CountMode;
+import cwms.cda.api.enums.UnitSystem;
+import cwms.cda.api.errors.CdaError;
+import cwms.cda.data.dao.JooqDao;
+import cwms.cda.data.dao.TimeSeriesDao;
+import cwms.cda.data.dao.TimeSeriesDaoImpl;
+import cwms.cda.data.dto.TimeSeries;
+import cwms.cda.data.dto.TimeSeriesBatchItem;
+import cwms.cda.formatters.ContentType;
+import cwms.cda.formatters.Formats;
+import cwms.cda.formatters.arrow.TimeSeriesArrowWriter;
+import cwms.cda.formatters.json.JsonV2;
+import cwms.cda.helpers.DateUtils;
+import io.javalin.core.util.Header;
+import io.javalin.http.Context;
+import io.javalin.http.Handler;
+import io.javalin.plugin.openapi.annotations.HttpMethod;
+import io.javalin.plugin.openapi.annotations.OpenApi;
+import io.javalin.plugin.openapi.annotations.OpenApiContent;
+import io.javalin.plugin.openapi.annotations.OpenApiRequestBody;
+import io.javalin.plugin.openapi.annotations.OpenApiResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.servlet.http.HttpServletResponse;
+import org.jetbrains.annotations.NotNull;
+import org.jooq.DSLContext;
+
+/**
+ * Retrieves several time series in one request. The series are read concurrently, each on its
+ * own pooled connection, and every one is written as a line of newline delimited JSON as soon
+ * as it is read, so the order of the lines is not the order of the request. Clients that accept
+ * {@value Formats#ARROW} get one Arrow stream instead, with the values of each series sent as
+ * it is read.
+ */
+public final class TimeSeriesBatchController implements Handler {
+    private static final Logger logger = Logger.getLogger(TimeSeriesBatchController.class.getName());
+
+    public static final String NDJSON = "application/x-ndjson";
+
+    private static final int PARALLELISM = Integer.parseInt(
+            System.getProperty("cda.api.ts.batch.parallelism", "8"));
+    private static final int MAX_ITEMS = Integer.parseInt(
+            System.getProperty("cda.api.ts.batch.max.items", "200"));
+    // Each item is read whole before it is written, so its page has to be bounded
+    private static final int MAX_PAGE_SIZE = Integer.parseInt(
+            System.getProperty("cda.api.ts.batch.max.page.size", "20000"));
+
+    // Shared by all requests so the number of connections used for batches is bounded.
+    private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(PARALLELISM,
+            new ThreadFactoryBuilder()
+                    .setNameFormat("cda-ts-batch-%d")
+                    .setDaemon(true)
+                    .build());
+
+    private static final ObjectMapper MAPPER = JsonV2.buildObjectMapper();
+
+    private final MetricRegistry metrics;
+    private final Histogram requestResultSize;
+
+    public TimeSeriesBatchController(MetricRegistry metrics) {
+        this.metrics = metrics;
+        requestResultSize = this.metrics.histogram((name(TimeSeriesBatchController.class, RESULTS, SIZE)));
+    }
+
+    private Timer.Context markAndTime(String subject) {
+        return Controllers.markAndTime(metrics, getClass().getName(), subject);
+    }
+
+    private DSLContext getDslContext(Context ctx) {
+        // The items are read concurrently, so they mustn't share the request's connection
+        return JooqDao.getParallelDslContext(ctx);
+    }
+
+    private TimeSeriesDao getTimeSeriesDao(DSLContext dsl) {
+        return new TimeSeriesDaoImpl(dsl, metrics);
+    }
+
+    @OpenApi(
+            requestBody = @OpenApiRequestBody(
+                    content = {
+                        @OpenApiContent(isArray = true, from = TimeSeriesBatchItem.class, type = Formats.JSONV2),
+                        @OpenApiContent(isArray = true, from = TimeSeriesBatchItem.class, type = Formats.JSON)
+                    },
+                    required = true),
+            description = "Returns several time series. Each line of the response is a JSON "
+                    + "object with the index of the item in the request, its name and office, "
+                    + "an HTTP status and either the time-series, in the "
+                    + Formats.JSONV2 + " format, or the error. Lines are written as the series "
+                    + "are read, not in the order of the request. At most " + MAX_ITEMS
+                    + " items may be requested, each with a page-size of at most "
+                    + MAX_PAGE_SIZE + ". If " + Formats.ARROW + " is accepted the "
+                    + "response is one Arrow stream with a row for each value and name, office, "
+                    + "units and error columns; a series that couldn't be retrieved has one row "
+                    + "with its error.",
+            method = HttpMethod.POST,
+            path = "/timeseries/batch",
+            tags = {TimeSeriesController.TAG},
+            responses = {
+                @OpenApiResponse(status = STATUS_200,
+                        content = {
+                            @OpenApiContent(type = NDJSON),
+                            @OpenApiContent(type = Formats.ARROW)
+                        }),
+                @OpenApiResponse(status = STATUS_400, description = "Invalid request, too "
+                        + "many items, or a page-size out of range.")
+            }
+    )
+    @Override
+    public void handle(@NotNull Context ctx) throws Exception {
+        try (Timer.Context ignored = markAndTime(GET_ALL)) {
+            ContentType contentType = Formats.parseHeader(ctx.req.getContentType(),
+                    TimeSeriesBatchItem.class);
+            List<TimeSeriesBatchItem> items = Formats.parseContentList(contentType, ctx.body(),
+                    TimeSeriesBatchItem.class);
+            if (items.size() > MAX_ITEMS) {
+                throw new IllegalArgumentException("At most " + MAX_ITEMS
+                        + " time series may be requested at once, not " + items.size());
+            }
+            for (TimeSeriesBatchItem item : items) {
+                Integer pageSize = item.getPageSize();
+                if (pageSize != null && (pageSize < 1 || pageSize > MAX_PAGE_SIZE)) {
+                    throw new IllegalArgumentException("The page-size of " + item.getName()
+                            + " must be from 1 to " + MAX_PAGE_SIZE + ", not " + pageSize);
+                }
+            }
+
+            DSLContext dsl = getDslContext(ctx);
+            CompletionService<BatchResult> completion = new ExecutorCompletionService<>(EXECUTOR);
+            Workers workers = new Workers(items.size());
+            List<Future<BatchResult>> futures = new ArrayList<>(items.size());
+            for (int i = 0; i < items.size(); i++) {
+                int index = i;
+                TimeSeriesBatchItem item = items.get(i);
+                futures.add(completion.submit(() -> workers.run(index,
+                        () -> retrieve(dsl, index, item))));
+            }
+
+            boolean arrow = acceptsArrow(ctx.header(Header.ACCEPT));
+            ctx.status(HttpServletResponse.SC_OK);
+            ctx.contentType(arrow ? Formats.ARROW : NDJSON);
+            CountingOutputStream out = new CountingOutputStream(ctx.res.getOutputStream());
+            try {
+                if (arrow) {
+                    writeArrow(out, completion, items.size());
+                } else {
+                    writeNdjson(out, completion, items.size());
+                }
+            } catch (IOException ex) {
+                // The client has gone away; the rest of the batch isn't worth reading.
+                logger.log(Level.WARNING, "Unable to write time series batch", ex);
+            } catch (ExecutionException ex) {
+                logger.log(Level.SEVERE, "Unable to retrieve time series batch", ex);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } finally {
+                workers.stop(futures);
+            }
+            requestResultSize.update(out.getCount());
+        }
+    }
+
+    private BatchResult retrieve(DSLContext dsl, int index, TimeSeriesBatchItem item) {
+        try {
+            String timezone = item.getTimezone() != null ? item.getTimezone() : "UTC";
+            ZonedDateTime end = item.getEnd() != null
+                    ? DateUtils.parseUserDate(item.getEnd(), timezone)
+                    : ZonedDateTime.now(ZoneId.of(timezone, ZoneId.SHORT_IDS));
+            ZonedDateTime begin = item.getBegin() != null
+                    ? DateUtils.parseUserDate(item.getBegin(), timezone)
+                    : end.minusHours(24);
+            ZonedDateTime versionDate = item.getVersionDate() != null
+                    ? DateUtils.parseUserDate(item.getVersionDate(), timezone)
+                    : null;
+            String unit = item.getUnit() != null ? item.getUnit() : UnitSystem.EN.getValue();
+            int pageSize = item.getPageSize() != null
+                    ? item.getPageSize()
+                    : TimeSeriesController.DEFAULT_PAGE_SIZE;
+            boolean trim = item.getTrim() == null || item.getTrim();
+            String page = item.getPage() != null ? item.getPage() : "";
+
+            TimeSeries ts = getTimeSeriesDao(dsl).getTimeseries(page, pageSize, item.getName(),
+                    item.getOffice(), unit, begin, end, versionDate, trim, CountMode.ESTIMATE);
+            return new BatchResult(index, item, ts);
+        } catch (RuntimeException ex) {
+            return new BatchResult(index, item,
+                    ItemError.of(ex, logger, "batch item " + item.getName()));
+        }
+    }
+
+    static boolean acceptsArrow(String accept) {
+        if (accept == null) {
+            return false;
+        }
+        for (String type : accept.split(",")) {
+            if (Formats.ARROW.equals(new ContentType(type).getType())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void writeNdjson(OutputStream out, CompletionService<BatchResult> completion,
+                                    int count)
+            throws IOException, InterruptedException, ExecutionException {
+        try (JsonGenerator gen = MAPPER.getFactory().createGenerator(out)) {
+            for (int i = 0; i < count; i++) {
+                write(gen, completion.take().get());
+                gen.writeRaw('\n');
+                gen.flush();
+            }
+        }
+    }
+
+    private static void writeArrow(OutputStream out, CompletionService<BatchResult> completion,
+                                   int count)
+            throws IOException, InterruptedException, ExecutionException {
+        try (TimeSeriesArrowWriter writer = TimeSeriesArrowWriter.forBatch(out)) {
+            for (int i = 0; i < count; i++) {
+                BatchResult result = completion.take().get();
+                if (result.timeSeries != null) {
+                    writer.write(result.timeSeries);
+                } else {
+                    writer.writeError(result.item.getName(), result.item.getOffice(),
+                            result.error.getMessage());
+                }
+            }
+        }
+    }
+
+    private static void write(JsonGenerator gen, BatchResult result) throws IOException {
+        gen.writeStartObject();
+        gen.writeNumberField("index", result.index);
+        gen.writeStringField("name", result.item.getName());
+        gen.writeStringField("office", result.item.getOffice());
+        gen.writeNumberField("status", result.status);
+        if (result.timeSeries != null) {
+            gen.writeObjectField("time-series", result.timeSeries);
+        } else {
+            gen.writeObjectField("error", result.error);
+        }
+        gen.writeEndObject();
+    }
+
+    /**
+     * Tracks the items of one request so it doesn't return while any are still being read.
+     * Each item is claimed either by its worker, when it starts, or by the request, when it
+     * stops early; an item the request claims is never read.
+     */
+    private static final class Workers {
+        private final AtomicIntegerArray claimed;
+        private final CountDownLatch finished;
+
+        Workers(int count) {
+            claimed = new AtomicIntegerArray(count);
+            finished = new CountDownLatch(count);
+        }
+
+        BatchResult run(int index, Supplier<BatchResult> retrieve) {
+            if (!claimed.compareAndSet(index, 0, 1)) {
+                return null;
+            }
+            try {
+                return retrieve.get();
+            } finally {
+                finished.countDown();
+            }
+        }
+
+        /**
+         * Cancels the items not yet read and waits for those being read. Workers are never
+         * interrupted: one interrupted in the middle of a JDBC call can leave the pooled
+         * connection it holds unusable, so an item already being read is left to finish.
+         */
+        void stop(List<Future<BatchResult>> futures) {
+            for (int i = 0; i < claimed.length(); i++) {
+                if (claimed.compareAndSet(i, 0, 1)) {
+                    finished.countDown();
+                }
+            }
+            futures.forEach(f -> f.cancel(false));
+            try {
+                finished.await();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static final class BatchResult {
+        private final int index;
+        private final TimeSeriesBatchItem item;
+        private final int status;
+        private final TimeSeries timeSeries;
+        private final CdaError error;
+
+        BatchResult(int index, TimeSeriesBatchItem item, TimeSeries timeSeries) {
+            this.index = index;
+            this.item = item;
+            this.timeSeries = timeSeries;
+            if (timeSeries != null) {
+                this.status = HttpServletResponse.SC_OK;
+                this.error = null;
+            } else {
+                ItemError notFound = ItemError.notFound();
+                this.status = notFound.getStatus();
+                this.error = notFound.getError();
+            }
+        }
+
+        BatchResult(int index, TimeSeriesBatchItem item, ItemError error) {
+            this.index = index;
+            this.item = item;
+            this.timeSeries = null;
+            this.status = error.getStatus();
+            this.error = error.getError();
+        }
+    }
+}
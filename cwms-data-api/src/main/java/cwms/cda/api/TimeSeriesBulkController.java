@@ -0,0 +1,196 @@
+package cwms.cda.api;
+
+import static com.codahale.metrics.MetricRegistry.name;
+import static cwms.cda.api.Controllers.COMMIT_SIZE;
+import static cwms.cda.api.Controllers.CREATE;
+import static cwms.cda.api.Controllers.CREATE_AS_LRTS;
+import static cwms.cda.api.Controllers.OVERRIDE_PROTECTION;
+import static cwms.cda.api.Controllers.SIZE;
+import static cwms.cda.api.Controllers.STATUS_200;
+import static cwms.cda.api.Controllers.STORE_RULE;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectReader;
+import cwms.cda.api.errors.CdaError;
+import cwms.cda.data.dao.JooqDao;
+import cwms.cda.data.dao.StoreRule;
+import cwms.cda.data.dao.TimeSeriesDao;
+import cwms.cda.data.dao.TimeSeriesDaoImpl;
+import cwms.cda.data.dto.TimeSeries;
+import cwms.cda.data.dto.TimeSeriesStoreResult;
+import cwms.cda.formatters.ContentType;
+import cwms.cda.formatters.Formats;
+import cwms.cda.formatters.OutputFormatter;
+import cwms.cda.formatters.UnsupportedFormatException;
+import cwms.cda.formatters.json.JsonV2;
+import io.javalin.http.Context;
+import io.javalin.http.Handler;
+import io.javalin.plugin.openapi.annotations.HttpMethod;
+import io.javalin.plugin.openapi.annotations.OpenApi;
+import io.javalin.plugin.openapi.annotations.OpenApiContent;
+import io.javalin.plugin.openapi.annotations.OpenApiParam;
+import io.javalin.plugin.openapi.annotations.OpenApiRequestBody;
+import io.javalin.plugin.openapi.annotations.OpenApiResponse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+import javax.servlet.http.HttpServletResponse;
+import org.jetbrains.annotations.NotNull;
+import org.jooq.DSLContext;
+
+/**
+ * Stores many time series in one request. The series of each office are stored on one
+ * connection and committed in chunks, and the outcome of each series is returned.
+ */
+public final class TimeSeriesBulkController implements Handler {
+    private static final Logger logger = Logger.getLogger(TimeSeriesBulkController.class.getName());
+
+    private static final ObjectReader READER = JsonV2.buildObjectMapper().readerFor(TimeSeries.class);
+
+    private final MetricRegistry metrics;
+    private final Histogram requestSize;
+
+    public TimeSeriesBulkController(MetricRegistry metrics) {
+        this.metrics = metrics;
+        requestSize = this.metrics.histogram((name(TimeSeriesBulkController.class, CREATE, SIZE)));
+    }
+
+    private Timer.Context markAndTime(String subject) {
+        return Controllers.markAndTime(metrics, getClass().getName(), subject);
+    }
+
+    private DSLContext getDslContext(Context ctx) {
+        return JooqDao.getDslContext(ctx);
+    }
+
+    private TimeSeriesDao getTimeSeriesDao(DSLContext dsl) {
+        return new TimeSeriesDaoImpl(dsl, metrics);
+    }
+
+    @OpenApi(
+            description = "Used to store many time series at once. The body is either a JSON "
+                    + "array of time series in the " + Formats.JSONV2 + " format, or one such "
+                    + "time series per line (" + TimeSeriesBatchController.NDJSON + "). The "
+                    + "result gives the status of each time series; one that can't be stored "
+                    + "doesn't stop the others.",
+            requestBody = @OpenApiRequestBody(
+                    content = {
+                        @OpenApiContent(isArray = true, from = TimeSeries.class, type = Formats.JSONV2),
+                        @OpenApiContent(from = TimeSeries.class, type = TimeSeriesBatchController.NDJSON)
+                    },
+                    required = true
+            ),
+            queryParams = {
+                @OpenApiParam(name = CREATE_AS_LRTS, type = Boolean.class, description = "Flag indicating if "
+                        + "timeseries should be created as Local Regular Time Series. "
+                        + "'True' or 'False', default is 'False'"),
+                @OpenApiParam(name = STORE_RULE, type = StoreRule.class,
+                        description = TimeSeriesController.STORE_RULE_DESC),
+                @OpenApiParam(name = OVERRIDE_PROTECTION, type = Boolean.class, description = "A flag "
+                        + "to ignore the protected data quality when storing data. 'True' or 'False'"),
+                @OpenApiParam(name = COMMIT_SIZE, type = Integer.class, description = "Number of "
+                        + "time series stored in each transaction. Default "
+                        + "the server's configured commit size.")
+            },
+            method = HttpMethod.POST,
+            path = "/timeseries/bulk",
+            tags = TimeSeriesController.TAG,
+            responses = {
+                @OpenApiResponse(status = STATUS_200, content = {
+                    @OpenApiContent(isArray = true, from = TimeSeriesStoreResult.class, type = Formats.JSONV2)
+                })
+            }
+    )
+    @Override
+    public void handle(@NotNull Context ctx) throws Exception {
+        boolean createAsLrts = ctx.queryParamAsClass(CREATE_AS_LRTS, Boolean.class)
+                .getOrDefault(false);
+        StoreRule storeRule = ctx.queryParamAsClass(STORE_RULE, StoreRule.class)
+                .getOrDefault(StoreRule.REPLACE_ALL);
+        boolean overrideProtection = ctx.queryParamAsClass(OVERRIDE_PROTECTION, Boolean.class)
+                .getOrDefault(TimeSeriesDaoImpl.OVERRIDE_PROTECTION);
+        int commitSize = ctx.queryParamAsClass(COMMIT_SIZE, Integer.class)
+                .getOrDefault(TimeSeriesDaoImpl.STORE_COMMIT_SIZE);
+
+        try (Timer.Context ignored = markAndTime(CREATE)) {
+            String contentTypeHeader = ctx.req.getContentType();
+            if (contentTypeHeader == null
+                    || !contentTypeHeader.startsWith(TimeSeriesBatchController.NDJSON)) {
+                ContentType contentType = Formats.parseHeader(contentTypeHeader, TimeSeries.class);
+                if (!new ContentType(Formats.JSONV2).equals(contentType)) {
+                    throw new UnsupportedFormatException("Only " + Formats.JSONV2 + " and "
+                            + TimeSeriesBatchController.NDJSON + " may be stored in bulk");
+                }
+            }
+            List<TimeSeries> input = parse(ctx.bodyAsInputStream());
+            requestSize.update(input.size());
+
+            TimeSeriesStoreResult[] results = new TimeSeriesStoreResult[input.size()];
+            Map<TimeSeries, Integer> indexes = new IdentityHashMap<>();
+            List<TimeSeries> valid = new ArrayList<>(input.size());
+            for (int i = 0; i < input.size(); i++) {
+                TimeSeries ts = input.get(i);
+                indexes.put(ts, i);
+                if (ts.getName() == null || ts.getOfficeId() == null || ts.getUnits() == null) {
+                    results[i] = result(i, ts, HttpServletResponse.SC_BAD_REQUEST)
+                            .withError("name, office-id and units are required", null);
+                } else {
+                    valid.add(ts);
+                }
+            }
+
+            if (!valid.isEmpty()) {
+                TimeSeriesDao dao = getTimeSeriesDao(getDslContext(ctx));
+                dao.storeAll(valid, createAsLrts, storeRule, overrideProtection, commitSize,
+                        (ts, error) -> {
+                            int index = indexes.get(ts);
+                            if (error == null) {
+                                results[index] = result(index, ts, HttpServletResponse.SC_OK);
+                            } else {
+                                ItemError itemError = ItemError.of(error, logger,
+                                        "bulk store of " + ts.getName());
+                                CdaError cdaError = itemError.getError();
+                                results[index] = result(index, ts, itemError.getStatus())
+                                        .withError(cdaError.getMessage(),
+                                                cdaError.getIncidentIdentifier());
+                            }
+                        });
+            }
+
+            ctx.status(HttpServletResponse.SC_OK);
+            ctx.contentType(Formats.JSONV2);
+            ctx.result(Formats.format(new ContentType(Formats.JSONV2), Arrays.asList(results),
+                    TimeSeriesStoreResult.class));
+        }
+    }
+
+    private static TimeSeriesStoreResult result(int index, TimeSeries ts, int status) {
+        return new TimeSeriesStoreResult(index, ts.getName(), ts.getOfficeId(),
+                ts.getValues() == null ? 0 : ts.getValues().size(), status);
+    }
+
+    /**
+     * Reads the time series one at a time, from either a JSON array or a sequence of JSON
+     * objects, so the body is never held as a string.
+     */
+    static List<TimeSeries> parse(InputStream body) {
+        List<TimeSeries> retval = new ArrayList<>();
+        try (MappingIterator<TimeSeries> it = READER.readValues(body)) {
+            while (it.hasNextValue()) {
+                retval.add(it.nextValue());
+            }
+        } catch (IOException e) {
+            throw OutputFormatter.parseFailure("Unable to read time series " + (retval.size() + 1)
+                    + " of bulk request", e);
+        }
+        return retval;
+    }
+}
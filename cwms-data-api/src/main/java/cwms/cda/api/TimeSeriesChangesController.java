@@ -0,0 +1,225 @@
+package cwms.cda.api;
+
+import static com.codahale.metrics.MetricRegistry.name;
+import static cwms.cda.api.Controllers.CATEGORY_ID;
+import static cwms.cda.api.Controllers.CHANGED_SINCE;
+import static cwms.cda.api.Controllers.GET_ALL;
+import static cwms.cda.api.Controllers.GROUP_ID;
+import static cwms.cda.api.Controllers.NAME;
+import static cwms.cda.api.Controllers.OFFICE;
+import static cwms.cda.api.Controllers.PAGE_SIZE;
+import static cwms.cda.api.Controllers.RESULTS;
+import static cwms.cda.api.Controllers.RESUME_TOKEN;
+import static cwms.cda.api.Controllers.SIZE;
+import static cwms.cda.api.Controllers.STATUS_200;
+import static cwms.cda.api.Controllers.STATUS_400;
+import static cwms.cda.api.Controllers.STATUS_404;
+import static cwms.cda.api.Controllers.UNIT_SYSTEM;
+import static cwms.cda.api.Controllers.requiredParam;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.io.CountingOutputStream;
+import cwms.cda.api.enums.UnitSystem;
+import cwms.cda.data.dao.JooqDao;
+import cwms.cda.data.dao.TimeSeriesDao;
+import cwms.cda.data.dao.TimeSeriesDaoImpl;
+import cwms.cda.data.dto.TimeSeriesChange;
+import cwms.cda.formatters.Formats;
+import cwms.cda.formatters.json.JsonV2;
+import cwms.cda.helpers.DateUtils;
+import io.javalin.http.Context;
+import io.javalin.http.Handler;
+import io.javalin.plugin.openapi.annotations.HttpMethod;
+import io.javalin.plugin.openapi.annotations.OpenApi;
+import io.javalin.plugin.openapi.annotations.OpenApiContent;
+import io.javalin.plugin.openapi.annotations.OpenApiParam;
+import io.javalin.plugin.openapi.annotations.OpenApiResponse;
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.servlet.http.HttpServletResponse;
+import org.jetbrains.annotations.NotNull;
+import org.jooq.DSLContext;
+
+/**
+ * Returns the values of a time series, or of a time series group, entered since a point, so a
+ * mirror of the data only reads what changed. Each response ends with a resume token that the
+ * next poll starts from.
+ */
+public class TimeSeriesChangesController implements Handler {
+    private static final Logger logger = Logger.getLogger(TimeSeriesChangesController.class.getName());
+
+    static final int DEFAULT_PAGE_SIZE = Integer.parseInt(
+            System.getProperty("cda.api.ts.changes.page.size", "50000"));
+
+    private static final ObjectMapper MAPPER = JsonV2.buildObjectMapper();
+
+    private final MetricRegistry metrics;
+    private final Histogram requestResultSize;
+
+    public TimeSeriesChangesController(MetricRegistry metrics) {
+        this.metrics = metrics;
+        requestResultSize = this.metrics.histogram((name(TimeSeriesChangesController.class, RESULTS, SIZE)));
+    }
+
+    private Timer.Context markAndTime(String subject) {
+        return Controllers.markAndTime(metrics, getClass().getName(), subject);
+    }
+
+    protected DSLContext getDslContext(Context ctx) {
+        return JooqDao.getDslContext(ctx);
+    }
+
+    protected TimeSeriesDao getTimeSeriesDao(DSLContext dsl) {
+        return new TimeSeriesDaoImpl(dsl, metrics);
+    }
+
+    @OpenApi(
+            description = "Returns the values entered since a point, oldest entry first, for "
+                    + "one time series or for the time series assigned to a group. The response "
+                    + "is an object with the 'values', each with its time series name, and a "
+                    + "'resume-token'; pass the token to the next poll to get only what was "
+                    + "entered after. When 'has-more' is true, poll again right away.",
+            queryParams = {
+                @OpenApiParam(name = OFFICE, required = true, description = "Specifies the "
+                        + "owning office of the time series or group."),
+                @OpenApiParam(name = NAME, description = "Specifies the name of the time "
+                        + "series. Cannot be used with " + GROUP_ID + "."),
+                @OpenApiParam(name = CATEGORY_ID, description = "Specifies the category of "
+                        + "the time series group."),
+                @OpenApiParam(name = GROUP_ID, description = "Specifies the time series "
+                        + "group whose time series are read. Cannot be used with " + NAME + "."),
+                @OpenApiParam(name = CHANGED_SINCE, description = "Only values entered after "
+                        + "this instant are returned. ISO 8601, with an offset. Required unless "
+                        + RESUME_TOKEN + " is given."),
+                @OpenApiParam(name = RESUME_TOKEN, description = "The resume-token of the "
+                        + "previous response. Takes the place of " + CHANGED_SINCE + "."),
+                @OpenApiParam(name = UNIT_SYSTEM, type = UnitSystem.class, description = "The "
+                        + "values are returned in the default units of this unit system. "
+                        + "Default EN."),
+                @OpenApiParam(name = PAGE_SIZE, type = Integer.class, description = "The most "
+                        + "values returned. Default 50000.")
+            },
+            responses = {
+                @OpenApiResponse(status = STATUS_200, content = {
+                    @OpenApiContent(isArray = true, from = TimeSeriesChange.class, type = Formats.JSON)
+                }),
+                @OpenApiResponse(status = STATUS_400, description = "Invalid parameter "
+                        + "combination, or an invalid resume token."),
+                @OpenApiResponse(status = STATUS_404, description = "The time series was not "
+                        + "found.")
+            },
+            method = HttpMethod.GET,
+            path = "/timeseries/changes",
+            tags = TimeSeriesController.TAG
+    )
+    @Override
+    public void handle(@NotNull Context ctx) throws Exception {
+        try (Timer.Context ignored = markAndTime(GET_ALL)) {
+            String office = requiredParam(ctx, OFFICE);
+            String name = ctx.queryParam(NAME);
+            String categoryId = ctx.queryParam(CATEGORY_ID);
+            String groupId = ctx.queryParam(GROUP_ID);
+            if ((name == null) == (groupId == null)) {
+                throw new IllegalArgumentException("Either " + NAME + " or " + GROUP_ID
+                        + " must be given");
+            }
+            UnitSystem unitSystem = ctx.queryParamAsClass(UNIT_SYSTEM, UnitSystem.class)
+                    .getOrDefault(UnitSystem.EN);
+            int pageSize = ctx.queryParamAsClass(PAGE_SIZE, Integer.class)
+                    .check(size -> size > 0, PAGE_SIZE + " must be positive")
+                    .getOrDefault(DEFAULT_PAGE_SIZE);
+
+            String token = ctx.queryParam(RESUME_TOKEN);
+            String changedSince = ctx.queryParam(CHANGED_SINCE);
+            TimeSeriesChange.Position after;
+            if (token != null) {
+                after = TimeSeriesChange.Position.fromToken(token);
+            } else if (changedSince != null) {
+                after = TimeSeriesChange.Position.after(
+                        DateUtils.parseUserDate(changedSince, "UTC").toInstant());
+            } else {
+                throw new IllegalArgumentException("Either " + CHANGED_SINCE + " or "
+                        + RESUME_TOKEN + " must be given");
+            }
+
+            TimeSeriesDao dao = getTimeSeriesDao(getDslContext(ctx));
+            ChangeWriter writer = new ChangeWriter(ctx, office);
+            try {
+                try {
+                    int count = dao.streamChanges(office, name, categoryId, groupId,
+                            unitSystem, after, pageSize, writer::write);
+                    writer.finish(count, count == pageSize, after);
+                } finally {
+                    writer.close();
+                }
+            } catch (IOException ex) {
+                // The response is already committed, so the client just gets a truncated body.
+                logger.log(Level.WARNING, "Unable to stream time series changes", ex);
+            }
+            requestResultSize.update(writer.getCount());
+        }
+    }
+
+    /**
+     * Writes the response, which is only started by the first change or by the end. Until
+     * then nothing has been sent, so an error, such as the time series not being found, still
+     * gets its own status.
+     */
+    private static final class ChangeWriter {
+        private final Context ctx;
+        private final String office;
+        private CountingOutputStream out;
+        private JsonGenerator gen;
+        private TimeSeriesChange last;
+
+        private ChangeWriter(Context ctx, String office) {
+            this.ctx = ctx;
+            this.office = office;
+        }
+
+        void write(TimeSeriesChange change) throws IOException {
+            start().writeObject(change);
+            last = change;
+        }
+
+        void finish(int count, boolean hasMore, TimeSeriesChange.Position after)
+                throws IOException {
+            start().writeEndArray();
+            gen.writeNumberField("count", count);
+            gen.writeBooleanField("has-more", hasMore);
+            gen.writeStringField(RESUME_TOKEN, last == null ? after.toToken()
+                    : TimeSeriesChange.Position.after(last).toToken());
+            gen.writeEndObject();
+        }
+
+        private JsonGenerator start() throws IOException {
+            if (gen == null) {
+                ctx.status(HttpServletResponse.SC_OK);
+                ctx.contentType(Formats.JSON);
+                out = new CountingOutputStream(ctx.res.getOutputStream());
+                gen = MAPPER.getFactory().createGenerator(out);
+                // A failure part way leaves the body visibly cut short, with no resume token
+                gen.disable(JsonGenerator.Feature.AUTO_CLOSE_JSON_CONTENT);
+                gen.writeStartObject();
+                gen.writeStringField("office", office);
+                gen.writeArrayFieldStart("values");
+            }
+            return gen;
+        }
+
+        long getCount() {
+            return out == null ? 0 : out.getCount();
+        }
+
+        void close() throws IOException {
+            if (gen != null) {
+                gen.close();
+            }
+        }
+    }
+}
@@ -2,6 +2,8 @@ package cwms.cda.api;
 
 import static com.codahale.metrics.MetricRegistry.name;
 import static cwms.cda.api.Controllers.BEGIN;
+import static cwms.cda.api.Controllers.CHUNK_SIZE;
+import static cwms.cda.api.Controllers.COUNT;
 import static cwms.cda.api.Controllers.CREATE;
 import static cwms.cda.api.Controllers.CREATE_AS_LRTS;
 import static cwms.cda.api.Controllers.CURSOR;
@@ -14,6 +16,7 @@ import static cwms.cda.api.Controllers.EXAMPLE_DATE;
 import static cwms.cda.api.Controllers.FORMAT;
 import static cwms.cda.api.Controllers.GET_ALL;
 import static cwms.cda.api.Controllers.GET_ONE;
+import static cwms.cda.api.Controllers.MAX_POINTS;
 import static cwms.cda.api.Controllers.MAX_VERSION;
 import static cwms.cda.api.Controllers.NAME;
 import static cwms.cda.api.Controllers.NOT_SUPPORTED_YET;
@@ -21,10 +24,12 @@ import static cwms.cda.api.Controllers.OFFICE;
 import static cwms.cda.api.Controllers.OVERRIDE_PROTECTION;
 import static cwms.cda.api.Controllers.PAGE;
 import static cwms.cda.api.Controllers.PAGE_SIZE;
+import static cwms.cda.api.Controllers.RESAMPLE;
 import static cwms.cda.api.Controllers.RESULTS;
 import static cwms.cda.api.Controllers.SIZE;
 import static cwms.cda.api.Controllers.START_TIME_INCLUSIVE;
 import static cwms.cda.api.Controllers.STATUS_200;
+import static cwms.cda.api.Controllers.STATUS_304;
 import static cwms.cda.api.Controllers.STATUS_400;
 import static cwms.cda.api.Controllers.STATUS_404;
 import static cwms.cda.api.Controllers.STATUS_501;
@@ -40,10 +45,15 @@ import static cwms.cda.api.Controllers.queryParamAsClass;
 import static cwms.cda.api.Controllers.queryParamAsZdt;
 import static cwms.cda.api.Controllers.requiredParam;
 import static cwms.cda.api.Controllers.requiredZdt;
+import static cwms.cda.api.Controllers.writeClob;
 
 import com.codahale.metrics.Histogram;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
+import com.google.common.io.CountingOutputStream;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import cwms.cda.api.enums.CountMode;
+import cwms.cda.api.enums.ResampleMethod;
 import cwms.cda.api.enums.UnitSystem;
 import cwms.cda.api.errors.CdaError;
 import cwms.cda.api.errors.NotFoundException;
@@ -52,10 +62,14 @@ import cwms.cda.data.dao.StoreRule;
 import cwms.cda.data.dao.TimeSeriesDao;
 import cwms.cda.data.dao.TimeSeriesDaoImpl;
 import cwms.cda.data.dao.TimeSeriesDeleteOptions;
+import cwms.cda.data.dto.CwmsDTOPaginated;
 import cwms.cda.data.dto.TimeSeries;
+import cwms.cda.data.dto.TimeSeriesChunkResult;
+import cwms.cda.data.dto.TimeSeriesValues;
 import cwms.cda.formatters.ContentType;
 import cwms.cda.formatters.Formats;
 import cwms.cda.helpers.DateUtils;
+import cwms.cda.helpers.TimeSeriesResampler;
 import io.javalin.apibuilder.CrudHandler;
 import io.javalin.core.util.Header;
 import io.javalin.core.validation.JavalinValidation;
@@ -68,13 +82,18 @@ import io.javalin.plugin.openapi.annotations.OpenApiParam;
 import io.javalin.plugin.openapi.annotations.OpenApiRequestBody;
 import io.javalin.plugin.openapi.annotations.OpenApiResponse;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 import java.sql.Timestamp;
+import java.time.Instant;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.servlet.http.HttpServletResponse;
@@ -141,10 +160,30 @@ public class TimeSeriesController implements CrudHandler {
             + "</tr>\n"
             + "</table>";
 
+    static final String CHUNK_SIZE_DESC = "Stores the values in chunks of at most this many "
+            + "values, each covering consecutive date-times, on separate connections and "
+            + "concurrently. Only used when there are more values than this. The response then "
+            + "gives the outcome of each chunk; a chunk that failed can be stored again by "
+            + "sending only the values from its begin to its end. Not allowed with the "
+            + "DELETE_INSERT store rule, since each chunk would only delete within its own "
+            + "date-times and leave the values between chunks.";
+
     private final MetricRegistry metrics;
 
     private final Histogram requestResultSize;
-    private static final int DEFAULT_PAGE_SIZE = 500;
+    static final int DEFAULT_PAGE_SIZE = 500;
+    private static final int STREAM_PAGE_SIZE = Integer.parseInt(
+            System.getProperty("cda.api.ts.stream.min.page.size", "5000"));
+    private static final int CHUNK_PARALLELISM = Integer.parseInt(
+            System.getProperty("cda.api.ts.chunk.parallelism", "4"));
+    private static final int SC_MULTI_STATUS = 207;
+
+    // Shared by all requests so chunked uploads use at most CHUNK_PARALLELISM extra connections
+    private static final ExecutorService CHUNK_EXECUTOR = Executors.newFixedThreadPool(
+            CHUNK_PARALLELISM, new ThreadFactoryBuilder()
+                    .setNameFormat("cda-ts-chunk-%d")
+                    .setDaemon(true)
+                    .build());
 
 
     public TimeSeriesController(MetricRegistry metrics) {
@@ -182,7 +221,8 @@ public class TimeSeriesController implements CrudHandler {
                         + "'True' or 'False', default is 'False'"),
                 @OpenApiParam(name = STORE_RULE, type = StoreRule.class,  description = STORE_RULE_DESC),
                 @OpenApiParam(name = OVERRIDE_PROTECTION,  type = Boolean.class, description = "A flag "
-                        + "to ignore the protected data quality when storing data. 'True' or 'False'")
+                        + "to ignore the protected data quality when storing data. 'True' or 'False'"),
+                @OpenApiParam(name = CHUNK_SIZE, type = Integer.class, description = CHUNK_SIZE_DESC)
             },
             method = HttpMethod.POST,
             path = "/timeseries",
@@ -202,8 +242,14 @@ public class TimeSeriesController implements CrudHandler {
 
             TimeSeriesDao dao = getTimeSeriesDao(dsl);
             TimeSeries timeSeries = deserializeTimeSeries(ctx);
-            dao.create(timeSeries, createAsLrts, storeRule, overrideProtection);
-            ctx.status(HttpServletResponse.SC_OK);
+            Validator<Integer> chunkSize = ctx.queryParamAsClass(CHUNK_SIZE, Integer.class);
+            if (shouldChunk(timeSeries, chunkSize, storeRule)) {
+                storeChunks(ctx, timeSeries, createAsLrts, storeRule, overrideProtection,
+                        chunkSize.get());
+            } else {
+                dao.create(timeSeries, createAsLrts, storeRule, overrideProtection);
+                ctx.status(HttpServletResponse.SC_OK);
+            }
         } catch (IOException | DataAccessException ex) {
             CdaError re = new CdaError("Internal Error");
             logger.log(Level.SEVERE, re.toString(), ex);
@@ -215,6 +261,10 @@ public class TimeSeriesController implements CrudHandler {
         return JooqDao.getDslContext(ctx);
     }
 
+    protected DSLContext getParallelDslContext(Context ctx) {
+        return JooqDao.getParallelDslContext(ctx);
+    }
+
     @NotNull
     protected TimeSeriesDao getTimeSeriesDao(DSLContext dsl) {
         return new TimeSeriesDaoImpl(dsl, metrics);
@@ -374,6 +424,15 @@ public class TimeSeriesController implements CrudHandler {
                         + "retrieved values. "
                         + "Only supported for:" + Formats.JSONV2 + " and " + Formats.XMLV2 + ". "
                         + "Default is true."),
+                @OpenApiParam(name = COUNT, type = CountMode.class, description = CountMode.DESCRIPTION
+                        + " Only supported for:" + Formats.JSONV2 + " and " + Formats.XMLV2 + ". "
+                        + "Default is exact."),
+                @OpenApiParam(name = MAX_POINTS, type = Integer.class, description = "Reduces "
+                        + "the values of the whole time window to at most this many, for "
+                        + "charting. The result is a single page. "
+                        + "Only supported for:" + Formats.JSONV2 + " and " + Formats.XMLV2 + "."),
+                @OpenApiParam(name = RESAMPLE, type = ResampleMethod.class,
+                        description = ResampleMethod.DESCRIPTION),
                 @OpenApiParam(name = FORMAT,  description = "Specifies the"
                         + " encoding format of the response. Valid values for the format "
                         + "field for this URI are:"
@@ -389,7 +448,10 @@ public class TimeSeriesController implements CrudHandler {
                 @OpenApiParam(name = PAGE_SIZE,
                         type = Integer.class,
                         description = "How many entries per page returned. "
-                                + "Default " + DEFAULT_PAGE_SIZE + ".")
+                                + "Default " + DEFAULT_PAGE_SIZE + ". A negative value returns "
+                                + "every entry in the time window. Large pages are streamed, in "
+                                + "which case the next page is only given by the 'next-page' "
+                                + "value in the response, not by a Link header.")
             },
             responses = {
                 @OpenApiResponse(status = STATUS_200,
@@ -397,9 +459,16 @@ public class TimeSeriesController implements CrudHandler {
                     content = {
                         @OpenApiContent(from = TimeSeries.class, type = Formats.JSONV2),
                         @OpenApiContent(from = TimeSeries.class, type = Formats.XMLV2),
+                        @OpenApiContent(from = TimeSeries.class, type = Formats.CBOR),
+                        @OpenApiContent(from = TimeSeries.class, type = Formats.SMILE),
+                        @OpenApiContent(from = TimeSeries.class, type = Formats.ARROW),
                         @OpenApiContent(from = TimeSeries.class, type = Formats.XML),
                         @OpenApiContent(from = TimeSeries.class, type = Formats.JSON),
                         @OpenApiContent(from = TimeSeries.class, type = ""),}),
+                @OpenApiResponse(status = STATUS_304, description = "The time series hasn't "
+                        + "changed since the If-None-Match or If-Modified-Since given. Only for "
+                        + Formats.JSONV2 + " and " + Formats.XMLV2 + " with a begin and end that "
+                        + "aren't relative to now."),
                 @OpenApiResponse(status = STATUS_400, description = "Invalid parameter combination"),
                 @OpenApiResponse(status = STATUS_404, description = "The provided combination of "
                         + "parameters did not find a timeseries."),
@@ -428,6 +497,11 @@ public class TimeSeriesController implements CrudHandler {
             String timezone = ctx.queryParamAsClass(TIMEZONE, String.class)
                     .getOrDefault("UTC");
             Validator<Boolean> trim = ctx.queryParamAsClass(Controllers.TRIM, Boolean.class);
+            CountMode count = ctx.queryParamAsClass(COUNT, CountMode.class)
+                    .getOrDefault(CountMode.EXACT);
+            Validator<Integer> maxPoints = ctx.queryParamAsClass(MAX_POINTS, Integer.class);
+            ResampleMethod resample = ctx.queryParamAsClass(RESAMPLE, ResampleMethod.class)
+                    .getOrDefault(ResampleMethod.LTTB);
 
             ZonedDateTime versionDate = queryParamAsZdt(ctx, VERSION_DATE);
 
@@ -443,7 +517,7 @@ public class TimeSeriesController implements CrudHandler {
             String acceptHeader = ctx.header(Header.ACCEPT);
             ContentType contentType = Formats.parseHeaderAndQueryParm(acceptHeader, format, TimeSeries.class);
 
-            String results;
+            long resultSize;
             String version = contentType.getParameters().get(VERSION);
 
             ZoneId tz = ZoneId.of(timezone, ZoneId.SHORT_IDS);
@@ -454,7 +528,9 @@ public class TimeSeriesController implements CrudHandler {
                     ? DateUtils.parseUserDate(end, timezone)
                     : ZonedDateTime.now(tz);
 
-            if (version != null && version.equals("2")) {
+            // Before any of the body, which the legacy formats stream
+            addDeprecatedContentTypeWarning(ctx, contentType);
+            if ("2".equals(version) || Formats.isBinary(contentType)) {
 
                 if (datum != null) {
                     throw new IllegalArgumentException(String.format("Datum is not supported for:%s and %s",
@@ -462,27 +538,49 @@ public class TimeSeriesController implements CrudHandler {
                 }
 
                 String office = requiredParam(ctx, OFFICE);
-                TimeSeries ts = dao.getTimeseries(cursor, pageSize, names, office, unit,
-                        beginZdt, endZdt, versionDate, trim.getOrDefault(true));
-
-                results = Formats.format(contentType, ts);
-
-                ctx.status(HttpServletResponse.SC_OK);
-
-                // Send back the link to the next page in the response header
-                StringBuilder linkValue = new StringBuilder(600);
-                linkValue.append(String.format("<%s>; rel=self; type=\"%s\"",
-                        buildRequestUrl(ctx, ts, ts.getPage()), contentType));
-
-                if (ts.getNextPage() != null) {
-                    linkValue.append(",");
-                    linkValue.append(String.format("<%s>; rel=next; type=\"%s\"",
-                            buildRequestUrl(ctx, ts, ts.getNextPage()),
-                            contentType));
+                if (isFixed(ctx.queryParam(BEGIN)) && isFixed(end)) {
+                    // A window relative to now is a different response every time
+                    Instant lastUpdate = dao.getLastUpdate(office, names);
+                    if (ConditionalGet.isNotModified(ctx,
+                            ConditionalGet.etag(ctx, lastUpdate), lastUpdate)) {
+                        return;
+                    }
+                }
+                if (!maxPoints.hasValue() && shouldStream(contentType, cursor, pageSize)) {
+                    resultSize = streamTimeSeries(ctx, dao, contentType, cursor, pageSize, names,
+                            office, unit, beginZdt, endZdt, versionDate, trim.getOrDefault(true),
+                            count);
+                } else {
+                    TimeSeries ts;
+                    if (maxPoints.hasValue()) {
+                        // The whole window is reduced, so there is only one page
+                        ts = resampleTimeSeries(dao, names, office, unit, beginZdt, endZdt,
+                                versionDate, trim.getOrDefault(true), maxPoints.get(), resample);
+                    } else {
+                        ts = dao.getTimeseries(cursor, pageSize, names, office, unit,
+                                beginZdt, endZdt, versionDate, trim.getOrDefault(true), count);
+                    }
+
+                    byte[] results = Formats.formatBytes(contentType, ts);
+
+                    ctx.status(HttpServletResponse.SC_OK);
+
+                    // Send back the link to the next page in the response header
+                    StringBuilder linkValue = new StringBuilder(600);
+                    linkValue.append(String.format("<%s>; rel=self; type=\"%s\"",
+                            buildRequestUrl(ctx, ts, ts.getPage()), contentType));
+
+                    if (ts.getNextPage() != null) {
+                        linkValue.append(",");
+                        linkValue.append(String.format("<%s>; rel=next; type=\"%s\"",
+                                buildRequestUrl(ctx, ts, ts.getNextPage()),
+                                contentType));
+                    }
+
+                    ctx.header("Link", linkValue.toString());
+                    ctx.result(results).contentType(contentType.toString());
+                    resultSize = results.length;
                 }
-
-                ctx.header("Link", linkValue.toString());
-                ctx.result(results).contentType(contentType.toString());
             } else {
                 if (versionDate != null) {
                     throw new IllegalArgumentException(String.format("Version date is only supported for:%s and %s",
@@ -494,17 +592,23 @@ public class TimeSeriesController implements CrudHandler {
                             Formats.JSONV2, Formats.XMLV2));
                 }
 
+                if (maxPoints.hasValue()) {
+                    throw new IllegalArgumentException(String.format("Max points is only supported for:%s and %s",
+                            Formats.JSONV2, Formats.XMLV2));
+                }
+
                 if (format == null || format.isEmpty()) {
                     format = "json";
                 }
 
                 String office = ctx.queryParam(OFFICE);
-                results = dao.getTimeseries(format, names, office, unit, datum, beginZdt, endZdt, tz);
                 ctx.status(HttpServletResponse.SC_OK);
-                ctx.result(results);
+                long[] written = {0};
+                dao.getTimeseries(format, names, office, unit, datum, beginZdt, endZdt, tz,
+                        clob -> written[0] = writeClob(ctx, clob));
+                resultSize = written[0];
             }
-            addDeprecatedContentTypeWarning(ctx, contentType);
-            requestResultSize.update(results.length());
+            requestResultSize.update(resultSize);
         } catch (NotFoundException e) {
             CdaError re = new CdaError("Not found.");
             logger.log(Level.WARNING, re.toString(), e);
@@ -548,7 +652,8 @@ public class TimeSeriesController implements CrudHandler {
                 @OpenApiParam(name = CREATE_AS_LRTS, type = Boolean.class, description = ""),
                 @OpenApiParam(name = STORE_RULE,  type = StoreRule.class, description = STORE_RULE_DESC),
                 @OpenApiParam(name = OVERRIDE_PROTECTION,  type = Boolean.class, description =
-                        "A flag to ignore the protected data quality when storing data.  \"'true' or 'false'\"")
+                        "A flag to ignore the protected data quality when storing data.  \"'true' or 'false'\""),
+                @OpenApiParam(name = CHUNK_SIZE, type = Integer.class, description = CHUNK_SIZE_DESC)
             },
             method = HttpMethod.PATCH,
             path = "/timeseries/{timeseries}",
@@ -570,9 +675,14 @@ public class TimeSeriesController implements CrudHandler {
             boolean overrideProtection = ctx.queryParamAsClass(OVERRIDE_PROTECTION, Boolean.class)
                     .getOrDefault(TimeSeriesDaoImpl.OVERRIDE_PROTECTION);
 
-            dao.store(timeSeries, createAsLrts, storeRule, overrideProtection);
-
-            ctx.status(HttpServletResponse.SC_OK);
+            Validator<Integer> chunkSize = ctx.queryParamAsClass(CHUNK_SIZE, Integer.class);
+            if (shouldChunk(timeSeries, chunkSize, storeRule)) {
+                storeChunks(ctx, timeSeries, createAsLrts, storeRule, overrideProtection,
+                        chunkSize.get());
+            } else {
+                dao.store(timeSeries, createAsLrts, storeRule, overrideProtection);
+                ctx.status(HttpServletResponse.SC_OK);
+            }
         } catch (IOException | DataAccessException ex) {
             CdaError re = new CdaError("Internal Error");
             logger.log(Level.SEVERE, re.toString(), ex);
@@ -580,6 +690,161 @@ public class TimeSeriesController implements CrudHandler {
         }
     }
 
+    private static boolean shouldChunk(TimeSeries timeSeries, Validator<Integer> chunkSize,
+                                       StoreRule storeRule) {
+        if (!chunkSize.hasValue()) {
+            return false;
+        }
+        if (chunkSize.get() < 1) {
+            throw new IllegalArgumentException(CHUNK_SIZE + " must be at least 1");
+        }
+        if (storeRule == StoreRule.DELETE_INSERT) {
+            throw new IllegalArgumentException(CHUNK_SIZE + " can't be used with the "
+                    + StoreRule.DELETE_INSERT + " store rule");
+        }
+        return timeSeries.getValueArrays().size() > chunkSize.get();
+    }
+
+    /**
+     * Stores the values in chunks and responds with the outcome of each chunk; 207 if any
+     * chunk wasn't stored.
+     */
+    private void storeChunks(Context ctx, TimeSeries timeSeries,
+                             boolean createAsLrts, StoreRule storeRule,
+                             boolean overrideProtection, int chunkSize) {
+        // Each chunk takes its own connection rather than waiting on the request's
+        TimeSeriesDao dao = getTimeSeriesDao(getParallelDslContext(ctx));
+        TimeSeriesValues values = timeSeries.getValueArrays();
+        TimeSeriesChunkResult[] results =
+                new TimeSeriesChunkResult[(values.size() + chunkSize - 1) / chunkSize];
+        dao.storeChunks(timeSeries, createAsLrts, storeRule, overrideProtection, chunkSize,
+                CHUNK_EXECUTOR, (index, chunk, error) -> {
+                    if (error == null) {
+                        results[index] = new TimeSeriesChunkResult(index, chunk,
+                                HttpServletResponse.SC_OK);
+                    } else {
+                        ItemError itemError = ItemError.of(error, logger,
+                                "chunk " + index + " of " + timeSeries.getName());
+                        results[index] = new TimeSeriesChunkResult(index, chunk,
+                                itemError.getStatus())
+                                .withError(itemError.getError().getMessage(),
+                                        itemError.getError().getIncidentIdentifier());
+                    }
+                });
+
+        boolean allStored = true;
+        for (int i = 0; i < results.length; i++) {
+            if (results[i] == null) {
+                // Cancelled before it was stored
+                results[i] = new TimeSeriesChunkResult(i, values.slice(i * chunkSize,
+                        Math.min(values.size(), (i + 1) * chunkSize)),
+                        HttpServletResponse.SC_SERVICE_UNAVAILABLE)
+                        .withError("Not stored", null);
+            }
+            allStored &= results[i].getStatus() == HttpServletResponse.SC_OK;
+        }
+
+        ctx.status(allStored ? HttpServletResponse.SC_OK : SC_MULTI_STATUS);
+        ctx.contentType(Formats.JSONV2);
+        ctx.result(Formats.format(new ContentType(Formats.JSONV2), Arrays.asList(results),
+                TimeSeriesChunkResult.class));
+    }
+
+    /**
+     * @return true if the date-time doesn't depend on when the request is made
+     */
+    private static boolean isFixed(String dateTime) {
+        return dateTime != null && !DateUtils.isRelative(dateTime);
+    }
+
+    /**
+     * Large and unbounded pages are streamed rather than built in memory first.
+     */
+    private static boolean shouldStream(ContentType contentType, String cursor, int pageSize) {
+        if (cursor != null && !cursor.isEmpty()) {
+            // The page size stored in the cursor takes precedence over the requested one
+            String[] parts = CwmsDTOPaginated.decodeCursor(cursor);
+            if (parts.length > 1) {
+                pageSize = Integer.parseInt(parts[parts.length - 1]);
+            }
+        }
+        if (Formats.ARROW.equals(contentType.getType())) {
+            // Arrow has nowhere after the values for the next page, so only pages
+            // that can't have one are streamed.
+            return pageSize < 0;
+        }
+        return pageSize < 0 || pageSize >= STREAM_PAGE_SIZE;
+    }
+
+    /**
+     * Reads every value of the window and reduces them as they come from the database, so the
+     * window is never held in memory.
+     */
+    private static TimeSeries resampleTimeSeries(TimeSeriesDao dao, String names, String office,
+                                                 String unit, ZonedDateTime begin,
+                                                 ZonedDateTime end, ZonedDateTime versionDate,
+                                                 boolean trim, int maxPoints,
+                                                 ResampleMethod method) {
+        TimeSeries[] retval = {null};
+        try {
+            dao.streamTimeseries("", -1, names, office, unit, begin, end, versionDate, trim,
+                    CountMode.NONE, ts -> {
+                        TimeSeriesResampler.Sampler sampler = TimeSeriesResampler.sampler(
+                                begin.toInstant().toEpochMilli(),
+                                end.toInstant().toEpochMilli(), maxPoints, method);
+                        for (TimeSeries.Record rec : ts.getValueSource()) {
+                            sampler.add(rec);
+                        }
+                        ts.replaceValues(sampler.finish());
+                        retval[0] = ts;
+                    });
+        } catch (IOException ex) {
+            // Nothing is written while the values are read
+            throw new UncheckedIOException(ex);
+        }
+        return retval[0];
+    }
+
+    /**
+     * Writes a page of a time series to the response while it is read from the database.
+     * The headers are sent before the end of the page is reached, so the next page is only
+     * given by the next-page field of the body, not by a Link header.
+     *
+     * @return the number of bytes written
+     */
+    private long streamTimeSeries(Context ctx, TimeSeriesDao dao, ContentType contentType,
+                                  String cursor, int pageSize, String names, String office,
+                                  String unit, ZonedDateTime begin, ZonedDateTime end,
+                                  ZonedDateTime versionDate, boolean trim, CountMode count) {
+        long[] written = {0L};
+        try {
+            dao.streamTimeseries(cursor, pageSize, names, office, unit, begin, end, versionDate,
+                    trim, count, ts -> {
+                        ctx.status(HttpServletResponse.SC_OK);
+                        ctx.header("Link", String.format("<%s>; rel=self; type=\"%s\"",
+                                buildRequestUrl(ctx, ts, ts.getPage()), contentType));
+                        ctx.contentType(contentType.toString());
+
+                        CountingOutputStream out = new CountingOutputStream(ctx.res.getOutputStream());
+                        Formats.format(contentType, ts, out);
+                        out.flush();
+                        written[0] = out.getCount();
+                    });
+        } catch (IOException ex) {
+            // The response is already committed, so the client just gets a truncated body.
+            logger.log(Level.WARNING, "Unable to stream time series " + names, ex);
+        } catch (RuntimeException ex) {
+            if (!ctx.res.isCommitted()) {
+                // Nothing has reached the client, so the usual error response can replace it
+                ctx.res.resetBuffer();
+                throw ex;
+            }
+            // Too late for an error response; the client gets a truncated body.
+            logger.log(Level.SEVERE, "Failed while streaming time series " + names, ex);
+        }
+        return written[0];
+    }
+
     private TimeSeries deserializeTimeSeries(Context ctx) throws IOException {
         String contentTypeHeader = ctx.req.getContentType();
         ContentType contentType = Formats.parseHeader(contentTypeHeader, TimeSeries.class);
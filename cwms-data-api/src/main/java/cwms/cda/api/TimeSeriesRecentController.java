@@ -31,6 +31,7 @@ import static cwms.cda.api.Controllers.OFFICE;
 import static cwms.cda.api.Controllers.RESULTS;
 import static cwms.cda.api.Controllers.SIZE;
 import static cwms.cda.api.Controllers.STATUS_200;
+import static cwms.cda.api.Controllers.STATUS_304;
 import static cwms.cda.api.Controllers.STATUS_404;
 import static cwms.cda.api.Controllers.STATUS_501;
 import static cwms.cda.api.Controllers.TS_IDS;
@@ -118,7 +119,11 @@ public class TimeSeriesRecentController implements Handler {
             },
             responses = {
                 @OpenApiResponse(status = STATUS_200, content = {
-                    @OpenApiContent(isArray = true, from = Tsv.class, type = Formats.JSON)}),
+                    @OpenApiContent(isArray = true, from = Tsv.class, type = Formats.JSON),
+                    @OpenApiContent(isArray = true, from = Tsv.class, type = Formats.CBOR),
+                    @OpenApiContent(isArray = true, from = Tsv.class, type = Formats.SMILE)}),
+                @OpenApiResponse(status = STATUS_304, description = "None of the time series "
+                        + "changed since the If-None-Match given."),
                 @OpenApiResponse(status = STATUS_404, description = "Based on the combination of "
                         + "inputs provided the timeseries group(s) were not found."),
                 @OpenApiResponse(status = STATUS_501, description = "request format is not "
@@ -159,6 +164,16 @@ public class TimeSeriesRecentController implements Handler {
             TimeSeriesDao dao = getTimeSeriesDao(dsl);
 
             List<RecentValue> latestValues;
+            if (hasTsGroupInfo != hasTsIds) {
+                String version = hasTsGroupInfo
+                        ? dao.getRecentVersion(office, categoryId, groupId)
+                        : dao.getRecentVersion(tsIds);
+                if (ConditionalGet.isNotModified(ctx,
+                        ConditionalGet.etag(ctx, pastLimit, futureLimit, version), null)) {
+                    return;
+                }
+            }
+
             if (hasTsGroupInfo && hasTsIds) {
                 // has both = this is an error
                 CdaError re = new CdaError("Invalid arguments supplied, group has both "
@@ -185,10 +200,10 @@ public class TimeSeriesRecentController implements Handler {
             String formatHeader = ctx.header(Header.ACCEPT);
             ContentType contentType = Formats.parseHeader(formatHeader, RecentValue.class);
 
-            String result = Formats.format(contentType, latestValues, RecentValue.class);
+            byte[] result = Formats.formatBytes(contentType, latestValues, RecentValue.class);
 
             ctx.result(result).contentType(contentType.toString());
-            requestResultSize.update(result.length());
+            requestResultSize.update(result.length);
 
             ctx.status(HttpServletResponse.SC_OK);
         }
@@ -0,0 +1,158 @@
+package cwms.cda.api;
+
+import static com.codahale.metrics.MetricRegistry.name;
+import static cwms.cda.api.Controllers.BEGIN;
+import static cwms.cda.api.Controllers.BUCKET;
+import static cwms.cda.api.Controllers.END;
+import static cwms.cda.api.Controllers.EXAMPLE_DATE;
+import static cwms.cda.api.Controllers.GET_ALL;
+import static cwms.cda.api.Controllers.OFFICE;
+import static cwms.cda.api.Controllers.RESULTS;
+import static cwms.cda.api.Controllers.SIZE;
+import static cwms.cda.api.Controllers.STATUS_200;
+import static cwms.cda.api.Controllers.STATUS_400;
+import static cwms.cda.api.Controllers.STATUS_404;
+import static cwms.cda.api.Controllers.TIMEZONE;
+import static cwms.cda.api.Controllers.TS_IDS;
+import static cwms.cda.api.Controllers.UNIT_SYSTEM;
+import static cwms.cda.api.Controllers.requiredParam;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.io.CountingOutputStream;
+import cwms.cda.api.enums.StatisticsBucket;
+import cwms.cda.api.enums.UnitSystem;
+import cwms.cda.data.dao.JooqDao;
+import cwms.cda.data.dao.TimeSeriesDao;
+import cwms.cda.data.dao.TimeSeriesDaoImpl;
+import cwms.cda.data.dto.TimeSeriesStatistics;
+import cwms.cda.formatters.Formats;
+import cwms.cda.formatters.json.JsonV2;
+import cwms.cda.helpers.DateUtils;
+import io.javalin.http.Context;
+import io.javalin.http.Handler;
+import io.javalin.plugin.openapi.annotations.HttpMethod;
+import io.javalin.plugin.openapi.annotations.OpenApi;
+import io.javalin.plugin.openapi.annotations.OpenApiContent;
+import io.javalin.plugin.openapi.annotations.OpenApiParam;
+import io.javalin.plugin.openapi.annotations.OpenApiResponse;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.List;
+import javax.servlet.http.HttpServletResponse;
+import org.jetbrains.annotations.NotNull;
+import org.jooq.DSLContext;
+
+/**
+ * Returns min, max, mean, sum, count, first, last and percent missing of many time series
+ * over a time window, optionally for each calendar period of it, so clients don't download
+ * the values to compute them.
+ */
+public final class TimeSeriesStatisticsController implements Handler {
+
+    private static final ObjectMapper MAPPER = JsonV2.buildObjectMapper();
+
+    private final MetricRegistry metrics;
+    private final Histogram requestResultSize;
+
+    public TimeSeriesStatisticsController(MetricRegistry metrics) {
+        this.metrics = metrics;
+        requestResultSize = this.metrics.histogram((name(TimeSeriesStatisticsController.class, RESULTS, SIZE)));
+    }
+
+    private Timer.Context markAndTime(String subject) {
+        return Controllers.markAndTime(metrics, getClass().getName(), subject);
+    }
+
+    private DSLContext getDslContext(Context ctx) {
+        return JooqDao.getDslContext(ctx);
+    }
+
+    private TimeSeriesDao getTimeSeriesDao(DSLContext dsl) {
+        return new TimeSeriesDaoImpl(dsl, metrics);
+    }
+
+    @OpenApi(
+            description = "Returns statistics of the values of each time series from begin up "
+                    + "to, but not including, end: the count of values that are not missing, "
+                    + "min, max, mean, sum, the first and last values, and the percent missing. "
+                    + "For regular interval time series the percent missing is of the values "
+                    + "the interval calls for. Only the latest version of each value is used.",
+            queryParams = {
+                @OpenApiParam(name = OFFICE, required = true, description = "Specifies the "
+                        + "owning office of the time series."),
+                @OpenApiParam(name = TS_IDS, required = true, description = "Accepts a comma "
+                        + "separated list of time series ids."),
+                @OpenApiParam(name = BEGIN, required = true, description = "The start of the "
+                        + "time window. ISO 8601 extended, with optional offset and "
+                        + "timezone, e.g., '" + EXAMPLE_DATE + "'."),
+                @OpenApiParam(name = END, required = true, description = "The end of the time "
+                        + "window, which is not included. Same format as " + BEGIN + "."),
+                @OpenApiParam(name = TIMEZONE, description = "The time zone of the calendar "
+                        + "periods and of the returned times, and the default for " + BEGIN
+                        + " and " + END + ". Default UTC."),
+                @OpenApiParam(name = BUCKET, type = StatisticsBucket.class,
+                        description = StatisticsBucket.DESCRIPTION),
+                @OpenApiParam(name = UNIT_SYSTEM, type = UnitSystem.class, description = "The "
+                        + "statistics are computed in the default units of this unit system. "
+                        + "Default EN.")
+            },
+            responses = {
+                @OpenApiResponse(status = STATUS_200, content = {
+                    @OpenApiContent(isArray = true, from = TimeSeriesStatistics.class, type = Formats.JSON)
+                }),
+                @OpenApiResponse(status = STATUS_400, description = "Invalid parameters, or "
+                        + "more periods than allowed."),
+                @OpenApiResponse(status = STATUS_404, description = "A time series was not "
+                        + "found.")
+            },
+            method = HttpMethod.GET,
+            path = "/timeseries/stats",
+            tags = TimeSeriesController.TAG
+    )
+    @Override
+    public void handle(@NotNull Context ctx) throws Exception {
+        try (Timer.Context ignored = markAndTime(GET_ALL)) {
+            String office = requiredParam(ctx, OFFICE);
+            List<String> tsIds = TimeSeriesRecentController.getTsIds(requiredParam(ctx, TS_IDS));
+            if (tsIds == null || tsIds.isEmpty()) {
+                throw new IllegalArgumentException(TS_IDS + " must name at least one time series");
+            }
+            String timezone = ctx.queryParamAsClass(TIMEZONE, String.class).getOrDefault("UTC");
+            ZoneId zone = ZoneId.of(timezone, ZoneId.SHORT_IDS);
+            ZonedDateTime begin = DateUtils.parseUserDate(requiredParam(ctx, BEGIN), timezone);
+            ZonedDateTime end = DateUtils.parseUserDate(requiredParam(ctx, END), timezone);
+            StatisticsBucket bucket = ctx.queryParamAsClass(BUCKET, StatisticsBucket.class)
+                    .allowNullable().get();
+            UnitSystem unitSystem = ctx.queryParamAsClass(UNIT_SYSTEM, UnitSystem.class)
+                    .getOrDefault(UnitSystem.EN);
+
+            TimeSeriesDao dao = getTimeSeriesDao(getDslContext(ctx));
+            List<TimeSeriesStatistics> statistics = dao.getStatistics(office, tsIds,
+                    begin.toInstant(), end.toInstant(), bucket, zone, unitSystem);
+
+            ctx.status(HttpServletResponse.SC_OK);
+            ctx.contentType(Formats.JSON);
+            CountingOutputStream out = new CountingOutputStream(ctx.res.getOutputStream());
+            try (JsonGenerator gen = MAPPER.getFactory().createGenerator(out)) {
+                gen.writeStartObject();
+                gen.writeStringField("office", office);
+                gen.writeStringField(BEGIN, begin.withZoneSameInstant(zone).toString());
+                gen.writeStringField(END, end.withZoneSameInstant(zone).toString());
+                if (bucket != null) {
+                    gen.writeStringField(BUCKET, bucket.getValue());
+                }
+                gen.writeArrayFieldStart("statistics");
+                for (TimeSeriesStatistics s : statistics) {
+                    gen.writeObject(s);
+                }
+                gen.writeEndArray();
+                gen.writeEndObject();
+            }
+            requestResultSize.update(out.getCount());
+        }
+    }
+}
@@ -0,0 +1,427 @@
+package cwms.cda.api;
+
+import static com.codahale.metrics.MetricRegistry.name;
+import static cwms.cda.api.Controllers.CATEGORY_ID;
+import static cwms.cda.api.Controllers.GROUP_ID;
+import static cwms.cda.api.Controllers.NAME;
+import static cwms.cda.api.Controllers.OFFICE;
+import static cwms.cda.api.Controllers.RESUME_TOKEN;
+import static cwms.cda.api.Controllers.UNIT_SYSTEM;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import cwms.cda.ApiServlet;
+import cwms.cda.api.enums.UnitSystem;
+import cwms.cda.api.errors.CdaError;
+import cwms.cda.api.errors.NotFoundException;
+import cwms.cda.data.dao.AuthDao;
+import cwms.cda.data.dao.JooqDao;
+import cwms.cda.data.dao.TimeSeriesDao;
+import cwms.cda.data.dao.TimeSeriesDaoImpl;
+import cwms.cda.data.dto.TimeSeriesChange;
+import cwms.cda.formatters.json.JsonV2;
+import io.javalin.http.Context;
+import io.javalin.http.sse.SseClient;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.sql.DataSource;
+
+/**
+ * Pushes the values entered for a time series, or for the time series of a group, to clients
+ * as Server-Sent Events. Clients subscribing to the same series share one topic, which is
+ * polled for changes once per interval however many clients there are, and every client gets
+ * the same serialized event. Each client has its own bounded buffer; one that can't keep up
+ * is sent an "overflow" event and disconnected, rather than holding up the others.
+ *
+ * <p>Every "values" event has the resume token of its last value as its id, so a client that
+ * reconnects, or overflows, reads what it missed from /timeseries/changes.
+ *
+ * <p>Since a topic is shared by everyone subscribed to it, it reads only what a guest could,
+ * on connections that no request's user has been applied to.
+ */
+public final class TimeSeriesSubscriptionController implements Consumer<SseClient> {
+    private static final Logger logger = Logger.getLogger(TimeSeriesSubscriptionController.class.getName());
+
+    static final String VALUES_EVENT = "values";
+    static final String KEEP_ALIVE_EVENT = "keep-alive";
+    static final String OVERFLOW_EVENT = "overflow";
+    static final String ERROR_EVENT = "error";
+
+    private static final int POLL_SECONDS = Integer.parseInt(
+            System.getProperty("cda.api.ts.subscriptions.poll.seconds", "15"));
+    private static final int KEEP_ALIVE_SECONDS = Integer.parseInt(
+            System.getProperty("cda.api.ts.subscriptions.keep.alive.seconds", "30"));
+    private static final int BUFFER_SIZE = Integer.parseInt(
+            System.getProperty("cda.api.ts.subscriptions.buffer", "100"));
+    private static final int POLLERS = Integer.parseInt(
+            System.getProperty("cda.api.ts.subscriptions.pollers", "2"));
+    private static final int SENDERS = Integer.parseInt(
+            System.getProperty("cda.api.ts.subscriptions.senders", "4"));
+
+    // Polls run here, so the connections used for subscriptions are bounded by POLLERS.
+    private static final ScheduledExecutorService POLLER = Executors.newScheduledThreadPool(
+            POLLERS, new ThreadFactoryBuilder()
+                    .setNameFormat("cda-ts-subscription-poll-%d")
+                    .setDaemon(true)
+                    .build());
+
+    // Writes to clients run here, so a slow client never holds up a poll.
+    private static final ExecutorService SENDER = Executors.newFixedThreadPool(SENDERS,
+            new ThreadFactoryBuilder()
+                    .setNameFormat("cda-ts-subscription-send-%d")
+                    .setDaemon(true)
+                    .build());
+
+    private static final ObjectMapper MAPPER = JsonV2.buildObjectMapper();
+
+    // Shared by every instance, so one keep-alive serves them all
+    private static final Map<List<Object>, Topic> topics = new HashMap<>();
+
+    static {
+        POLLER.scheduleWithFixedDelay(TimeSeriesSubscriptionController::keepAlive,
+                KEEP_ALIVE_SECONDS, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS);
+    }
+
+    private final MetricRegistry metrics;
+    private final Counter subscriberCount;
+    private final Meter overflows;
+
+    public TimeSeriesSubscriptionController(MetricRegistry metrics) {
+        this.metrics = metrics;
+        subscriberCount = metrics.counter(name(TimeSeriesSubscriptionController.class, "subscribers"));
+        overflows = metrics.meter(name(TimeSeriesSubscriptionController.class, "overflows"));
+    }
+
+    /**
+     * Takes the same parameters as /timeseries/changes, less the starting point: a subscription
+     * starts with what is entered after it is made.
+     */
+    @Override
+    public void accept(SseClient client) {
+        Context ctx = client.ctx;
+        SseSink sink = new SseSink(client);
+        try {
+            String office = Controllers.requiredParam(ctx, OFFICE);
+            String name = ctx.queryParam(NAME);
+            String categoryId = ctx.queryParam(CATEGORY_ID);
+            String groupId = ctx.queryParam(GROUP_ID);
+            if ((name == null) == (groupId == null)) {
+                throw new IllegalArgumentException("Either " + NAME + " or " + GROUP_ID
+                        + " must be given");
+            }
+            UnitSystem unitSystem = ctx.queryParamAsClass(UNIT_SYSTEM, UnitSystem.class)
+                    .getOrDefault(UnitSystem.EN);
+            // A topic outlives this request and is shared with other users, so it reads as
+            // a guest would rather than as whoever subscribed first
+            DataSource dataSource = AuthDao.getInstance(JooqDao.getDslContext(ctx),
+                            ctx.attribute(ApiServlet.OFFICE_ID))
+                    .getGuestDataSource(ctx.attribute(ApiServlet.RAW_DATA_SOURCE));
+
+            List<Object> key = Arrays.asList(office.toUpperCase(), name,
+                    categoryId, groupId, unitSystem);
+            subscribe(key, dataSource, sink);
+        } catch (IllegalArgumentException ex) {
+            sink.send(ERROR_EVENT, error(new CdaError(ex.getMessage(), true)), null);
+            sink.close();
+        } catch (RuntimeException ex) {
+            logger.log(Level.WARNING, "Unable to subscribe to time series changes", ex);
+            sink.send(ERROR_EVENT, error(new CdaError("Unable to subscribe", true)), null);
+            sink.close();
+        }
+    }
+
+    private void subscribe(List<Object> key, DataSource dataSource, SseSink sink) {
+        // Read before taking the lock; only used if this starts a topic
+        TimeSeriesChange.Position start = new TimeSeriesDaoImpl(
+                JooqDao.getDslContext(dataSource), metrics).getChangesFromNow();
+        Topic topic;
+        Subscriber subscriber;
+        synchronized (topics) {
+            topic = topics.get(key);
+            if (topic == null) {
+                topic = new Topic(key, dataSource, metrics, start);
+                topics.put(key, topic);
+                topic.future = POLLER.scheduleWithFixedDelay(topic, POLL_SECONDS, POLL_SECONDS,
+                        TimeUnit.SECONDS);
+            }
+            subscriber = new Subscriber(sink, BUFFER_SIZE, SENDER,
+                    topic.position.toToken(), overflows::mark);
+            topic.subscribers.add(subscriber);
+        }
+        subscriberCount.inc();
+        Topic subscribed = topic;
+        sink.client.onClose(() -> unsubscribe(subscribed, subscriber));
+    }
+
+    private void unsubscribe(Topic topic, Subscriber subscriber) {
+        synchronized (topics) {
+            if (!topic.subscribers.remove(subscriber)) {
+                return;
+            }
+            if (topic.subscribers.isEmpty()) {
+                topic.future.cancel(false);
+                topics.remove(topic.key);
+            }
+        }
+        subscriberCount.dec();
+    }
+
+    private static void keepAlive() {
+        List<Topic> current;
+        synchronized (topics) {
+            current = new ArrayList<>(topics.values());
+        }
+        for (Topic topic : current) {
+            for (Subscriber subscriber : topic.subscribers) {
+                subscriber.offer(KEEP_ALIVE_EVENT, "", null);
+            }
+        }
+    }
+
+    private static String error(CdaError error) {
+        try {
+            return MAPPER.writeValueAsString(error);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * The clients subscribed to one time series or group, in one unit system.
+     */
+    private static final class Topic implements Runnable {
+        private final List<Object> key;
+        private final DataSource dataSource;
+        private final MetricRegistry metrics;
+        private final Set<Subscriber> subscribers = new CopyOnWriteArraySet<>();
+        // only moved by polls, which for one topic never overlap
+        private volatile TimeSeriesChange.Position position;
+        private ScheduledFuture<?> future;
+
+        private Topic(List<Object> key, DataSource dataSource, MetricRegistry metrics,
+                      TimeSeriesChange.Position start) {
+            this.key = key;
+            this.dataSource = dataSource;
+            this.metrics = metrics;
+            this.position = start;
+        }
+
+        @Override
+        public void run() {
+            String office = (String) key.get(0);
+            try {
+                TimeSeriesDao dao = new TimeSeriesDaoImpl(JooqDao.getDslContext(dataSource), metrics);
+                int pageSize = TimeSeriesChangesController.DEFAULT_PAGE_SIZE;
+                int count;
+                do {
+                    List<TimeSeriesChange> changes = new ArrayList<>();
+                    count = dao.streamChanges(office, (String) key.get(1), (String) key.get(2),
+                            (String) key.get(3), (UnitSystem) key.get(4), position, pageSize,
+                            changes::add);
+                    if (!changes.isEmpty()) {
+                        position = TimeSeriesChange.Position.after(changes.get(changes.size() - 1));
+                        String token = position.toToken();
+                        String data = values(office, changes, token);
+                        for (Subscriber subscriber : subscribers) {
+                            subscriber.offer(VALUES_EVENT, data, token);
+                        }
+                    }
+                } while (count == pageSize);
+            } catch (NotFoundException ex) {
+                String data = error(new CdaError(ex.getMessage(), true));
+                for (Subscriber subscriber : subscribers) {
+                    subscriber.offer(ERROR_EVENT, data, null);
+                    subscriber.closeWhenSent();
+                }
+            } catch (IOException | RuntimeException ex) {
+                // Thrown out of here, it would cancel the topic's polls. The next poll retries.
+                logger.log(Level.WARNING, ex, () -> "Unable to poll time series changes for " + key);
+            }
+        }
+
+        private String values(String office, List<TimeSeriesChange> changes, String token)
+                throws IOException {
+            StringWriter writer = new StringWriter();
+            try (JsonGenerator gen = MAPPER.getFactory().createGenerator(writer)) {
+                gen.writeStartObject();
+                gen.writeStringField("office", office);
+                gen.writeArrayFieldStart("values");
+                for (TimeSeriesChange change : changes) {
+                    gen.writeObject(change);
+                }
+                gen.writeEndArray();
+                gen.writeNumberField("count", changes.size());
+                gen.writeStringField(RESUME_TOKEN, token);
+                gen.writeEndObject();
+            }
+            return writer.toString();
+        }
+    }
+
+    /**
+     * Where a subscriber's events go.
+     */
+    interface Sink {
+        void send(String event, String data, String id);
+
+        void close();
+    }
+
+    private static final class SseSink implements Sink {
+        private final SseClient client;
+
+        private SseSink(SseClient client) {
+            this.client = client;
+        }
+
+        @Override
+        public void send(String event, String data, String id) {
+            client.sendEvent(event, data, id);
+        }
+
+        @Override
+        public void close() {
+            client.close();
+        }
+    }
+
+    /**
+     * Buffers a client's events and sends them, in order, on the sender executor. Only one
+     * send for a client is in flight at a time. When more events are waiting than the buffer
+     * holds, they are dropped, the client is told with an "overflow" event carrying the resume
+     * token of the last event it was sent, and it is closed.
+     */
+    static final class Subscriber {
+        private final Sink sink;
+        private final int bufferSize;
+        private final Executor executor;
+        private final Runnable onOverflow;
+        private final ArrayDeque<String[]> pending = new ArrayDeque<>();
+        private boolean draining;
+        private boolean overflowed;
+        private boolean closing;
+        private boolean closed;
+        private String lastSentId;
+
+        Subscriber(Sink sink, int bufferSize, Executor executor, String startId,
+                   Runnable onOverflow) {
+            this.sink = sink;
+            this.bufferSize = bufferSize;
+            this.executor = executor;
+            this.lastSentId = startId;
+            this.onOverflow = onOverflow;
+        }
+
+        void offer(String event, String data, String id) {
+            boolean overflow;
+            synchronized (this) {
+                if (closed || closing || overflowed) {
+                    return;
+                }
+                overflow = pending.size() >= bufferSize;
+                if (overflow) {
+                    pending.clear();
+                    overflowed = true;
+                } else {
+                    pending.add(new String[]{event, data, id});
+                }
+            }
+            if (overflow) {
+                onOverflow.run();
+            }
+            schedule();
+        }
+
+        /**
+         * Closes the client once what is buffered has been sent.
+         */
+        void closeWhenSent() {
+            synchronized (this) {
+                closing = true;
+            }
+            schedule();
+        }
+
+        private void schedule() {
+            synchronized (this) {
+                if (draining || closed) {
+                    return;
+                }
+                draining = true;
+            }
+            executor.execute(this::drain);
+        }
+
+        private void drain() {
+            while (true) {
+                String[] next;
+                boolean close = false;
+                synchronized (this) {
+                    next = pending.poll();
+                    if (next == null) {
+                        if (overflowed) {
+                            next = new String[]{OVERFLOW_EVENT, overflow(lastSentId), lastSentId};
+                        }
+                        if (overflowed || closing) {
+                            close = true;
+                            closed = true;
+                        }
+                        if (next == null && !close) {
+                            draining = false;
+                            return;
+                        }
+                    }
+                }
+                try {
+                    if (next != null) {
+                        sink.send(next[0], next[1], next[2]);
+                        if (next[2] != null) {
+                            lastSentId = next[2];
+                        }
+                    }
+                } catch (RuntimeException ex) {
+                    logger.log(Level.FINE, "Unable to send to subscriber", ex);
+                    close = true;
+                    synchronized (this) {
+                        closed = true;
+                        pending.clear();
+                    }
+                }
+                if (close) {
+                    sink.close();
+                    return;
+                }
+            }
+        }
+
+        private static String overflow(String resumeToken) {
+            Map<String, Object> details = new HashMap<>();
+            details.put(RESUME_TOKEN, resumeToken);
+            return error(new CdaError("The client did not keep up with the values and was "
+                    + "disconnected. Read what was missed from /timeseries/changes.", details,
+                    true));
+        }
+    }
+}
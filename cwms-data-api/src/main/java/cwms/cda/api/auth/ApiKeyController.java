@@ -30,6 +30,7 @@ import static cwms.cda.data.dao.JooqDao.getDslContext;
 import com.codahale.metrics.MetricRegistry;
 import cwms.cda.api.errors.CdaError;
 import cwms.cda.data.dao.AuthDao;
+import cwms.cda.data.dao.PrincipalCache;
 import cwms.cda.data.dto.auth.ApiKey;
 import cwms.cda.formatters.Formats;
 import cwms.cda.security.CwmsAuthException;
@@ -52,7 +53,7 @@ public class ApiKeyController implements CrudHandler {
 
     public ApiKeyController(MetricRegistry metrics) {
         this.metrics = metrics;
-
+        PrincipalCache.registerMetrics(metrics);
     }
 
     @OpenApi(
@@ -0,0 +1,38 @@
+package cwms.cda.api.enums;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+@Schema(
+        name = "Count Mode",
+        description = "How the total number of results is determined for paginated responses. "
+                + "Can be exact (counted by the database), estimate (derived from cheaper "
+                + "statistics, may be absent) or none."
+)
+public enum CountMode {
+    EXACT("exact"),
+    ESTIMATE("estimate"),
+    NONE("none");
+
+    public static final String DESCRIPTION = "How the total number of results is determined. "
+            + "'exact' counts them, 'estimate' derives the total from cheaper statistics and may "
+            + "leave it out, 'none' leaves it out.";
+
+    private final String value;
+
+    CountMode(String value) {
+        this.value = value;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public static CountMode countModeFor(String mode) {
+        CountMode retval = null;
+
+        if (mode != null) {
+            retval = CountMode.valueOf(mode.trim().toUpperCase());
+        }
+        return retval;
+    }
+}
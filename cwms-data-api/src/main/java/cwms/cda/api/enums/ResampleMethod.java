@@ -0,0 +1,43 @@
+package cwms.cda.api.enums;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+@Schema(
+        name = "Resample Method",
+        description = "How the values of a time series are reduced to a maximum number of "
+                + "points."
+)
+public enum ResampleMethod {
+    MIN("min"),
+    MAX("max"),
+    MEAN("mean"),
+    FIRST("first"),
+    LAST("last"),
+    LTTB("lttb");
+
+    public static final String DESCRIPTION = "How the values are reduced when max-points is "
+            + "given. 'min', 'max', 'mean', 'first' and 'last' split the time window into "
+            + "max-points buckets of equal duration and keep one value per bucket; a mean has "
+            + "the quality code of the value of its bucket with the worst validity. "
+            + "'lttb' (Largest-Triangle-Three-Buckets) keeps the values that best preserve the "
+            + "shape of the series, leaving out missing values. Default 'lttb'.";
+
+    private final String value;
+
+    ResampleMethod(String value) {
+        this.value = value;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public static ResampleMethod resampleMethodFor(String method) {
+        ResampleMethod retval = null;
+
+        if (method != null) {
+            retval = ResampleMethod.valueOf(method.trim().toUpperCase());
+        }
+        return retval;
+    }
+}
@@ -0,0 +1,37 @@
+package cwms.cda.api.enums;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+@Schema(
+        name = "Statistics Bucket",
+        description = "The calendar periods time series statistics are computed for."
+)
+public enum StatisticsBucket {
+    HOUR("hour"),
+    DAY("day"),
+    MONTH("month"),
+    WATER_YEAR("water-year");
+
+    public static final String DESCRIPTION = "Computes the statistics for each calendar period "
+            + "of the time zone instead of for the whole time window. 'water-year' periods "
+            + "start on October 1st. Periods are cut at the start and end of the window.";
+
+    private final String value;
+
+    StatisticsBucket(String value) {
+        this.value = value;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public static StatisticsBucket statisticsBucketFor(String bucket) {
+        StatisticsBucket retval = null;
+
+        if (bucket != null) {
+            retval = StatisticsBucket.valueOf(bucket.trim().toUpperCase().replace('-', '_'));
+        }
+        return retval;
+    }
+}
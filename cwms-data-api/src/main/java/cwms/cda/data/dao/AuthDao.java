@@ -7,7 +7,7 @@ import cwms.cda.datasource.ConnectionPreparer;
 import cwms.cda.datasource.ConnectionPreparingDataSource;
 import cwms.cda.datasource.DelegatingConnectionPreparer;
 import cwms.cda.datasource.DirectUserPreparer;
-import cwms.cda.datasource.SessionOfficePreparer;
+import cwms.cda.datasource.SessionState;
 import cwms.cda.datasource.SessionTimeZonePreparer;
 import cwms.cda.helpers.ResourceHelper;
 import cwms.cda.security.CwmsAuthException;
@@ -23,6 +23,7 @@ import java.sql.Date;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Timestamp;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
@@ -46,7 +47,7 @@ public class AuthDao extends Dao<DataApiPrincipal> {
                                              + "23.03.16 or later to handle authorization operations.";
     public static final String DATA_API_PRINCIPAL = "DataApiPrincipal";
     // At this level we just care that the user has permissions in *any* office
-    private static final String RETRIEVE_GROUPS_OF_USER =
+    private static final String USER_GROUPS =
             ResourceHelper.getResourceAsString("/cwms/data/sql/user_groups.sql", AuthDao.class);
 
     private static final String SET_API_USER_DIRECT = "begin "
@@ -56,11 +57,21 @@ public class AuthDao extends Dao<DataApiPrincipal> {
     private static final String SET_API_USER_DIRECT_WITH_OFFICE = "begin "
         + "cwms_env.set_session_user_direct(upper(?),upper(?)); end;";
 
-    private static final String CHECK_API_KEY =
-        "select userid from cwms_20.at_api_keys where apikey = ?";
-
-    private static final String USER_FOR_EDIPI =
-        "select userid from cwms_20.at_sec_cwms_users where edipi = ?";
+    // one row per group of the user, or a single row with a null group; each takes the
+    // credential twice
+    private static final String PRINCIPAL_FOR_API_KEY =
+        "select k.userid, k.expires, g.user_group_id from cwms_20.at_api_keys k "
+        + "left outer join ("
+        + groupsOf("select userid from cwms_20.at_api_keys where apikey = ?")
+        + ") g on g.username = k.userid "
+        + "where k.apikey = ?";
+
+    private static final String PRINCIPAL_FOR_EDIPI =
+        "select u.userid, null expires, g.user_group_id from cwms_20.at_sec_cwms_users u "
+        + "left outer join ("
+        + groupsOf("select userid from cwms_20.at_sec_cwms_users where edipi = ?")
+        + ") g on g.username = u.userid "
+        + "where u.edipi = ?";
 
     public static final String CREATE_API_KEY = "insert into cwms_20.at_api_keys"
             + "(userid, key_name, apikey, created, expires) values(UPPER(?),?,?,?,?)";
@@ -72,16 +83,9 @@ public class AuthDao extends Dao<DataApiPrincipal> {
             + "from cwms_20.at_api_keys where UPPER(userid) = UPPER(?) and key_name = ?";
     public static final String ONLY_OWN_KEY_MESSAGE = "You may not create API keys for any user other than your own.";
 
-    private static boolean hasCwmsEnvMultiOfficeAuthFix = false;
-    private static String connectionUser = null;
-    private static String defaultOffice = null;
-
-    /**
-     * Since every request uses this instead of constantly creating new objects we keep
-     * one per servicing thread and just reset the context so that setClientInfo still
-     * makes sense.
-     */
-    private static ThreadLocal<AuthDao> instance = new ThreadLocal<>();
+    private static volatile boolean hasCwmsEnvMultiOfficeAuthFix = false;
+    private static volatile String connectionUser = null;
+    private static volatile String defaultOffice = null;
 
     private AuthDao(DSLContext dsl, String defaultOffice) {
         super(dsl);
@@ -90,38 +94,45 @@ public class AuthDao extends Dao<DataApiPrincipal> {
         }
 
         if (AuthDao.defaultOffice == null) {
-            AuthDao.defaultOffice = defaultOffice;
-            try {
-                connectionUser = dsl.connectionResult(c -> c.getMetaData().getUserName());
-                dsl.execute("BEGIN cwms_env.set_session_user_direct(?,?); END;", connectionUser, defaultOffice);
-                hasCwmsEnvMultiOfficeAuthFix = true;
-            } catch (DataAccessException ex) {
-                if (ex.getLocalizedMessage()
-                    .toLowerCase()
-                    .contains("wrong number or types of arguments in call")) {
-                    hasCwmsEnvMultiOfficeAuthFix = false;
-                }
+            initSession(dsl, defaultOffice);
+        }
+    }
+
+    /**
+     * Determine, once, the user and office that the auth checks run as.
+     */
+    private static synchronized void initSession(DSLContext dsl, String defaultOffice) {
+        if (AuthDao.defaultOffice != null) {
+            return;
+        }
+        try {
+            connectionUser = dsl.connectionResult(c -> c.getMetaData().getUserName());
+            dsl.execute("BEGIN cwms_env.set_session_user_direct(?,?); END;", connectionUser, defaultOffice);
+            hasCwmsEnvMultiOfficeAuthFix = true;
+        } catch (DataAccessException ex) {
+            if (ex.getLocalizedMessage()
+                .toLowerCase()
+                .contains("wrong number or types of arguments in call")) {
+                hasCwmsEnvMultiOfficeAuthFix = false;
             }
+        } finally {
+            // whichever pooled connection that ran on is no longer in a known state
+            SessionState.forgetAll();
         }
+        AuthDao.defaultOffice = defaultOffice;
     }
 
     /**
-     * Get Appropriate instance of the AuthDAO. Setup with the given DSLContext.
-     * The instance of AuthDAO returned is local to a given servicing thread.
+     * Get an instance of the AuthDAO using the given DSLContext.
+     * Instances keep no state besides the DSLContext, so they are cheap to create and safe
+     * to use from any thread.
      *
      * @param dsl the DSLContext to use
      * @param defaultOffice can be null
      * @return an instance of the AuthDAO
      */
     public static AuthDao getInstance(DSLContext dsl, String defaultOffice) {
-        AuthDao dao = instance.get();
-        if (dao == null) {
-            dao = new AuthDao(dsl,defaultOffice);
-            instance.set(dao);
-        } else {
-            dao.resetContext(dsl);
-        }
-        return dao;
+        return new AuthDao(dsl, defaultOffice);
     }
 
     /**
@@ -149,15 +160,24 @@ public class AuthDao extends Dao<DataApiPrincipal> {
     }
 
     /**
-     * Retrieve required user information from database for a given APIKEY.
+     * Retrieve required user information for a given APIKEY. Recently seen keys are answered
+     * from the {@link PrincipalCache}.
      * @param apikey the key to look up.
      * @return valid DataApiPrincipal object for further authorization verification.
      * @throws CwmsAuthException throw for any issue with verification of Key or user information.
      */
     public DataApiPrincipal getByApiKey(String apikey) throws CwmsAuthException {
-        String userName = checkKey(apikey);
-        Set<RouteRole> roles = getRolesForUser(userName);
-        return new DataApiPrincipal(userName,roles);
+        if (apikey == null) {
+            throw new CwmsAuthException("No user for key");
+        }
+        return PrincipalCache.get(apikey, () -> {
+            PrincipalCache.Entry entry = lookupPrincipal(PRINCIPAL_FOR_API_KEY, apikey,
+                    "No user for key");
+            if (entry.isExpired()) {
+                throw new CwmsAuthException("API key has expired");
+            }
+            return entry;
+        });
     }
 
     /**
@@ -167,66 +187,70 @@ public class AuthDao extends Dao<DataApiPrincipal> {
      */
     private void setSessionForAuthCheck(Connection conn) throws SQLException {
         if (hasCwmsEnvMultiOfficeAuthFix) {
-            try (PreparedStatement setApiUser = conn.prepareStatement(SET_API_USER_DIRECT_WITH_OFFICE)) {
-                setApiUser.setString(1,connectionUser);
-                setApiUser.setString(2,defaultOffice);
-                setApiUser.execute();
-            }
+            SessionState.setUser(conn, connectionUser, defaultOffice, () -> {
+                try (PreparedStatement setApiUser = conn.prepareStatement(SET_API_USER_DIRECT_WITH_OFFICE)) {
+                    setApiUser.setString(1,connectionUser);
+                    setApiUser.setString(2,defaultOffice);
+                    setApiUser.execute();
+                }
+            });
         } else {
-            try (PreparedStatement setApiUser = conn.prepareStatement(SET_API_USER_DIRECT)) {
-                setApiUser.setString(1,connectionUser);
-                setApiUser.execute();
-            }
-        }
-    }
-
-    private String checkKey(String key) throws CwmsAuthException {
-        try {
-            return dsl.connectionResult(c -> {
-                setSessionForAuthCheck(c);
-                try (PreparedStatement checkForKey = c.prepareStatement(CHECK_API_KEY)) {
-                    checkForKey.setString(1,key);
-                    try (ResultSet rs = checkForKey.executeQuery()) {
-                        if (rs.next()) {
-                            return rs.getString(1);
-                        } else {
-                            throw new CwmsAuthException("No user for key");
-                        }
-                    }
-                } catch (SQLException ex) {
-                    throw new CwmsAuthException("Failed API key check",ex);
+            SessionState.setUser(conn, connectionUser, null, () -> {
+                try (PreparedStatement setApiUser = conn.prepareStatement(SET_API_USER_DIRECT)) {
+                    setApiUser.setString(1,connectionUser);
+                    setApiUser.execute();
                 }
             });
-        } catch (DataAccessException ex) {
-            Throwable t = ex.getCause();
-            if (t instanceof CwmsAuthException) {
-                throw (CwmsAuthException)t;
-            } else {
-                throw ex;
-            }
         }
     }
 
     /**
-     *
-     * @param edipi the edipi to look up.
-     * @return the username for the given edipi.
-     * @throws CwmsAuthException if the user is not in the database.
+     * The groups of the one user the query finds. The user is filtered for inside the view,
+     * so the database doesn't have to push the join into its outer joins to avoid reading
+     * every user's groups.
+     */
+    private static String groupsOf(String userQuery) {
+        return USER_GROUPS.replace("username=?", "username = (" + userQuery + ")");
+    }
+
+    /**
+     * Resolve a user, the expiration of their credential and their roles in one round trip.
+     * @param query one of the PRINCIPAL_FOR queries
+     * @param credential the value to bind to the query
+     * @param notFoundMessage reason given if there is no such user
+     * @return the principal and, for a key, when it expires
+     * @throws CwmsAuthException if there is no such user or the lookup fails
      */
-    private String userForEdipi(long edipi) throws CwmsAuthException {
+    private PrincipalCache.Entry lookupPrincipal(String query, Object credential,
+                                                 String notFoundMessage) throws CwmsAuthException {
         try {
             return dsl.connectionResult(c -> {
                 setSessionForAuthCheck(c);
-                try (PreparedStatement userForEdipi = c.prepareStatement(USER_FOR_EDIPI)) {
-                    userForEdipi.setLong(1, edipi);
-                    try (ResultSet rs = userForEdipi.executeQuery()) {
-                        if (rs.next()) {
-                            return rs.getString(1);
-                        } else {
+                try (PreparedStatement lookup = c.prepareStatement(query)) {
+                    lookup.setObject(1, credential);
+                    lookup.setObject(2, credential);
+                    try (ResultSet rs = lookup.executeQuery()) {
+                        String userName = null;
+                        Timestamp expires = null;
+                        Set<RouteRole> roles = new HashSet<>();
+                        while (rs.next()) {
+                            userName = rs.getString(1);
+                            expires = rs.getTimestamp(2,
+                                    Calendar.getInstance(TimeZone.getTimeZone("UTC")));
+                            String group = rs.getString(3);
+                            if (group != null) {
+                                roles.add(new Role(group));
+                            }
+                        }
+                        if (userName == null) {
                             // TODO: add user to database, queue email admins to assign groups appropriately
-                            throw new CwmsAuthException("User not in database.");
+                            throw new CwmsAuthException(notFoundMessage);
                         }
+                        return new PrincipalCache.Entry(new DataApiPrincipal(userName, roles),
+                                expires == null ? null : expires.toInstant());
                     }
+                } catch (SQLException ex) {
+                    throw new CwmsAuthException("Failed user lookup", ex);
                 }
             });
         } catch (DataAccessException ex) {
@@ -246,32 +270,7 @@ public class AuthDao extends Dao<DataApiPrincipal> {
      * @throws CwmsAuthException if the user is not in the database.
      */
     public DataApiPrincipal getPrincipalFromEdipi(Long edipi) throws CwmsAuthException {
-        String username = userForEdipi(edipi);
-        Set<RouteRole> roles = this.getRolesForUser(username);
-        return new DataApiPrincipal(username, roles);
-    }
-
-    /**
-     * Retrieve roles a user has.
-     * @param user the user to look up.
-     * @return a set of roles the user has.
-     */
-    private Set<RouteRole> getRolesForUser(String user) {
-        final Set<RouteRole> roles = new HashSet<>();
-        dsl.connection(c -> {
-            setSessionForAuthCheck(c);
-            try (PreparedStatement getRoles = c.prepareStatement(RETRIEVE_GROUPS_OF_USER)) {
-                getRoles.setString(1,user);
-                try (ResultSet rs = getRoles.executeQuery()) {
-                    while (rs.next()) {
-                        roles.add(new Role(rs.getString(1)));
-                    }
-                }
-            } catch (SQLException ex) {
-                logger.atWarning().withCause(ex).log("Failed to retrieve any roles for user.");
-            }
-        });
-        return roles;
+        return lookupPrincipal(PRINCIPAL_FOR_EDIPI, edipi, "User not in database.").getPrincipal();
     }
 
     /**
@@ -334,10 +333,7 @@ public class AuthDao extends Dao<DataApiPrincipal> {
      */
     public void prepareGuestContext(Context ctx) {
         DataSource dataSource = ctx.attribute(ApiServlet.DATA_SOURCE);
-        SessionTimeZonePreparer utcPrep = new SessionTimeZonePreparer();
-        ConnectionPreparer officePreparer = new SessionOfficePreparer(defaultOffice);
-        ConnectionPreparer userPreparer = new DirectUserPreparer(connectionUser);
-        ConnectionPreparer guestPreparer = new DelegatingConnectionPreparer(utcPrep, userPreparer, officePreparer);
+        ConnectionPreparer guestPreparer = guestPreparer();
 
         if (dataSource instanceof ConnectionPreparingDataSource) {
             ConnectionPreparingDataSource cpDs = (ConnectionPreparingDataSource)dataSource;
@@ -351,6 +347,22 @@ public class AuthDao extends Dao<DataApiPrincipal> {
         }
     }
 
+    /**
+     * A data source whose connections are prepared the way a guest request's are, whoever
+     * is asking, for work that outlives the request that started it.
+     *
+     * @param rawDataSource the pool, before any request prepared it
+     */
+    public DataSource getGuestDataSource(DataSource rawDataSource) {
+        return new ConnectionPreparingDataSource(guestPreparer(), rawDataSource);
+    }
+
+    private static ConnectionPreparer guestPreparer() {
+        SessionTimeZonePreparer utcPrep = new SessionTimeZonePreparer();
+        ConnectionPreparer userPreparer = new DirectUserPreparer(connectionUser, defaultOffice);
+        return new DelegatingConnectionPreparer(utcPrep, userPreparer);
+    }
+
     private static String getFailMessage(@NotNull Context ctx,
                                         @NotNull Set<RouteRole> requiredRoles,
                                         @NotNull DataApiPrincipal p) {
@@ -405,6 +417,7 @@ public class AuthDao extends Dao<DataApiPrincipal> {
                     createKey.execute();
                 }
             });
+            PrincipalCache.invalidateUser(newKey.getUserId());
             return newKey;
         } catch (NoSuchAlgorithmException ex) {
             throw new CwmsAuthException("Unable to generate appropriate key.", ex,
@@ -474,18 +487,11 @@ public class AuthDao extends Dao<DataApiPrincipal> {
                 deleteKey.execute();
             }
         });
+        PrincipalCache.invalidateUser(p.getName());
     }
 
 
     public DataApiPrincipal getDataApiPrincipal(Context ctx) {
         return ctx.attribute(DATA_API_PRINCIPAL);
     }
-
-    /**
-     * Used to avoid constant instancing of the AuthDao objects.
-     * @param dslContext The jOOQ DSLContext
-     */
-    public void resetContext(DSLContext dslContext) {
-        this.dsl = dslContext;
-    }
 }
@@ -0,0 +1,853 @@
+package cwms.cda.data.dao;
+
+import static org.jooq.impl.DSL.count;
+import static org.jooq.impl.DSL.field;
+import static org.jooq.impl.DSL.select;
+import static org.jooq.impl.DSL.sum;
+import static usace.cwms.db.jooq.codegen.tables.AV_TS_EXTENTS_UTC.AV_TS_EXTENTS_UTC;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import cwms.cda.api.enums.CountMode;
+import cwms.cda.data.dto.Catalog;
+import cwms.cda.data.dto.Office;
+import cwms.cda.data.dto.catalog.CatalogEntry;
+import cwms.cda.data.dto.catalog.LocationAlias;
+import cwms.cda.data.dto.catalog.LocationCatalogEntry;
+import cwms.cda.data.dto.catalog.TimeseriesCatalogEntry;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import javax.sql.DataSource;
+import org.jetbrains.annotations.Nullable;
+import org.jooq.Condition;
+import org.jooq.DSLContext;
+import org.jooq.Field;
+import org.jooq.Record;
+import org.jooq.Record2;
+import org.jooq.TableLike;
+import org.jooq.impl.DSL;
+import usace.cwms.db.jooq.codegen.tables.AV_CWMS_TS_ID;
+import usace.cwms.db.jooq.codegen.tables.AV_LOC2;
+import usace.cwms.db.jooq.codegen.tables.AV_LOC_GRP_ASSGN;
+import usace.cwms.db.jooq.codegen.tables.AV_TS_GRP_ASSGN;
+
+/**
+ * An optional in-memory copy of the time series and location catalogs of each office, so the
+ * type-ahead searches of the catalog endpoints don't run a regular expression over the views.
+ *
+ * <p>An office in the office table is indexed when it is first asked for, in the background;
+ * until then, and for requests the index can't answer, the caller queries the database as
+ * before. An office that hasn't been asked for in a while is dropped from the index. Every refresh
+ * interval the index compares the catalog version and hashes of the groups and locations
+ * with what it holds. Only the parts that changed are reloaded, and when only the last update
+ * of the extents moved, just the time series updated since are read. Everything is reloaded
+ * now and then to pick up changes the hashes don't cover.
+ *
+ * <p>Served: requests for one office. Time series without extents, filtered by id, groups,
+ * categories, location kind, type and bounding office and by whether they are empty.
+ * Locations filtered by id, kind, type and bounding office. Ids are matched with
+ * {@link Pattern}, which agrees with the database on the patterns clients use; POSIX bracket
+ * classes are left to the database.
+ *
+ * <p>Enabled with {@code cwms.cda.data.dao.dao.catalogIndex.enabled=true}.
+ */
+public final class CatalogIndex {
+    private static final Logger logger = Logger.getLogger(CatalogIndex.class.getName());
+
+    public static final String NAME = "catalogIndex";
+    public static final String PROP_BASE = Dao.PROP_BASE + "." + NAME;
+
+    private static final boolean ENABLED = Boolean.getBoolean(PROP_BASE + ".enabled");
+    private static final int REFRESH_SECONDS = Integer.getInteger(PROP_BASE + ".refreshSeconds", 30);
+    private static final long RELOAD_MILLIS = TimeUnit.MINUTES.toMillis(
+            Integer.getInteger(PROP_BASE + ".reloadMinutes", 60));
+    private static final long IDLE_MILLIS = TimeUnit.MINUTES.toMillis(
+            Integer.getInteger(PROP_BASE + ".idleMinutes", 60));
+
+    private static final ScheduledExecutorService REFRESHER =
+            Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                    .setNameFormat("cda-catalog-index-%d")
+                    .setDaemon(true)
+                    .build());
+
+    private static final ConcurrentMap<String, OfficeIndex> offices = new ConcurrentHashMap<>();
+
+    // the ids of the office table, so only real offices get an index; guarded by the class
+    private static Set<String> knownOffices = null;
+    private static long knownOfficesLoadedAt;
+
+    private static final AV_CWMS_TS_ID tsIdView = AV_CWMS_TS_ID.AV_CWMS_TS_ID;
+    private static final AV_TS_GRP_ASSGN tsGroupView = AV_TS_GRP_ASSGN.AV_TS_GRP_ASSGN;
+    private static final AV_LOC_GRP_ASSGN locGroupView = AV_LOC_GRP_ASSGN.AV_LOC_GRP_ASSGN;
+    private static final AV_LOC2 locView = AV_LOC2.AV_LOC2;
+
+    private CatalogIndex() {
+    }
+
+    /**
+     * Returns the version of the time series catalog the index would answer these parameters
+     * from, as {@link TimeSeriesDao#getCatalogVersion} returned it when the index last
+     * checked, or null if the index can't answer them.
+     */
+    public static @Nullable String getTimeSeriesVersion(@Nullable DataSource dataSource,
+                                                        CatalogRequestParameters params) {
+        if (params.isIncludeExtents()) {
+            return null;
+        }
+        Snapshot snapshot = snapshot(dataSource, params.getOffice());
+        return snapshot == null ? null : snapshot.ts.version;
+    }
+
+    /**
+     * Answers a time series catalog request from the index.
+     *
+     * @return the catalog, or null if the database has to be asked
+     */
+    public static @Nullable Catalog getTimeSeriesCatalog(@Nullable DataSource dataSource,
+                                                         @Nullable String page, int pageSize,
+                                                         CatalogRequestParameters params) {
+        Catalog.CatalogPage catPage = null;
+        if (page != null && !page.isEmpty()) {
+            catPage = new Catalog.CatalogPage(page);
+            pageSize = catPage.getPageSize();
+            params = CatalogRequestParameters.Builder.from(params)
+                    .withOffice(catPage.getSearchOffice())
+                    .withIdLike(catPage.getIdLike())
+                    .withLocCatLike(catPage.getLocCategoryLike())
+                    .withLocGroupLike(catPage.getLocGroupLike())
+                    .withTsCatLike(catPage.getTsCategoryLike())
+                    .withTsGroupLike(catPage.getTsGroupLike())
+                    .withBoundingOfficeLike(catPage.getBoundingOfficeLike())
+                    .withIncludeExtents(catPage.isIncludeExtents())
+                    .withExcludeEmpty(catPage.isExcludeEmpty())
+                    .build();
+        }
+        if (params.isIncludeExtents()) {
+            return null;
+        }
+        Snapshot snapshot = snapshot(dataSource, params.getOffice());
+        if (snapshot == null) {
+            return null;
+        }
+        return snapshot.timeSeriesCatalog(catPage, pageSize, params);
+    }
+
+    /**
+     * Answers a location catalog request from the index.
+     *
+     * @return the catalog, or null if the database has to be asked
+     */
+    public static @Nullable Catalog getLocationCatalog(@Nullable DataSource dataSource,
+                                                       @Nullable String page, int pageSize,
+                                                       CatalogRequestParameters params) {
+        Catalog.CatalogPage catPage = null;
+        if (page != null && !page.isEmpty()) {
+            catPage = new Catalog.CatalogPage(page);
+            pageSize = catPage.getPageSize();
+            params = CatalogRequestParameters.Builder.from(params)
+                    .withOffice(catPage.getSearchOffice())
+                    .withIdLike(catPage.getIdLike())
+                    .withLocCatLike(catPage.getLocCategoryLike())
+                    .withLocGroupLike(catPage.getLocGroupLike())
+                    .withBoundingOfficeLike(catPage.getBoundingOfficeLike())
+                    .build();
+        }
+        if (params.getLocCatLike() != null || params.getLocGroupLike() != null
+                || params.getUnitSystem() == null) {
+            return null;
+        }
+        Snapshot snapshot = snapshot(dataSource, params.getOffice());
+        if (snapshot == null) {
+            return null;
+        }
+        return snapshot.locationCatalog(catPage, pageSize, params);
+    }
+
+    /**
+     * Returns what is indexed for an office, starting to index it if it isn't.
+     */
+    private static @Nullable Snapshot snapshot(@Nullable DataSource dataSource,
+                                               @Nullable String office) {
+        if (!ENABLED || office == null) {
+            return null;
+        }
+        String officeId = office.toUpperCase(Locale.ROOT);
+        OfficeIndex index = offices.get(officeId);
+        if (index == null && dataSource != null && isKnownOffice(dataSource, officeId)) {
+            index = offices.computeIfAbsent(officeId, o -> {
+                OfficeIndex created = new OfficeIndex(o, dataSource);
+                created.refreshes = REFRESHER.scheduleWithFixedDelay(created::refresh, 0,
+                        REFRESH_SECONDS, TimeUnit.SECONDS);
+                return created;
+            });
+        }
+        if (index == null) {
+            return null;
+        }
+        index.readAt = System.currentTimeMillis();
+        return index.snapshot;
+    }
+
+    private static synchronized boolean isKnownOffice(DataSource dataSource, String office) {
+        long now = System.currentTimeMillis();
+        if (knownOffices == null || now - knownOfficesLoadedAt > RELOAD_MILLIS) {
+            try {
+                DSLContext dsl = JooqDao.getDslContext(dataSource);
+                Set<String> loaded = new HashSet<>();
+                for (Office o : new OfficeDao(dsl).getOffices(false)) {
+                    loaded.add(o.getName().toUpperCase(Locale.ROOT));
+                }
+                knownOffices = loaded;
+                knownOfficesLoadedAt = now;
+            } catch (RuntimeException ex) {
+                logger.log(Level.WARNING, "Unable to read the offices to index", ex);
+                return false;
+            }
+        }
+        return knownOffices.contains(office);
+    }
+
+    public static void registerMetrics(@Nullable MetricRegistry metrics) {
+        if (metrics == null) {
+            return;
+        }
+        String officesName = MetricRegistry.name(CatalogIndex.class.getName(), NAME, "offices");
+        if (metrics.getGauges().get(officesName) == null) {
+            MetricRegistry.MetricSupplier<? extends Gauge> size = () -> (Gauge<Integer>) offices::size;
+            metrics.gauge(officesName, size);
+        }
+        String memoryName = MetricRegistry.name(CatalogIndex.class.getName(), NAME, "memory-bytes");
+        if (metrics.getGauges().get(memoryName) == null) {
+            MetricRegistry.MetricSupplier<? extends Gauge> memory = () -> (Gauge<Long>) () ->
+                    offices.values().stream()
+                            .map(i -> i.snapshot)
+                            .filter(s -> s != null)
+                            .mapToLong(Snapshot::estimateBytes)
+                            .sum();
+            metrics.gauge(memoryName, memory);
+        }
+        String stalenessName = MetricRegistry.name(CatalogIndex.class.getName(), NAME,
+                "staleness-seconds");
+        if (metrics.getGauges().get(stalenessName) == null) {
+            MetricRegistry.MetricSupplier<? extends Gauge> staleness = () -> (Gauge<Long>) () -> {
+                long now = System.currentTimeMillis();
+                return offices.values().stream()
+                        .map(i -> i.snapshot)
+                        .filter(s -> s != null)
+                        .mapToLong(s -> TimeUnit.MILLISECONDS.toSeconds(now - s.checkedAt))
+                        .max()
+                        .orElse(0L);
+            };
+            metrics.gauge(stalenessName, staleness);
+        }
+    }
+
+    /**
+     * Compiles a filter the way the database matches it, or returns null if the database
+     * has to do it.
+     */
+    private static @Nullable Pattern compile(String regex) {
+        if (regex.contains("[:") || regex.contains("[=") || regex.contains("[.")) {
+            return null;
+        }
+        try {
+            return Pattern.compile(regex, Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+        } catch (PatternSyntaxException ex) {
+            return null;
+        }
+    }
+
+    private static boolean find(@Nullable Pattern pattern, @Nullable String value) {
+        return pattern == null || (value != null && pattern.matcher(value).find());
+    }
+
+    /**
+     * Sums a hash of the given columns, so most edits change it even when the count doesn't.
+     */
+    private static String hashVersion(DSLContext dsl, TableLike<?> table, Condition condition,
+                                      Field<?>... fields) {
+        List<Field<?>> parts = new ArrayList<>();
+        for (Field<?> f : fields) {
+            if (!parts.isEmpty()) {
+                parts.add(DSL.inline("|"));
+            }
+            parts.add(f);
+        }
+        Field<BigDecimal> hash = field("ora_hash({0})", BigDecimal.class,
+                DSL.concat(parts.toArray(new Field<?>[0])));
+        Record2<Integer, BigDecimal> row = dsl.select(count(), sum(hash))
+                .from(table)
+                .where(condition)
+                .fetchOne();
+        return row == null ? "" : row.value1() + ":" + row.value2();
+    }
+
+    /**
+     * The index of one office, replaced as a whole on each refresh.
+     */
+    private static final class OfficeIndex {
+        private final String office;
+        private final DataSource dataSource;
+        private volatile Snapshot snapshot;
+        private volatile long readAt = System.currentTimeMillis();
+        private volatile ScheduledFuture<?> refreshes;
+
+        private OfficeIndex(String office, DataSource dataSource) {
+            this.office = office;
+            this.dataSource = dataSource;
+        }
+
+        private void refresh() {
+            long now = System.currentTimeMillis();
+            if (now - readAt > IDLE_MILLIS) {
+                offices.remove(office, this);
+                refreshes.cancel(false);
+                logger.fine(() -> "Dropped the idle catalog index of " + office);
+                return;
+            }
+            try {
+                DSLContext dsl = JooqDao.getDslContext(dataSource);
+                Snapshot current = snapshot;
+                boolean reload = current == null || now - current.loadedAt > RELOAD_MILLIS;
+
+                String tsVersion = new TimeSeriesDaoImpl(dsl, null).readCatalogVersion(office);
+                String groupVersion = groupVersion(dsl);
+                String locVersion = hashVersion(dsl, locView, locationsCondition(),
+                        locView.LOCATION_ID, locView.ALIASED_ITEM, locView.UNIT_SYSTEM,
+                        locView.LOC_ALIAS_CATEGORY, locView.LOC_ALIAS_GROUP,
+                        locView.PUBLIC_NAME, locView.LONG_NAME, locView.LOCATION_KIND_ID,
+                        locView.LOCATION_TYPE, locView.BOUNDING_OFFICE_ID,
+                        locView.ACTIVE_FLAG, locView.LATITUDE, locView.LONGITUDE,
+                        locView.ELEVATION);
+
+                Locations locations = reload || !locVersion.equals(current.locations.version)
+                        ? loadLocations(dsl, locVersion)
+                        : current.locations;
+                TimeSeriesIds ts;
+                if (reload || !groupVersion.equals(current.ts.groupVersion)
+                        || !sameIds(tsVersion, current.ts.version)) {
+                    ts = loadTimeSeries(dsl, tsVersion, groupVersion);
+                } else if (!tsVersion.equals(current.ts.version)) {
+                    ts = current.ts.withNonEmpty(
+                            nonEmptyCodes(dsl, lastUpdate(current.ts.version)), tsVersion);
+                } else {
+                    ts = current.ts;
+                }
+                snapshot = new Snapshot(ts, locations, reload ? now : current.loadedAt, now);
+            } catch (RuntimeException ex) {
+                // thrown out of here, it would cancel the refreshes. The next one retries.
+                logger.log(Level.WARNING, ex, () -> "Unable to refresh the catalog index of "
+                        + office);
+            }
+        }
+
+        private String groupVersion(DSLContext dsl) {
+            return hashVersion(dsl, tsGroupView.join(tsIdView)
+                            .on(tsIdView.TS_CODE.eq(tsGroupView.TS_CODE)),
+                    tsIdView.DB_OFFICE_ID.eq(office),
+                    tsGroupView.CATEGORY_ID, tsGroupView.GROUP_ID, tsGroupView.TS_CODE)
+                    + "/" + hashVersion(dsl, locGroupView, locGroupsCondition(),
+                    locGroupView.CATEGORY_ID, locGroupView.GROUP_ID,
+                    locGroupView.LOCATION_CODE);
+        }
+
+        private Condition locationsCondition() {
+            return DSL.upper(locView.DB_OFFICE_ID).eq(office)
+                    .and(locView.LOCATION_CODE.notEqual(LocationsDaoImpl.DELETED_TS_MARKER));
+        }
+
+        private Condition locGroupsCondition() {
+            return locGroupView.LOCATION_CODE.in(select(tsIdView.LOCATION_CODE)
+                    .from(tsIdView)
+                    .where(tsIdView.DB_OFFICE_ID.eq(office)));
+        }
+
+        private TimeSeriesIds loadTimeSeries(DSLContext dsl, String version,
+                                             String groupVersion) {
+            List<Record> rows = new ArrayList<>(dsl.select(tsIdView.TS_CODE,
+                            tsIdView.LOCATION_CODE, tsIdView.DB_OFFICE_ID,
+                            tsIdView.CWMS_TS_ID, tsIdView.UNIT_ID, tsIdView.INTERVAL_ID,
+                            tsIdView.INTERVAL_UTC_OFFSET, tsIdView.TIME_ZONE_ID)
+                    .from(tsIdView)
+                    .where(tsIdView.DB_OFFICE_ID.eq(office))
+                    .fetch());
+            rows.sort(Comparator.comparing(
+                    r -> r.get(tsIdView.CWMS_TS_ID).toUpperCase(Locale.ROOT)));
+
+            int size = rows.size();
+            TimeseriesCatalogEntry[] entries = new TimeseriesCatalogEntry[size];
+            String[] ids = new String[size];
+            long[] locationCodes = new long[size];
+            Map<Long, Integer> positions = new HashMap<>(size * 4 / 3 + 1);
+            Map<Long, List<Integer>> byLocation = new HashMap<>();
+            for (int i = 0; i < size; i++) {
+                Record row = rows.get(i);
+                entries[i] = new TimeseriesCatalogEntry.Builder()
+                        .officeId(row.get(tsIdView.DB_OFFICE_ID))
+                        .cwmsTsId(row.get(tsIdView.CWMS_TS_ID))
+                        .units(row.get(tsIdView.UNIT_ID))
+                        .interval(row.get(tsIdView.INTERVAL_ID))
+                        .intervalOffset(row.get(tsIdView.INTERVAL_UTC_OFFSET))
+                        .timeZone(row.get(tsIdView.TIME_ZONE_ID))
+                        .build();
+                ids[i] = entries[i].getName().toUpperCase(Locale.ROOT);
+                locationCodes[i] = row.get(tsIdView.LOCATION_CODE, Long.class);
+                positions.put(row.get(tsIdView.TS_CODE, Long.class), i);
+                byLocation.computeIfAbsent(locationCodes[i], c -> new ArrayList<>()).add(i);
+            }
+
+            List<Facet> tsGroups = facets(dsl.select(tsGroupView.CATEGORY_ID,
+                            tsGroupView.GROUP_ID, tsIdView.TS_CODE)
+                    .from(tsGroupView)
+                    .join(tsIdView).on(tsIdView.TS_CODE.eq(tsGroupView.TS_CODE))
+                    .where(tsIdView.DB_OFFICE_ID.eq(office))
+                    .fetch(), code -> {
+                        Integer pos = positions.get(code);
+                        return pos == null ? new ArrayList<>() : Arrays.asList(pos);
+                    });
+            List<Facet> locGroups = facets(dsl.select(locGroupView.CATEGORY_ID,
+                            locGroupView.GROUP_ID, locGroupView.LOCATION_CODE)
+                    .from(locGroupView)
+                    .where(locGroupsCondition())
+                    .fetch(), code -> byLocation.getOrDefault(code, new ArrayList<>()));
+
+            TimeSeriesIds retval = new TimeSeriesIds(version, groupVersion, entries,
+                    new IdIndex(ids), locationCodes, positions, new BitSet(size), tsGroups,
+                    locGroups);
+            return retval.withNonEmpty(nonEmptyCodes(dsl, null), version);
+        }
+
+        private List<Facet> facets(List<? extends Record> assignments,
+                                   Function<Long, List<Integer>> members) {
+            Map<List<String>, BitSet> byGroup = new LinkedHashMap<>();
+            for (Record row : assignments) {
+                BitSet bits = byGroup.computeIfAbsent(
+                        Arrays.asList(row.get(0, String.class), row.get(1, String.class)),
+                        k -> new BitSet());
+                for (Integer pos : members.apply(row.get(2, Long.class))) {
+                    bits.set(pos);
+                }
+            }
+            List<Facet> retval = new ArrayList<>(byGroup.size());
+            byGroup.forEach((key, bits) -> retval.add(new Facet(key.get(0), key.get(1), bits)));
+            return retval;
+        }
+
+        /**
+         * @param since only the time series updated after this, null for all of them
+         */
+        private Set<Long> nonEmptyCodes(DSLContext dsl, @Nullable Timestamp since) {
+            Condition updated = since == null
+                    ? DSL.noCondition()
+                    : AV_TS_EXTENTS_UTC.LAST_UPDATE.greaterThan(since);
+            return new HashSet<>(dsl.selectDistinct(tsIdView.TS_CODE)
+                    .from(AV_TS_EXTENTS_UTC)
+                    .join(tsIdView)
+                    .on(AV_TS_EXTENTS_UTC.TS_CODE.coerce(tsIdView.TS_CODE)
+                            .eq(tsIdView.TS_CODE))
+                    .where(tsIdView.DB_OFFICE_ID.eq(office))
+                    .and(DSL.or(AV_TS_EXTENTS_UTC.VERSION_TIME.isNotNull(),
+                            AV_TS_EXTENTS_UTC.EARLIEST_TIME.isNotNull(),
+                            AV_TS_EXTENTS_UTC.LATEST_TIME.isNotNull(),
+                            AV_TS_EXTENTS_UTC.LAST_UPDATE.isNotNull()))
+                    .and(updated)
+                    .fetch(r -> r.get(0, Long.class)));
+        }
+
+        private Locations loadLocations(DSLContext dsl, String version) {
+            Map<Long, List<usace.cwms.db.jooq.codegen.tables.records.AV_LOC2>> byCode =
+                    new LinkedHashMap<>();
+            dsl.selectFrom(locView)
+                    .where(locationsCondition())
+                    .fetch()
+                    .forEach(r -> byCode.computeIfAbsent(r.getLOCATION_CODE(),
+                            c -> new ArrayList<>()).add(r));
+
+            Map<String, List<LocationCatalogEntry>> byUnitSystem = new HashMap<>();
+            Map<Long, LocationCatalogEntry> byLocation = new HashMap<>();
+            byCode.forEach((code, rows) -> {
+                Set<LocationAlias> aliases = new HashSet<>();
+                for (usace.cwms.db.jooq.codegen.tables.records.AV_LOC2 row : rows) {
+                    if (row.getALIASED_ITEM() != null) {
+                        aliases.add(LocationsDaoImpl.buildLocationAlias(row));
+                    }
+                }
+                for (usace.cwms.db.jooq.codegen.tables.records.AV_LOC2 row : rows) {
+                    if (row.getALIASED_ITEM() == null && row.getUNIT_SYSTEM() != null) {
+                        LocationCatalogEntry entry = LocationsDaoImpl.buildCatalogEntry(row,
+                                aliases);
+                        byUnitSystem.computeIfAbsent(
+                                row.getUNIT_SYSTEM().toUpperCase(Locale.ROOT),
+                                u -> new ArrayList<>()).add(entry);
+                        byLocation.putIfAbsent(code, entry);
+                    }
+                }
+            });
+
+            Map<String, LocationCatalogEntry[]> sorted = new HashMap<>();
+            Map<String, IdIndex> ids = new HashMap<>();
+            byUnitSystem.forEach((unitSystem, entries) -> {
+                LocationCatalogEntry[] array = entries.toArray(new LocationCatalogEntry[0]);
+                Arrays.sort(array, Comparator.comparing(e -> e.getName().toUpperCase(Locale.ROOT)));
+                String[] upper = new String[array.length];
+                for (int i = 0; i < array.length; i++) {
+                    upper[i] = array[i].getName().toUpperCase(Locale.ROOT);
+                }
+                sorted.put(unitSystem, array);
+                ids.put(unitSystem, new IdIndex(upper));
+            });
+            return new Locations(version, sorted, ids, byLocation);
+        }
+
+        private static boolean sameIds(String version, String other) {
+            return version.substring(0, version.lastIndexOf(':') + 1)
+                    .equals(other.substring(0, other.lastIndexOf(':') + 1));
+        }
+
+        private static @Nullable Timestamp lastUpdate(String version) {
+            String millis = version.substring(version.lastIndexOf(':') + 1);
+            return millis.isEmpty() ? null : new Timestamp(Long.parseLong(millis));
+        }
+    }
+
+    /**
+     * The time series or locations assigned to one group.
+     */
+    private static final class Facet {
+        private final String category;
+        private final String group;
+        private final BitSet members;
+
+        private Facet(String category, String group, BitSet members) {
+            this.category = category;
+            this.group = group;
+            this.members = members;
+        }
+
+        private static BitSet union(List<Facet> facets, @Nullable Pattern category,
+                                              @Nullable Pattern group) {
+            BitSet retval = new BitSet();
+            for (Facet facet : facets) {
+                if (find(category, facet.category) && find(group, facet.group)) {
+                    retval.or(facet.members);
+                }
+            }
+            return retval;
+        }
+    }
+
+    private static final class TimeSeriesIds {
+        private final String version;
+        private final String groupVersion;
+        private final TimeseriesCatalogEntry[] entries;
+        private final IdIndex ids;
+        private final long[] locationCodes;
+        private final Map<Long, Integer> positions;
+        private final BitSet nonEmpty;
+        private final List<Facet> tsGroups;
+        private final List<Facet> locGroups;
+        private final long bytes;
+
+        private TimeSeriesIds(String version, String groupVersion,
+                              TimeseriesCatalogEntry[] entries, IdIndex ids, long[] locationCodes,
+                              Map<Long, Integer> positions, BitSet nonEmpty, List<Facet> tsGroups,
+                              List<Facet> locGroups) {
+            this.version = version;
+            this.groupVersion = groupVersion;
+            this.entries = entries;
+            this.ids = ids;
+            this.locationCodes = locationCodes;
+            this.positions = positions;
+            this.nonEmpty = nonEmpty;
+            this.tsGroups = tsGroups;
+            this.locGroups = locGroups;
+
+            long estimate = ids.estimateBytes();
+            for (TimeseriesCatalogEntry entry : entries) {
+                // the entry, its upper case id, its code in two maps, and the strings
+                estimate += 200 + 4L * entry.getName().length();
+            }
+            for (Facet facet : tsGroups) {
+                estimate += 100 + facet.members.size() / 8;
+            }
+            for (Facet facet : locGroups) {
+                estimate += 100 + facet.members.size() / 8;
+            }
+            bytes = estimate;
+        }
+
+        private TimeSeriesIds withNonEmpty(Collection<Long> codes, String version) {
+            BitSet updated = (BitSet) nonEmpty.clone();
+            for (Long code : codes) {
+                Integer pos = positions.get(code);
+                if (pos != null) {
+                    updated.set(pos);
+                }
+            }
+            return new TimeSeriesIds(version, groupVersion, entries, ids, locationCodes,
+                    positions, updated, tsGroups, locGroups);
+        }
+    }
+
+    private static final class Locations {
+        private final String version;
+        private final Map<String, LocationCatalogEntry[]> entries;
+        private final Map<String, IdIndex> ids;
+        private final Map<Long, LocationCatalogEntry> byLocation;
+        private final long bytes;
+
+        private Locations(String version, Map<String, LocationCatalogEntry[]> entries,
+                          Map<String, IdIndex> ids, Map<Long, LocationCatalogEntry> byLocation) {
+            this.version = version;
+            this.entries = entries;
+            this.ids = ids;
+            this.byLocation = byLocation;
+
+            long estimate = byLocation.size() * 64L;
+            for (IdIndex index : ids.values()) {
+                estimate += index.estimateBytes();
+            }
+            for (LocationCatalogEntry[] array : entries.values()) {
+                for (LocationCatalogEntry entry : array) {
+                    // the entry, its fields and aliases
+                    estimate += 600 + 2L * entry.getAliases().size() * 100;
+                }
+            }
+            bytes = estimate;
+        }
+    }
+
+    /**
+     * Everything indexed for an office at one time.
+     */
+    private static final class Snapshot {
+        private final TimeSeriesIds ts;
+        private final Locations locations;
+        private final long loadedAt;
+        private final long checkedAt;
+
+        private Snapshot(TimeSeriesIds ts, Locations locations, long loadedAt, long checkedAt) {
+            this.ts = ts;
+            this.locations = locations;
+            this.loadedAt = loadedAt;
+            this.checkedAt = checkedAt;
+        }
+
+        private long estimateBytes() {
+            return ts.bytes + locations.bytes;
+        }
+
+        private @Nullable Catalog timeSeriesCatalog(Catalog.CatalogPage catPage,
+                                                    int pageSize,
+                                                    CatalogRequestParameters params) {
+            Pattern idLike = null;
+            Pattern tsCategory = null;
+            Pattern tsGroup = null;
+            Pattern locCategory = null;
+            Pattern locGroup = null;
+            Pattern boundingOffice = null;
+            Pattern kind = null;
+            Pattern type = null;
+            try {
+                idLike = compileNullable(params.getIdLike());
+                tsCategory = compileNullable(params.getTsCatLike());
+                tsGroup = compileNullable(params.getTsGroupLike());
+                locCategory = compileNullable(params.getLocCatLike());
+                locGroup = compileNullable(params.getLocGroupLike());
+                boundingOffice = compileNullable(params.getBoundingOfficeLike());
+                kind = compileNullable(params.getLocationKind());
+                type = compileNullable(params.getLocationType());
+            } catch (IllegalArgumentException ex) {
+                return null;
+            }
+
+            BitSet allowed = null;
+            if (tsCategory != null || tsGroup != null) {
+                allowed = Facet.union(ts.tsGroups, tsCategory, tsGroup);
+            }
+            if (locCategory != null || locGroup != null) {
+                BitSet inLocGroups = Facet.union(ts.locGroups, locCategory, locGroup);
+                if (allowed == null) {
+                    allowed = inLocGroups;
+                } else {
+                    allowed.and(inLocGroups);
+                }
+            }
+            if (params.isExcludeEmpty()) {
+                if (allowed == null) {
+                    allowed = (BitSet) ts.nonEmpty.clone();
+                } else {
+                    allowed.and(ts.nonEmpty);
+                }
+            }
+            boolean byLocation = boundingOffice != null || kind != null || type != null;
+
+            int start = 0;
+            if (catPage != null) {
+                if (!catPage.getCurOffice().equalsIgnoreCase(params.getOffice())) {
+                    return null;
+                }
+                start = ts.ids.after(catPage.getCursorId().toUpperCase(Locale.ROOT));
+            }
+            int[] candidates = params.getIdLike() == null ? null
+                    : ts.ids.candidates(params.getIdLike());
+            boolean counting = catPage == null && params.getCountMode() != CountMode.NONE;
+
+            List<CatalogEntry> entries = new ArrayList<>();
+            int total = 0;
+            Cursor cursor = new Cursor(candidates, start, ts.ids.size());
+            for (int pos = cursor.next(); pos >= 0; pos = cursor.next()) {
+                if (allowed != null && !allowed.get(pos)) {
+                    continue;
+                }
+                TimeseriesCatalogEntry entry = ts.entries[pos];
+                if (!find(idLike, entry.getName())) {
+                    continue;
+                }
+                if (byLocation) {
+                    LocationCatalogEntry location = locations.byLocation.get(
+                            ts.locationCodes[pos]);
+                    if (location == null || !find(boundingOffice, location.getBoundingOffice())
+                            || !find(kind, location.getKind())
+                            || !find(type, location.getType())) {
+                        continue;
+                    }
+                }
+                total++;
+                if (entries.size() < pageSize) {
+                    entries.add(entry);
+                } else if (!counting) {
+                    break;
+                }
+            }
+
+            Integer catalogTotal = catPage != null ? catPage.getTotal()
+                    : counting ? Integer.valueOf(total) : null;
+            return new Catalog(catPage != null ? catPage.toString() : null, catalogTotal,
+                    pageSize, entries, params);
+        }
+
+        private @Nullable Catalog locationCatalog(Catalog.CatalogPage catPage,
+                                                  int pageSize,
+                                                  CatalogRequestParameters params) {
+            Pattern idLike;
+            Pattern boundingOffice;
+            Pattern kind;
+            Pattern type;
+            try {
+                idLike = compileNullable(params.getIdLike());
+                boundingOffice = compileNullable(params.getBoundingOfficeLike());
+                kind = compileNullable(params.getLocationKind());
+                type = compileNullable(params.getLocationType());
+            } catch (IllegalArgumentException ex) {
+                return null;
+            }
+
+            String unitSystem = params.getUnitSystem().toUpperCase(Locale.ROOT);
+            LocationCatalogEntry[] all = locations.entries.getOrDefault(unitSystem,
+                    new LocationCatalogEntry[0]);
+            IdIndex ids = locations.ids.getOrDefault(unitSystem, new IdIndex(new String[0]));
+
+            String cursorLocation = "*";
+            int start = 0;
+            if (catPage != null) {
+                if (!catPage.getCurOffice().equalsIgnoreCase(params.getOffice())) {
+                    return null;
+                }
+                cursorLocation = catPage.getCursorId();
+                start = ids.after(cursorLocation.toUpperCase(Locale.ROOT));
+            }
+            int[] candidates = params.getIdLike() == null ? null
+                    : ids.candidates(params.getIdLike());
+            boolean counting = catPage == null && params.getCountMode() != CountMode.NONE;
+
+            List<CatalogEntry> entries = new ArrayList<>();
+            int total = 0;
+            Cursor cursor = new Cursor(candidates, start, ids.size());
+            for (int pos = cursor.next(); pos >= 0; pos = cursor.next()) {
+                LocationCatalogEntry entry = all[pos];
+                if (!find(idLike, entry.getName())
+                        || !find(boundingOffice, entry.getBoundingOffice())
+                        || !find(kind, entry.getKind())
+                        || !find(type, entry.getType())) {
+                    continue;
+                }
+                total++;
+                if (entries.size() < pageSize) {
+                    entries.add(entry);
+                } else if (!counting) {
+                    break;
+                }
+            }
+
+            Integer catalogTotal = catPage != null ? catPage.getTotal()
+                    : counting ? Integer.valueOf(total) : null;
+            return new Catalog(cursorLocation, catalogTotal, pageSize, entries, params);
+        }
+
+        /**
+         * @throws IllegalArgumentException if the database has to match the filter
+         */
+        private static @Nullable Pattern compileNullable(@Nullable String regex) {
+            if (regex == null) {
+                return null;
+            }
+            Pattern retval = compile(regex);
+            if (retval == null) {
+                throw new IllegalArgumentException(regex);
+            }
+            return retval;
+        }
+    }
+
+    /**
+     * Walks the positions from a starting one on, through the candidates if there are any.
+     */
+    private static final class Cursor {
+        private final int[] candidates;
+        private final int size;
+        private int next;
+
+        private Cursor(int[] candidates, int start, int size) {
+            this.candidates = candidates;
+            this.size = size;
+            if (candidates == null) {
+                next = start;
+            } else {
+                int found = Arrays.binarySearch(candidates, start);
+                next = found >= 0 ? found : -found - 1;
+            }
+        }
+
+        private int next() {
+            if (candidates == null) {
+                return next < size ? next++ : -1;
+            }
+            return next < candidates.length ? candidates[next++] : -1;
+        }
+    }
+}
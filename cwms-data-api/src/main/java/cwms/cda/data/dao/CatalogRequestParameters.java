@@ -2,6 +2,8 @@ package cwms.cda.data.dao;
 
 import static usace.cwms.db.jooq.codegen.tables.AV_TS_EXTENTS_UTC.AV_TS_EXTENTS_UTC;
 
+import cwms.cda.api.enums.CountMode;
+import java.util.List;
 import org.jooq.Table;
 import usace.cwms.db.jooq.codegen.tables.AV_LOC;
 import usace.cwms.db.jooq.codegen.tables.AV_LOC_GRP_ASSGN;
@@ -20,6 +22,7 @@ public class CatalogRequestParameters {
     private final boolean excludeEmpty;
     private final String locationKind;
     private final String locationType;
+    private final CountMode countMode;
 
     private CatalogRequestParameters(Builder builder) {
         this.office = builder.office;
@@ -34,6 +37,7 @@ public class CatalogRequestParameters {
         this.excludeEmpty = builder.excludeEmpty;
         this.locationKind = builder.locationKind;
         this.locationType = builder.locationType;
+        this.countMode = builder.countMode;
     }
 
     public String getBoundingOfficeLike() {
@@ -84,6 +88,19 @@ public class CatalogRequestParameters {
         return locationType;
     }
 
+    public CountMode getCountMode() {
+        return countMode;
+    }
+
+    /**
+     * Key of the rows these parameters select, for caching their total.
+     */
+    public List<Object> countKey(String kind) {
+        return CountCache.key(kind, office, idLike, unitSystem, locCatLike, locGroupLike,
+                tsCatLike, tsGroupLike, boundingOfficeLike, excludeEmpty, locationKind,
+                locationType);
+    }
+
 
     public static class Builder {
         String office;
@@ -98,6 +115,7 @@ public class CatalogRequestParameters {
         private boolean excludeEmpty = true;
         String locationKind;
         String locationType;
+        CountMode countMode = CountMode.EXACT;
 
         public Builder() {
 
@@ -163,6 +181,11 @@ public class CatalogRequestParameters {
             return this;
         }
 
+        public Builder withCountMode(CountMode countMode) {
+            this.countMode = countMode;
+            return this;
+        }
+
         public static Builder from(CatalogRequestParameters params) {
             // This NEEDS to include every field in the CatalogRequestParameters
             return new Builder()
@@ -178,6 +201,7 @@ public class CatalogRequestParameters {
                     .withExcludeEmpty(params.excludeEmpty)
                     .withLocationKind(params.locationKind)
                     .withLocationType(params.locationType)
+                    .withCountMode(params.countMode)
                     ;
         }
 
@@ -1,6 +1,7 @@
 package cwms.cda.data.dao;
 
 import com.google.common.flogger.FluentLogger;
+import cwms.cda.api.enums.CountMode;
 import cwms.cda.api.errors.NotFoundException;
 import cwms.cda.data.dto.Clob;
 import cwms.cda.data.dto.Clobs;
@@ -12,6 +13,7 @@ import org.jooq.Record;
 import org.jooq.Record1;
 import org.jooq.Record4;
 import org.jooq.RecordMapper;
+import org.jooq.Result;
 import org.jooq.SelectConditionStep;
 import org.jooq.SelectLimitPercentStep;
 import org.jooq.conf.ParamType;
@@ -95,22 +97,18 @@ public class ClobDao extends JooqDao<Clob> {
 
     public Clobs getClobs(String cursor, int pageSize, String officeLike,
                           boolean includeValues, String idRegex) {
-        int total = 0;
+        return getClobs(cursor, pageSize, officeLike, includeValues, idRegex, CountMode.EXACT);
+    }
+
+    public Clobs getClobs(String cursor, int pageSize, String officeLike,
+                          boolean includeValues, String idRegex, CountMode countMode) {
+        Integer total = 0;
         String clobCursor = "*";
         AV_CLOB v_clob = AV_CLOB.AV_CLOB;
         AV_OFFICE v_office = AV_OFFICE.AV_OFFICE;
+        boolean firstPage = cursor == null || cursor.isEmpty();
 
-        if (cursor == null || cursor.isEmpty()) {
-
-            SelectConditionStep<Record1<Integer>> count =
-                    dsl.select(count(asterisk()))
-                            .from(v_clob)
-                            .join(v_office).on(v_clob.OFFICE_CODE.eq(v_office.OFFICE_CODE))
-                            .where(JooqDao.caseInsensitiveLikeRegex(v_clob.ID, idRegex))
-                            .and(officeLike == null ? noCondition() : DSL.upper(v_office.OFFICE_ID).like(officeLike.toUpperCase()));
-
-            total = count.fetchOne().value1();
-        } else {
+        if (!firstPage) {
             final String[] parts = CwmsDTOPaginated.decodeCursor(cursor, "||");
 
             logger.atFine().log("decoded cursor: " + String.join("||", parts));
@@ -122,7 +120,7 @@ public class ClobDao extends JooqDao<Clob> {
                 clobCursor = parts[0].split(";")[0];
                 clobCursor = clobCursor.substring(clobCursor.indexOf("/") + 1); // ditch the
                 // officeId that's embedded in
-                total = Integer.parseInt(parts[1]);
+                total = CwmsDTOPaginated.decodeTotal(parts[1]);
                 pageSize = Integer.parseInt(parts[2]);
             }
         }
@@ -141,11 +139,27 @@ public class ClobDao extends JooqDao<Clob> {
                 .orderBy(v_clob.ID).limit(pageSize);
 
 
-        Clobs.Builder builder = new Clobs.Builder(clobCursor, pageSize, total);
-
         logger.atFine().log(query.getSQL(ParamType.INLINED));
+        Result<Record4<String, String, String, String>> rows = query.fetch();
+
+        if (firstPage) {
+            Condition filter = JooqDao.caseInsensitiveLikeRegex(v_clob.ID, idRegex)
+                    .and(officeLike == null ? noCondition() : DSL.upper(v_office.OFFICE_ID).like(officeLike.toUpperCase()));
+            SelectConditionStep<Record1<Integer>> count =
+                    dsl.select(count(asterisk()))
+                            .from(v_clob)
+                            .join(v_office).on(v_clob.OFFICE_CODE.eq(v_office.OFFICE_CODE))
+                            .where(filter);
+            total = CountCache.total(countMode, CountCache.key("clobs", officeLike, idRegex),
+                    rows.size(), pageSize, () -> count.fetchOne().value1(),
+                    () -> CountCache.explainRows(dsl, dsl.selectOne()
+                            .from(v_clob)
+                            .join(v_office).on(v_clob.OFFICE_CODE.eq(v_office.OFFICE_CODE))
+                            .where(filter)));
+        }
 
-        query.fetch().forEach(row -> {
+        Clobs.Builder builder = new Clobs.Builder(clobCursor, pageSize, total);
+        rows.forEach(row -> {
             usace.cwms.db.jooq.codegen.tables.records.AV_CLOB clob = row.into(v_clob);
             usace.cwms.db.jooq.codegen.tables.records.AV_OFFICE clobOffice = row.into(v_office);
             builder.addClob(new Clob(
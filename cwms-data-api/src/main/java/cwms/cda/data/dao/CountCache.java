@@ -0,0 +1,126 @@
+package cwms.cda.data.dao;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import cwms.cda.api.enums.CountMode;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.jetbrains.annotations.Nullable;
+import org.jooq.DSLContext;
+import org.jooq.Explain;
+import org.jooq.Select;
+import org.jooq.exception.DataAccessException;
+
+/**
+ * Totals of paginated results, so that paging through a large catalog doesn't have to count
+ * it in full for every first page.
+ *
+ * <p>Exact counts are cached by a normalized form of the request filter for a short time, so
+ * a total may be a little out of date. Estimates use a cached exact count when there is one,
+ * and otherwise the row count the optimizer expects, which costs no scan.
+ */
+public final class CountCache {
+    private static final Logger logger = Logger.getLogger(CountCache.class.getName());
+
+    public static final String NAME = "counts";
+    public static final String PROP_BASE = Dao.PROP_BASE + "." + NAME;
+
+    private static final Cache<List<Object>, Integer> cache = CacheBuilder.newBuilder()
+            .maximumSize(Integer.getInteger(PROP_BASE + ".maxSize", 10000))
+            .expireAfterWrite(Integer.getInteger(PROP_BASE + ".expireAfterSeconds", 60),
+                    TimeUnit.SECONDS)
+            .recordStats()
+            .build();
+
+    private CountCache() {
+    }
+
+    /**
+     * Builds the key of a filter. Strings are upper cased, as the filters are case-insensitive.
+     *
+     * @param kind what is being counted, e.g. "catalog.timeseries"
+     * @param filters every value that changes which rows are counted
+     */
+    public static List<Object> key(String kind, Object... filters) {
+        List<Object> key = new ArrayList<>(filters.length + 1);
+        key.add(kind);
+        for (Object filter : filters) {
+            key.add(filter instanceof String
+                    ? ((String) filter).toUpperCase(Locale.ROOT)
+                    : filter);
+        }
+        return key;
+    }
+
+    /**
+     * Returns the total for the first page of a result.
+     *
+     * @param pageRows the rows of the first page; when it isn't full they are the total
+     * @param exact counts the rows, used when an exact total isn't cached
+     * @param estimate estimates the rows, may return null
+     * @return the total, or null for {@link CountMode#NONE} or without an estimate
+     */
+    public static @Nullable Integer total(CountMode mode, List<Object> key, int pageRows,
+                                          int pageSize, Supplier<Integer> exact,
+                                          Supplier<Integer> estimate) {
+        if (mode == CountMode.NONE) {
+            return null;
+        }
+        if (pageSize > 0 && pageRows < pageSize) {
+            cache.put(key, pageRows);
+            return pageRows;
+        }
+
+        Integer retval = cache.getIfPresent(key);
+        if (retval == null && mode == CountMode.EXACT) {
+            retval = exact.get();
+            cache.put(key, retval);
+        } else if (retval == null) {
+            retval = estimate.get();
+        }
+        return retval;
+    }
+
+    /**
+     * Returns the number of rows the optimizer expects the query to return.
+     *
+     * @return the estimate, or null if there isn't one
+     */
+    public static @Nullable Integer explainRows(DSLContext dsl, Select<?> query) {
+        try {
+            Explain explain = dsl.explain(query);
+            double rows = explain.rows();
+            return Double.isNaN(rows) ? null : (int) Math.min(Integer.MAX_VALUE, Math.round(rows));
+        } catch (DataAccessException ex) {
+            logger.log(Level.FINE, "Unable to estimate the rows of a query", ex);
+            return null;
+        }
+    }
+
+    public static void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    public static void registerMetrics(@Nullable MetricRegistry metrics) {
+        if (metrics == null) {
+            return;
+        }
+        String hrName = MetricRegistry.name(CountCache.class.getName(), NAME, "hit-rate");
+        if (metrics.getGauges().get(hrName) == null) {
+            MetricRegistry.MetricSupplier<? extends Gauge> hr = () -> (Gauge<Double>) () -> cache.stats().hitRate();
+            metrics.gauge(hrName, hr);
+        }
+        String sizeName = MetricRegistry.name(CountCache.class.getName(), NAME, "size");
+        if (metrics.getGauges().get(sizeName) == null) {
+            MetricRegistry.MetricSupplier<? extends Gauge> size = () -> (Gauge<Long>) cache::size;
+            metrics.gauge(sizeName, size);
+        }
+    }
+}
@@ -30,6 +30,7 @@ import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.flogger.FluentLogger;
 import cwms.cda.data.dto.CwmsDTO;
+import cwms.cda.datasource.SessionState;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.List;
@@ -104,7 +105,8 @@ public abstract class Dao<T> {
     }
 
     protected void setOffice(Connection c, String office) throws SQLException {
-        CWMS_ENV_PACKAGE.call_SET_SESSION_OFFICE_ID(DSL.using(c).configuration(), office);
+        SessionState.setOffice(c, office, () ->
+                CWMS_ENV_PACKAGE.call_SET_SESSION_OFFICE_ID(DSL.using(c).configuration(), office));
     }
 
 
@@ -0,0 +1,277 @@
+package cwms.cda.data.dao;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Finds the ids a regular expression can match without trying it on all of them.
+ *
+ * <p>The ids are kept upper case and sorted, so a pattern anchored to a literal prefix is a
+ * range found by binary search. Every three character substring of an id maps to the ascending
+ * positions of the ids containing it, so the literal runs a pattern requires narrow the
+ * candidates to the intersection of their trigrams. The candidates still have to be matched
+ * against the pattern.
+ */
+final class IdIndex {
+    private static final int[] NONE = new int[0];
+
+    private final String[] ids;
+    private final Map<String, int[]> trigrams;
+    private final long postings;
+
+    /**
+     * @param ids upper case, sorted by {@link String#compareTo}
+     */
+    IdIndex(String[] ids) {
+        this.ids = ids;
+        Map<String, IntList> building = new HashMap<>();
+        for (int i = 0; i < ids.length; i++) {
+            String id = ids[i];
+            for (int j = 0; j + 3 <= id.length(); j++) {
+                building.computeIfAbsent(id.substring(j, j + 3), k -> new IntList()).add(i);
+            }
+        }
+        trigrams = new HashMap<>(building.size() * 4 / 3 + 1);
+        long count = 0;
+        for (Map.Entry<String, IntList> entry : building.entrySet()) {
+            int[] positions = entry.getValue().toArray();
+            trigrams.put(entry.getKey(), positions);
+            count += positions.length;
+        }
+        postings = count;
+    }
+
+    int size() {
+        return ids.length;
+    }
+
+    /**
+     * @return the position of the first id after the given one, which is upper case
+     */
+    int after(String id) {
+        int pos = Arrays.binarySearch(ids, id);
+        return pos >= 0 ? pos + 1 : -pos - 1;
+    }
+
+    /**
+     * Returns the ascending positions of the ids the pattern may match, or null when it may
+     * match any of them.
+     */
+    int[] candidates(String regex) {
+        Literals literals = Literals.of(regex);
+        int[] retval = null;
+        if (literals.prefix != null && !literals.prefix.isEmpty()) {
+            int from = lowerBound(literals.prefix);
+            int to = lowerBound(literals.prefix + Character.MAX_VALUE);
+            retval = range(from, to);
+        }
+        for (String run : literals.runs) {
+            for (int i = 0; i + 3 <= run.length(); i++) {
+                int[] positions = trigrams.get(run.substring(i, i + 3));
+                retval = positions == null ? NONE : intersect(retval, positions);
+                if (retval.length == 0) {
+                    return retval;
+                }
+            }
+        }
+        return retval;
+    }
+
+    /**
+     * @return roughly how many bytes the trigrams take
+     */
+    long estimateBytes() {
+        // an entry, its key and the array header, plus four bytes a position
+        return trigrams.size() * 120L + postings * 4;
+    }
+
+    private int lowerBound(String key) {
+        int pos = Arrays.binarySearch(ids, key);
+        return pos >= 0 ? pos : -pos - 1;
+    }
+
+    private static int[] range(int from, int to) {
+        int[] retval = new int[Math.max(0, to - from)];
+        for (int i = 0; i < retval.length; i++) {
+            retval[i] = from + i;
+        }
+        return retval;
+    }
+
+    private static int[] intersect(int[] a, int[] b) {
+        if (a == null) {
+            return b;
+        }
+        int[] retval = new int[Math.min(a.length, b.length)];
+        int i = 0;
+        int j = 0;
+        int k = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                retval[k++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(retval, k);
+    }
+
+    /**
+     * The literal text every match of a pattern must contain, upper case. Only what is
+     * certain is kept: a pattern with an alternation has none, and classes, groups, wildcards
+     * and optional characters end a run.
+     */
+    static final class Literals {
+        final @Nullable String prefix;
+        final List<String> runs;
+
+        private Literals(@Nullable String prefix, List<String> runs) {
+            this.prefix = prefix;
+            this.runs = runs;
+        }
+
+        static Literals of(String regex) {
+            Literals retval = new Literals(null, new ArrayList<>());
+            if (regex.indexOf('|') >= 0 || regex.contains("[:") || regex.contains("[=")
+                    || regex.contains("[.")) {
+                return retval;
+            }
+            boolean atStart = regex.startsWith("^");
+            StringBuilder run = new StringBuilder();
+            int i = atStart ? 1 : 0;
+            while (i < regex.length()) {
+                char c = regex.charAt(i);
+                int next;
+                if (c == '\\' && i + 1 < regex.length()
+                        && !Character.isLetterOrDigit(regex.charAt(i + 1))) {
+                    run.append(regex.charAt(i + 1));
+                    i += 2;
+                    continue;
+                } else if (c == '\\') {
+                    // a class such as \d or \w
+                    next = i + 2;
+                } else if (c == '[' || c == '(') {
+                    int close = c == '[' ? closeBracket(regex, i) : closeParen(regex, i);
+                    if (close < 0) {
+                        return retval;
+                    }
+                    next = close + 1;
+                } else if (c == '*' || c == '?' || (c == '{' && regex.startsWith("{0", i))) {
+                    // the character before is optional
+                    if (run.length() > 0) {
+                        run.setLength(run.length() - 1);
+                    }
+                    next = i;
+                } else if (c == '+' || c == '{') {
+                    next = i;
+                } else if (c == '.' || c == '^' || c == '$') {
+                    next = i + 1;
+                } else {
+                    run.append(c);
+                    i++;
+                    continue;
+                }
+                if (atStart) {
+                    retval = new Literals(run.toString().toUpperCase(Locale.ROOT), retval.runs);
+                    atStart = false;
+                }
+                if (run.length() > 0) {
+                    retval.runs.add(run.toString().toUpperCase(Locale.ROOT));
+                    run.setLength(0);
+                }
+                // a quantifier of what ended the run
+                i = next < regex.length() && "*?+{".indexOf(regex.charAt(next)) >= 0
+                        ? skipQuantifier(regex, next)
+                        : next;
+            }
+            if (run.length() > 0) {
+                String last = run.toString().toUpperCase(Locale.ROOT);
+                retval.runs.add(last);
+                if (atStart) {
+                    retval = new Literals(last, retval.runs);
+                }
+            }
+            return retval;
+        }
+
+        private static int skipQuantifier(String regex, int i) {
+            if (regex.charAt(i) == '{') {
+                int close = regex.indexOf('}', i);
+                i = close < 0 ? regex.length() : close + 1;
+            } else {
+                i++;
+            }
+            // lazy or possessive
+            if (i < regex.length() && (regex.charAt(i) == '?' || regex.charAt(i) == '+')) {
+                i++;
+            }
+            return i;
+        }
+
+        private static int closeBracket(String regex, int open) {
+            int i = open + 1;
+            if (i < regex.length() && regex.charAt(i) == '^') {
+                i++;
+            }
+            if (i < regex.length() && regex.charAt(i) == ']') {
+                i++;
+            }
+            while (i < regex.length()) {
+                char c = regex.charAt(i);
+                if (c == '\\') {
+                    i += 2;
+                } else if (c == ']') {
+                    return i;
+                } else {
+                    i++;
+                }
+            }
+            return -1;
+        }
+
+        private static int closeParen(String regex, int open) {
+            int depth = 0;
+            for (int i = open; i < regex.length(); i++) {
+                char c = regex.charAt(i);
+                if (c == '\\') {
+                    i++;
+                } else if (c == '[') {
+                    i = closeBracket(regex, i);
+                    if (i < 0) {
+                        return -1;
+                    }
+                } else if (c == '(') {
+                    depth++;
+                } else if (c == ')' && --depth == 0) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    private static final class IntList {
+        private int[] values = new int[4];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
@@ -33,12 +33,16 @@ import cwms.cda.api.errors.AlreadyExists;
 import cwms.cda.api.errors.InvalidItemException;
 import cwms.cda.api.errors.NotFoundException;
 import cwms.cda.datasource.ConnectionPreparingDataSource;
+import cwms.cda.datasource.RequestScopedDataSource;
+import cwms.cda.datasource.SessionState;
 import cwms.cda.security.CwmsAuthException;
 import io.javalin.http.Context;
 import java.math.BigDecimal;
+import java.sql.CallableStatement;
+import java.sql.Clob;
 import java.sql.Connection;
-import java.sql.SQLClientInfoException;
 import java.sql.SQLException;
+import java.sql.Types;
 import java.time.DateTimeException;
 import java.time.ZoneId;
 import java.util.Arrays;
@@ -100,17 +104,39 @@ public abstract class JooqDao<T> extends Dao<T> {
      * recognized SQLExceptions in more specific CDA exception types.  This
      * enables ApiServlet to handle the exception specialization in a more
      * generic way.
+     * When {@link ApiServlet#REQUEST_SCOPED_CONNECTION_KEY} is set, every DSLContext of a
+     * request shares one prepared connection, which ApiServlet releases once the request is done.
      *
      * @param ctx The current request context.
      * @return A DSLContext for the current request.
      */
     public static DSLContext getDslContext(Context ctx) {
+        return getDslContext(ctx, ApiServlet.isRequestScopedConnection());
+    }
+
+    /**
+     * For work a request runs in parallel, such as the items of a batch. Like
+     * {@link #getDslContext(Context)}, except statements never share the request's connection:
+     * each takes its own prepared connection from the pool, so the workers don't wait on one
+     * another.
+     *
+     * @param ctx The current request context.
+     * @return A DSLContext for the current request.
+     */
+    public static DSLContext getParallelDslContext(Context ctx) {
+        return getDslContext(ctx, false);
+    }
+
+    private static DSLContext getDslContext(Context ctx, boolean requestScoped) {
         DSLContext retVal;
         final String officeId = ctx.attribute(ApiServlet.OFFICE_ID);
         final DataSource dataSource = ctx.attribute(ApiServlet.DATA_SOURCE);
         if (dataSource != null) {
             DataSource wrappedDataSource = new ConnectionPreparingDataSource(connection ->
                     setClientInfo(ctx, connection), dataSource);
+            if (requestScoped) {
+                wrappedDataSource = requestScoped(ctx, dataSource, wrappedDataSource);
+            }
             retVal = DSL.using(wrappedDataSource, SQLDialect.ORACLE18C);
         } else {
             // Some tests still use this method
@@ -125,6 +151,38 @@ public abstract class JooqDao<T> extends Dao<T> {
         return retVal;
     }
 
+    /**
+     * The connection shared by a request. Authorization changes how a request's connections are
+     * prepared, so one taken before that is released and another pinned for the rest.
+     */
+    private static DataSource requestScoped(Context ctx, DataSource dataSource,
+                                            DataSource wrappedDataSource) {
+        RequestScopedDataSource current = ctx.attribute(ApiServlet.REQUEST_CONNECTION);
+        if (current != null && current.isFor(dataSource)) {
+            return current;
+        }
+        if (current != null) {
+            current.release();
+        }
+        RequestScopedDataSource retval =
+                new RequestScopedDataSource(wrappedDataSource, dataSource, current);
+        ctx.attribute(ApiServlet.REQUEST_CONNECTION, retval);
+        return retval;
+    }
+
+    /**
+     * For work done outside of any request, such as a background poll. Connections are taken
+     * from the pool for each statement, and the same ExecuteListener as a request's is added.
+     *
+     * @param dataSource The pool, as placed into the request context by ApiServlet.
+     * @return A DSLContext that isn't tied to a request.
+     */
+    public static DSLContext getDslContext(DataSource dataSource) {
+        DSLContext retVal = DSL.using(dataSource, SQLDialect.ORACLE18C);
+        retVal.configuration().set(new DefaultExecuteListenerProvider(listener));
+        return retVal;
+    }
+
     public static DSLContext getDslContext(Connection connection, String officeId) {
         // Because this dsl is constructed with a connection, jOOQ will reuse the provided
         // connection and not get new connections from a DataSource.  See:
@@ -136,18 +194,30 @@ public abstract class JooqDao<T> extends Dao<T> {
         // This method should probably be called from within a connection{  } block and jOOQ
         // code within the block should use the returned DSLContext or the connection.
         DSLContext dsl = DSL.using(connection, SQLDialect.ORACLE18C);
-        CWMS_ENV_PACKAGE.call_SET_SESSION_OFFICE_ID(dsl.configuration(), officeId);
+        try {
+            SessionState.setOffice(connection, officeId, () ->
+                    CWMS_ENV_PACKAGE.call_SET_SESSION_OFFICE_ID(dsl.configuration(), officeId));
+        } catch (SQLException ex) {
+            throw new DataAccessException("Unable to set session office id to " + officeId, ex);
+        }
 
         return dsl;
     }
 
     private static Connection setClientInfo(Context ctx, Connection connection) {
+        String ecid = ApiServlet.APPLICATION_TITLE + " " + ApiServlet.VERSION;
+        String module = ctx.endpointHandlerPath();
+        String action = ctx.method();
+        String clientId = ctx.url().replace(ctx.path(), "") + ctx.contextPath();
         try {
-            connection.setClientInfo("OCSID.ECID", ApiServlet.APPLICATION_TITLE + " " + ApiServlet.VERSION);
-            connection.setClientInfo("OCSID.MODULE", ctx.endpointHandlerPath());
-            connection.setClientInfo("OCSID.ACTION", ctx.method());
-            connection.setClientInfo("OCSID.CLIENTID", ctx.url().replace(ctx.path(), "") + ctx.contextPath());
-        } catch (SQLClientInfoException ex) {
+            SessionState.setClientInfo(connection,
+                    String.join("\n", ecid, module, action, clientId), () -> {
+                        connection.setClientInfo("OCSID.ECID", ecid);
+                        connection.setClientInfo("OCSID.MODULE", module);
+                        connection.setClientInfo("OCSID.ACTION", action);
+                        connection.setClientInfo("OCSID.CLIENTID", clientId);
+                    });
+        } catch (SQLException ex) {
             logger.atWarning()
                     .withCause(ex)
                     .log("Unable to set client info on connection.");
@@ -559,7 +629,15 @@ public abstract class JooqDao<T> extends Dao<T> {
      */
     protected static void connection(DSLContext dslContext, ConnectionRunnable cr) {
         try {
-            dslContext.connection(cr);
+            dslContext.connection(c -> {
+                try {
+                    cr.run(c);
+                } catch (Throwable t) {
+                    // the failure may have left the session part way through a change
+                    SessionState.forget(c);
+                    throw t;
+                }
+            });
         } catch (RuntimeException e) {
             throw wrapException(e);
         }
@@ -574,12 +652,53 @@ public abstract class JooqDao<T> extends Dao<T> {
      */
     protected static <R> R connectionResult(DSLContext dslContext, ConnectionCallable<R> var1) {
         try {
-            return dslContext.connectionResult(var1);
+            return dslContext.connectionResult(c -> {
+                try {
+                    return var1.run(c);
+                } catch (Throwable t) {
+                    // the failure may have left the session part way through a change
+                    SessionState.forget(c);
+                    throw t;
+                }
+            });
         } catch (RuntimeException e) {
             throw wrapException(e);
         }
     }
 
+    /**
+     * Calls a stored function that returns a CLOB and hands the java.sql.Clob, which may be
+     * null, to the consumer while the connection is still open. Unlike the generated
+     * call_*_F methods, which read the whole CLOB into a String, this lets the caller stream
+     * the result.
+     * @param dslContext the DSLContext to use
+     * @param function the qualified name of the function, e.g. cwms_ts.retrieve_time_series_f
+     * @param consumer handed the result
+     * @param args the arguments of the function, in order
+     */
+    protected static void callClobFunction(DSLContext dslContext, String function,
+                                           ClobDao.ClobConsumer consumer, String... args) {
+        String sql = "{? = call " + function + "("
+                + String.join(",", Collections.nCopies(args.length, "?")) + ")}";
+        connection(dslContext, c -> {
+            try (CallableStatement call = c.prepareCall(sql)) {
+                call.registerOutParameter(1, Types.CLOB);
+                for (int i = 0; i < args.length; i++) {
+                    call.setString(i + 2, args[i]);
+                }
+                call.execute();
+                Clob clob = call.getClob(1);
+                try {
+                    consumer.accept(clob);
+                } finally {
+                    if (clob != null) {
+                        clob.free();
+                    }
+                }
+            }
+        });
+    }
+
     public static String formatBool(Boolean tf) {
         String parsed = null;
         if (tf != null) {
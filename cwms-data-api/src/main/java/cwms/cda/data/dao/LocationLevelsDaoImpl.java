@@ -80,7 +80,6 @@ import org.jooq.TableField;
 import org.jooq.conf.ParamType;
 import org.jooq.exception.DataAccessException;
 import org.jooq.impl.DSL;
-import usace.cwms.db.jooq.codegen.packages.CWMS_ENV_PACKAGE;
 import usace.cwms.db.jooq.codegen.packages.CWMS_LEVEL_PACKAGE;
 import usace.cwms.db.jooq.codegen.packages.CWMS_LOC_PACKAGE;
 import usace.cwms.db.jooq.codegen.packages.CWMS_UTIL_PACKAGE;
@@ -551,11 +550,14 @@ public class LocationLevelsDaoImpl extends JooqDao<LocationLevel> implements Loc
         }
         ZoneId locationZoneId = getLocationZoneId(levelRef.getLocationRef());
         ZTSV_ARRAY specifiedTimes = buildTsvArray(start, end, interval, locationZoneId);
-        CWMS_ENV_PACKAGE.call_SET_SESSION_OFFICE_ID(dsl.configuration(), officeId);
-
-        ZTSV_ARRAY locLvlValues = call_RETRIEVE_LOC_LVL_VALUES3(dsl.configuration(),
-                specifiedTimes, locationLevelId, units, attributeId, attributeValue,
-                attributeUnits, "UTC", officeId);
+        final String levelAttributeId = attributeId;
+        final Number levelAttributeValue = attributeValue;
+        final String levelAttributeUnits = attributeUnits;
+        // the session office has to be set on the connection the retrieval runs on
+        ZTSV_ARRAY locLvlValues = connectionResult(dsl, c ->
+                call_RETRIEVE_LOC_LVL_VALUES3(getDslContext(c, officeId).configuration(),
+                        specifiedTimes, locationLevelId, units, levelAttributeId,
+                        levelAttributeValue, levelAttributeUnits, "UTC", officeId));
 
         if (locLvlValues.isEmpty()) {
             throw new NotFoundException(String.format(
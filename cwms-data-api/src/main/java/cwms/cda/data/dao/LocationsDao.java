@@ -31,7 +31,8 @@ import java.util.List;
 import org.geojson.FeatureCollection;
 
 public interface LocationsDao {
-    String getLocations(String names, String format, String units, String datum, String officeId);
+    void getLocations(String names, String format, String units, String datum, String officeId,
+                      ClobDao.ClobConsumer consumer);
 
     List<Location> getLocations(String names, String units, String datum, String officeId);
 
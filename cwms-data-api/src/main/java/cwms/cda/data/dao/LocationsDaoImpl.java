@@ -86,7 +86,7 @@ import usace.cwms.db.jooq.codegen.tables.AV_LOC2;
 
 public class LocationsDaoImpl extends JooqDao<Location> implements LocationsDao {
     private static final Logger logger = Logger.getLogger(LocationsDaoImpl.class.getName());
-    private static final long DELETED_TS_MARKER = 0L;
+    static final long DELETED_TS_MARKER = 0L;
 
     public LocationsDaoImpl(DSLContext dsl) {
         super(dsl);
@@ -94,10 +94,9 @@ public class LocationsDaoImpl extends JooqDao<Location> implements LocationsDao
 
 
     @Override
-    public String getLocations(String names, String format, String units, String datum,
-                               String officeId) {
-
-        return CWMS_LOC_PACKAGE.call_RETRIEVE_LOCATIONS_F(dsl.configuration(),
+    public void getLocations(String names, String format, String units, String datum,
+                             String officeId, ClobDao.ClobConsumer consumer) {
+        callClobFunction(dsl, "cwms_loc.retrieve_locations_f", consumer,
                 names, format, units, datum, officeId);
     }
 
@@ -382,7 +381,7 @@ public class LocationsDaoImpl extends JooqDao<Location> implements LocationsDao
         // "condition" needs to be used by the count query and the results query.
         Condition condition = buildWhereCondition(params);
 
-        int total;
+        Integer total = null;
         String cursorLocation; // The location-id of the cursor in the results
         String cursorOffice; // If the user did not provide a value in the "office" filter then
         // results may contain locations from multiple offices. cursorOffice will track the office
@@ -390,12 +389,6 @@ public class LocationsDaoImpl extends JooqDao<Location> implements LocationsDao
         if (catPage == null) {
             cursorLocation = "*";
             cursorOffice = null;
-
-            SelectConditionStep<Record1<Integer>> count = dsl.select(count(asterisk()))
-                .from(avLoc2)
-                .where(condition);
-            logger.log(Level.FINER, () -> count.getSQL(ParamType.INLINED));
-            total = count.fetchOne().value1();
         } else {
             cursorLocation = catPage.getCursorId();
             cursorOffice = catPage.getCurOffice();
@@ -445,11 +438,26 @@ public class LocationsDaoImpl extends JooqDao<Location> implements LocationsDao
                     .findFirst()
                     .orElseThrow(() -> new DataAccessException("Could not find location for list of aliases: " + l));
                 Set<LocationAlias> aliases = l.stream().filter(r -> r.getALIASED_ITEM() != null)
-                    .map(this::buildLocationAlias).collect(toSet());
+                    .map(LocationsDaoImpl::buildLocationAlias).collect(toSet());
                 return buildCatalogEntry(row, aliases);
             })
             .collect(toList());
 
+        if (catPage == null) {
+            SelectConditionStep<Record1<Integer>> count = dsl.select(count(asterisk()))
+                .from(avLoc2)
+                .where(buildWhereCondition(params));
+            total = CountCache.total(params.getCountMode(), params.countKey("catalog.locations"),
+                    entries.size(), pageSize,
+                    () -> {
+                        logger.log(Level.FINER, () -> count.getSQL(ParamType.INLINED));
+                        return count.fetchOne().value1();
+                    },
+                    () -> CountCache.explainRows(dsl, dsl.selectOne()
+                            .from(avLoc2)
+                            .where(buildWhereCondition(params))));
+        }
+
         return new Catalog(cursorLocation, total, pageSize, entries, params);
     }
 
@@ -504,13 +512,13 @@ public class LocationsDaoImpl extends JooqDao<Location> implements LocationsDao
         return pageParam;
     }
 
-    private LocationAlias buildLocationAlias(usace.cwms.db.jooq.codegen.tables.records.AV_LOC2 row) {
+    static LocationAlias buildLocationAlias(usace.cwms.db.jooq.codegen.tables.records.AV_LOC2 row) {
         return new LocationAlias(row.getLOC_ALIAS_CATEGORY() + "-" + row.getLOC_ALIAS_GROUP(),
             row.getLOCATION_ID());
     }
 
     @NotNull
-    private static LocationCatalogEntry buildCatalogEntry(usace.cwms.db.jooq.codegen.tables.records.AV_LOC2 loc,
+    static LocationCatalogEntry buildCatalogEntry(usace.cwms.db.jooq.codegen.tables.records.AV_LOC2 loc,
                                                           Set<LocationAlias> aliases) {
 
         return new LocationCatalogEntry.Builder()
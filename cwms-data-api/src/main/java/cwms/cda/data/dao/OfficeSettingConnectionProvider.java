@@ -1,5 +1,6 @@
 package cwms.cda.data.dao;
 
+import cwms.cda.datasource.SessionState;
 import java.sql.Connection;
 import java.sql.SQLException;
 import javax.sql.DataSource;
@@ -23,7 +24,8 @@ class OfficeSettingConnectionProvider extends DataSourceConnectionProvider {
         Connection conn = super.acquire();
         try {
             DSLContext dsl = DSL.using(conn, SQLDialect.ORACLE18C);
-            CWMS_ENV_PACKAGE.call_SET_SESSION_OFFICE_ID(dsl.configuration(), officeId);
+            SessionState.setOffice(conn, officeId, () ->
+                    CWMS_ENV_PACKAGE.call_SET_SESSION_OFFICE_ID(dsl.configuration(), officeId));
             return conn;
         } catch (Exception e) {
             try {
@@ -0,0 +1,124 @@
+package cwms.cda.data.dao;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
+import cwms.cda.security.DataApiPrincipal;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * The principals of recently presented credentials, an API key or the EDIPI of a validated
+ * token, so that a client making many requests is only looked up in the database once in a
+ * while.
+ *
+ * <p>Entries are keyed by a SHA-256 hash of the credential, never the credential itself, and
+ * expire after a short time so that role changes made in the database are picked up, or when
+ * the key or token they were found with expires. Creating or deleting a key through this API
+ * drops every entry of its user at once. Failed lookups aren't cached.
+ */
+public final class PrincipalCache {
+    public static final String NAME = "principals";
+    public static final String PROP_BASE = Dao.PROP_BASE + "." + NAME;
+
+    private static final Cache<String, Entry> cache = CacheBuilder.newBuilder()
+            .maximumSize(Integer.getInteger(PROP_BASE + ".maxSize", 1000))
+            .expireAfterWrite(Integer.getInteger(PROP_BASE + ".expireAfterSeconds", 60),
+                    TimeUnit.SECONDS)
+            .recordStats()
+            .build();
+
+    // bumped on every invalidation, so a lookup that raced one isn't cached
+    private static final AtomicLong generation = new AtomicLong();
+
+    private PrincipalCache() {
+    }
+
+    /**
+     * Returns the principal of a credential, looking it up if it isn't cached.
+     *
+     * @param credential the API key, or another credential with a prefix that sets it apart
+     *                   from any API key
+     * @param lookup reads the principal from the database; may throw
+     *               {@link cwms.cda.security.CwmsAuthException}
+     */
+    public static DataApiPrincipal get(@Nullable String credential, Supplier<Entry> lookup) {
+        if (credential == null) {
+            return lookup.get().getPrincipal();
+        }
+        String hash = hash(credential);
+        Entry retval = cache.getIfPresent(hash);
+        if (retval == null || retval.isExpired()) {
+            long before = generation.get();
+            retval = lookup.get();
+            if (generation.get() == before) {
+                cache.put(hash, retval);
+            }
+        }
+        return retval.getPrincipal();
+    }
+
+    /**
+     * Drops every cached credential of a user.
+     */
+    public static void invalidateUser(String userName) {
+        generation.incrementAndGet();
+        cache.asMap().values().removeIf(e -> e.principal.getName().equalsIgnoreCase(userName));
+    }
+
+    public static void invalidateAll() {
+        generation.incrementAndGet();
+        cache.invalidateAll();
+    }
+
+    /**
+     * A principal and when the credential it was found by expires.
+     */
+    public static final class Entry {
+        private final DataApiPrincipal principal;
+        private final @Nullable Instant expires;
+
+        /**
+         * @param expires null if the credential doesn't expire
+         */
+        public Entry(DataApiPrincipal principal, @Nullable Instant expires) {
+            this.principal = principal;
+            this.expires = expires;
+        }
+
+        public DataApiPrincipal getPrincipal() {
+            return principal;
+        }
+
+        public boolean isExpired() {
+            return expires != null && !Instant.now().isBefore(expires);
+        }
+    }
+
+    private static String hash(String credential) {
+        return Hashing.sha256().hashString(credential, StandardCharsets.UTF_8).toString();
+    }
+
+    public static void registerMetrics(@Nullable MetricRegistry metrics) {
+        if (metrics == null) {
+            return;
+        }
+        String hrName = MetricRegistry.name(PrincipalCache.class.getName(), NAME, "hit-rate");
+        if (metrics.getGauges().get(hrName) == null) {
+            MetricRegistry.MetricSupplier<? extends Gauge> hr =
+                    () -> (Gauge<Double>) () -> cache.stats().hitRate();
+            metrics.gauge(hrName, hr);
+        }
+        String sizeName = MetricRegistry.name(PrincipalCache.class.getName(), NAME, "size");
+        if (metrics.getGauges().get(sizeName) == null) {
+            MetricRegistry.MetricSupplier<? extends Gauge> size = () -> (Gauge<Long>) cache::size;
+            metrics.gauge(sizeName, size);
+        }
+    }
+}
@@ -41,8 +41,9 @@ public interface RatingDao {
     RatingSet retrieve(RatingSet.DatabaseLoadMethod method, String officeId, String specificationId,
                        Instant start, Instant end) throws IOException, RatingException;
 
-    String retrieveRatings(String format, String names, String unit, String datum, String office,
-                           String start, String end, String timezone);
+    void retrieveRatings(String format, String names, String unit, String datum, String office,
+                         String start, String end, String timezone,
+                         ClobDao.ClobConsumer consumer);
 
 
     void store(String ratingSet, boolean storeTemplate) throws IOException, RatingException;
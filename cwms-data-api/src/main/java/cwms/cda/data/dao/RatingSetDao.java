@@ -161,10 +161,10 @@ public class RatingSetDao extends JooqDao<RatingSet> implements RatingDao {
 
 
     @Override
-    public String retrieveRatings(String format, String names, String unit, String datum,
-                                  String office, String start,
-                                  String end, String timezone) {
-        return CWMS_RATING_PACKAGE.call_RETRIEVE_RATINGS_F(dsl.configuration(), names, format,
+    public void retrieveRatings(String format, String names, String unit, String datum,
+                                String office, String start,
+                                String end, String timezone, ClobDao.ClobConsumer consumer) {
+        callClobFunction(dsl, "cwms_rating.retrieve_ratings_f", consumer, names, format,
                 unit, datum, start, end,
                 timezone, office);
     }
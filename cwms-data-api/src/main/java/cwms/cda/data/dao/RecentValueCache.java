@@ -0,0 +1,378 @@
+package cwms.cda.data.dao;
+
+import static org.jooq.impl.DSL.max;
+import static org.jooq.impl.DSL.partitionBy;
+import static usace.cwms.db.jooq.codegen.tables.AV_TS_EXTENTS_UTC.AV_TS_EXTENTS_UTC;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import cwms.cda.api.enums.UnitSystem;
+import cwms.cda.data.dto.TsvDqu;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import org.jetbrains.annotations.Nullable;
+import org.jooq.Condition;
+import org.jooq.DSLContext;
+import org.jooq.Field;
+import org.jooq.Record;
+import org.jooq.Record3;
+import org.jooq.SelectConditionStep;
+import org.jooq.conf.ParamType;
+import org.jooq.impl.DSL;
+import usace.cwms.db.jooq.codegen.tables.AV_TSV_DQU;
+
+/**
+ * Caches the most recent value of each time series, in the default units of a unit system,
+ * for the status boards that ask for the same groups over and over.
+ *
+ * <p>Entries are keyed by ts_code and unit system. Before an entry is used the last update
+ * time of the time series' extents is compared to the one it was read at; when it moved, only
+ * the values entered since are read. An entry is read in full the first time, when the
+ * requested window changes, or when the latest value was deleted. Stores and deletes made
+ * through this API drop the entry of that time series.
+ */
+public final class RecentValueCache {
+    private static final Logger logger = Logger.getLogger(RecentValueCache.class.getName());
+
+    public static final String NAME = "recentValues";
+    public static final String PROP_BASE = TimeSeriesDaoImpl.PROP_BASE + "." + NAME;
+
+    // entries checked against the extents this recently are used as they are
+    private static final long MIN_CHECK_MILLIS = TimeUnit.SECONDS.toMillis(
+            Integer.getInteger(PROP_BASE + ".minCheckSeconds", 5));
+
+    private static final Cache<List<Object>, Entry> cache = CacheBuilder.newBuilder()
+            .maximumSize(Integer.getInteger(PROP_BASE + ".maxSize", 50000))
+            .expireAfterAccess(Integer.getInteger(PROP_BASE + ".expireAfterSeconds", 3600),
+                    TimeUnit.SECONDS)
+            .recordStats()
+            .build();
+
+    // ts_code by upper case office and time series id, so a store can find its entries
+    private static final Cache<List<String>, Long> tsCodes = CacheBuilder.newBuilder()
+            .maximumSize(Integer.getInteger(PROP_BASE + ".maxSize", 50000))
+            .expireAfterAccess(Integer.getInteger(PROP_BASE + ".expireAfterSeconds", 3600),
+                    TimeUnit.SECONDS)
+            .build();
+
+    private RecentValueCache() {
+    }
+
+    /**
+     * Returns the most recent value of each time series that has one in the window.
+     *
+     * @return the values keyed by ts_code
+     */
+    public static Map<Long, TsvDqu> get(DSLContext dsl, Collection<Series> series,
+                                        Timestamp pastLimit, Timestamp futureLimit,
+                                        UnitSystem unitSystem) {
+        Map<Long, Series> byCode = new HashMap<>();
+        for (Series s : series) {
+            byCode.putIfAbsent(s.tsCode, s);
+            tsCodes.put(idKey(s.officeId, s.tsId), s.tsCode);
+        }
+
+        long now = System.currentTimeMillis();
+        Map<Long, TsvDqu> retval = new HashMap<>();
+        Map<Long, Entry> toCheck = new HashMap<>();
+        for (Long tsCode : byCode.keySet()) {
+            Entry entry = cache.getIfPresent(key(tsCode, unitSystem));
+            if (entry != null && entry.isFor(pastLimit, futureLimit)
+                    && now - entry.checkedAt < MIN_CHECK_MILLIS) {
+                if (entry.value != null) {
+                    retval.put(tsCode, entry.value);
+                }
+            } else {
+                toCheck.put(tsCode, entry);
+            }
+        }
+        if (toCheck.isEmpty()) {
+            return retval;
+        }
+
+        Map<Long, Record3<BigDecimal, Timestamp, Timestamp>> extents = new HashMap<>();
+        dsl.select(
+                        AV_TS_EXTENTS_UTC.TS_CODE,
+                        max(AV_TS_EXTENTS_UTC.LAST_UPDATE),
+                        max(AV_TS_EXTENTS_UTC.LATEST_TIME))
+                .from(AV_TS_EXTENTS_UTC)
+                .where(AV_TS_EXTENTS_UTC.TS_CODE.in(toCheck.keySet().stream()
+                        .map(BigDecimal::valueOf).collect(Collectors.toList())))
+                .groupBy(AV_TS_EXTENTS_UTC.TS_CODE)
+                .fetch()
+                .forEach(r -> extents.put(r.value1().longValue(), r));
+
+        List<Series> toLoad = new ArrayList<>();
+        List<Series> toUpdate = new ArrayList<>();
+        Timestamp enteredAfter = null;
+        Map<Long, Entry> refreshed = new HashMap<>();
+        for (Map.Entry<Long, Entry> check : toCheck.entrySet()) {
+            Long tsCode = check.getKey();
+            Entry entry = check.getValue();
+            Record3<BigDecimal, Timestamp, Timestamp> extent = extents.get(tsCode);
+            Timestamp lastUpdate = extent == null ? null : extent.value2();
+            Timestamp latestTime = extent == null ? null : extent.value3();
+            if (entry == null || !entry.isFor(pastLimit, futureLimit)) {
+                toLoad.add(byCode.get(tsCode));
+            } else if (Objects.equals(lastUpdate, entry.lastUpdate)) {
+                refreshed.put(tsCode, entry.checked(now));
+            } else if (entry.lastUpdate == null || (entry.value != null
+                    && (latestTime == null || latestTime.before(entry.value.getDateTime())))) {
+                // nothing to start from, or the latest value was deleted
+                toLoad.add(byCode.get(tsCode));
+            } else {
+                toUpdate.add(byCode.get(tsCode));
+                if (enteredAfter == null || entry.lastUpdate.before(enteredAfter)) {
+                    enteredAfter = entry.lastUpdate;
+                }
+            }
+        }
+
+        if (!toLoad.isEmpty()) {
+            Map<Long, TsvDqu> loaded = latest(dsl, toLoad, pastLimit, futureLimit, unitSystem,
+                    null);
+            for (Series s : toLoad) {
+                refreshed.put(s.tsCode, new Entry(loaded.get(s.tsCode), lastUpdate(extents, s),
+                        pastLimit, futureLimit, now));
+            }
+        }
+        if (!toUpdate.isEmpty()) {
+            Map<Long, TsvDqu> entered = latest(dsl, toUpdate, pastLimit, futureLimit, unitSystem,
+                    enteredAfter);
+            for (Series s : toUpdate) {
+                TsvDqu value = newer(toCheck.get(s.tsCode).value, entered.get(s.tsCode));
+                refreshed.put(s.tsCode, new Entry(value, lastUpdate(extents, s), pastLimit,
+                        futureLimit, now));
+            }
+        }
+
+        for (Map.Entry<Long, Entry> entry : refreshed.entrySet()) {
+            cache.put(key(entry.getKey(), unitSystem), entry.getValue());
+            if (entry.getValue().value != null) {
+                retval.put(entry.getKey(), entry.getValue().value);
+            }
+        }
+        return retval;
+    }
+
+    /**
+     * Picks the value that is now the most recent, given the one that was and the most recent
+     * of those entered since.
+     */
+    static TsvDqu newer(@Nullable TsvDqu cached, @Nullable TsvDqu entered) {
+        if (entered == null) {
+            return cached;
+        }
+        if (cached == null || !entered.getDateTime().before(cached.getDateTime())) {
+            return entered;
+        }
+        return cached;
+    }
+
+    public static void invalidate(@Nullable String office, @Nullable String tsId) {
+        if (office == null || tsId == null) {
+            cache.invalidateAll();
+            return;
+        }
+        Long tsCode = tsCodes.getIfPresent(idKey(office, tsId));
+        if (tsCode != null) {
+            for (UnitSystem unitSystem : UnitSystem.values()) {
+                cache.invalidate(key(tsCode, unitSystem));
+            }
+        }
+    }
+
+    public static void invalidateAll() {
+        cache.invalidateAll();
+        tsCodes.invalidateAll();
+    }
+
+    public static void registerMetrics(@Nullable MetricRegistry metrics) {
+        if (metrics == null) {
+            return;
+        }
+        String hrName = MetricRegistry.name(RecentValueCache.class.getName(), NAME, "hit-rate");
+        if (metrics.getGauges().get(hrName) == null) {
+            MetricRegistry.MetricSupplier<? extends Gauge> hr = () -> (Gauge<Double>) () -> cache.stats().hitRate();
+            metrics.gauge(hrName, hr);
+        }
+        String sizeName = MetricRegistry.name(RecentValueCache.class.getName(), NAME, "size");
+        if (metrics.getGauges().get(sizeName) == null) {
+            MetricRegistry.MetricSupplier<? extends Gauge> size = () -> (Gauge<Long>) cache::size;
+            metrics.gauge(sizeName, size);
+        }
+    }
+
+    private static List<Object> key(Long tsCode, UnitSystem unitSystem) {
+        return Arrays.asList(tsCode, unitSystem);
+    }
+
+    private static List<String> idKey(String office, String tsId) {
+        return Arrays.asList(office.toUpperCase(Locale.ROOT), tsId.toUpperCase(Locale.ROOT));
+    }
+
+    @Nullable
+    private static Timestamp lastUpdate(Map<Long, Record3<BigDecimal, Timestamp, Timestamp>> extents,
+                                        Series series) {
+        Record3<BigDecimal, Timestamp, Timestamp> extent = extents.get(series.tsCode);
+        return extent == null ? null : extent.value2();
+    }
+
+    /**
+     * Reads the most recent value of each time series in the window, in the default units of
+     * its base parameter, optionally only from the values entered after a time.
+     */
+    private static Map<Long, TsvDqu> latest(DSLContext dsl, List<Series> series,
+                                            Timestamp pastLimit, Timestamp futureLimit,
+                                            UnitSystem unitSystem,
+                                            @Nullable Timestamp enteredAfter) {
+        AV_TSV_DQU tsvView = AV_TSV_DQU.AV_TSV_DQU;
+
+        Condition inUnits = inDefaultUnits(dsl, series, unitSystem);
+        if (inUnits == null) {
+            return new HashMap<>();
+        }
+
+        Condition whereCondition = inUnits
+                .and(tsvView.VALUE.isNotNull())
+                .and(tsvView.DATE_TIME.lt(futureLimit))
+                .and(tsvView.DATE_TIME.gt(pastLimit))
+                .and(tsvView.START_DATE.le(futureLimit))
+                .and(tsvView.END_DATE.gt(pastLimit));
+        if (enteredAfter != null) {
+            whereCondition = whereCondition.and(tsvView.DATA_ENTRY_DATE.gt(enteredAfter));
+        }
+
+        Field<Timestamp> maxDateTimeField = max(tsvView.DATE_TIME)
+                .over(partitionBy(tsvView.TS_CODE))
+                .as(TimeSeriesDaoImpl.MAX_DATE_TIME);
+
+        SelectConditionStep<? extends Record> innerSelect = dsl.select(
+                        tsvView.OFFICE_ID, tsvView.CWMS_TS_ID, tsvView.TS_CODE, tsvView.UNIT_ID,
+                        tsvView.DATE_TIME, tsvView.VERSION_DATE, tsvView.DATA_ENTRY_DATE,
+                        tsvView.VALUE, tsvView.QUALITY_CODE, tsvView.START_DATE,
+                        tsvView.END_DATE, maxDateTimeField)
+                .from(tsvView)
+                .where(whereCondition);
+
+        SelectConditionStep<? extends Record> query = dsl.select(innerSelect.fields())
+                .from(innerSelect)
+                .where(innerSelect.field(tsvView.DATE_TIME)
+                        .eq(innerSelect.field(maxDateTimeField)));
+
+        logger.fine(() -> query.getSQL(ParamType.INLINED));
+
+        Map<Long, TsvDqu> retval = new HashMap<>();
+        for (Record r : query.fetch()) {
+            TsvDqu tsv = TimeSeriesDaoImpl.buildTsvDqu(tsvView, r);
+            retval.merge(r.getValue(tsvView.TS_CODE), tsv, (a, b) ->
+                    b.getVersionDate() != null && (a.getVersionDate() == null
+                            || b.getVersionDate().after(a.getVersionDate())) ? b : a);
+        }
+        return retval;
+    }
+
+    /**
+     * Builds the condition on {@code AV_TSV_DQU} that selects the time series in the default
+     * units of their base parameters, looked up once per base parameter.
+     *
+     * @return null if none of the time series has default units
+     */
+    @Nullable
+    static Condition inDefaultUnits(DSLContext dsl, Collection<Series> series,
+                                    UnitSystem unitSystem) {
+        AV_TSV_DQU tsvView = AV_TSV_DQU.AV_TSV_DQU;
+
+        Set<String> baseParameters = new LinkedHashSet<>();
+        for (Series s : series) {
+            baseParameters.add(s.baseParameterId);
+        }
+        Map<String, String> defaultUnits = TsMetadataCache.getDefaultUnits(dsl, baseParameters,
+                unitSystem.getValue());
+
+        // One (ts_code in (...) and unit_id = ...) per default unit
+        Map<String, List<Long>> codesByUnits = new HashMap<>();
+        for (Series s : series) {
+            String units = defaultUnits.get(s.baseParameterId.toUpperCase(Locale.ROOT));
+            if (units != null) {
+                codesByUnits.computeIfAbsent(units, u -> new ArrayList<>()).add(s.tsCode);
+            }
+        }
+        if (codesByUnits.isEmpty()) {
+            return null;
+        }
+        Condition retval = DSL.falseCondition();
+        for (Map.Entry<String, List<Long>> entry : codesByUnits.entrySet()) {
+            retval = retval.or(tsvView.TS_CODE.in(entry.getValue())
+                    .and(tsvView.UNIT_ID.eq(entry.getKey())));
+        }
+        return retval;
+    }
+
+    /**
+     * A time series whose values are wanted in default units.
+     */
+    public static final class Series {
+        private final String officeId;
+        private final String tsId;
+        private final long tsCode;
+        private final String baseParameterId;
+
+        public Series(String officeId, String tsId, long tsCode, String baseParameterId) {
+            this.officeId = officeId;
+            this.tsId = tsId;
+            this.tsCode = tsCode;
+            this.baseParameterId = baseParameterId;
+        }
+
+        public String getTsId() {
+            return tsId;
+        }
+
+        public long getTsCode() {
+            return tsCode;
+        }
+    }
+
+    private static final class Entry {
+        // null when there is no value in the window
+        private final TsvDqu value;
+        // the last update of the extents when this was read
+        private final Timestamp lastUpdate;
+        private final Timestamp pastLimit;
+        private final Timestamp futureLimit;
+        private final long checkedAt;
+
+        private Entry(@Nullable TsvDqu value, @Nullable Timestamp lastUpdate,
+                      Timestamp pastLimit, Timestamp futureLimit, long checkedAt) {
+            this.value = value;
+            this.lastUpdate = lastUpdate;
+            this.pastLimit = pastLimit;
+            this.futureLimit = futureLimit;
+            this.checkedAt = checkedAt;
+        }
+
+        private boolean isFor(Timestamp pastLimit, Timestamp futureLimit) {
+            return this.pastLimit.equals(pastLimit) && this.futureLimit.equals(futureLimit);
+        }
+
+        private Entry checked(long now) {
+            return new Entry(value, lastUpdate, pastLimit, futureLimit, now);
+        }
+    }
+}
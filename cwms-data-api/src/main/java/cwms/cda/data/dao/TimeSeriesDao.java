@@ -1,13 +1,21 @@
 package cwms.cda.data.dao;
 
+import cwms.cda.api.enums.CountMode;
+import cwms.cda.api.enums.StatisticsBucket;
 import cwms.cda.api.enums.UnitSystem;
 import cwms.cda.data.dto.Catalog;
 import cwms.cda.data.dto.RecentValue;
 import cwms.cda.data.dto.TimeSeries;
+import cwms.cda.data.dto.TimeSeriesChange;
+import cwms.cda.data.dto.TimeSeriesStatistics;
+import cwms.cda.data.dto.TimeSeriesValues;
+import java.io.IOException;
 import java.sql.Timestamp;
+import java.time.Instant;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
 
 public interface TimeSeriesDao {
 
@@ -23,14 +31,50 @@ public interface TimeSeriesDao {
     void store(TimeSeries timeSeries, boolean createAsLrts,
                StoreRule replaceAll, boolean overrideProtection);
 
+    /**
+     * Stores several time series. The series of each office are stored on one connection and
+     * committed every {@code commitSize} series; one that fails doesn't stop the others.
+     * The listener is told the outcome of every series, once its chunk is committed.
+     */
+    void storeAll(List<TimeSeries> input, boolean createAsLrts, StoreRule storeRule,
+                  boolean overrideProtection, int commitSize, StoreListener listener);
+
+    /**
+     * Stores the values of a time series in chunks of {@code chunkSize} values, each a window of
+     * consecutive date-times stored on its own connection. The first chunk is stored before the
+     * others, so a new time series is only created once; the rest are stored concurrently on
+     * the executor. The listener is told the outcome of each chunk, from the thread storing it.
+     * {@link StoreRule#DELETE_INSERT} isn't allowed, since each chunk would only delete values
+     * within its own window.
+     */
+    void storeChunks(TimeSeries input, boolean createAsLrts, StoreRule storeRule,
+                     boolean overrideProtection, int chunkSize, ExecutorService executor,
+                     ChunkListener listener);
+
     void delete(String officeId, String tsId, TimeSeriesDeleteOptions options);
 
     TimeSeries getTimeseries(String cursor, int pageSize, String names, String office,
                              String unit, ZonedDateTime begin, ZonedDateTime end,
-                             ZonedDateTime versionDate, boolean trim);
+                             ZonedDateTime versionDate, boolean trim, CountMode count);
 
-    String getTimeseries(String format, String names, String office, String unit, String datum,
-                         ZonedDateTime begin, ZonedDateTime end, ZoneId timezone);
+    /**
+     * Retrieves the same page as {@link #getTimeseries(String, int, String, String, String,
+     * ZonedDateTime, ZonedDateTime, ZonedDateTime, boolean, CountMode)}, but the values are read from the
+     * database while the consumer serializes the time series instead of being collected first.
+     * The values are only available for the duration of the consumer call.
+     */
+    void streamTimeseries(String cursor, int pageSize, String names, String office,
+                          String unit, ZonedDateTime begin, ZonedDateTime end,
+                          ZonedDateTime versionDate, boolean trim, CountMode count,
+                          TimeSeriesConsumer consumer) throws IOException;
+
+    /**
+     * Retrieves time series in a legacy format. The document is handed to the consumer as a
+     * CLOB, so it can be streamed, while the connection is open.
+     */
+    void getTimeseries(String format, String names, String office, String unit, String datum,
+                       ZonedDateTime begin, ZonedDateTime end, ZoneId timezone,
+                       ClobDao.ClobConsumer consumer);
 
     List<RecentValue> findRecentsInRange(String office, String categoryId, String groupId,
                                          Timestamp pastLimit, Timestamp futureLimit, UnitSystem unitSystem);
@@ -38,4 +82,93 @@ public interface TimeSeriesDao {
     List<RecentValue> findMostRecentsInRange(List<String> tsIds, Timestamp pastLimit,
                                              Timestamp futureLimit, UnitSystem unitSystem);
 
+    /**
+     * Reads the values of a time series, or of the time series assigned to a group, entered
+     * after a position, in the order they were entered and in the default units of the unit
+     * system. The values are read from the database while the consumer handles them. Values
+     * entered within the last minute or so are left for a later read, since a transaction that
+     * began earlier may still commit values entered before them.
+     *
+     * @param tsId the time series, or null to read those assigned to the group
+     * @param limit the most values to read
+     * @return the number of values read
+     */
+    int streamChanges(String office, String tsId, String categoryId, String groupId,
+                      UnitSystem unitSystem, TimeSeriesChange.Position after, int limit,
+                      ChangeConsumer consumer) throws IOException;
+
+    /**
+     * Returns the position of what is entered from now on, by the database's clock, which is
+     * the one that stamps when values are entered.
+     */
+    TimeSeriesChange.Position getChangesFromNow();
+
+    /**
+     * Computes the statistics of each time series over a window, from begin up to but not
+     * including end, in the default units of the unit system. The aggregates are computed by
+     * the database; those of periods that have ended may come from a cache.
+     *
+     * @param bucket the calendar periods of the time zone to compute them for, or null for the
+     *               whole window
+     * @return the statistics of each time series, in the order given, then of each period
+     */
+    List<TimeSeriesStatistics> getStatistics(String office, List<String> tsIds, Instant begin,
+                                             Instant end, StatisticsBucket bucket, ZoneId zone,
+                                             UnitSystem unitSystem);
+
+    /**
+     * Returns when the values of a time series last changed, from its extents, without reading
+     * any values.
+     *
+     * @return null if it has no values
+     */
+    Instant getLastUpdate(String office, String tsId);
+
+    /**
+     * Returns a token that changes whenever the most recent values of the time series could,
+     * read from their extents without reading any values.
+     */
+    String getRecentVersion(List<String> tsIds);
+
+    /**
+     * Like {@link #getRecentVersion(List)}, for the time series assigned to the groups; the
+     * token also changes with the assignments.
+     */
+    String getRecentVersion(String office, String categoryId, String groupId);
+
+    /**
+     * Returns a token that changes whenever the time series catalog of the office, or of every
+     * office, could: when time series are created, deleted, renamed or stored. Changes made
+     * through this API show at once, those made some other way once the cached token expires,
+     * 30 seconds by default.
+     */
+    String getCatalogVersion(String office);
+
+    @FunctionalInterface
+    interface TimeSeriesConsumer {
+        void accept(TimeSeries timeSeries) throws IOException;
+    }
+
+    @FunctionalInterface
+    interface ChangeConsumer {
+        void accept(TimeSeriesChange change) throws IOException;
+    }
+
+    @FunctionalInterface
+    interface StoreListener {
+        /**
+         * @param error null if the time series was stored
+         */
+        void stored(TimeSeries timeSeries, RuntimeException error);
+    }
+
+    @FunctionalInterface
+    interface ChunkListener {
+        /**
+         * @param index the position of the chunk, from 0
+         * @param chunk the values of the chunk
+         * @param error null if the chunk was stored
+         */
+        void stored(int index, TimeSeriesValues chunk, RuntimeException error);
+    }
 }
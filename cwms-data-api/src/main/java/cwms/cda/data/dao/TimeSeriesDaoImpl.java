@@ -4,25 +4,30 @@ import static org.jooq.impl.DSL.asterisk;
 import static org.jooq.impl.DSL.countDistinct;
 import static org.jooq.impl.DSL.field;
 import static org.jooq.impl.DSL.max;
+import static org.jooq.impl.DSL.min;
 import static org.jooq.impl.DSL.name;
-import static org.jooq.impl.DSL.partitionBy;
 import static org.jooq.impl.DSL.select;
 import static org.jooq.impl.DSL.selectDistinct;
 import static usace.cwms.db.jooq.codegen.tables.AV_CWMS_TS_ID2.AV_CWMS_TS_ID2;
 import static usace.cwms.db.jooq.codegen.tables.AV_TS_EXTENTS_UTC.AV_TS_EXTENTS_UTC;
 
-import com.codahale.metrics.Gauge;
 import com.codahale.metrics.MetricRegistry;
+import com.google.common.base.Throwables;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import cwms.cda.api.enums.CountMode;
+import cwms.cda.api.enums.StatisticsBucket;
 import cwms.cda.api.enums.UnitSystem;
 import cwms.cda.api.enums.VersionType;
 import cwms.cda.data.dto.Catalog;
 import cwms.cda.data.dto.CwmsDTOPaginated;
 import cwms.cda.data.dto.RecentValue;
 import cwms.cda.data.dto.TimeSeries;
+import cwms.cda.data.dto.TimeSeriesChange;
 import cwms.cda.data.dto.TimeSeriesExtents;
+import cwms.cda.data.dto.TimeSeriesStatistics;
+import cwms.cda.data.dto.TimeSeriesValues;
 import cwms.cda.data.dto.Tsv;
 import cwms.cda.data.dto.TsvDqu;
 import cwms.cda.data.dto.TsvId;
@@ -31,8 +36,9 @@ import cwms.cda.data.dto.catalog.CatalogEntry;
 import cwms.cda.data.dto.catalog.TimeseriesCatalogEntry;
 import cwms.cda.formatters.FormattingException;
 import cwms.cda.formatters.xml.XMLv1;
+import cwms.cda.helpers.QualityCodes;
+import java.io.IOException;
 import java.math.BigDecimal;
-import java.math.BigInteger;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.Timestamp;
@@ -42,15 +48,23 @@ import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
@@ -59,25 +73,28 @@ import org.jetbrains.annotations.Nullable;
 import org.jooq.CommonTableExpression;
 import org.jooq.Condition;
 import org.jooq.Configuration;
+import org.jooq.Cursor;
 import org.jooq.DSLContext;
 import org.jooq.Field;
 import org.jooq.Record;
 import org.jooq.Record1;
+import org.jooq.Record2;
 import org.jooq.Record3;
-import org.jooq.Record7;
+import org.jooq.Record5;
 import org.jooq.Result;
+import org.jooq.ResultQuery;
 import org.jooq.SQL;
 import org.jooq.SelectConditionStep;
 import org.jooq.SelectHavingStep;
 import org.jooq.SelectJoinStep;
 import org.jooq.SelectSeekStep2;
-import org.jooq.Table;
 import org.jooq.TableField;
 import org.jooq.TableLike;
 import org.jooq.TableOnConditionStep;
 import org.jooq.conf.ParamType;
 import org.jooq.exception.DataAccessException;
 import org.jooq.impl.DSL;
+import org.jooq.impl.SQLDataType;
 import usace.cwms.db.dao.ifc.ts.CwmsDbTs;
 import usace.cwms.db.dao.util.services.CwmsDbServiceLookup;
 import usace.cwms.db.jooq.codegen.packages.CWMS_LOC_PACKAGE;
@@ -99,7 +116,22 @@ public class TimeSeriesDaoImpl extends JooqDao<TimeSeries> implements TimeSeries
     public static final String DEFAULT_UNITS = "def_units";
     public static final String PROP_BASE = "cwms.cda.data.dao.ts";
 
-    public static final String VERSIONED_NAME = "isVersioned";
+    private static final int STREAM_FETCH_SIZE = Integer.getInteger(PROP_BASE + ".stream.fetchSize", 1000);
+    // Values are stamped when entered but only seen once committed, so changes entered this
+    // recently are left for a later poll in case an earlier entry is still to be committed
+    private static final int CHANGES_COMMIT_LAG_SECONDS =
+            Integer.getInteger(PROP_BASE + ".changes.commitLagSeconds", 60);
+    public static final int STORE_COMMIT_SIZE = Integer.getInteger(PROP_BASE + ".store.commitSize", 100);
+
+    // Working out the catalog version scans every time series of the office, so it is only
+    // done every so often, however many catalog requests there are. Changes made through this
+    // API drop it at once; changes made some other way are seen once it expires.
+    private static final Cache<String, String> catalogVersions = CacheBuilder.newBuilder()
+            .maximumSize(Integer.getInteger(PROP_BASE + ".catalogVersion.maxSize", 1000))
+            .expireAfterWrite(
+                    Integer.getInteger(PROP_BASE + ".catalogVersion.expireAfterSeconds", 30),
+                    TimeUnit.SECONDS)
+            .build();
 
     /** To be able to use a named inner table (otherwise JOOQ creates a random alias which messes
      * with the planner) we need to use fixed names to be able to reference the required columns.
@@ -118,15 +150,6 @@ public class TimeSeriesDaoImpl extends JooqDao<TimeSeries> implements TimeSeries
     private static final Field<String> locGroupField = locGroupView.GROUP_ID;
     private static final Field<String> locCategoryField = locGroupView.CATEGORY_ID;
 
-    private static final Cache<List<String>, Boolean> isVersionedCache = CacheBuilder.newBuilder()
-            .maximumSize(Integer.getInteger(PROP_BASE + "." + VERSIONED_NAME
-                    + ".maxSize", 32000))
-            .expireAfterWrite(Integer.getInteger(PROP_BASE + "." + VERSIONED_NAME
-                            + ".expireAfterSeconds", 600), TimeUnit.SECONDS)
-            .recordStats()
-            .build();
-
-
     public TimeSeriesDaoImpl(DSLContext dsl) {
         this(dsl, null);
     }
@@ -134,25 +157,18 @@ public class TimeSeriesDaoImpl extends JooqDao<TimeSeries> implements TimeSeries
     public TimeSeriesDaoImpl(DSLContext dsl, @Nullable MetricRegistry metrics) {
         super(dsl);
 
-        if (metrics != null) {
-            CacheStats stats = isVersionedCache.stats();
-            String hrName = MetricRegistry.name(this.getClass().getName(), VERSIONED_NAME, "hit-rate");
-            if (metrics.getGauges().get(hrName) == null) {
-                MetricRegistry.MetricSupplier<? extends Gauge> hr = () -> (Gauge<Double>) stats::hitRate;
-                metrics.gauge(hrName, hr);
-            }
-            String mrName = MetricRegistry.name(this.getClass().getName(),VERSIONED_NAME, "miss-rate");
-            if (metrics.getGauges().get(mrName) == null) {
-                MetricRegistry.MetricSupplier<? extends Gauge> mr = () -> (Gauge<Double>) stats::missRate;
-                metrics.gauge(mrName, mr);
-            }
-        }
+        TsMetadataCache.registerMetrics(metrics);
+        RecentValueCache.registerMetrics(metrics);
+        TsStatisticsCache.registerMetrics(metrics);
+        CountCache.registerMetrics(metrics);
     }
 
-    public String getTimeseries(String format, String names, String office, String units,
-                                String datum,
-                                ZonedDateTime begin, ZonedDateTime end, ZoneId timezone) {
-        return CWMS_TS_PACKAGE.call_RETRIEVE_TIME_SERIES_F(dsl.configuration(),
+    @Override
+    public void getTimeseries(String format, String names, String office, String units,
+                              String datum,
+                              ZonedDateTime begin, ZonedDateTime end, ZoneId timezone,
+                              ClobDao.ClobConsumer consumer) {
+        callClobFunction(dsl, "cwms_ts.retrieve_time_series_f", consumer,
                 names, format, units, datum,
                 begin.format(DateTimeFormatter.ISO_OFFSET_DATE_TIME),
                 end.format(DateTimeFormatter.ISO_OFFSET_DATE_TIME),
@@ -164,8 +180,114 @@ public class TimeSeriesDaoImpl extends JooqDao<TimeSeries> implements TimeSeries
     public TimeSeries getTimeseries(String page, int pageSize, String names, String office,
                                        String units,
                                        ZonedDateTime beginTime, ZonedDateTime endTime,
-                                    ZonedDateTime versionDate, boolean shouldTrim) {
-        TimeSeries retVal = null;
+                                    ZonedDateTime versionDate, boolean shouldTrim,
+                                    CountMode countMode) {
+        TimeSeriesRetrieval retrieval = prepareRetrieval(page, pageSize, names, office, units,
+                beginTime, endTime, versionDate, shouldTrim, countMode);
+        if (retrieval.values == null) {
+            return null;
+        }
+
+        Result<Record5<Timestamp, Double, Long, Integer, Timestamp>> rows = retrieval.values.fetch();
+        TimeSeries timeseries = retrieval.createTimeSeries(rows.isEmpty() ? null : rows.get(0));
+        rows.forEach(tsRecord -> timeseries.addValue(
+                        tsRecord.value1(),
+                        tsRecord.value2(),
+                        QualityCodes.normalize(tsRecord.value3())
+                )
+        );
+        return timeseries;
+    }
+
+    @Override
+    public void streamTimeseries(String page, int pageSize, String names, String office,
+                                 String units,
+                                 ZonedDateTime beginTime, ZonedDateTime endTime,
+                                 ZonedDateTime versionDate, boolean shouldTrim,
+                                 CountMode countMode,
+                                 TimeSeriesConsumer consumer) throws IOException {
+        TimeSeriesRetrieval retrieval = prepareRetrieval(page, pageSize, names, office, units,
+                beginTime, endTime, versionDate, shouldTrim, countMode);
+        if (retrieval.values == null) {
+            consumer.accept(retrieval.createTimeSeries(null));
+            return;
+        }
+
+        // The cursor holds its connection open until the consumer has written every value.
+        try (Cursor<Record5<Timestamp, Double, Long, Integer, Timestamp>> cursor =
+                     retrieval.values.fetchSize(STREAM_FETCH_SIZE).fetchLazy()) {
+            Iterator<Record5<Timestamp, Double, Long, Integer, Timestamp>> rows = cursor.iterator();
+            // The total may depend on the first row, so it is read before the time series is built
+            Record5<Timestamp, Double, Long, Integer, Timestamp> first = rows.hasNext() ? rows.next() : null;
+            TimeSeries timeseries = retrieval.createTimeSeries(first);
+            // The fields of each row are read as they are, with nothing else made per row
+            timeseries.streamValues(new TimeSeries.ValueCursor() {
+                private Record5<Timestamp, Double, Long, Integer, Timestamp> pending = first;
+                private Record5<Timestamp, Double, Long, Integer, Timestamp> row;
+
+                @Override
+                public boolean next() {
+                    if (pending != null) {
+                        row = pending;
+                        pending = null;
+                    } else if (rows.hasNext()) {
+                        row = rows.next();
+                    } else {
+                        return false;
+                    }
+                    return true;
+                }
+
+                @Override
+                public Timestamp getDateTime() {
+                    return row.value1();
+                }
+
+                @Override
+                public Double getValue() {
+                    return row.value2();
+                }
+
+                @Override
+                public int getQualityCode() {
+                    return QualityCodes.normalize(row.value3());
+                }
+            });
+            consumer.accept(timeseries);
+        }
+    }
+
+    /**
+     * Metadata for a page of a time series along with the query for its values, which is
+     * null when no values were requested. The time series itself is created once the total
+     * is known, which may take the first value row.
+     */
+    private static final class TimeSeriesRetrieval {
+        private final Function<Integer, TimeSeries> factory;
+        private final Function<Record5<Timestamp, Double, Long, Integer, Timestamp>, Integer> total;
+        private final ResultQuery<Record5<Timestamp, Double, Long, Integer, Timestamp>> values;
+
+        private TimeSeriesRetrieval(Function<Integer, TimeSeries> factory,
+                                    Function<Record5<Timestamp, Double, Long, Integer,
+                                            Timestamp>, Integer> total,
+                                    @Nullable ResultQuery<Record5<Timestamp, Double, Long,
+                                            Integer, Timestamp>> values) {
+            this.factory = factory;
+            this.total = total;
+            this.values = values;
+        }
+
+        private TimeSeries createTimeSeries(@Nullable Record5<Timestamp, Double, Long,
+                Integer, Timestamp> firstRow) {
+            return factory.apply(total.apply(firstRow));
+        }
+    }
+
+    private TimeSeriesRetrieval prepareRetrieval(String page, int pageSize, String names,
+                                                 String office, String units,
+                                                 ZonedDateTime beginTime, ZonedDateTime endTime,
+                                                 ZonedDateTime versionDate, boolean shouldTrim,
+                                                 CountMode countMode) {
         String cursor = null;
         Timestamp tsCursor = null;
         Integer total = null;
@@ -187,7 +309,7 @@ public class TimeSeriesDaoImpl extends JooqDao<TimeSeries> implements TimeSeries
                 tsCursor = Timestamp.from(Instant.ofEpochMilli(Long.parseLong(parts[0])));
 
                 if (parts.length > 2) {
-                    total = Integer.parseInt(parts[1]);
+                    total = CwmsDTOPaginated.decodeTotal(parts[1]);
                 }
 
                 // Use the pageSize from the original cursor, for consistent paging
@@ -198,67 +320,77 @@ public class TimeSeriesDaoImpl extends JooqDao<TimeSeries> implements TimeSeries
         final String recordCursor = cursor;
         final int recordPageSize = pageSize;
 
-        // Call some stored_procs to validate the user input and get the ts_code and tsid for the provided name.
-        final Field<String> officeId = CWMS_UTIL_PACKAGE.call_GET_DB_OFFICE_ID(
-                office != null ? DSL.val(office) : CWMS_UTIL_PACKAGE.call_USER_OFFICE_ID());
-        final Field<String> tsId = CWMS_TS_PACKAGE.call_GET_TS_ID__2(DSL.val(names), officeId);
-        final Field<BigDecimal> tsCode = CWMS_TS_PACKAGE.call_GET_TS_CODE__2(DSL.val(names), officeId);
-
-        Table<Record3<BigDecimal, String, String>> validTs =
-                select(tsCode.as("tscode"),
-                        tsId.as("tsid"),
-                        officeId.as("office_id")
-                ).asTable("validts");
-        // split the tsId into different parts and get the location and parameter parts
-        Field<String> loc = CWMS_UTIL_PACKAGE.call_SPLIT_TEXT(
-                validTs.field("tsid", String.class),
-                DSL.val(BigInteger.valueOf(1L)), DSL.val("."),
-                DSL.val(BigInteger.valueOf(6L)));
-        Field<String> param = DSL.upper(CWMS_UTIL_PACKAGE.call_SPLIT_TEXT(
-                validTs.field("tsid", String.class),
-                DSL.val(BigInteger.valueOf(2L)), DSL.val("."),
-                DSL.val(BigInteger.valueOf(6L))));
-
-        // possibly call another procedure to get the units
-        Field<String> unit = units.compareToIgnoreCase("SI") == 0
-                ||
-                units.compareToIgnoreCase("EN") == 0
-                ?
-                CWMS_UTIL_PACKAGE.call_GET_DEFAULT_UNITS(
-                        CWMS_TS_PACKAGE.call_GET_BASE_PARAMETER_ID(tsCode),
-                        DSL.val(units, String.class)
-                )
-                :
-                DSL.val(units, String.class);
-
-        // another call to get the interval
-        Field<BigDecimal> ival = CWMS_TS_PACKAGE.call_GET_TS_INTERVAL__2(validTs.field("tsid", String.class));
-
-        // put all those columns together as "valid"
-        CommonTableExpression<Record7<BigDecimal, String, String, String, String, BigDecimal,
-                String>> valid =
-                name("valid").fields("tscode", "tsid", "office_id", "loc_part", "units",
-                                "interval", "parm_part")
-                        .as(
-                                select(
-                                        validTs.field("tscode", BigDecimal.class).as("tscode"),
-                                        validTs.field("tsid", String.class).as("tsid"),
-                                        validTs.field("office_id", String.class).as("office_id"),
-                                        loc.as("loc_part"),
-                                        unit.as("units"),
-                                        ival.as("interval"),
-                                        param.as("parm_part")
-
-                                ).from(validTs)
-                        );
+        // Validates the name and office and supplies everything but the values, usually
+        // without a round trip.
+        TsMetadataCache.TsMetadata metadata = TsMetadataCache.get(dsl, office, names, units);
+        String resolvedUnits = metadata.resolveUnits(units);
+        VerticalDatumInfo verticalDatumInfo =
+                parseVerticalDatumInfo(metadata.getVerticalDatum(dsl, resolvedUnits));
+        long intervalMinutes = metadata.getIntervalMinutes();
+        VersionType finalDateVersionType = versionDate != null ? VersionType.SINGLE_VERSION
+                : metadata.isVersioned() ? VersionType.MAX_AGGREGATE : VersionType.UNVERSIONED;
+
+        Function<Integer, TimeSeries> factory = pageTotal -> new TimeSeries(recordCursor,
+                recordPageSize, pageTotal, metadata.getTsId(), metadata.getOfficeId(),
+                beginTime, endTime, resolvedUnits, Duration.ofMinutes(intervalMinutes),
+                verticalDatumInfo, metadata.getIntervalUtcOffset(), metadata.getTimeZoneId(),
+                versionDate, finalDateVersionType);
+
+        // A total carried by the cursor wins, otherwise it depends on the count mode. An
+        // exact count, or the end of the stored data for a trimmed estimate, is read with the
+        // values rather than by another statement.
+        final Integer knownTotal = total;
+        boolean countValues = false;
+        boolean readLatest = false;
+        Function<Record5<Timestamp, Double, Long, Integer, Timestamp>, Integer> totalOf =
+                firstRow -> knownTotal;
+        if (total == null && countMode == CountMode.EXACT) {
+            countValues = true;
+            totalOf = firstRow -> firstRow == null ? 0 : firstRow.value4();
+        } else if (total == null && countMode == CountMode.ESTIMATE) {
+            if (!shouldTrim || intervalMinutes <= 0) {
+                Integer estimate = estimateCount(beginTime, endTime, intervalMinutes, null, null,
+                        shouldTrim);
+                totalOf = firstRow -> estimate;
+            } else if (pageSize == 0) {
+                Record2<Timestamp, Timestamp> extents = dsl.select(
+                                min(AV_TS_EXTENTS_UTC.EARLIEST_TIME),
+                                max(AV_TS_EXTENTS_UTC.LATEST_TIME))
+                        .from(AV_TS_EXTENTS_UTC)
+                        .where(AV_TS_EXTENTS_UTC.TS_CODE.eq(BigDecimal.valueOf(metadata.getTsCode())))
+                        .fetchOne();
+                Integer estimate = extents == null || extents.value1() == null ? 0
+                        : estimateCount(beginTime, endTime, intervalMinutes, extents.value1(),
+                                extents.value2(), true);
+                totalOf = firstRow -> estimate;
+            } else {
+                // Trimmed values start at the first row, so only the end needs looking up
+                readLatest = true;
+                totalOf = firstRow -> firstRow == null ? 0 : estimateCount(beginTime, endTime,
+                        intervalMinutes, firstRow.value1(), firstRow.value5(), true);
+            }
+        }
+
+        if (pageSize == 0) {
+            return new TimeSeriesRetrieval(factory, totalOf, null);
+        }
 
         // Give the TVQ (time, value, quality) columns names
         Field<Timestamp> dateTimeCol = field("DATE_TIME", Timestamp.class).as("DATE_TIME");
         Field<Double> valueCol = field("VALUE", Double.class).as("VALUE");
-        Field<Integer> qualityCol = field("QUALITY_CODE", Integer.class).as("QUALITY_CODE");
-
-        Field<BigDecimal> qualityNormCol = CWMS_TS_PACKAGE.call_NORMALIZE_QUALITY(
-                DSL.nvl(qualityCol, DSL.inline(5))).as("QUALITY_NORM");
+        // The raw (unsigned) quality is normalized by QualityCodes as the rows are read,
+        // rather than by a PL/SQL call on every row.
+        Field<Long> qualityCol = field("QUALITY_CODE", Long.class).as("QUALITY_CODE");
+
+        Field<Integer> totalCol = countValues
+                ? DSL.count().over().as("TOTAL")
+                : DSL.castNull(Integer.class).as("TOTAL");
+        Field<Timestamp> latestCol = readLatest
+                ? select(max(AV_TS_EXTENTS_UTC.LATEST_TIME))
+                        .from(AV_TS_EXTENTS_UTC)
+                        .where(AV_TS_EXTENTS_UTC.TS_CODE.eq(BigDecimal.valueOf(metadata.getTsCode())))
+                        .asField("LATEST")
+                : DSL.castNull(Timestamp.class).as("LATEST");
 
         Long beginTimeMilli = beginTime.toInstant().toEpochMilli();
         Long endTimeMilli = endTime.toInstant().toEpochMilli();
@@ -279,130 +411,72 @@ public class TimeSeriesDaoImpl extends JooqDao<TimeSeries> implements TimeSeries
         // Now we're going to call the retrieve_ts_out_tab function to get the data and build an
         // internal table from it so we can manipulate it further
         // This code assumes the database timezone is in UTC (per Oracle recommendation)
+        // The tsid, units and office were resolved above, so they are bound as plain values.
         SQL retrieveSelectData = DSL.sql(
                 "table(cwms_20.cwms_ts.retrieve_ts_out_tab(?,?,"
                         + "cwms_20.cwms_util.to_timestamp(?), cwms_20.cwms_util.to_timestamp(?), 'UTC',"
                         + "?,?,?,?,?,"
                         + getVersionPart(versionDate) + ",?,?) ) retrieveTs",
-                tsId, unit,
+                metadata.getTsId(), resolvedUnits,
                 beginTimeMilli, endTimeMilli,  //tz hardcoded
                 trim, startInclusive, endInclusive, previous, next,
-                versionDateMilli, maxVersion, officeId);
-
-        Field<String> tzName = AV_CWMS_TS_ID2.TIME_ZONE_ID;
-
-        Field<Integer> totalField;
-        if (total != null) {
-            totalField = DSL.val(total).as("TOTAL");
-        } else {
-            // If we don't know the total, fetch it from the database (only for first fetch).
-            // Total is only an estimate, as it can change if fetching current data,
-            // or the timeseries otherwise changes between queries.
-
-            SelectJoinStep<Record3<Timestamp, Double, Integer>> retrieveSelectCount = select(
-                    dateTimeCol, valueCol, qualityCol
-            ).from(DSL.sql(
-                    "table(cwms_20.cwms_ts.retrieve_ts_out_tab(?,?,"
-                            + "cwms_20.cwms_util.to_timestamp(?),cwms_20.cwms_util.to_timestamp(?),"
-                            + "'UTC',?,?,?,?,?," + getVersionPart(versionDate) + ",?,?) ) retrieveTsTotal",
-                    valid.field("tsid", String.class),
-                    valid.field("units", String.class),
-                    beginTimeMilli,
-                    endTimeMilli,
-                    trim, startInclusive, endInclusive, previous, next, versionDateMilli, maxVersion,
-                    valid.field("office_id", String.class)
-            ));
-
-            totalField = DSL.selectCount().from(DSL.table(retrieveSelectCount)).asField("TOTAL");
-        }
-
-        SelectJoinStep<?> metadataQuery =
-                dsl.with(valid)
-                        .select(
-                                valid.field("tsid", String.class).as("NAME"),
-                                valid.field("office_id", String.class).as("office_id"),
-                                valid.field("units", String.class).as("units"),
-                                valid.field("interval", BigDecimal.class).as("interval"),
-                                valid.field("loc_part", String.class).as("loc_part"),
-                                valid.field("parm_part", String.class).as("parm_part"),
-                                DSL.choose(valid.field("parm_part", String.class))
-                                        .when(
-                                                "ELEV",
-                                                CWMS_LOC_PACKAGE.call_GET_VERTICAL_DATUM_INFO_F__2(
-                                                        valid.field("loc_part", String.class),
-                                                        valid.field("units", String.class),
-                                                        valid.field("office_id", String.class)))
-                                        .otherwise("")
-                                        .as("VERTICAL_DATUM"),
-                                totalField,
-                                AV_CWMS_TS_ID2.INTERVAL_UTC_OFFSET,
-                                AV_CWMS_TS_ID2.TIME_ZONE_ID
+                versionDateMilli, maxVersion, metadata.getOfficeId());
+
+        SelectConditionStep<Record5<Timestamp, Double, Long, Integer, Timestamp>> query =
+                dsl.select(
+                                dateTimeCol,
+                                valueCol,
+                                qualityCol,
+                                totalCol,
+                                latestCol
                         )
-                        .from(valid)
-                        .leftOuterJoin(AV_CWMS_TS_ID2)
-                        .on(
-                                AV_CWMS_TS_ID2.DB_OFFICE_ID.eq(valid.field("office_id",
-                                                String.class))
-                                        .and(AV_CWMS_TS_ID2.TS_CODE.eq(valid.field("tscode",
-                                                BigDecimal.class)))
-                                        .and(AV_CWMS_TS_ID2.ALIASED_ITEM.isNull())
+                        .from(retrieveSelectData)
+                        .where(dateTimeCol
+                                .greaterOrEqual(CWMS_UTIL_PACKAGE.call_TO_TIMESTAMP__2(
+                                        DSL.nvl(DSL.val(tsCursor == null ? null :
+                                                        tsCursor.toInstant().toEpochMilli()),
+                                                DSL.val(beginTime.toInstant().toEpochMilli())))))
+                        .and(dateTimeCol
+                                .lessOrEqual(CWMS_UTIL_PACKAGE.call_TO_TIMESTAMP__2(
+                                        DSL.val(endTime.toInstant().toEpochMilli())))
                         );
 
-        logger.fine(() -> metadataQuery.getSQL(ParamType.INLINED));
-
-        VersionType finalDateVersionType = getVersionType(dsl, names, office, versionDate != null);
-        TimeSeries timeseries = metadataQuery.fetchOne(tsMetadata -> {
-            String vert = (String) tsMetadata.getValue("VERTICAL_DATUM");
-            VerticalDatumInfo verticalDatumInfo = parseVerticalDatumInfo(vert);
-
-            return new TimeSeries(recordCursor, recordPageSize, tsMetadata.getValue("TOTAL",
-                    Integer.class), tsMetadata.getValue("NAME", String.class),
-                    tsMetadata.getValue("office_id", String.class),
-                    beginTime, endTime, tsMetadata.getValue("units", String.class),
-                    Duration.ofMinutes(tsMetadata.get("interval") == null ? 0 :
-                            tsMetadata.getValue("interval", Long.class)),
-                    verticalDatumInfo,
-                    tsMetadata.getValue(AV_CWMS_TS_ID2.INTERVAL_UTC_OFFSET).longValue(),
-                    tsMetadata.getValue(tzName),
-                    versionDate, finalDateVersionType
-            );
-        });
-
-        if (pageSize != 0) {
-            SelectConditionStep<Record3<Timestamp, Double, BigDecimal>> query =
-                    dsl.select(
-                                    dateTimeCol,
-                                    valueCol,
-                                    qualityNormCol
-                            )
-                            .from(retrieveSelectData)
-                            .where(dateTimeCol
-                                    .greaterOrEqual(CWMS_UTIL_PACKAGE.call_TO_TIMESTAMP__2(
-                                            DSL.nvl(DSL.val(tsCursor == null ? null :
-                                                            tsCursor.toInstant().toEpochMilli()),
-                                                    DSL.val(beginTime.toInstant().toEpochMilli())))))
-                            .and(dateTimeCol
-                                    .lessOrEqual(CWMS_UTIL_PACKAGE.call_TO_TIMESTAMP__2(
-                                            DSL.val(endTime.toInstant().toEpochMilli())))
-                            );
-
-            if (pageSize > 0) {
-                query.limit(DSL.val(pageSize + 1));
-            }
+        if (pageSize > 0) {
+            query.limit(DSL.val(pageSize + 1));
+        }
 
-            logger.fine(() -> query.getSQL(ParamType.INLINED));
+        logger.fine(() -> query.getSQL(ParamType.INLINED));
 
-            query.forEach(tsRecord -> timeseries.addValue(
-                            tsRecord.getValue(dateTimeCol),
-                            tsRecord.getValue(valueCol),
-                            tsRecord.getValue(qualityNormCol).intValue()
-                    )
-            );
+        return new TimeSeriesRetrieval(factory, totalOf, query);
+    }
 
-            retVal = timeseries;
+    /**
+     * Estimates the number of values of a regular time series from its interval and the
+     * requested time window. When trimming, the window is clipped to the earliest and latest
+     * stored times, where they are known.
+     *
+     * @return the estimate, or null for an irregular time series
+     */
+    static Integer estimateCount(ZonedDateTime beginTime, ZonedDateTime endTime,
+                                 long intervalMinutes, @Nullable Timestamp earliest,
+                                 @Nullable Timestamp latest, boolean trim) {
+        if (intervalMinutes <= 0) {
+            return null;
         }
 
-        return retVal;
+        long begin = beginTime.toInstant().toEpochMilli();
+        long end = endTime.toInstant().toEpochMilli();
+        if (trim && earliest != null) {
+            begin = Math.max(begin, earliest.getTime());
+        }
+        if (trim && latest != null) {
+            end = Math.min(end, latest.getTime());
+        }
+        if (end < begin) {
+            return 0;
+        }
+        long count = (end - begin) / TimeUnit.MINUTES.toMillis(intervalMinutes) + 1;
+        return (int) Math.min(count, Integer.MAX_VALUE);
     }
 
     private static String getVersionPart(ZonedDateTime versionDate) {
@@ -429,7 +503,7 @@ public class TimeSeriesDaoImpl extends JooqDao<TimeSeries> implements TimeSeries
         VersionType dateVersionType;
 
         if (!dateProvided) {
-            boolean isVersioned = isVersioned(dsl, names, office);
+            boolean isVersioned = TsMetadataCache.get(dsl, office, names).isVersioned();
 
             if (isVersioned) {
                 dateVersionType = VersionType.MAX_AGGREGATE;
@@ -444,23 +518,6 @@ public class TimeSeriesDaoImpl extends JooqDao<TimeSeries> implements TimeSeries
         return dateVersionType;
     }
 
-    private static boolean isVersioned(DSLContext dsl, String tsId, String office) {
-        final List<String> cacheKey = Arrays.asList(office, tsId);
-
-        Boolean cachedValue = isVersionedCache.getIfPresent(cacheKey);
-        if (cachedValue == null) {
-            cachedValue = connectionResult(dsl, connection -> {
-                Configuration configuration = getDslContext(connection, office).configuration();
-                boolean isVersioned =
-                        parseBool(CWMS_TS_PACKAGE.call_IS_TSID_VERSIONED(configuration,
-                                tsId, office));
-                isVersionedCache.put(cacheKey, isVersioned);
-                return isVersioned;
-            });
-        }
-        return cachedValue;
-    }
-
     // datumInfo comes back like:
     //        <vertical-datum-info office="LRL" unit="m">
     //          <location>Buckhorn</location>
@@ -485,18 +542,11 @@ public class TimeSeriesDaoImpl extends JooqDao<TimeSeries> implements TimeSeries
 
     @Override
     public Catalog getTimeSeriesCatalog(String page, int pageSize, CatalogRequestParameters inputParams) {
-        int total;
+        Integer total = null;
         String cursorTsId = "*";
         String cursorOffice = null;
         Catalog.CatalogPage catPage = null;
-        if (page == null || page.isEmpty()) {
-            CommonTableExpression<?> limiter = buildWithClause(inputParams, buildWhereConditions(inputParams), new ArrayList<>(), pageSize, true);
-            SelectJoinStep<Record1<Integer>> totalQuery = dsl.with(limiter)
-                    .select(countDistinct(limiter.field(AV_CWMS_TS_ID.AV_CWMS_TS_ID.TS_CODE)))
-                    .from(limiter);
-            logger.fine(() -> totalQuery.getSQL(ParamType.INLINED));
-            total = totalQuery.fetchOne(0, int.class);
-        } else {
+        if (page != null && !page.isEmpty()) {
             logger.fine("getting non-default page");
             // Information provided by the page value overrides anything provided
             catPage = new Catalog.CatalogPage(page);
@@ -579,10 +629,34 @@ public class TimeSeriesDaoImpl extends JooqDao<TimeSeries> implements TimeSeries
                 .map(e -> e.getValue().build())
                 .collect(Collectors.toList());
 
+        if (catPage == null) {
+            total = CountCache.total(params.getCountMode(), params.countKey("catalog.timeseries"),
+                    entries.size(), pageSize, () -> countCatalog(params),
+                    () -> estimateCatalog(params));
+        }
+
         return new Catalog(catPage != null ? catPage.toString() : null,
                 total, pageSize, entries, params);
     }
 
+    private int countCatalog(CatalogRequestParameters params) {
+        CommonTableExpression<?> limiter = buildWithClause(params, buildWhereConditions(params),
+                new ArrayList<>(), 0, true);
+        SelectJoinStep<Record1<Integer>> totalQuery = dsl.with(limiter)
+                .select(countDistinct(limiter.field(AV_CWMS_TS_ID.AV_CWMS_TS_ID.TS_CODE)))
+                .from(limiter);
+        logger.fine(() -> totalQuery.getSQL(ParamType.INLINED));
+        return totalQuery.fetchOne(0, int.class);
+    }
+
+    private @Nullable Integer estimateCatalog(CatalogRequestParameters params) {
+        CommonTableExpression<?> limiter = buildWithClause(params, buildWhereConditions(params),
+                new ArrayList<>(), 0, true);
+        return CountCache.explainRows(dsl, dsl.with(limiter)
+                .select(limiter.field(AV_CWMS_TS_ID.AV_CWMS_TS_ID.TS_CODE))
+                .from(limiter));
+    }
+
     private static @NotNull List<Condition> buildPagingConditions(String cursorOffice, String cursorTsId) {
         List<Condition> pagingConditions = new ArrayList<>();
 
@@ -888,93 +962,40 @@ public class TimeSeriesDaoImpl extends JooqDao<TimeSeries> implements TimeSeries
         List<RecentValue> retval = Collections.emptyList();
 
         if (tsIds != null && !tsIds.isEmpty()) {
-            String tsFieldName = "TSVIEW_CWMS_TS_ID";
-            Field<String> tsField = AV_CWMS_TS_ID2.CWMS_TS_ID.as(tsFieldName);
-
-            Field<Timestamp> maxDateField = max(AV_TSV_DQU.AV_TSV_DQU.DATE_TIME)
-                    .over(partitionBy(AV_TSV_DQU.AV_TSV_DQU.TS_CODE))
-                    .as(MAX_DATE_TIME);
-
-            Field<String> defUnitsField = CWMS_UTIL_PACKAGE.call_GET_DEFAULT_UNITS(
-                    CWMS_TS_PACKAGE.call_GET_BASE_PARAMETER_ID(AV_TSV_DQU.AV_TSV_DQU.TS_CODE),
-                    DSL.val(unitSystem, String.class))
-                    .as(DEFAULT_UNITS);
-
-            SelectConditionStep<? extends Record> innerSelect = dsl.select(
-                            AV_TSV_DQU.AV_TSV_DQU.OFFICE_ID,
-                            AV_TSV_DQU.AV_TSV_DQU.CWMS_TS_ID,
-                            AV_TSV_DQU.AV_TSV_DQU.TS_CODE,
-                            AV_TSV_DQU.AV_TSV_DQU.UNIT_ID,
-                            AV_TSV_DQU.AV_TSV_DQU.DATE_TIME,
-                            AV_TSV_DQU.AV_TSV_DQU.VERSION_DATE,
-                            AV_TSV_DQU.AV_TSV_DQU.DATA_ENTRY_DATE,
-                            AV_TSV_DQU.AV_TSV_DQU.VALUE,
-                            AV_TSV_DQU.AV_TSV_DQU.QUALITY_CODE,
-                            AV_TSV_DQU.AV_TSV_DQU.START_DATE,
-                            AV_TSV_DQU.AV_TSV_DQU.END_DATE,
-                            defUnitsField,
-                            maxDateField,
-                            tsField
-                    )
-                    .from(AV_TSV_DQU.AV_TSV_DQU.join(AV_CWMS_TS_ID2)
-                            .on(AV_TSV_DQU.AV_TSV_DQU.TS_CODE.eq(
-                                    AV_CWMS_TS_ID2.TS_CODE.cast(Long.class))))
-                    .where(
-                            AV_CWMS_TS_ID2.CWMS_TS_ID.in(tsIds)
-                                    .and(AV_TSV_DQU.AV_TSV_DQU.VALUE.isNotNull())
-                                    .and(AV_TSV_DQU.AV_TSV_DQU.DATE_TIME.lt(futuredate))
-                                    .and(AV_TSV_DQU.AV_TSV_DQU.DATE_TIME.gt(pastdate))
-                                    .and(AV_TSV_DQU.AV_TSV_DQU.START_DATE.le(futuredate))
-                                    .and(AV_TSV_DQU.AV_TSV_DQU.END_DATE.gt(pastdate)));
-
-            // We want to use some of the fields from the innerSelect statement in our WHERE clause
-            // Its cleaner if we call them out individually.
-            Field<Timestamp> dateTimeField = innerSelect.field(AV_TSV_DQU.AV_TSV_DQU.DATE_TIME);
-            Field<String> unitField = innerSelect.field(AV_TSV_DQU.AV_TSV_DQU.UNIT_ID);
-
-            // We want to return fields from the innerSelect.
-            // Note: Although they are both fields, jOOQ treats
-            //      innerSelect.field(AV_TSV_DQU.AV_TSV_DQU.DATA_ENTRY_DATE)
-            //      differently than
-            //      AV_TSV_DQU.AV_TSV_DQU.DATA_ENTRY_DATE
-            // Using the innerSelect field makes DATA_ENTRY_DATE correctly map to Timestamp
-            // and the generated sql refers to columns from the alias_??? table.
-            Field[] queryFields = new Field[]{
-                    innerSelect.field(AV_TSV_DQU.AV_TSV_DQU.CWMS_TS_ID),
-                    innerSelect.field(AV_TSV_DQU.AV_TSV_DQU.OFFICE_ID),
-                    innerSelect.field(AV_TSV_DQU.AV_TSV_DQU.TS_CODE),
-                    innerSelect.field(AV_TSV_DQU.AV_TSV_DQU.VERSION_DATE),
-                    innerSelect.field(AV_TSV_DQU.AV_TSV_DQU.DATA_ENTRY_DATE),
-                    innerSelect.field(AV_TSV_DQU.AV_TSV_DQU.VALUE),
-                    innerSelect.field(AV_TSV_DQU.AV_TSV_DQU.QUALITY_CODE),
-                    innerSelect.field(AV_TSV_DQU.AV_TSV_DQU.START_DATE),
-                    innerSelect.field(AV_TSV_DQU.AV_TSV_DQU.END_DATE),
-                    unitField,
-                    dateTimeField,
-                    innerSelect.field(tsField)
-            };
-
-            SelectConditionStep<? extends Record> query = dsl.select(queryFields)
-                    .from(innerSelect)
-                    .where(dateTimeField.eq(maxDateField).and(unitField.eq(defUnitsField)));
-
-            logger.fine(() -> query.getSQL(ParamType.INLINED));
-            retval = query.fetch(r -> buildRecentValue(AV_TSV_DQU.AV_TSV_DQU, r, tsFieldName));
+            List<RecentValueCache.Series> series = dsl.select(AV_CWMS_TS_ID2.DB_OFFICE_ID,
+                            AV_CWMS_TS_ID2.CWMS_TS_ID, AV_CWMS_TS_ID2.TS_CODE,
+                            AV_CWMS_TS_ID2.BASE_PARAMETER_ID)
+                    .from(AV_CWMS_TS_ID2)
+                    .where(AV_CWMS_TS_ID2.CWMS_TS_ID.in(tsIds))
+                    .fetch(r -> new RecentValueCache.Series(r.value1(), r.value2(),
+                            r.value3().longValue(), r.value4()));
+
+            retval = recentValues(series, pastdate, futuredate, unitSystem);
         }
         return retval;
     }
 
-
-    @NotNull
-    private RecentValue buildRecentValue(AV_TSV_DQU tsvView, Record jrecord, String tsColumnName) {
-
-        TsvDqu tsv = buildTsvDqu(tsvView, jrecord);
-        String tsId = jrecord.getValue(tsColumnName, String.class);
-        return new RecentValue(tsId, tsv);
+    /**
+     * Pairs each time series with its most recent value, from {@link RecentValueCache}, leaving
+     * out the ones without a value in the window.
+     */
+    private List<RecentValue> recentValues(List<RecentValueCache.Series> series,
+                                           Timestamp pastLimit, Timestamp futureLimit,
+                                           UnitSystem unitSystem) {
+        Map<Long, TsvDqu> latest = RecentValueCache.get(dsl, series, pastLimit, futureLimit,
+                unitSystem);
+        List<RecentValue> retval = new ArrayList<>();
+        for (RecentValueCache.Series s : series) {
+            TsvDqu tsv = latest.get(s.getTsCode());
+            if (tsv != null) {
+                retval.add(new RecentValue(s.getTsId(), tsv));
+            }
+        }
+        return retval;
     }
 
     @NotNull
-    private TsvDqu buildTsvDqu(AV_TSV_DQU tsvView, Record jrecord) {
+    static TsvDqu buildTsvDqu(AV_TSV_DQU tsvView, Record jrecord) {
         return new TsvDqu.Builder()
                 .withOfficeId(jrecord.getValue(tsvView.OFFICE_ID))
                 .withCwmsTsId(jrecord.getValue(tsvView.CWMS_TS_ID))
@@ -993,15 +1014,12 @@ public class TimeSeriesDaoImpl extends JooqDao<TimeSeries> implements TimeSeries
     public List<RecentValue> findRecentsInRange(String office, String categoryId, String groupId,
                                                 @NotNull Timestamp pastLimit, @NotNull Timestamp futureLimit,
                                                  @NotNull UnitSystem unitSystem) {
-        AV_TSV_DQU tsvView = AV_TSV_DQU.AV_TSV_DQU;  // should we look at the daterange and
-        // possible use 30D view?
+        return recentValues(assignedSeries(groupCondition(office, categoryId, groupId)),
+                pastLimit, futureLimit, unitSystem);
+    }
 
-        Condition whereCondition =
-                tsvView.VALUE.isNotNull()
-                        .and(tsvView.DATE_TIME.lt(futureLimit))
-                        .and(tsvView.DATE_TIME.gt(pastLimit))
-                        .and(tsvView.START_DATE.le(futureLimit))
-                        .and(tsvView.END_DATE.gt(pastLimit));
+    private static Condition groupCondition(String office, String categoryId, String groupId) {
+        Condition whereCondition = DSL.noCondition();
 
         if (office != null) {
             whereCondition = whereCondition.and(AV_TS_GRP_ASSGN.AV_TS_GRP_ASSGN.DB_OFFICE_ID.eq(office));
@@ -1014,51 +1032,212 @@ public class TimeSeriesDaoImpl extends JooqDao<TimeSeries> implements TimeSeries
         if (groupId != null) {
             whereCondition = whereCondition.and(AV_TS_GRP_ASSGN.AV_TS_GRP_ASSGN.GROUP_ID.eq(groupId));
         }
+        return whereCondition;
+    }
+
+    /**
+     * The time series assigned to the groups matching the condition, in attribute order.
+     */
+    private List<RecentValueCache.Series> assignedSeries(Condition whereCondition) {
+        List<RecentValueCache.Series> retval = new ArrayList<>();
+        dsl.select(AV_TS_GRP_ASSGN.AV_TS_GRP_ASSGN.DB_OFFICE_ID,
+                        AV_TS_GRP_ASSGN.AV_TS_GRP_ASSGN.TS_ID,
+                        AV_TS_GRP_ASSGN.AV_TS_GRP_ASSGN.TS_CODE.cast(Long.class))
+                .from(AV_TS_GRP_ASSGN.AV_TS_GRP_ASSGN)
+                .where(whereCondition)
+                .orderBy(AV_TS_GRP_ASSGN.AV_TS_GRP_ASSGN.ATTRIBUTE)
+                .fetch()
+                .forEach(r -> {
+                    // the base parameter is the first part of the parameter
+                    String[] parts = r.value2().split("\\.");
+                    if (parts.length > 1) {
+                        retval.add(new RecentValueCache.Series(r.value1(), r.value2(),
+                                r.value3(), parts[1].split("-")[0]));
+                    }
+                });
+        return retval;
+    }
+
+
+    @Override
+    public int streamChanges(String office, String tsId, String categoryId, String groupId,
+                             UnitSystem unitSystem, TimeSeriesChange.Position after, int limit,
+                             ChangeConsumer consumer) throws IOException {
+        List<RecentValueCache.Series> series;
+        if (tsId != null) {
+            TsMetadataCache.TsMetadata metadata = TsMetadataCache.get(dsl, office, tsId);
+            series = Collections.singletonList(new RecentValueCache.Series(
+                    metadata.getOfficeId(), metadata.getTsId(), metadata.getTsCode(),
+                    metadata.getBaseParameterId()));
+        } else {
+            series = assignedSeries(groupCondition(office, categoryId, groupId));
+        }
+        Condition inUnits = series.isEmpty() ? null
+                : RecentValueCache.inDefaultUnits(dsl, series, unitSystem);
+        if (inUnits == null) {
+            return 0;
+        }
+        Map<Long, String> names = new HashMap<>();
+        for (RecentValueCache.Series s : series) {
+            names.putIfAbsent(s.getTsCode(), s.getTsId());
+        }
+
+        AV_TSV_DQU tsvView = AV_TSV_DQU.AV_TSV_DQU;
+        Timestamp enteredAfter = Timestamp.from(after.getDataEntryDate());
+        Condition afterCondition;
+        if (after.getTsCode() == null) {
+            afterCondition = tsvView.DATA_ENTRY_DATE.gt(enteredAfter);
+        } else if (after.getVersionDate() == null) {
+            afterCondition = DSL.row(tsvView.DATA_ENTRY_DATE, tsvView.TS_CODE, tsvView.DATE_TIME)
+                    .gt(enteredAfter, after.getTsCode(), Timestamp.from(after.getDateTime()));
+        } else {
+            afterCondition = DSL.row(tsvView.DATA_ENTRY_DATE, tsvView.TS_CODE, tsvView.DATE_TIME,
+                            tsvView.VERSION_DATE)
+                    .gt(enteredAfter, after.getTsCode(), Timestamp.from(after.getDateTime()),
+                            Timestamp.from(after.getVersionDate()));
+        }
+
+        // data entry dates are in UTC, and the database's clock is the one that stamps them
+        Field<Timestamp> settled = DSL.field(
+                "sys_extract_utc(systimestamp) - numtodsinterval({0}, 'SECOND')",
+                SQLDataType.TIMESTAMP, DSL.inline(CHANGES_COMMIT_LAG_SECONDS));
+
+        ResultQuery<? extends Record> query = dsl.select(tsvView.TS_CODE, tsvView.UNIT_ID,
+                        tsvView.DATE_TIME, tsvView.VERSION_DATE, tsvView.DATA_ENTRY_DATE,
+                        tsvView.VALUE, tsvView.QUALITY_CODE)
+                .from(tsvView)
+                // the data entry date first, so the range on it can use an index
+                .where(tsvView.DATA_ENTRY_DATE.ge(enteredAfter)
+                        .and(tsvView.DATA_ENTRY_DATE.lt(settled))
+                        .and(afterCondition).and(inUnits))
+                .orderBy(tsvView.DATA_ENTRY_DATE, tsvView.TS_CODE, tsvView.DATE_TIME,
+                        tsvView.VERSION_DATE)
+                .limit(limit);
+        logger.fine(() -> query.getSQL(ParamType.INLINED));
+
+        int count = 0;
+        try (Cursor<? extends Record> cursor = query.fetchSize(STREAM_FETCH_SIZE).fetchLazy()) {
+            for (Record r : cursor) {
+                Long tsCode = r.get(tsvView.TS_CODE);
+                Timestamp versionDate = r.get(tsvView.VERSION_DATE);
+                consumer.accept(new TimeSeriesChange(names.get(tsCode), r.get(tsvView.UNIT_ID),
+                        tsCode, r.get(tsvView.DATE_TIME).toInstant(),
+                        versionDate == null ? null : versionDate.toInstant(),
+                        r.get(tsvView.DATA_ENTRY_DATE).toInstant(), r.get(tsvView.VALUE),
+                        r.get(tsvView.QUALITY_CODE)));
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public TimeSeriesChange.Position getChangesFromNow() {
+        Timestamp now = dsl.select(DSL.field("sys_extract_utc(systimestamp)",
+                        SQLDataType.TIMESTAMP))
+                .fetchOne(0, Timestamp.class);
+        return TimeSeriesChange.Position.after(now.toInstant());
+    }
+
+    @Override
+    public List<TimeSeriesStatistics> getStatistics(String office, List<String> tsIds,
+                                                    Instant begin, Instant end,
+                                                    StatisticsBucket bucket, ZoneId zone,
+                                                    UnitSystem unitSystem) {
+        List<TsMetadataCache.TsMetadata> series = new ArrayList<>();
+        for (String tsId : tsIds) {
+            series.add(TsMetadataCache.get(dsl, office, tsId));
+        }
+        return TsStatisticsCache.get(dsl, series, begin, end, bucket, zone, unitSystem);
+    }
 
-        Field<String> defUnitsField = CWMS_UTIL_PACKAGE.call_GET_DEFAULT_UNITS(
-                        CWMS_TS_PACKAGE.call_GET_BASE_PARAMETER_ID(AV_TSV_DQU.AV_TSV_DQU.TS_CODE),
-                        DSL.val(unitSystem, String.class))
-                .as(DEFAULT_UNITS);
-        Field<Timestamp> maxDateTimeField = max(tsvView.DATE_TIME).over(partitionBy(tsvView.TS_CODE))
-                .as(MAX_DATE_TIME);
-
-        SelectConditionStep<? extends Record> innerSelect
-                = dsl.select(tsvView.OFFICE_ID, tsvView.TS_CODE, tsvView.DATE_TIME,
-                        tsvView.VERSION_DATE, tsvView.DATA_ENTRY_DATE, tsvView.VALUE,
-                        tsvView.QUALITY_CODE, tsvView.START_DATE, tsvView.END_DATE, tsvView.UNIT_ID,
-                        defUnitsField,
-                        maxDateTimeField,
-                        AV_TS_GRP_ASSGN.AV_TS_GRP_ASSGN.ATTRIBUTE,
-                        AV_TS_GRP_ASSGN.AV_TS_GRP_ASSGN.TS_ID)
-                .from(tsvView.join(AV_TS_GRP_ASSGN.AV_TS_GRP_ASSGN)
-                        .on(tsvView.TS_CODE.eq(AV_TS_GRP_ASSGN.AV_TS_GRP_ASSGN.TS_CODE.cast(Long.class))))
-                .where(whereCondition);
-
-        Field<Timestamp> dateTime = innerSelect.field(tsvView.DATE_TIME);
-        Field<String> unit = innerSelect.field(tsvView.UNIT_ID);
-
-        Field[] queryFields = new Field[]{
-                innerSelect.field(tsvView.OFFICE_ID),
-                innerSelect.field(tsvView.TS_CODE),
-                innerSelect.field(tsvView.VERSION_DATE),
-                innerSelect.field(tsvView.DATA_ENTRY_DATE),
-                innerSelect.field(tsvView.VALUE),
-                innerSelect.field(tsvView.QUALITY_CODE),
-                innerSelect.field(tsvView.START_DATE),
-                innerSelect.field(tsvView.END_DATE),
-                dateTime,
-                unit,
-                innerSelect.field(AV_TS_GRP_ASSGN.AV_TS_GRP_ASSGN.TS_ID),
-                innerSelect.field(AV_TS_GRP_ASSGN.AV_TS_GRP_ASSGN.ATTRIBUTE)};
-
-        return dsl.select(queryFields)
-                .from(innerSelect)
-                .where(dateTime.eq(maxDateTimeField).and(defUnitsField.eq(unit)))
-                .orderBy(field(AV_TS_GRP_ASSGN.AV_TS_GRP_ASSGN.ATTRIBUTE.getName()))
-                .fetch(r -> buildRecentValue(tsvView, r, AV_TS_GRP_ASSGN.AV_TS_GRP_ASSGN.TS_ID.getName()))
-                ;
+    @Override
+    public Instant getLastUpdate(String office, String tsId) {
+        TsMetadataCache.TsMetadata metadata = TsMetadataCache.get(dsl, office, tsId);
+        Timestamp lastUpdate = dsl.select(max(AV_TS_EXTENTS_UTC.LAST_UPDATE))
+                .from(AV_TS_EXTENTS_UTC)
+                .where(AV_TS_EXTENTS_UTC.TS_CODE.eq(BigDecimal.valueOf(metadata.getTsCode())))
+                .fetchOne(0, Timestamp.class);
+        return lastUpdate == null ? null : lastUpdate.toInstant();
     }
 
+    @Override
+    public String getRecentVersion(List<String> tsIds) {
+        if (tsIds == null || tsIds.isEmpty()) {
+            return "";
+        }
+        return version(dsl.select(DSL.count(), DSL.sum(AV_CWMS_TS_ID2.TS_CODE),
+                        max(AV_TS_EXTENTS_UTC.LAST_UPDATE))
+                .from(AV_CWMS_TS_ID2.leftJoin(AV_TS_EXTENTS_UTC)
+                        .on(AV_TS_EXTENTS_UTC.TS_CODE.eq(AV_CWMS_TS_ID2.TS_CODE)))
+                .where(AV_CWMS_TS_ID2.CWMS_TS_ID.in(tsIds))
+                .fetchOne());
+    }
+
+    @Override
+    public String getRecentVersion(String office, String categoryId, String groupId) {
+        AV_TS_GRP_ASSGN assignments = AV_TS_GRP_ASSGN.AV_TS_GRP_ASSGN;
+        Field<BigDecimal> tsCode = assignments.TS_CODE.cast(BigDecimal.class);
+        return version(dsl.select(DSL.count(), DSL.sum(tsCode),
+                        max(AV_TS_EXTENTS_UTC.LAST_UPDATE))
+                .from(assignments.leftJoin(AV_TS_EXTENTS_UTC)
+                        .on(AV_TS_EXTENTS_UTC.TS_CODE.eq(tsCode)))
+                .where(groupCondition(office, categoryId, groupId))
+                .fetchOne());
+    }
+
+    @Override
+    public String getCatalogVersion(String office) {
+        String key = office == null ? "" : office.toUpperCase(Locale.ROOT);
+        try {
+            return catalogVersions.get(key, () -> readCatalogVersion(office));
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            Throwables.throwIfUnchecked(e.getCause());
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Drops the cached catalog version of the office and of every office, so the next catalog
+     * request reads it again.
+     */
+    public static void invalidateCatalogVersion(@Nullable String office) {
+        if (office != null) {
+            catalogVersions.invalidate(office.toUpperCase(Locale.ROOT));
+        }
+        catalogVersions.invalidate("");
+    }
+
+    /**
+     * Like {@link #getCatalogVersion(String)}, always read from the database.
+     */
+    String readCatalogVersion(String office) {
+        Condition whereCondition = DSL.noCondition();
+        if (office != null) {
+            whereCondition = AV_CWMS_TS_ID2.DB_OFFICE_ID.eq(office.toUpperCase(Locale.ROOT));
+        }
+        // A rename or a new alias leaves the count alone but not the sum of the hashes
+        Field<BigDecimal> idHash = field("ora_hash({0})", BigDecimal.class,
+                DSL.concat(AV_CWMS_TS_ID2.DB_OFFICE_ID, DSL.inline("|"),
+                        AV_CWMS_TS_ID2.CWMS_TS_ID, DSL.inline("|"),
+                        AV_CWMS_TS_ID2.INTERVAL_UTC_OFFSET, DSL.inline("|"),
+                        AV_CWMS_TS_ID2.TIME_ZONE_ID, DSL.inline("|"),
+                        AV_CWMS_TS_ID2.ALIASED_ITEM));
+        return version(dsl.select(DSL.count(), DSL.sum(idHash),
+                        max(AV_TS_EXTENTS_UTC.LAST_UPDATE))
+                .from(AV_CWMS_TS_ID2.leftJoin(AV_TS_EXTENTS_UTC)
+                        .on(AV_TS_EXTENTS_UTC.TS_CODE.eq(AV_CWMS_TS_ID2.TS_CODE)))
+                .where(whereCondition)
+                .fetchOne());
+    }
+
+    private static String version(@Nullable Record3<Integer, BigDecimal, Timestamp> row) {
+        if (row == null) {
+            return "";
+        }
+        return row.value1() + ":" + row.value2() + ":"
+                + (row.value3() == null ? "" : row.value3().getTime());
+    }
 
     @Override
     public void create(TimeSeries input) {
@@ -1103,10 +1282,11 @@ public class TimeSeriesDaoImpl extends JooqDao<TimeSeries> implements TimeSeries
                 }
 
                 store(connection, input.getOfficeId(), input.getName(), input.getUnits(),
-                        versionDate, input.getValues(), createAsLrts, storeRule,
+                        versionDate, input.getValueArrays(), createAsLrts, storeRule,
                         overrideProtection);
             }
         });
+        invalidate(input.getOfficeId(), input.getName(), input.getVersionDate() != null);
     }
 
     @Override
@@ -1122,31 +1302,184 @@ public class TimeSeriesDaoImpl extends JooqDao<TimeSeries> implements TimeSeries
             }
 
             store(connection, input.getOfficeId(), input.getName(), input.getUnits(),
-                    versionDate, input.getValues(), createAsLrts, replaceAll, overrideProtection);
+                    versionDate, input.getValueArrays(), createAsLrts, replaceAll, overrideProtection);
         });
+        invalidate(input.getOfficeId(), input.getName(), input.getVersionDate() != null);
     }
 
-    private void store(Connection connection, String officeId, String tsId, String units,
-                       Timestamp versionDate, List<TimeSeries.Record> values, boolean createAsLrts,
-                       StoreRule storeRule, boolean overrideProtection) throws SQLException {
-        setOffice(connection,officeId);
+    @Override
+    public void storeAll(List<TimeSeries> input, boolean createAsLrts, StoreRule storeRule,
+                         boolean overrideProtection, int commitSize, StoreListener listener) {
+        Map<String, List<TimeSeries>> byOffice = input.stream()
+                .collect(Collectors.groupingBy(ts -> ts.getOfficeId().toUpperCase(),
+                        LinkedHashMap::new, Collectors.toList()));
+        for (List<TimeSeries> officeSeries : byOffice.values()) {
+            Set<TimeSeries> unreported = Collections.newSetFromMap(new IdentityHashMap<>());
+            unreported.addAll(officeSeries);
+            StoreListener reporter = (ts, error) -> {
+                unreported.remove(ts);
+                listener.stored(ts, error);
+            };
+            try {
+                connection(dsl, connection -> storeAll(connection, officeSeries, createAsLrts,
+                        storeRule, overrideProtection, Math.max(1, commitSize), reporter));
+            } catch (RuntimeException e) {
+                // The connection couldn't be prepared or failed part way
+                new ArrayList<>(unreported).forEach(ts -> reporter.stored(ts, e));
+            }
+        }
+    }
+
+    @Override
+    public void storeChunks(TimeSeries input, boolean createAsLrts, StoreRule storeRule,
+                            boolean overrideProtection, int chunkSize, ExecutorService executor,
+                            ChunkListener listener) {
+        if (storeRule == StoreRule.DELETE_INSERT) {
+            throw new IllegalArgumentException("Values can't be stored in chunks with the "
+                    + StoreRule.DELETE_INSERT + " store rule");
+        }
+        TimeSeriesValues values = input.getValueArrays();
+        Timestamp versionDate = null;
+        if (input.getVersionDate() != null) {
+            versionDate = Timestamp.from(input.getVersionDate().toInstant());
+        }
+        Timestamp chunkVersionDate = versionDate;
+        int size = Math.max(1, chunkSize);
+        int chunks = (values.size() + size - 1) / size;
+
+        IntConsumer storeChunk = index -> {
+            // Copied when stored, so only the running chunks are held twice
+            TimeSeriesValues chunk = values.slice(index * size,
+                    Math.min(values.size(), (index + 1) * size));
+            RuntimeException error = null;
+            try {
+                connection(dsl, connection -> store(connection, input.getOfficeId(),
+                        input.getName(), input.getUnits(), chunkVersionDate, chunk, createAsLrts,
+                        storeRule, overrideProtection));
+                invalidate(input.getOfficeId(), input.getName(), chunkVersionDate != null);
+            } catch (RuntimeException e) {
+                error = e;
+            }
+            listener.stored(index, chunk, error);
+        };
+
+        if (chunks == 0) {
+            return;
+        }
+        storeChunk.accept(0);
+
+        List<Future<?>> futures = new ArrayList<>(chunks - 1);
+        for (int i = 1; i < chunks; i++) {
+            int index = i;
+            futures.add(executor.submit(() -> storeChunk.accept(index)));
+        }
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            futures.forEach(f -> f.cancel(true));
+        } catch (ExecutionException e) {
+            futures.forEach(f -> f.cancel(true));
+            throw new IllegalStateException("Unable to store time series " + input.getName(),
+                    e.getCause());
+        }
+    }
+
+    private void storeAll(Connection connection, List<TimeSeries> series, boolean createAsLrts,
+                          StoreRule storeRule, boolean overrideProtection, int commitSize,
+                          StoreListener listener) throws SQLException {
+        String officeId = series.get(0).getOfficeId();
+        setOffice(connection, officeId);
         CwmsDbTs tsDao = CwmsDbServiceLookup.buildCwmsDb(CwmsDbTs.class, connection);
 
-        final int count = values == null ? 0 : values.size();
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        List<TimeSeries> uncommitted = new ArrayList<>(commitSize);
+        try {
+            for (TimeSeries input : series) {
+                try {
+                    Timestamp versionDate = null;
+                    if (input.getVersionDate() != null) {
+                        versionDate = Timestamp.from(input.getVersionDate().toInstant());
+                    }
+                    // Each call is atomic, so a failure leaves the rest of the chunk as it was
+                    store(connection, tsDao, officeId, input.getName(), input.getUnits(),
+                            versionDate, input.getValueArrays(), createAsLrts, storeRule,
+                            overrideProtection);
+                    uncommitted.add(input);
+                } catch (SQLException e) {
+                    listener.stored(input, wrapException(new DataAccessException(e.getMessage(), e)));
+                } catch (RuntimeException e) {
+                    listener.stored(input, wrapException(e));
+                }
 
-        final long[] timeArray = new long[count];
-        final double[] valueArray = new double[count];
-        final int[] qualityArray = new int[count];
+                if (uncommitted.size() >= commitSize) {
+                    commit(connection, uncommitted, listener);
+                }
+            }
+            commit(connection, uncommitted, listener);
+        } catch (SQLException | RuntimeException e) {
+            // Restoring auto-commit would otherwise commit what was stored since the last commit
+            try {
+                connection.rollback();
+            } catch (SQLException rollbackError) {
+                e.addSuppressed(rollbackError);
+            }
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
 
-        if (values != null && !values.isEmpty()) {
-            Iterator<TimeSeries.Record> iter = values.iterator();
-            for (int i = 0; iter.hasNext(); i++) {
-                TimeSeries.Record value = iter.next();
-                timeArray[i] = value.getDateTime().getTime();
-                valueArray[i] = value.getValue();
-                qualityArray[i] = value.getQualityCode();
+    private static void commit(Connection connection, List<TimeSeries> uncommitted,
+                               StoreListener listener) {
+        if (uncommitted.isEmpty()) {
+            return;
+        }
+        RuntimeException error = null;
+        try {
+            connection.commit();
+        } catch (SQLException e) {
+            error = wrapException(new DataAccessException(e.getMessage(), e));
+            try {
+                connection.rollback();
+            } catch (SQLException rollbackError) {
+                e.addSuppressed(rollbackError);
+            }
+        }
+        for (TimeSeries ts : uncommitted) {
+            if (error == null) {
+                invalidate(ts.getOfficeId(), ts.getName(), ts.getVersionDate() != null);
             }
+            listener.stored(ts, error);
         }
+        uncommitted.clear();
+    }
+
+    private void store(Connection connection, String officeId, String tsId, String units,
+                       Timestamp versionDate, TimeSeriesValues values, boolean createAsLrts,
+                       StoreRule storeRule, boolean overrideProtection) throws SQLException {
+        setOffice(connection,officeId);
+        CwmsDbTs tsDao = CwmsDbServiceLookup.buildCwmsDb(CwmsDbTs.class, connection);
+        store(connection, tsDao, officeId, tsId, units, versionDate, values, createAsLrts,
+                storeRule, overrideProtection);
+    }
+
+    private void store(Connection connection, CwmsDbTs tsDao, String officeId, String tsId,
+                       String units, Timestamp versionDate, TimeSeriesValues values,
+                       boolean createAsLrts, StoreRule storeRule, boolean overrideProtection)
+            throws SQLException {
+        if (values == null) {
+            values = new TimeSeriesValues(0);
+        }
+
+        // The values are already held in primitive arrays (missing values as NaN)
+        final int count = values.size();
+        final long[] timeArray = values.getDateTimes();
+        final double[] valueArray = values.getValues();
+        final int[] qualityArray = values.getQualityCodes();
 
         if (versionDate != null) {
             try {
@@ -1169,7 +1502,20 @@ public class TimeSeriesDaoImpl extends JooqDao<TimeSeries> implements TimeSeries
 
         tsDao.store(connection, officeId, tsId, units, timeArray, valueArray, qualityArray, count,
                 storeRule.getRule(), overrideProtection, versionDate, createAsLrts);
+    }
 
+    /**
+     * Drops what is cached of a time series once a store of it is committed. Dropping it
+     * earlier would let another request cache the values from before the store again.
+     */
+    private static void invalidate(String officeId, String tsId, boolean versioned) {
+        RecentValueCache.invalidate(officeId, tsId);
+        TsStatisticsCache.invalidate(officeId, tsId);
+        invalidateCatalogVersion(officeId);
+        if (versioned) {
+            // the time series may have just become versioned
+            TsMetadataCache.invalidate(officeId, tsId);
+        }
     }
 
     public void update(TimeSeries input, boolean createAsLrts, StoreRule storeRule,
@@ -1182,8 +1528,9 @@ public class TimeSeriesDaoImpl extends JooqDao<TimeSeries> implements TimeSeries
         connection(dsl, connection -> {
             setOffice(connection,input.getOfficeId());
             store(connection, input.getOfficeId(), name, input.getUnits(), versionDate,
-                    input.getValues(), createAsLrts, storeRule, overrideProtection);
+                    input.getValueArrays(), createAsLrts, storeRule, overrideProtection);
         });
+        invalidate(input.getOfficeId(), name, versionDate != null);
     }
 
 
@@ -1209,6 +1556,9 @@ public class TimeSeriesDaoImpl extends JooqDao<TimeSeries> implements TimeSeries
                     options.getVersionDate(), null, options.getMaxVersion(),
                     options.getTsItemMask(), options.getOverrideProtection());
         });
+        RecentValueCache.invalidate(officeId, tsId);
+        TsStatisticsCache.invalidate(officeId, tsId);
+        invalidateCatalogVersion(officeId);
     }
 
 
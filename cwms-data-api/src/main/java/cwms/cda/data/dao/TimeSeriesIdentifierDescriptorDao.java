@@ -63,6 +63,9 @@ public class TimeSeriesIdentifierDescriptorDao extends JooqDao<TimeSeriesIdentif
                 formatBool(failIfExists), tsid.getOfficeId());
             logger.atFine().log("Created tsCode: %s for %s", tsCode, tsid.getTimeSeriesId());
         });
+        // an existing id may have been updated in place
+        TsMetadataCache.invalidate(tsid.getOfficeId(), tsid.getTimeSeriesId());
+        TimeSeriesDaoImpl.invalidateCatalogVersion(tsid.getOfficeId());
     }
 
     public TimeSeriesIdentifierDescriptors getTimeSeriesIdentifiers(String cursor, int pageSize, String office,
@@ -176,7 +179,8 @@ public class TimeSeriesIdentifierDescriptorDao extends JooqDao<TimeSeriesIdentif
             CwmsDbTs tsDao = CwmsDbServiceLookup.buildCwmsDb(CwmsDbTs.class, connection);
             tsDao.updateTsId(connection, office, timeseriesId, utcOffsetMinutes, intervalForward, intervalBackward, activeFlag);
         });
-
+        TsMetadataCache.invalidate(office, timeseriesId);
+        TimeSeriesDaoImpl.invalidateCatalogVersion(office);
     }
 
     public void rename(String officeId, String origId, String newId, Long utcOffset) {
@@ -189,7 +193,9 @@ public class TimeSeriesIdentifierDescriptorDao extends JooqDao<TimeSeriesIdentif
                         officeId);
             }
         });
-        
+        TsMetadataCache.invalidate(officeId, origId);
+        TsMetadataCache.invalidate(officeId, newId);
+        TimeSeriesDaoImpl.invalidateCatalogVersion(officeId);
     }
 
     public void delete(String office, String timeseriesId, DeleteMethod method) {
@@ -215,6 +221,8 @@ public class TimeSeriesIdentifierDescriptorDao extends JooqDao<TimeSeriesIdentif
             CwmsDbTs tsDao = CwmsDbServiceLookup.buildCwmsDb(CwmsDbTs.class, connection);
             tsDao.deleteAll(connection, officeId, tsId);
         });
+        TsMetadataCache.invalidate(officeId, tsId);
+        TimeSeriesDaoImpl.invalidateCatalogVersion(officeId);
     }
 
     public void deleteData(String officeId, String tsId) {
@@ -223,6 +231,7 @@ public class TimeSeriesIdentifierDescriptorDao extends JooqDao<TimeSeriesIdentif
             CwmsDbTs tsDao = CwmsDbServiceLookup.buildCwmsDb(CwmsDbTs.class, connection);
             tsDao.deleteData(connection, officeId, tsId);
         });
+        TimeSeriesDaoImpl.invalidateCatalogVersion(officeId);
     }
 
     public void deleteKey(String officeId, String tsId) {
@@ -231,5 +240,7 @@ public class TimeSeriesIdentifierDescriptorDao extends JooqDao<TimeSeriesIdentif
             CwmsDbTs tsDao = CwmsDbServiceLookup.buildCwmsDb(CwmsDbTs.class, connection);
             tsDao.deleteKey(connection, officeId, tsId);
         });
+        TsMetadataCache.invalidate(officeId, tsId);
+        TimeSeriesDaoImpl.invalidateCatalogVersion(officeId);
     }
 }
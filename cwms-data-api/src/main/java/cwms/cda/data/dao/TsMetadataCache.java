@@ -0,0 +1,381 @@
+package cwms.cda.data.dao;
+
+import static usace.cwms.db.jooq.codegen.tables.AV_CWMS_TS_ID2.AV_CWMS_TS_ID2;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import cwms.cda.api.enums.UnitSystem;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jooq.CommonTableExpression;
+import org.jooq.DSLContext;
+import org.jooq.Field;
+import org.jooq.Record;
+import org.jooq.Record2;
+import org.jooq.ResultQuery;
+import org.jooq.conf.ParamType;
+import org.jooq.impl.DSL;
+import usace.cwms.db.jooq.codegen.packages.CWMS_LOC_PACKAGE;
+import usace.cwms.db.jooq.codegen.packages.CWMS_TS_PACKAGE;
+import usace.cwms.db.jooq.codegen.packages.CWMS_UTIL_PACKAGE;
+
+/**
+ * Caches the facts about a time series identifier that every retrieval needs but that rarely
+ * change: ts_code, canonical id, interval, interval offset, time zone, default units,
+ * versioned flag and vertical datum.
+ *
+ * <p>Entries are keyed by office and time series id (case-insensitive) and shared by every
+ * DAO instance. This API drops an entry whenever it stores, deletes, renames or updates that
+ * time series; changes made by other writers are picked up when the entry expires.
+ */
+public final class TsMetadataCache {
+    private static final Logger logger = Logger.getLogger(TsMetadataCache.class.getName());
+
+    public static final String NAME = "tsMetadata";
+    public static final String PROP_BASE = TimeSeriesDaoImpl.PROP_BASE + "." + NAME;
+
+    private static final Cache<List<String>, TsMetadata> cache = CacheBuilder.newBuilder()
+            .maximumSize(Integer.getInteger(PROP_BASE + ".maxSize", 32000))
+            .expireAfterWrite(Integer.getInteger(PROP_BASE + ".expireAfterSeconds", 600),
+                    TimeUnit.SECONDS)
+            .recordStats()
+            .build();
+
+    // default units by upper case base parameter and unit system, shared by all time series
+    private static final Cache<List<String>, String> defaultUnitsCache = CacheBuilder.newBuilder()
+            .maximumSize(Integer.getInteger(PROP_BASE + ".defaultUnits.maxSize", 2000))
+            .expireAfterWrite(Integer.getInteger(PROP_BASE + ".expireAfterSeconds", 600),
+                    TimeUnit.SECONDS)
+            .build();
+
+    private TsMetadataCache() {
+    }
+
+    /**
+     * Returns the metadata of a time series, reading it from the database if it is not cached.
+     * Without an office the user's default office is used, and the result is not cached.
+     *
+     * @param units the units the caller will ask for, so the vertical datum of an elevation
+     *              can be read in the same round trip; may be null
+     * @throws org.jooq.exception.DataAccessException if the time series does not exist
+     */
+    public static TsMetadata get(DSLContext dsl, @Nullable String office, String tsId,
+                                 @Nullable String units) {
+        if (office == null) {
+            return load(dsl, null, tsId, units);
+        }
+
+        List<String> key = key(office, tsId);
+        TsMetadata retval = cache.getIfPresent(key);
+        if (retval == null) {
+            retval = load(dsl, office, tsId, units);
+            cache.put(key, retval);
+            if (!retval.getTsId().equalsIgnoreCase(tsId)) {
+                // looked up by an alias, make the canonical id a hit too
+                cache.put(key(office, retval.getTsId()), retval);
+            }
+        }
+        return retval;
+    }
+
+    public static TsMetadata get(DSLContext dsl, @Nullable String office, String tsId) {
+        return get(dsl, office, tsId, null);
+    }
+
+    /**
+     * Returns the default units of each base parameter in the given unit system, reading the
+     * ones that are not cached in a single statement.
+     *
+     * @return default units keyed by upper case base parameter id
+     */
+    public static Map<String, String> getDefaultUnits(DSLContext dsl,
+                                                      Collection<String> baseParameterIds,
+                                                      String unitSystem) {
+        Map<String, String> retval = new LinkedHashMap<>();
+        List<String> missing = new ArrayList<>();
+        for (String baseParameterId : baseParameterIds) {
+            String upper = baseParameterId.toUpperCase(Locale.ROOT);
+            String cached = defaultUnitsCache.getIfPresent(unitsKey(upper, unitSystem));
+            if (cached != null) {
+                retval.put(upper, cached);
+            } else if (!retval.containsKey(upper) && !missing.contains(upper)) {
+                missing.add(upper);
+            }
+        }
+
+        if (!missing.isEmpty()) {
+            List<Field<String>> fields = new ArrayList<>();
+            for (String baseParameterId : missing) {
+                fields.add(CWMS_UTIL_PACKAGE.call_GET_DEFAULT_UNITS(DSL.val(baseParameterId),
+                        DSL.val(unitSystem)));
+            }
+            Record row = dsl.select(fields).fetchOne();
+            for (int i = 0; i < missing.size(); i++) {
+                String units = row == null ? null : row.get(i, String.class);
+                if (units != null) {
+                    retval.put(missing.get(i), units);
+                    defaultUnitsCache.put(unitsKey(missing.get(i), unitSystem), units);
+                }
+            }
+        }
+        return retval;
+    }
+
+    public static void invalidate(@Nullable String office, @Nullable String tsId) {
+        if (office == null || tsId == null) {
+            // without both we can't tell which entries may be stale
+            cache.invalidateAll();
+        } else {
+            List<String> key = key(office, tsId);
+            TsMetadata existing = cache.getIfPresent(key);
+            cache.invalidate(key);
+            if (existing != null) {
+                cache.invalidate(key(office, existing.getTsId()));
+            }
+        }
+    }
+
+    public static void invalidateAll() {
+        cache.invalidateAll();
+        defaultUnitsCache.invalidateAll();
+    }
+
+    public static void registerMetrics(@Nullable MetricRegistry metrics) {
+        if (metrics == null) {
+            return;
+        }
+        String hrName = MetricRegistry.name(TsMetadataCache.class.getName(), NAME, "hit-rate");
+        if (metrics.getGauges().get(hrName) == null) {
+            MetricRegistry.MetricSupplier<? extends Gauge> hr = () -> (Gauge<Double>) () -> cache.stats().hitRate();
+            metrics.gauge(hrName, hr);
+        }
+        String mrName = MetricRegistry.name(TsMetadataCache.class.getName(), NAME, "miss-rate");
+        if (metrics.getGauges().get(mrName) == null) {
+            MetricRegistry.MetricSupplier<? extends Gauge> mr = () -> (Gauge<Double>) () -> cache.stats().missRate();
+            metrics.gauge(mrName, mr);
+        }
+        String sizeName = MetricRegistry.name(TsMetadataCache.class.getName(), NAME, "size");
+        if (metrics.getGauges().get(sizeName) == null) {
+            MetricRegistry.MetricSupplier<? extends Gauge> size = () -> (Gauge<Long>) cache::size;
+            metrics.gauge(sizeName, size);
+        }
+    }
+
+    private static List<String> key(String office, String tsId) {
+        return Arrays.asList(office.toUpperCase(Locale.ROOT), tsId.toUpperCase(Locale.ROOT));
+    }
+
+    private static List<String> unitsKey(String baseParameterId, String unitSystem) {
+        return Arrays.asList(baseParameterId.toUpperCase(Locale.ROOT),
+                unitSystem.toUpperCase(Locale.ROOT));
+    }
+
+    private static TsMetadata load(DSLContext dsl, @Nullable String office, String tsId,
+                                   @Nullable String units) {
+        final Field<String> officeId = CWMS_UTIL_PACKAGE.call_GET_DB_OFFICE_ID(
+                office != null ? DSL.val(office) : CWMS_UTIL_PACKAGE.call_USER_OFFICE_ID());
+        // get_ts_code__2 resolves aliases and raises an error for an unknown id
+        final Field<BigDecimal> tsCode = CWMS_TS_PACKAGE.call_GET_TS_CODE__2(DSL.val(tsId), officeId);
+
+        CommonTableExpression<Record2<BigDecimal, String>> valid =
+                DSL.name("valid").fields("tscode", "office_id").as(DSL.select(tsCode, officeId));
+
+        Field<String> enUnits = CWMS_UTIL_PACKAGE.call_GET_DEFAULT_UNITS(
+                AV_CWMS_TS_ID2.BASE_PARAMETER_ID, DSL.val(UnitSystem.EN.getValue()));
+        Field<String> siUnits = CWMS_UTIL_PACKAGE.call_GET_DEFAULT_UNITS(
+                AV_CWMS_TS_ID2.BASE_PARAMETER_ID, DSL.val(UnitSystem.SI.getValue()));
+        Field<String> datumUnits = DSL.val(units, String.class);
+        if (units == null || UnitSystem.EN.getValue().equalsIgnoreCase(units)) {
+            datumUnits = enUnits;
+        } else if (UnitSystem.SI.getValue().equalsIgnoreCase(units)) {
+            datumUnits = siUnits;
+        }
+
+        ResultQuery<?> query = dsl.with(valid)
+                .select(
+                        AV_CWMS_TS_ID2.DB_OFFICE_ID,
+                        AV_CWMS_TS_ID2.TS_CODE,
+                        AV_CWMS_TS_ID2.CWMS_TS_ID,
+                        AV_CWMS_TS_ID2.LOCATION_ID,
+                        AV_CWMS_TS_ID2.PARAMETER_ID,
+                        AV_CWMS_TS_ID2.BASE_PARAMETER_ID,
+                        AV_CWMS_TS_ID2.INTERVAL,
+                        AV_CWMS_TS_ID2.INTERVAL_UTC_OFFSET,
+                        AV_CWMS_TS_ID2.TIME_ZONE_ID,
+                        CWMS_TS_PACKAGE.call_IS_TSID_VERSIONED(AV_CWMS_TS_ID2.CWMS_TS_ID,
+                                AV_CWMS_TS_ID2.DB_OFFICE_ID).as("VERSIONED"),
+                        enUnits.as("EN_UNITS"),
+                        siUnits.as("SI_UNITS"),
+                        datumUnits.as("DATUM_UNITS"),
+                        DSL.choose(DSL.upper(AV_CWMS_TS_ID2.PARAMETER_ID))
+                                .when("ELEV", CWMS_LOC_PACKAGE.call_GET_VERTICAL_DATUM_INFO_F__2(
+                                        AV_CWMS_TS_ID2.LOCATION_ID, datumUnits,
+                                        AV_CWMS_TS_ID2.DB_OFFICE_ID))
+                                .otherwise("")
+                                .as("VERTICAL_DATUM")
+                )
+                .from(valid)
+                .join(AV_CWMS_TS_ID2)
+                .on(AV_CWMS_TS_ID2.DB_OFFICE_ID.eq(valid.field("office_id", String.class))
+                        .and(AV_CWMS_TS_ID2.TS_CODE.eq(valid.field("tscode", BigDecimal.class)))
+                        .and(AV_CWMS_TS_ID2.ALIASED_ITEM.isNull()));
+
+        logger.fine(() -> query.getSQL(ParamType.INLINED));
+
+        Record row = query.fetchOne();
+        if (row == null) {
+            throw new IllegalStateException("No catalog entry for time series " + tsId);
+        }
+        TsMetadata retval = new TsMetadata(row);
+        if (retval.baseParameterId != null) {
+            if (retval.enUnits != null) {
+                defaultUnitsCache.put(unitsKey(retval.baseParameterId, UnitSystem.EN.getValue()),
+                        retval.enUnits);
+            }
+            if (retval.siUnits != null) {
+                defaultUnitsCache.put(unitsKey(retval.baseParameterId, UnitSystem.SI.getValue()),
+                        retval.siUnits);
+            }
+        }
+        String datum = row.getValue("VERTICAL_DATUM", String.class);
+        String resolvedUnits = row.getValue("DATUM_UNITS", String.class);
+        if (retval.isElevation() && resolvedUnits != null) {
+            retval.verticalDatums.put(resolvedUnits, datum == null ? "" : datum);
+        }
+        return retval;
+    }
+
+    /**
+     * The cached facts about one time series identifier.
+     */
+    public static final class TsMetadata {
+        private final String officeId;
+        private final long tsCode;
+        private final String tsId;
+        private final String locationId;
+        private final String parameterId;
+        private final String baseParameterId;
+        private final long intervalMinutes;
+        private final long intervalUtcOffset;
+        private final String timeZoneId;
+        private final boolean versioned;
+        private final String enUnits;
+        private final String siUnits;
+        // vertical datum xml by units, empty when there is none
+        private final ConcurrentMap<String, String> verticalDatums = new ConcurrentHashMap<>();
+
+        private TsMetadata(Record row) {
+            officeId = row.getValue(AV_CWMS_TS_ID2.DB_OFFICE_ID);
+            tsCode = row.getValue(AV_CWMS_TS_ID2.TS_CODE).longValue();
+            tsId = row.getValue(AV_CWMS_TS_ID2.CWMS_TS_ID);
+            locationId = row.getValue(AV_CWMS_TS_ID2.LOCATION_ID);
+            parameterId = row.getValue(AV_CWMS_TS_ID2.PARAMETER_ID);
+            baseParameterId = row.getValue(AV_CWMS_TS_ID2.BASE_PARAMETER_ID);
+            Long interval = row.getValue(AV_CWMS_TS_ID2.INTERVAL, Long.class);
+            intervalMinutes = interval == null ? 0 : interval;
+            Long offset = row.getValue(AV_CWMS_TS_ID2.INTERVAL_UTC_OFFSET, Long.class);
+            intervalUtcOffset = offset == null ? 0 : offset;
+            timeZoneId = row.getValue(AV_CWMS_TS_ID2.TIME_ZONE_ID);
+            versioned = JooqDao.parseBool(row.getValue("VERSIONED", String.class));
+            enUnits = row.getValue("EN_UNITS", String.class);
+            siUnits = row.getValue("SI_UNITS", String.class);
+        }
+
+        public String getOfficeId() {
+            return officeId;
+        }
+
+        public long getTsCode() {
+            return tsCode;
+        }
+
+        /**
+         * @return the canonical id, even if this was looked up by an alias
+         */
+        public String getTsId() {
+            return tsId;
+        }
+
+        public String getLocationId() {
+            return locationId;
+        }
+
+        public String getParameterId() {
+            return parameterId;
+        }
+
+        public String getBaseParameterId() {
+            return baseParameterId;
+        }
+
+        /**
+         * @return the interval in minutes, 0 for an irregular time series
+         */
+        public long getIntervalMinutes() {
+            return intervalMinutes;
+        }
+
+        public long getIntervalUtcOffset() {
+            return intervalUtcOffset;
+        }
+
+        public String getTimeZoneId() {
+            return timeZoneId;
+        }
+
+        public boolean isVersioned() {
+            return versioned;
+        }
+
+        public boolean isElevation() {
+            return "ELEV".equalsIgnoreCase(parameterId);
+        }
+
+        /**
+         * Maps the EN and SI unit systems to this time series' default units for that system;
+         * anything else is returned as is.
+         */
+        public String resolveUnits(@NotNull String units) {
+            if (UnitSystem.EN.getValue().equalsIgnoreCase(units)) {
+                return enUnits;
+            } else if (UnitSystem.SI.getValue().equalsIgnoreCase(units)) {
+                return siUnits;
+            }
+            return units;
+        }
+
+        /**
+         * Returns the vertical datum information xml for an elevation in the given units,
+         * reading it from the database the first time those units are asked for.
+         *
+         * @return the xml, or null if this is not an elevation
+         */
+        @Nullable
+        public String getVerticalDatum(DSLContext dsl, String units) {
+            if (!isElevation()) {
+                return null;
+            }
+            String retval = verticalDatums.computeIfAbsent(units, u -> {
+                String datum = dsl.select(CWMS_LOC_PACKAGE.call_GET_VERTICAL_DATUM_INFO_F__2(
+                                DSL.val(locationId), DSL.val(u), DSL.val(officeId)))
+                        .fetchOne(0, String.class);
+                return datum == null ? "" : datum;
+            });
+            return retval.isEmpty() ? null : retval;
+        }
+    }
+}
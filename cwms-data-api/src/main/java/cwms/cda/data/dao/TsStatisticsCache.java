@@ -0,0 +1,420 @@
+package cwms.cda.data.dao;
+
+import static org.jooq.impl.DSL.partitionBy;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import cwms.cda.api.enums.StatisticsBucket;
+import cwms.cda.api.enums.UnitSystem;
+import cwms.cda.data.dto.TimeSeriesStatistics;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import org.jetbrains.annotations.Nullable;
+import org.jooq.Condition;
+import org.jooq.DSLContext;
+import org.jooq.Field;
+import org.jooq.Record;
+import org.jooq.ResultQuery;
+import org.jooq.Table;
+import org.jooq.conf.ParamType;
+import org.jooq.impl.DSL;
+import org.jooq.impl.SQLDataType;
+import usace.cwms.db.jooq.codegen.tables.AV_TSV_DQU;
+
+/**
+ * Computes statistics of time series values in the database, one row per time series and
+ * period, so only the aggregates are sent back. Statistics of periods that ended a while ago,
+ * long enough that late values have likely arrived, are cached, keyed by time series, unit system, time zone and period; stores and deletes made
+ * through this API drop those of that time series.
+ */
+public final class TsStatisticsCache {
+    private static final Logger logger = Logger.getLogger(TsStatisticsCache.class.getName());
+
+    public static final String NAME = "tsStatistics";
+    public static final String PROP_BASE = TimeSeriesDaoImpl.PROP_BASE + "." + NAME;
+
+    // the most periods, over all time series, one request may ask for
+    private static final int MAX_PERIODS = Integer.getInteger(PROP_BASE + ".maxPeriods", 100000);
+    // how long after a period ends before its statistics are cached, for values stored late
+    // or by other means than this API
+    private static final long GRACE_MILLIS = TimeUnit.SECONDS.toMillis(
+            Integer.getInteger(PROP_BASE + ".graceSeconds", 7200));
+
+    private static final Cache<List<Object>, TimeSeriesStatistics> cache = CacheBuilder.newBuilder()
+            .maximumSize(Integer.getInteger(PROP_BASE + ".maxSize", 100000))
+            .expireAfterWrite(Integer.getInteger(PROP_BASE + ".expireAfterSeconds", 3600),
+                    TimeUnit.SECONDS)
+            .recordStats()
+            .build();
+
+    private TsStatisticsCache() {
+    }
+
+    /**
+     * @param bucket the calendar periods, or null for the whole window
+     * @return the statistics of each time series, in the order given, then of each period
+     */
+    public static List<TimeSeriesStatistics> get(DSLContext dsl,
+                                                 List<TsMetadataCache.TsMetadata> series,
+                                                 Instant begin, Instant end,
+                                                 @Nullable StatisticsBucket bucket, ZoneId zone,
+                                                 UnitSystem unitSystem) {
+        if (!begin.isBefore(end)) {
+            throw new IllegalArgumentException("The end must be after the begin");
+        }
+        List<Period> periods = periods(begin, end, zone, bucket);
+        if ((long) periods.size() * series.size() > MAX_PERIODS) {
+            throw new IllegalArgumentException("The request asks for "
+                    + (long) periods.size() * series.size() + " periods, more than the "
+                    + MAX_PERIODS + " allowed. Use a larger bucket or fewer time series.");
+        }
+
+        Set<String> baseParameters = new LinkedHashSet<>();
+        for (TsMetadataCache.TsMetadata metadata : series) {
+            baseParameters.add(metadata.getBaseParameterId());
+        }
+        Map<String, String> defaultUnits = TsMetadataCache.getDefaultUnits(dsl, baseParameters,
+                unitSystem.getValue());
+
+        Instant settled = Instant.ofEpochMilli(System.currentTimeMillis() - GRACE_MILLIS);
+        Map<List<Object>, TimeSeriesStatistics> found = new HashMap<>();
+        List<RecentValueCache.Series> toRead = new ArrayList<>();
+        Instant readFrom = null;
+        Instant readTo = null;
+        for (TsMetadataCache.TsMetadata metadata : series) {
+            boolean missing = false;
+            for (Period period : periods) {
+                List<Object> key = key(metadata, unitSystem, zone, period);
+                TimeSeriesStatistics cached = cache.getIfPresent(key);
+                if (cached != null) {
+                    found.put(key, cached);
+                } else {
+                    missing = true;
+                    readFrom = readFrom == null || period.begin.toInstant().isBefore(readFrom)
+                            ? period.begin.toInstant() : readFrom;
+                    readTo = readTo == null || period.end.toInstant().isAfter(readTo)
+                            ? period.end.toInstant() : readTo;
+                }
+            }
+            if (missing) {
+                toRead.add(new RecentValueCache.Series(metadata.getOfficeId(),
+                        metadata.getTsId(), metadata.getTsCode(), metadata.getBaseParameterId()));
+            }
+        }
+
+        Map<List<Object>, Record> rows = toRead.isEmpty() ? new HashMap<>()
+                : read(dsl, toRead, readFrom, readTo, bucket, zone, unitSystem);
+
+        List<TimeSeriesStatistics> retval = new ArrayList<>();
+        for (TsMetadataCache.TsMetadata metadata : series) {
+            String units = defaultUnits.get(metadata.getBaseParameterId().toUpperCase(Locale.ROOT));
+            for (Period period : periods) {
+                List<Object> key = key(metadata, unitSystem, zone, period);
+                TimeSeriesStatistics statistics = found.get(key);
+                if (statistics == null) {
+                    statistics = build(metadata, units, period,
+                            rows.get(Arrays.asList(metadata.getTsCode(), period.bucketStart)));
+                    if (!period.end.toInstant().isAfter(settled)) {
+                        cache.put(key, statistics);
+                    }
+                }
+                retval.add(statistics);
+            }
+        }
+        return retval;
+    }
+
+    private static Map<List<Object>, Record> read(DSLContext dsl,
+                                                  List<RecentValueCache.Series> series,
+                                                  Instant from, Instant to,
+                                                  @Nullable StatisticsBucket bucket, ZoneId zone,
+                                                  UnitSystem unitSystem) {
+        Map<List<Object>, Record> retval = new HashMap<>();
+        Condition inUnits = RecentValueCache.inDefaultUnits(dsl, series, unitSystem);
+        if (inUnits == null) {
+            return retval;
+        }
+
+        AV_TSV_DQU tsvView = AV_TSV_DQU.AV_TSV_DQU;
+        Timestamp fromTimestamp = Timestamp.from(from);
+        Timestamp toTimestamp = Timestamp.from(to);
+        Field<Timestamp> bucketStart = bucketStart(tsvView.DATE_TIME, bucket, zone).as("BUCKET");
+        Field<Integer> latestVersion = DSL.rowNumber()
+                .over(partitionBy(tsvView.TS_CODE, tsvView.DATE_TIME)
+                        .orderBy(tsvView.VERSION_DATE.desc()))
+                .as("LATEST_VERSION");
+        Table<?> values = dsl.select(tsvView.TS_CODE, tsvView.DATE_TIME, tsvView.VALUE,
+                        bucketStart, latestVersion)
+                .from(tsvView)
+                .where(inUnits)
+                .and(tsvView.DATE_TIME.ge(fromTimestamp))
+                .and(tsvView.DATE_TIME.lt(toTimestamp))
+                .and(tsvView.START_DATE.le(toTimestamp))
+                .and(tsvView.END_DATE.gt(fromTimestamp))
+                .asTable("V");
+
+        Field<Long> tsCode = values.field(tsvView.TS_CODE);
+        Field<Timestamp> dateTime = values.field(tsvView.DATE_TIME);
+        Field<Double> value = values.field(tsvView.VALUE);
+        Field<Timestamp> valuesBucket = values.field(bucketStart);
+        // Sorts missing values after the others for FIRST, and before them for LAST
+        Field<Integer> missingLast = DSL.when(value.isNull(), 1).otherwise(0);
+        Field<Integer> missingFirst = DSL.when(value.isNull(), 0).otherwise(1);
+
+        ResultQuery<Record> query = dsl.select(tsCode, valuesBucket,
+                        DSL.count().as("STORED"),
+                        DSL.count(value).as("VALUED"),
+                        DSL.min(value).as("MIN_VALUE"),
+                        DSL.max(value).as("MAX_VALUE"),
+                        DSL.avg(value).as("MEAN_VALUE"),
+                        DSL.sum(value).as("SUM_VALUE"),
+                        DSL.min(dateTime).filterWhere(value.isNotNull()).as("FIRST_DATE_TIME"),
+                        DSL.min(value).keepDenseRankFirstOrderBy(missingLast, dateTime)
+                                .as("FIRST_VALUE"),
+                        DSL.max(dateTime).filterWhere(value.isNotNull()).as("LAST_DATE_TIME"),
+                        DSL.max(value).keepDenseRankLastOrderBy(missingFirst, dateTime)
+                                .as("LAST_VALUE"))
+                .from(values)
+                .where(values.field(latestVersion).eq(1))
+                .groupBy(tsCode, valuesBucket);
+        logger.fine(() -> query.getSQL(ParamType.INLINED));
+
+        for (Record r : query.fetch()) {
+            Timestamp start = r.get(valuesBucket);
+            retval.put(Arrays.asList(r.get(tsCode),
+                    bucket == null ? null : start.toLocalDateTime()), r);
+        }
+        return retval;
+    }
+
+    /**
+     * The start of each value's period, as a date in the time zone. Hours are given by their
+     * start in UTC instead, since the hour repeated when clocks fall back has the same start
+     * in the time zone as the one before it.
+     */
+    private static Field<Timestamp> bucketStart(Field<Timestamp> dateTime,
+                                                @Nullable StatisticsBucket bucket, ZoneId zone) {
+        if (bucket == null) {
+            return DSL.inline(null, SQLDataType.TIMESTAMP);
+        }
+        Field<Timestamp> local = DSL.field(
+                "cast(from_tz(cast({0} as timestamp), 'UTC') at time zone {1} as date)",
+                SQLDataType.TIMESTAMP, dateTime, DSL.val(zone.getId()));
+        switch (bucket) {
+            case HOUR:
+                // back from the value by how far it is into its hour in the time zone, which
+                // works for zones offset by part of an hour too
+                return DSL.field("cast({0} as date) - ({1} - trunc({1}, 'HH'))",
+                        SQLDataType.TIMESTAMP, dateTime, local);
+            case DAY:
+                return DSL.field("trunc({0}, 'DD')", SQLDataType.TIMESTAMP, local);
+            case MONTH:
+                return DSL.field("trunc({0}, 'MM')", SQLDataType.TIMESTAMP, local);
+            case WATER_YEAR:
+                return DSL.field("add_months(trunc(add_months({0}, 3), 'YYYY'), -3)",
+                        SQLDataType.TIMESTAMP, local);
+            default:
+                throw new IllegalArgumentException("Unsupported bucket " + bucket);
+        }
+    }
+
+    private static TimeSeriesStatistics build(TsMetadataCache.TsMetadata metadata, String units,
+                                              Period period, @Nullable Record row) {
+        TimeSeriesStatistics.Builder builder = new TimeSeriesStatistics.Builder()
+                .withName(metadata.getTsId())
+                .withUnits(units)
+                .withPeriod(period.begin, period.end);
+        Long expected = expectedCount(period.begin.toInstant(), period.end.toInstant(),
+                metadata.getIntervalMinutes(), metadata.getIntervalUtcOffset());
+        if (row == null) {
+            return builder.withCounts(0, 0, expected).build();
+        }
+        ZoneId zone = period.begin.getZone();
+        return builder.withCounts(row.get("VALUED", Long.class), row.get("STORED", Long.class),
+                        expected)
+                .withRange(row.get("MIN_VALUE", Double.class), row.get("MAX_VALUE", Double.class))
+                .withMean(row.get("MEAN_VALUE", Double.class))
+                .withSum(row.get("SUM_VALUE", Double.class))
+                .withFirst(zoned(row.get("FIRST_DATE_TIME", Timestamp.class), zone),
+                        row.get("FIRST_VALUE", Double.class))
+                .withLast(zoned(row.get("LAST_DATE_TIME", Timestamp.class), zone),
+                        row.get("LAST_VALUE", Double.class))
+                .build();
+    }
+
+    private static ZonedDateTime zoned(@Nullable Timestamp timestamp, ZoneId zone) {
+        return timestamp == null ? null : timestamp.toInstant().atZone(zone);
+    }
+
+    /**
+     * The number of times of a regular interval from begin up to, but not including, end.
+     *
+     * @return null for irregular intervals, and for those whose times aren't fixed in UTC
+     */
+    static Long expectedCount(Instant begin, Instant end, long intervalMinutes,
+                              long intervalUtcOffset) {
+        if (intervalMinutes <= 0 || intervalMinutes > TimeUnit.DAYS.toMinutes(1)
+                || intervalUtcOffset < 0 || intervalUtcOffset >= intervalMinutes) {
+            return null;
+        }
+        long interval = TimeUnit.MINUTES.toMillis(intervalMinutes);
+        long offset = TimeUnit.MINUTES.toMillis(intervalUtcOffset);
+        // times k * interval + offset with begin <= time < end
+        return ceilDiv(end.toEpochMilli() - offset, interval)
+                - ceilDiv(begin.toEpochMilli() - offset, interval);
+    }
+
+    private static long ceilDiv(long dividend, long divisor) {
+        return -Math.floorDiv(-dividend, divisor);
+    }
+
+    /**
+     * Splits the window into the periods of the bucket in the time zone. The first and last
+     * periods are cut to the window.
+     */
+    static List<Period> periods(Instant begin, Instant end, ZoneId zone,
+                                @Nullable StatisticsBucket bucket) {
+        ZonedDateTime windowBegin = begin.atZone(zone);
+        ZonedDateTime windowEnd = end.atZone(zone);
+        List<Period> retval = new ArrayList<>();
+        if (bucket == null) {
+            retval.add(new Period(null, windowBegin, windowEnd));
+            return retval;
+        }
+        ZonedDateTime start = startOf(windowBegin, bucket);
+        while (start.isBefore(windowEnd)) {
+            ZonedDateTime next = next(start, bucket);
+            retval.add(new Period(bucketKey(start, bucket),
+                    start.isBefore(windowBegin) ? windowBegin : start,
+                    next.isAfter(windowEnd) ? windowEnd : next));
+            start = next;
+            if (retval.size() > MAX_PERIODS) {
+                break;
+            }
+        }
+        return retval;
+    }
+
+    /**
+     * The period start as {@link #bucketStart} gives it.
+     */
+    private static LocalDateTime bucketKey(ZonedDateTime start, StatisticsBucket bucket) {
+        if (bucket == StatisticsBucket.HOUR) {
+            return start.withZoneSameInstant(ZoneOffset.UTC).toLocalDateTime();
+        }
+        return start.toLocalDateTime();
+    }
+
+    private static ZonedDateTime startOf(ZonedDateTime time, StatisticsBucket bucket) {
+        switch (bucket) {
+            case HOUR:
+                return time.truncatedTo(ChronoUnit.HOURS);
+            case DAY:
+                return time.truncatedTo(ChronoUnit.DAYS);
+            case MONTH:
+                return time.withDayOfMonth(1).truncatedTo(ChronoUnit.DAYS);
+            case WATER_YEAR:
+                int year = time.getMonthValue() >= 10 ? time.getYear() : time.getYear() - 1;
+                return LocalDateTime.of(year, 10, 1, 0, 0).atZone(time.getZone());
+            default:
+                throw new IllegalArgumentException("Unsupported bucket " + bucket);
+        }
+    }
+
+    private static ZonedDateTime next(ZonedDateTime start, StatisticsBucket bucket) {
+        switch (bucket) {
+            case HOUR:
+                return start.plusHours(1);
+            case DAY:
+                return start.plusDays(1);
+            case MONTH:
+                return start.plusMonths(1);
+            case WATER_YEAR:
+                return start.plusYears(1);
+            default:
+                throw new IllegalArgumentException("Unsupported bucket " + bucket);
+        }
+    }
+
+    public static void invalidate(@Nullable String office, @Nullable String tsId) {
+        if (office == null || tsId == null) {
+            cache.invalidateAll();
+            return;
+        }
+        String upperOffice = office.toUpperCase(Locale.ROOT);
+        String upperTsId = tsId.toUpperCase(Locale.ROOT);
+        cache.asMap().keySet().removeIf(key -> upperOffice.equals(key.get(0))
+                && upperTsId.equals(key.get(1)));
+    }
+
+    public static void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    public static void registerMetrics(@Nullable MetricRegistry metrics) {
+        if (metrics == null) {
+            return;
+        }
+        String hrName = MetricRegistry.name(TsStatisticsCache.class.getName(), NAME, "hit-rate");
+        if (metrics.getGauges().get(hrName) == null) {
+            MetricRegistry.MetricSupplier<? extends Gauge> hr = () -> (Gauge<Double>) () -> cache.stats().hitRate();
+            metrics.gauge(hrName, hr);
+        }
+        String sizeName = MetricRegistry.name(TsStatisticsCache.class.getName(), NAME, "size");
+        if (metrics.getGauges().get(sizeName) == null) {
+            MetricRegistry.MetricSupplier<? extends Gauge> size = () -> (Gauge<Long>) cache::size;
+            metrics.gauge(sizeName, size);
+        }
+    }
+
+    private static List<Object> key(TsMetadataCache.TsMetadata metadata, UnitSystem unitSystem,
+                                    ZoneId zone, Period period) {
+        return Arrays.asList(metadata.getOfficeId().toUpperCase(Locale.ROOT),
+                metadata.getTsId().toUpperCase(Locale.ROOT), unitSystem, zone.getId(),
+                period.begin.toInstant().toEpochMilli(), period.end.toInstant().toEpochMilli());
+    }
+
+    static final class Period {
+        // the start of the whole period, which the database groups by
+        private final LocalDateTime bucketStart;
+        private final ZonedDateTime begin;
+        private final ZonedDateTime end;
+
+        private Period(@Nullable LocalDateTime bucketStart, ZonedDateTime begin,
+                       ZonedDateTime end) {
+            this.bucketStart = bucketStart;
+            this.begin = begin;
+            this.end = end;
+        }
+
+        ZonedDateTime getBegin() {
+            return begin;
+        }
+
+        ZonedDateTime getEnd() {
+            return end;
+        }
+
+        @Nullable
+        LocalDateTime getBucketStart() {
+            return bucketStart;
+        }
+    }
+}
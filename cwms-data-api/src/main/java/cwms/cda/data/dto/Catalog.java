@@ -9,8 +9,11 @@ import cwms.cda.data.dto.catalog.LocationCatalogEntry;
 import cwms.cda.data.dto.catalog.TimeseriesCatalogEntry;
 import cwms.cda.formatters.Formats;
 import cwms.cda.formatters.annotations.FormattableWith;
+import cwms.cda.formatters.arrow.ArrowV1;
+import cwms.cda.formatters.json.CborV2;
 import cwms.cda.formatters.json.JsonV1;
 import cwms.cda.formatters.json.JsonV2;
+import cwms.cda.formatters.json.SmileV2;
 import cwms.cda.formatters.xml.XMLv1;
 import io.swagger.v3.oas.annotations.media.Schema;
 import java.util.List;
@@ -20,6 +23,9 @@ import java.util.Objects;
 @FormattableWith(contentType = Formats.XML, formatter = XMLv1.class)
 @FormattableWith(contentType = Formats.JSONV1, formatter = JsonV1.class, aliases = {Formats.DEFAULT, Formats.JSON})
 @FormattableWith(contentType = Formats.JSONV2, formatter = JsonV2.class)
+@FormattableWith(contentType = Formats.CBOR, formatter = CborV2.class)
+@FormattableWith(contentType = Formats.SMILE, formatter = SmileV2.class)
+@FormattableWith(contentType = Formats.ARROW, formatter = ArrowV1.class)
 public class Catalog extends CwmsDTOPaginated {
     @Schema(
             oneOf = {
@@ -35,12 +41,12 @@ public class Catalog extends CwmsDTOPaginated {
     private Catalog() {
     }
 
-    public Catalog(String page, int total, int pageSize, List<? extends CatalogEntry> entries) {
+    public Catalog(String page, Integer total, int pageSize, List<? extends CatalogEntry> entries) {
         this(page, total, pageSize, entries, new CatalogRequestParameters.Builder().build());
     }
 
 
-    public Catalog(String page, int total, int pageSize, List<? extends CatalogEntry> entries,
+    public Catalog(String page, Integer total, int pageSize, List<? extends CatalogEntry> entries,
                    CatalogRequestParameters param) {
         super(page, pageSize, total);
 
@@ -77,7 +83,7 @@ public class Catalog extends CwmsDTOPaginated {
         private final String boundingOfficeLike;
         private final boolean includeExtents;
         private final boolean excludeEmpty;
-        private int total;
+        private Integer total;
         private int pageSize;
 
         public CatalogPage(String page) {
@@ -99,7 +105,7 @@ public class Catalog extends CwmsDTOPaginated {
             boundingOfficeLike = nullOrVal(parts[7]);
             includeExtents = Boolean.parseBoolean(parts[8]);
             excludeEmpty = Boolean.parseBoolean(parts[9]);
-            total = Integer.parseInt(parts[10]);
+            total = CwmsDTOPaginated.decodeTotal(parts[10]);
             pageSize = Integer.parseInt(parts[11]);
         }
 
@@ -145,7 +151,7 @@ public class Catalog extends CwmsDTOPaginated {
             return pageSize;
         }
 
-        public int getTotal() {
+        public Integer getTotal() {
             return total;
         }
 
@@ -31,7 +31,7 @@ public class Clobs extends CwmsDTOPaginated {
     }
 
 
-    private Clobs(String cursor, int pageSize, int total) {
+    private Clobs(String cursor, int pageSize, Integer total) {
         super(cursor, pageSize, total);
         clobs = new ArrayList<>();
     }
@@ -47,7 +47,7 @@ public class Clobs extends CwmsDTOPaginated {
     public static class Builder {
         private Clobs workingClobs;
 
-        public Builder(String cursor, int pageSize, int total) {
+        public Builder(String cursor, int pageSize, Integer total) {
             workingClobs = new Clobs(cursor, pageSize, total);
         }
 
@@ -140,6 +140,13 @@ public abstract class CwmsDTOPaginated extends CwmsDTOBase {
         return encodeCursor(CwmsDTOPaginated.delimiter, page, total, pageSize);     // pageSize should be last
     }
 
+    /**
+     * @return the total encoded in a cursor, null if it wasn't counted
+     */
+    public static Integer decodeTotal(String part) {
+        return part == null || part.equals("null") ? null : Integer.valueOf(part);
+    }
+
     public static String encodeCursor(Object ... parts) {
         return encodeCursor(CwmsDTOPaginated.delimiter, parts);
     }
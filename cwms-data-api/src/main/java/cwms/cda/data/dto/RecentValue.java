@@ -1,10 +1,14 @@
 package cwms.cda.data.dto;
 
 import cwms.cda.formatters.annotations.FormattableWith;
+import cwms.cda.formatters.json.CborV2;
 import cwms.cda.formatters.json.JsonV1;
+import cwms.cda.formatters.json.SmileV2;
 import cwms.cda.formatters.Formats;
 
 @FormattableWith(contentType = Formats.JSONV1, formatter = JsonV1.class, aliases = {Formats.DEFAULT, Formats.JSON})
+@FormattableWith(contentType = Formats.CBOR, formatter = CborV2.class)
+@FormattableWith(contentType = Formats.SMILE, formatter = SmileV2.class)
 public class RecentValue extends CwmsDTOBase
 {
 	String id;
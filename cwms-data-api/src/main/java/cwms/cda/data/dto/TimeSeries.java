@@ -8,11 +8,18 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.JsonPropertyOrder;
 import com.fasterxml.jackson.annotation.JsonRootName;
 import com.fasterxml.jackson.databind.PropertyNamingStrategies;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import com.fasterxml.jackson.databind.annotation.JsonNaming;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import cwms.cda.api.enums.VersionType;
 import cwms.cda.formatters.Formats;
 import cwms.cda.formatters.annotations.FormattableWith;
+import cwms.cda.formatters.arrow.ArrowV1;
+import cwms.cda.formatters.json.CborV2;
 import cwms.cda.formatters.json.JsonV2;
+import cwms.cda.formatters.json.SmileV2;
+import cwms.cda.formatters.json.adapters.TimeSeriesValuesDeserializer;
+import cwms.cda.formatters.json.adapters.TimeSeriesValuesSerializer;
 import cwms.cda.formatters.xml.XMLv2;
 import io.swagger.v3.oas.annotations.media.ArraySchema;
 import io.swagger.v3.oas.annotations.media.Schema;
@@ -23,13 +30,22 @@ import java.sql.Timestamp;
 import java.time.Duration;
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 @JsonRootName("timeseries")
-@JsonPropertyOrder(alphabetic = true)
+// values and next-page are written last so the values can be streamed; next-page is only known
+// once the whole page has been read.
+@JsonPropertyOrder(value = {"begin", "date-version-type", "end", "interval", "interval-offset",
+        "name", "office-id", "page", "page-size", "time-zone", "total", "units", "value-columns",
+        "version-date", "vertical-datum-info", "values", "next-page"}, alphabetic = true)
 @JsonNaming(PropertyNamingStrategies.KebabCaseStrategy.class)
 @FormattableWith(contentType = Formats.JSONV2, formatter = JsonV2.class, aliases = {Formats.DEFAULT, Formats.JSON})
 @FormattableWith(contentType = Formats.XMLV2, formatter = XMLv2.class, aliases = {Formats.XML})
+@FormattableWith(contentType = Formats.CBOR, formatter = CborV2.class)
+@FormattableWith(contentType = Formats.SMILE, formatter = SmileV2.class)
+@FormattableWith(contentType = Formats.ARROW, formatter = ArrowV1.class)
 public class TimeSeries extends CwmsDTOPaginated {
     public static final String ZONED_DATE_TIME_FORMAT = "yyyy-MM-dd'T'HH:mm:ssZ'['VV']'";
 
@@ -81,7 +97,12 @@ public class TimeSeries extends CwmsDTOPaginated {
                     implementation = Record.class
             )
     )
-    List<Record> values;
+    @JsonProperty("values")
+    @JsonDeserialize(using = TimeSeriesValuesDeserializer.class)
+    TimeSeriesValues values;
+
+    // Set instead of values when they are read while serializing
+    private StreamedValues streamedValues;
 
     @Schema(
             accessMode = AccessMode.READ_ONLY,
@@ -126,7 +147,7 @@ public class TimeSeries extends CwmsDTOPaginated {
         this.verticalDatumInfo = info;
         this.intervalOffset = intervalOffset;
         this.timeZone = timeZone;
-        values = new ArrayList<>();
+        values = new TimeSeriesValues();
     }
 
     public String getName() {
@@ -158,14 +179,45 @@ public class TimeSeries extends CwmsDTOPaginated {
         return end;
     }
 
-    // Use the array shape to optimize data transfer to client
-    @JsonFormat(shape=JsonFormat.Shape.ARRAY)
+    /**
+     * @throws IllegalStateException if the values are being streamed
+     */
+    @JsonIgnore
     public List<Record> getValues() {
+        if (streamedValues != null) {
+            throw new IllegalStateException("Streamed time series values are not held in memory");
+        }
         return values;
     }
 
+    /**
+     * Returns the values to write: those held in memory or, after {@link #streamValues}, those
+     * read from the source as they are iterated, which can only be done once. Streamed values
+     * are all read into the same record, so each must be used before the next is read.
+     */
+    // Use the array shape to optimize data transfer to client
+    @JsonProperty("values")
+    @JsonFormat(shape=JsonFormat.Shape.ARRAY)
+    @JsonSerialize(using = TimeSeriesValuesSerializer.class)
+    public Iterable<Record> getValueSource() {
+        return streamedValues != null ? streamedValues : values;
+    }
+
     @JsonIgnore
     public List<Record> getXmlValues() {
+        return getValues();
+    }
+
+    /**
+     * Returns the values in column form, for consumers that work with primitive arrays.
+     *
+     * @throws IllegalStateException if the values are being streamed
+     */
+    @JsonIgnore
+    public TimeSeriesValues getValueArrays() {
+        if (streamedValues != null) {
+            throw new IllegalStateException("Streamed time series values are not held in memory");
+        }
         return values;
     }
 
@@ -195,16 +247,86 @@ public class TimeSeries extends CwmsDTOPaginated {
     }
 
     public boolean addValue(Timestamp dateTime, Double value, int qualityCode) {
+        return addValue(dateTime.getTime(), value, qualityCode);
+    }
+
+    public boolean addValue(long dateTime, Double value, int qualityCode) {
+        if(!advancePage(dateTime, values.size())) {
+            return false;
+        }
+        values.add(dateTime, value, qualityCode);
+        return true;
+    }
+
+    /**
+     * Replaces the values of this time series with a source that is read while the time series
+     * is being serialized, so a page never has to be held in memory in full.
+     * The source is read once; paging follows the same rules as {@link #addValue}.
+     * The first value is read immediately so the current page is known before anything is written.
+     *
+     * @param source the values, in ascending date-time order
+     */
+    public void streamValues(ValueCursor source) {
+        streamedValues = new StreamedValues(source);
+    }
+
+    /**
+     * Like {@link #streamValues(ValueCursor)}, for values that are already records.
+     */
+    public void streamValues(Iterator<Record> source) {
+        streamValues(new ValueCursor() {
+            private Record current;
+
+            @Override
+            public boolean next() {
+                if (!source.hasNext()) {
+                    return false;
+                }
+                current = source.next();
+                return true;
+            }
+
+            @Override
+            public Timestamp getDateTime() {
+                return current.getDateTime();
+            }
+
+            @Override
+            public Double getValue() {
+                return current.getValue();
+            }
+
+            @Override
+            public int getQualityCode() {
+                return current.getQualityCode();
+            }
+        });
+    }
+
+    /**
+     * Replaces the values of this time series, for instance with a reduced set of them.
+     * The paging rules are not applied.
+     */
+    public void replaceValues(TimeSeriesValues replacement) {
+        streamedValues = null;
+        values = replacement;
+    }
+
+    /**
+     * Applies the paging rules for a value about to be placed at the given position of this page.
+     *
+     * @return false if the value belongs to the next page, in which case next-page is set
+     */
+    private boolean advancePage(long dateTime, int position) {
         // Set the current page, if not set
-        if((page == null || page.isEmpty()) && values.isEmpty()) {
-            page = encodeCursor(String.format("%d", dateTime.getTime()), pageSize, total);
+        if((page == null || page.isEmpty()) && position == 0) {
+            page = encodeCursor(String.format("%d", dateTime), pageSize, total);
         }
-        if(pageSize > 0 && values.size() == pageSize) {
-            nextPage = encodeCursor(String.format("%d", dateTime.toInstant().toEpochMilli()), pageSize, total);
+        if(pageSize > 0 && position == pageSize) {
+            nextPage = encodeCursor(String.format("%d", dateTime), pageSize, total);
             return false;
-        } else {
-            return values.add(new Record(dateTime, value, qualityCode));
         }
+        return true;
     }
 
     private List<Column> getColumnDescriptor() {
@@ -251,7 +373,7 @@ public class TimeSeries extends CwmsDTOPaginated {
         @SuppressWarnings("unused") // required so JAXB can initialize and marshal
         private Record() {}
 
-        protected Record(Timestamp dateTime, Double value, int qualityCode) {
+        public Record(Timestamp dateTime, Double value, int qualityCode) {
             this.dateTime = dateTime;
             this.value = value;
             this.qualityCode = qualityCode;
@@ -311,6 +433,84 @@ public class TimeSeries extends CwmsDTOPaginated {
         }
     }
 
+    /**
+     * Values read one at a time, such as the rows of a query. The getters give the value last
+     * moved to with {@link #next()}.
+     */
+    public interface ValueCursor {
+        /**
+         * @return false once there are no more values
+         */
+        boolean next();
+
+        Timestamp getDateTime();
+
+        Double getValue();
+
+        int getQualityCode();
+    }
+
+    /**
+     * One-shot view of a value source, which reads every value into the same record.
+     */
+    private final class StreamedValues implements Iterable<Record> {
+        private final ValueCursor source;
+        private final Record current = new Record();
+        // whether the source is on a value of this page that hasn't been returned yet
+        private boolean pending;
+        private int count;
+        private boolean done;
+        private boolean iterated;
+
+        private StreamedValues(ValueCursor source) {
+            this.source = source;
+            // Read ahead so the current page is set before serialization starts
+            pending = fetch();
+        }
+
+        private boolean fetch() {
+            if(done || !source.next()) {
+                done = true;
+                return false;
+            }
+            if(!advancePage(source.getDateTime().getTime(), count)) {
+                done = true;
+                return false;
+            }
+            return true;
+        }
+
+        @Override
+        public Iterator<Record> iterator() {
+            if(iterated) {
+                throw new IllegalStateException("Streamed time series values can only be read once");
+            }
+            iterated = true;
+            return new Iterator<Record>() {
+                @Override
+                public boolean hasNext() {
+                    if(!pending) {
+                        pending = fetch();
+                    }
+                    return pending;
+                }
+
+                @Override
+                public Record next() {
+                    if(!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    pending = false;
+                    count++;
+                    current.dateTime = source.getDateTime();
+                    current.value = source.getValue();
+                    current.qualityCode = source.getQualityCode();
+                    return current;
+                }
+            };
+        }
+    }
+
     @Schema(hidden = true, name = "TimeSeries.Column", accessMode = Schema.AccessMode.READ_ONLY)
     private static class Column {
         public final String name;
@@ -0,0 +1,152 @@
+package cwms.cda.data.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonRootName;
+import com.fasterxml.jackson.databind.PropertyNamingStrategies;
+import com.fasterxml.jackson.databind.annotation.JsonNaming;
+import cwms.cda.formatters.Formats;
+import cwms.cda.formatters.annotations.FormattableWith;
+import cwms.cda.formatters.json.JsonV2;
+import io.swagger.v3.oas.annotations.media.Schema;
+import java.time.ZoneId;
+
+/**
+ * One time series to retrieve in a batch request. Begin, end and version date accept the same
+ * values as the query parameters of the time series endpoint.
+ */
+@JsonRootName("time-series-batch-item")
+@FormattableWith(contentType = Formats.JSONV2, formatter = JsonV2.class, aliases = {Formats.DEFAULT, Formats.JSON})
+@JsonNaming(PropertyNamingStrategies.KebabCaseStrategy.class)
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public final class TimeSeriesBatchItem extends CwmsDTOBase {
+    @JsonProperty(required = true)
+    @Schema(description = "The time series identifier")
+    private String name;
+
+    @JsonProperty(required = true)
+    @Schema(description = "Office that owns the time series")
+    private String office;
+
+    @Schema(description = "Unit or unit system (EN or SI) of the values. Default EN")
+    private String unit;
+
+    @Schema(description = "Start of the time window. Default 24 hours before the end")
+    private String begin;
+
+    @Schema(description = "End of the time window. Default now")
+    private String end;
+
+    @Schema(description = "Time zone of begin, end and version-date when they have none. Default UTC")
+    private String timezone;
+
+    @Schema(description = "Version date, for versioned time series")
+    private String versionDate;
+
+    @Schema(description = "Whether to trim missing values from the ends of the values. Default true")
+    private Boolean trim;
+
+    @Schema(description = "Page to retrieve, from the next-page field of a previous result")
+    private String page;
+
+    @Schema(description = "Number of values to retrieve. Default 500; negative for all of them")
+    private Integer pageSize;
+
+    public TimeSeriesBatchItem() {
+        super();
+    }
+
+    public TimeSeriesBatchItem(String name, String office) {
+        this();
+        this.name = name;
+        this.office = office;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public String getOffice() {
+        return office;
+    }
+
+    public void setOffice(String office) {
+        this.office = office;
+    }
+
+    public String getUnit() {
+        return unit;
+    }
+
+    public void setUnit(String unit) {
+        this.unit = unit;
+    }
+
+    public String getBegin() {
+        return begin;
+    }
+
+    public void setBegin(String begin) {
+        this.begin = begin;
+    }
+
+    public String getEnd() {
+        return end;
+    }
+
+    public void setEnd(String end) {
+        this.end = end;
+    }
+
+    public String getTimezone() {
+        return timezone;
+    }
+
+    public void setTimezone(String timezone) {
+        this.timezone = timezone;
+    }
+
+    public String getVersionDate() {
+        return versionDate;
+    }
+
+    public void setVersionDate(String versionDate) {
+        this.versionDate = versionDate;
+    }
+
+    public Boolean getTrim() {
+        return trim;
+    }
+
+    public void setTrim(Boolean trim) {
+        this.trim = trim;
+    }
+
+    public String getPage() {
+        return page;
+    }
+
+    public void setPage(String page) {
+        this.page = page;
+    }
+
+    public Integer getPageSize() {
+        return pageSize;
+    }
+
+    public void setPageSize(Integer pageSize) {
+        this.pageSize = pageSize;
+    }
+
+    @Override
+    protected void validateInternal(CwmsDTOValidator validator) {
+        super.validateInternal(validator);
+        if (timezone != null) {
+            validator.validate(() -> ZoneId.of(timezone, ZoneId.SHORT_IDS));
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package cwms.cda.data.dto;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonFormat.Shape;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonRootName;
+import com.fasterxml.jackson.databind.PropertyNamingStrategies;
+import com.fasterxml.jackson.databind.annotation.JsonNaming;
+import cwms.cda.formatters.Formats;
+import cwms.cda.formatters.annotations.FormattableWith;
+import cwms.cda.formatters.json.JsonV2;
+import io.swagger.v3.oas.annotations.media.Schema;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A value of a time series as it was last entered. Changes are read in the order they were
+ * entered, and the resume token of the last one read tells where the next read starts.
+ */
+@JsonRootName("time-series-change")
+@FormattableWith(contentType = Formats.JSONV2, formatter = JsonV2.class, aliases = {Formats.DEFAULT, Formats.JSON})
+@JsonNaming(PropertyNamingStrategies.KebabCaseStrategy.class)
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public final class TimeSeriesChange extends CwmsDTOBase {
+    private String name;
+
+    private String units;
+
+    @JsonFormat(shape = Shape.STRING)
+    private ZonedDateTime dateTime;
+
+    @JsonFormat(shape = Shape.STRING)
+    private ZonedDateTime versionDate;
+
+    @JsonFormat(shape = Shape.STRING)
+    @Schema(description = "When the value was entered")
+    private ZonedDateTime dataEntryDate;
+
+    @Schema(description = "The value, missing if it was entered as missing")
+    private Double value;
+
+    private Long qualityCode;
+
+    @JsonIgnore
+    private long tsCode;
+
+    public TimeSeriesChange() {
+        super();
+    }
+
+    public TimeSeriesChange(String name, String units, long tsCode, Instant dateTime,
+                            @Nullable Instant versionDate, Instant dataEntryDate,
+                            @Nullable Double value, @Nullable Long qualityCode) {
+        this();
+        this.name = name;
+        this.units = units;
+        this.tsCode = tsCode;
+        this.dateTime = utc(dateTime);
+        this.versionDate = utc(versionDate);
+        this.dataEntryDate = utc(dataEntryDate);
+        this.value = value;
+        this.qualityCode = qualityCode;
+    }
+
+    private static ZonedDateTime utc(@Nullable Instant instant) {
+        return instant == null ? null : ZonedDateTime.ofInstant(instant, ZoneOffset.UTC);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getUnits() {
+        return units;
+    }
+
+    public ZonedDateTime getDateTime() {
+        return dateTime;
+    }
+
+    public ZonedDateTime getVersionDate() {
+        return versionDate;
+    }
+
+    public ZonedDateTime getDataEntryDate() {
+        return dataEntryDate;
+    }
+
+    public Double getValue() {
+        return value;
+    }
+
+    public Long getQualityCode() {
+        return qualityCode;
+    }
+
+    @JsonIgnore
+    public long getTsCode() {
+        return tsCode;
+    }
+
+    /**
+     * Where a read of changes starts: after a data entry date and, when resuming, after the last
+     * change read at that date, by ts_code, date-time and version date.
+     */
+    public static final class Position {
+        private final Instant dataEntryDate;
+        private final Long tsCode;
+        private final Instant dateTime;
+        private final Instant versionDate;
+
+        private Position(Instant dataEntryDate, @Nullable Long tsCode, @Nullable Instant dateTime,
+                         @Nullable Instant versionDate) {
+            this.dataEntryDate = dataEntryDate;
+            this.tsCode = tsCode;
+            this.dateTime = dateTime;
+            this.versionDate = versionDate;
+        }
+
+        public static Position after(Instant dataEntryDate) {
+            return new Position(dataEntryDate, null, null, null);
+        }
+
+        public static Position after(TimeSeriesChange change) {
+            return new Position(change.dataEntryDate.toInstant(), change.tsCode,
+                    change.dateTime.toInstant(),
+                    change.versionDate == null ? null : change.versionDate.toInstant());
+        }
+
+        /**
+         * @throws IllegalArgumentException if the token wasn't made by {@link #toToken()}
+         */
+        public static Position fromToken(String token) {
+            String[] parts = CwmsDTOPaginated.decodeCursor(token);
+            try {
+                Instant dataEntryDate = Instant.parse(parts[0]);
+                if (parts.length == 1) {
+                    return after(dataEntryDate);
+                }
+                return new Position(dataEntryDate, Long.parseLong(parts[1]),
+                        Instant.ofEpochMilli(Long.parseLong(parts[2])),
+                        parts.length > 3 ? Instant.ofEpochMilli(Long.parseLong(parts[3])) : null);
+            } catch (DateTimeException | NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                throw new IllegalArgumentException("Invalid resume token: " + token, e);
+            }
+        }
+
+        public String toToken() {
+            if (tsCode == null) {
+                return CwmsDTOPaginated.encodeCursor(dataEntryDate);
+            } else if (versionDate == null) {
+                return CwmsDTOPaginated.encodeCursor(dataEntryDate, tsCode, dateTime.toEpochMilli());
+            }
+            return CwmsDTOPaginated.encodeCursor(dataEntryDate, tsCode, dateTime.toEpochMilli(),
+                    versionDate.toEpochMilli());
+        }
+
+        public Instant getDataEntryDate() {
+            return dataEntryDate;
+        }
+
+        /**
+         * @return null when only the data entry date is known
+         */
+        public Long getTsCode() {
+            return tsCode;
+        }
+
+        public Instant getDateTime() {
+            return dateTime;
+        }
+
+        public Instant getVersionDate() {
+            return versionDate;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package cwms.cda.data.dto;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonFormat.Shape;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonRootName;
+import com.fasterxml.jackson.databind.PropertyNamingStrategies;
+import com.fasterxml.jackson.databind.annotation.JsonNaming;
+import cwms.cda.formatters.Formats;
+import cwms.cda.formatters.annotations.FormattableWith;
+import cwms.cda.formatters.json.JsonV2;
+import io.swagger.v3.oas.annotations.media.Schema;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+
+/**
+ * The outcome of storing one chunk of the values of a time series stored in chunks.
+ * A chunk that failed can be stored again by sending only the values from its begin to its
+ * end.
+ */
+@JsonRootName("time-series-chunk-result")
+@FormattableWith(contentType = Formats.JSONV2, formatter = JsonV2.class, aliases = {Formats.DEFAULT, Formats.JSON})
+@JsonNaming(PropertyNamingStrategies.KebabCaseStrategy.class)
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public final class TimeSeriesChunkResult extends CwmsDTOBase {
+    @Schema(description = "Position of the chunk, from 0")
+    private int index;
+
+    @JsonFormat(shape = Shape.STRING)
+    @Schema(description = "Date-time of the first value of the chunk")
+    private ZonedDateTime begin;
+
+    @JsonFormat(shape = Shape.STRING)
+    @Schema(description = "Date-time of the last value of the chunk")
+    private ZonedDateTime end;
+
+    @Schema(description = "Number of values in the chunk")
+    private int valueCount;
+
+    @Schema(description = "HTTP status the chunk would get if stored on its own")
+    private int status;
+
+    @Schema(description = "Why the chunk wasn't stored")
+    private String message;
+
+    @Schema(description = "Identifies the error in the server logs")
+    private String incidentIdentifier;
+
+    public TimeSeriesChunkResult() {
+        super();
+    }
+
+    public TimeSeriesChunkResult(int index, TimeSeriesValues chunk, int status) {
+        this();
+        this.index = index;
+        this.valueCount = chunk.size();
+        if (valueCount > 0) {
+            this.begin = ZonedDateTime.ofInstant(Instant.ofEpochMilli(chunk.getDateTime(0)),
+                    ZoneOffset.UTC);
+            this.end = ZonedDateTime.ofInstant(
+                    Instant.ofEpochMilli(chunk.getDateTime(valueCount - 1)), ZoneOffset.UTC);
+        }
+        this.status = status;
+    }
+
+    public TimeSeriesChunkResult withError(String message, String incidentIdentifier) {
+        this.message = message;
+        this.incidentIdentifier = incidentIdentifier;
+        return this;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public ZonedDateTime getBegin() {
+        return begin;
+    }
+
+    public ZonedDateTime getEnd() {
+        return end;
+    }
+
+    public int getValueCount() {
+        return valueCount;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public String getIncidentIdentifier() {
+        return incidentIdentifier;
+    }
+}
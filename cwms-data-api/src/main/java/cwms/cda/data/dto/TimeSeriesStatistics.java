@@ -0,0 +1,226 @@
+package cwms.cda.data.dto;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonFormat.Shape;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonRootName;
+import com.fasterxml.jackson.databind.PropertyNamingStrategies;
+import com.fasterxml.jackson.databind.annotation.JsonNaming;
+import cwms.cda.formatters.Formats;
+import cwms.cda.formatters.annotations.FormattableWith;
+import cwms.cda.formatters.json.JsonV2;
+import io.swagger.v3.oas.annotations.media.Schema;
+import java.time.ZonedDateTime;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Aggregates of the values of a time series over a period, from the period's begin up to,
+ * but not including, its end. Only the latest version of each value is counted.
+ */
+@JsonRootName("time-series-statistics")
+@FormattableWith(contentType = Formats.JSONV2, formatter = JsonV2.class, aliases = {Formats.DEFAULT, Formats.JSON})
+@JsonNaming(PropertyNamingStrategies.KebabCaseStrategy.class)
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public final class TimeSeriesStatistics extends CwmsDTOBase {
+    private String name;
+
+    private String units;
+
+    @JsonFormat(shape = Shape.STRING)
+    private ZonedDateTime begin;
+
+    @JsonFormat(shape = Shape.STRING)
+    private ZonedDateTime end;
+
+    @Schema(description = "The number of values that are not missing")
+    private long count;
+
+    @Schema(description = "The number of values the period should have, for regular interval "
+            + "time series. Missing for irregular ones.")
+    private Long expectedCount;
+
+    @Schema(description = "The share of the expected values, or for irregular time series of "
+            + "the stored values, that are missing, in percent")
+    private Double percentMissing;
+
+    private Double min;
+
+    private Double max;
+
+    private Double mean;
+
+    private Double sum;
+
+    @JsonFormat(shape = Shape.STRING)
+    private ZonedDateTime firstDateTime;
+
+    private Double firstValue;
+
+    @JsonFormat(shape = Shape.STRING)
+    private ZonedDateTime lastDateTime;
+
+    private Double lastValue;
+
+    public TimeSeriesStatistics() {
+        super();
+    }
+
+    private TimeSeriesStatistics(Builder builder) {
+        this();
+        this.name = builder.name;
+        this.units = builder.units;
+        this.begin = builder.begin;
+        this.end = builder.end;
+        this.count = builder.count;
+        this.expectedCount = builder.expectedCount;
+        this.percentMissing = builder.percentMissing;
+        this.min = builder.min;
+        this.max = builder.max;
+        this.mean = builder.mean;
+        this.sum = builder.sum;
+        this.firstDateTime = builder.firstDateTime;
+        this.firstValue = builder.firstValue;
+        this.lastDateTime = builder.lastDateTime;
+        this.lastValue = builder.lastValue;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getUnits() {
+        return units;
+    }
+
+    public ZonedDateTime getBegin() {
+        return begin;
+    }
+
+    public ZonedDateTime getEnd() {
+        return end;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public Long getExpectedCount() {
+        return expectedCount;
+    }
+
+    public Double getPercentMissing() {
+        return percentMissing;
+    }
+
+    public Double getMin() {
+        return min;
+    }
+
+    public Double getMax() {
+        return max;
+    }
+
+    public Double getMean() {
+        return mean;
+    }
+
+    public Double getSum() {
+        return sum;
+    }
+
+    public ZonedDateTime getFirstDateTime() {
+        return firstDateTime;
+    }
+
+    public Double getFirstValue() {
+        return firstValue;
+    }
+
+    public ZonedDateTime getLastDateTime() {
+        return lastDateTime;
+    }
+
+    public Double getLastValue() {
+        return lastValue;
+    }
+
+    public static final class Builder {
+        private String name;
+        private String units;
+        private ZonedDateTime begin;
+        private ZonedDateTime end;
+        private long count;
+        private Long expectedCount;
+        private Double percentMissing;
+        private Double min;
+        private Double max;
+        private Double mean;
+        private Double sum;
+        private ZonedDateTime firstDateTime;
+        private Double firstValue;
+        private ZonedDateTime lastDateTime;
+        private Double lastValue;
+
+        public Builder withName(String name) {
+            this.name = name;
+            return this;
+        }
+
+        public Builder withUnits(String units) {
+            this.units = units;
+            return this;
+        }
+
+        public Builder withPeriod(ZonedDateTime begin, ZonedDateTime end) {
+            this.begin = begin;
+            this.end = end;
+            return this;
+        }
+
+        /**
+         * @param count the values that are not missing
+         * @param stored all the values stored for the period, missing or not
+         * @param expectedCount the values a regular interval time series should have
+         */
+        public Builder withCounts(long count, long stored, @Nullable Long expectedCount) {
+            this.count = count;
+            this.expectedCount = expectedCount;
+            long of = expectedCount == null ? stored : expectedCount;
+            this.percentMissing = of <= 0 ? null
+                    : 100.0 * Math.max(0L, of - count) / of;
+            return this;
+        }
+
+        public Builder withRange(@Nullable Double min, @Nullable Double max) {
+            this.min = min;
+            this.max = max;
+            return this;
+        }
+
+        public Builder withMean(@Nullable Double mean) {
+            this.mean = mean;
+            return this;
+        }
+
+        public Builder withSum(@Nullable Double sum) {
+            this.sum = sum;
+            return this;
+        }
+
+        public Builder withFirst(@Nullable ZonedDateTime dateTime, @Nullable Double value) {
+            this.firstDateTime = dateTime;
+            this.firstValue = value;
+            return this;
+        }
+
+        public Builder withLast(@Nullable ZonedDateTime dateTime, @Nullable Double value) {
+            this.lastDateTime = dateTime;
+            this.lastValue = value;
+            return this;
+        }
+
+        public TimeSeriesStatistics build() {
+            return new TimeSeriesStatistics(this);
+        }
+    }
+}
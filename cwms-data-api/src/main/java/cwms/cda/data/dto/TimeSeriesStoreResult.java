@@ -0,0 +1,86 @@
+package cwms.cda.data.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonRootName;
+import com.fasterxml.jackson.databind.PropertyNamingStrategies;
+import com.fasterxml.jackson.databind.annotation.JsonNaming;
+import cwms.cda.formatters.Formats;
+import cwms.cda.formatters.annotations.FormattableWith;
+import cwms.cda.formatters.json.JsonV2;
+import io.swagger.v3.oas.annotations.media.Schema;
+
+/**
+ * The outcome of storing one time series of a request storing several.
+ */
+@JsonRootName("time-series-store-result")
+@FormattableWith(contentType = Formats.JSONV2, formatter = JsonV2.class, aliases = {Formats.DEFAULT, Formats.JSON})
+@JsonNaming(PropertyNamingStrategies.KebabCaseStrategy.class)
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public final class TimeSeriesStoreResult extends CwmsDTOBase {
+    @Schema(description = "Position of the time series in the request, from 0")
+    private int index;
+
+    private String name;
+
+    private String officeId;
+
+    @Schema(description = "Number of values in the request")
+    private int valueCount;
+
+    @Schema(description = "HTTP status the time series would get if stored on its own")
+    private int status;
+
+    @Schema(description = "Why the time series wasn't stored")
+    private String message;
+
+    @Schema(description = "Identifies the error in the server logs")
+    private String incidentIdentifier;
+
+    public TimeSeriesStoreResult() {
+        super();
+    }
+
+    public TimeSeriesStoreResult(int index, String name, String officeId, int valueCount,
+                                 int status) {
+        this();
+        this.index = index;
+        this.name = name;
+        this.officeId = officeId;
+        this.valueCount = valueCount;
+        this.status = status;
+    }
+
+    public TimeSeriesStoreResult withError(String message, String incidentIdentifier) {
+        this.message = message;
+        this.incidentIdentifier = incidentIdentifier;
+        return this;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getOfficeId() {
+        return officeId;
+    }
+
+    public int getValueCount() {
+        return valueCount;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public String getIncidentIdentifier() {
+        return incidentIdentifier;
+    }
+}
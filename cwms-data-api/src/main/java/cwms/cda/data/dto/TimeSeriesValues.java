@@ -0,0 +1,170 @@
+package cwms.cda.data.dto;
+
+import java.sql.Timestamp;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.RandomAccess;
+
+/**
+ * Column oriented storage for the values of a {@link TimeSeries}.
+ * Date-times are kept as epoch milliseconds, values as doubles with a bitmap marking
+ * the missing (null) values, and quality codes as ints.
+ * As a {@code List} it presents each point as a {@link TimeSeries.Record}, created on demand.
+ */
+public final class TimeSeriesValues extends AbstractList<TimeSeries.Record> implements RandomAccess {
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private long[] dateTimes;
+    private double[] values;
+    private int[] qualityCodes;
+    private final BitSet nulls = new BitSet();
+    private int size;
+
+    public TimeSeriesValues() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public TimeSeriesValues(int initialCapacity) {
+        dateTimes = new long[initialCapacity];
+        values = new double[initialCapacity];
+        qualityCodes = new int[initialCapacity];
+    }
+
+    /**
+     * Appends a value; a null value is stored as NaN and flagged as missing.
+     */
+    public void add(long dateTime, Double value, int qualityCode) {
+        if (value == null) {
+            addNull(dateTime, qualityCode);
+        } else {
+            add(dateTime, value.doubleValue(), qualityCode);
+        }
+    }
+
+    public void add(long dateTime, double value, int qualityCode) {
+        ensureCapacity(size + 1);
+        dateTimes[size] = dateTime;
+        values[size] = value;
+        qualityCodes[size] = qualityCode;
+        size++;
+        modCount++;
+    }
+
+    public void addNull(long dateTime, int qualityCode) {
+        nulls.set(size);
+        add(dateTime, Double.NaN, qualityCode);
+    }
+
+    @Override
+    public boolean add(TimeSeries.Record rec) {
+        add(rec.getDateTime().getTime(), rec.getValue(), rec.getQualityCode());
+        return true;
+    }
+
+    @Override
+    public TimeSeries.Record get(int index) {
+        checkIndex(index);
+        return new TimeSeries.Record(new Timestamp(dateTimes[index]),
+                isNull(index) ? null : values[index], qualityCodes[index]);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void clear() {
+        size = 0;
+        nulls.clear();
+        modCount++;
+    }
+
+    public long getDateTime(int index) {
+        checkIndex(index);
+        return dateTimes[index];
+    }
+
+    /**
+     * @return the value, NaN if it is missing
+     */
+    public double getValue(int index) {
+        checkIndex(index);
+        return values[index];
+    }
+
+    public boolean isNull(int index) {
+        return nulls.get(index);
+    }
+
+    public int getQualityCode(int index) {
+        checkIndex(index);
+        return qualityCodes[index];
+    }
+
+    /**
+     * Returns the date-times as epoch milliseconds. This is the backing array, trimmed to size,
+     * not a copy.
+     */
+    public long[] getDateTimes() {
+        trimToSize();
+        return dateTimes;
+    }
+
+    /**
+     * Returns the values, with NaN for the missing ones. This is the backing array, trimmed to
+     * size, not a copy.
+     */
+    public double[] getValues() {
+        trimToSize();
+        return values;
+    }
+
+    /**
+     * Returns the quality codes. This is the backing array, trimmed to size, not a copy.
+     */
+    public int[] getQualityCodes() {
+        trimToSize();
+        return qualityCodes;
+    }
+
+    /**
+     * @return a copy of the values from {@code from}, inclusive, to {@code to}, exclusive
+     */
+    public TimeSeriesValues slice(int from, int to) {
+        if (from < 0 || to > size || from > to) {
+            throw new IndexOutOfBoundsException("From: " + from + ", To: " + to + ", Size: " + size);
+        }
+        TimeSeriesValues retval = new TimeSeriesValues(0);
+        retval.dateTimes = Arrays.copyOfRange(dateTimes, from, to);
+        retval.values = Arrays.copyOfRange(values, from, to);
+        retval.qualityCodes = Arrays.copyOfRange(qualityCodes, from, to);
+        retval.nulls.or(nulls.get(from, to));
+        retval.size = to - from;
+        return retval;
+    }
+
+    public void trimToSize() {
+        if (dateTimes.length != size) {
+            dateTimes = Arrays.copyOf(dateTimes, size);
+            values = Arrays.copyOf(values, size);
+            qualityCodes = Arrays.copyOf(qualityCodes, size);
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > dateTimes.length) {
+            int newCapacity = Math.max(capacity, dateTimes.length + (dateTimes.length >> 1) + 1);
+            dateTimes = Arrays.copyOf(dateTimes, newCapacity);
+            values = Arrays.copyOf(values, newCapacity);
+            qualityCodes = Arrays.copyOf(qualityCodes, newCapacity);
+        }
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+}
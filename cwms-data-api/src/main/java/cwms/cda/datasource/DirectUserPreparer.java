@@ -2,27 +2,51 @@ package cwms.cda.datasource;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
+import org.jooq.SQLDialect;
 import org.jooq.exception.DataAccessException;
+import org.jooq.impl.DSL;
+import usace.cwms.db.jooq.codegen.packages.CWMS_ENV_PACKAGE;
 
 
 public class DirectUserPreparer implements ConnectionPreparer {
     private final String user;
+    private final String office;
 
     public DirectUserPreparer(String user) {
+        this(user, null);
+    }
+
+    /**
+     * Set the user and then the session office in one preparation.
+     * @param user the session user
+     * @param office the session office, or null for the default office of the user
+     */
+    public DirectUserPreparer(String user, String office) {
         this.user = user;
+        this.office = office;
     }
 
     @Override
     public Connection prepare(Connection conn) {
         if (user != null) {
             String sql = "begin cwms_env.set_session_user_direct(upper(?)); end;";
-            try (PreparedStatement setApiUser = conn.prepareStatement(sql)) {
-                setApiUser.setString(1,user);
-                setApiUser.execute();                
+            try {
+                SessionState.setUser(conn, user, office, () -> {
+                    try (PreparedStatement setApiUser = conn.prepareStatement(sql)) {
+                        setApiUser.setString(1,user);
+                        setApiUser.execute();
+                    }
+                    if (office != null) {
+                        CWMS_ENV_PACKAGE.call_SET_SESSION_OFFICE_ID(
+                                DSL.using(conn, SQLDialect.ORACLE18C).configuration(), office);
+                    }
+                });
             } catch (Exception e) {
                 throw new DataAccessException("Unable to set user session.  "
                         + "user empty = " + user.isEmpty(), e);
             }
+        } else if (office != null) {
+            new SessionOfficePreparer(office).prepare(conn);
         }
 
         return conn;
@@ -0,0 +1,133 @@
+package cwms.cda.datasource;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.sql.DataSource;
+
+/**
+ * Hands out a single connection for all the work of one request. The first borrow takes a
+ * connection from the delegate, which prepares it, and every later borrow gets that same
+ * connection back, so its session is only set up once. Closing a borrowed connection does
+ * nothing; {@link #release()} returns it to the pool when the request is done. Borrows after
+ * that get a connection of their own from the delegate, which the caller closes as usual.
+ *
+ * <p>Work a request runs in parallel would share, and so wait on, the one connection; it should
+ * use {@link cwms.cda.data.dao.JooqDao#getParallelDslContext} instead.
+ */
+public class RequestScopedDataSource extends DelegatingDataSource {
+    private static final Logger logger = Logger.getLogger(RequestScopedDataSource.class.getName());
+
+    private final DataSource source;
+    private final ConnectionPreparer sourcePreparer;
+    private Connection pinned;
+    private Connection borrowed;
+    private boolean released;
+    private int borrows;
+    private long preparationNanos;
+
+    /**
+     * @param delegate where the connection is borrowed from, and prepared
+     * @param source the data source of the request that the delegate wraps, to tell when the
+     *               request has moved on to another one
+     * @param previous the one this replaces, whose counts are carried over; may be null
+     */
+    public RequestScopedDataSource(DataSource delegate, DataSource source,
+                                   RequestScopedDataSource previous) {
+        super(delegate);
+        this.source = source;
+        this.sourcePreparer = preparerOf(source);
+        if (previous != null) {
+            borrows = previous.borrows;
+            preparationNanos = previous.preparationNanos;
+        }
+    }
+
+    private static ConnectionPreparer preparerOf(DataSource source) {
+        return source instanceof ConnectionPreparingDataSource
+                ? ((ConnectionPreparingDataSource) source).getPreparer()
+                : null;
+    }
+
+    /**
+     * @return whether connections of this are still prepared the way the given data source
+     *         would prepare them
+     */
+    public boolean isFor(DataSource dataSource) {
+        return dataSource == source && preparerOf(dataSource) == sourcePreparer;
+    }
+
+    @Override
+    public synchronized Connection getConnection() throws SQLException {
+        borrows++;
+        if (released) {
+            // The request is done, so nothing would return a pinned connection
+            return getDelegate().getConnection();
+        }
+        if (pinned == null) {
+            long start = System.nanoTime();
+            pinned = getDelegate().getConnection();
+            preparationNanos += System.nanoTime() - start;
+            borrowed = unclosable(pinned);
+        }
+        return borrowed;
+    }
+
+    /**
+     * Return the connection, if one was borrowed, to the pool. Anything left uncommitted is
+     * rolled back.
+     */
+    public synchronized void release() {
+        released = true;
+        if (pinned == null) {
+            return;
+        }
+        try {
+            if (!pinned.getAutoCommit()) {
+                pinned.rollback();
+                pinned.setAutoCommit(true);
+            }
+        } catch (SQLException ex) {
+            logger.log(Level.WARNING, "Unable to reset the request connection", ex);
+        } finally {
+            try {
+                pinned.close();
+            } catch (SQLException ex) {
+                logger.log(Level.WARNING, "Unable to release the request connection", ex);
+            }
+            pinned = null;
+            borrowed = null;
+        }
+    }
+
+    /**
+     * @return how many times a connection was borrowed from this
+     */
+    public synchronized int getBorrows() {
+        return borrows;
+    }
+
+    /**
+     * @return how long taking and preparing the connection took, in nanoseconds
+     */
+    public synchronized long getPreparationNanos() {
+        return preparationNanos;
+    }
+
+    private static Connection unclosable(Connection connection) {
+        return (Connection) Proxy.newProxyInstance(RequestScopedDataSource.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+                    if ("close".equals(method.getName()) && method.getParameterCount() == 0) {
+                        return null;
+                    }
+                    try {
+                        return method.invoke(connection, args);
+                    } catch (InvocationTargetException ex) {
+                        throw ex.getCause();
+                    }
+                });
+    }
+}
@@ -24,8 +24,10 @@ public class SessionOfficePreparer implements ConnectionPreparer {
         if(office != null && !office.isEmpty()) {
             DSLContext dsl = DSL.using(conn, SQLDialect.ORACLE18C);
             try {
-                logger.fine("Setting office to: " + office);
-                CWMS_ENV_PACKAGE.call_SET_SESSION_OFFICE_ID(dsl.configuration(), office);
+                SessionState.setOffice(conn, office, () -> {
+                    logger.fine("Setting office to: " + office);
+                    CWMS_ENV_PACKAGE.call_SET_SESSION_OFFICE_ID(dsl.configuration(), office);
+                });
             } catch (Exception e) {
                 throw new DataAccessException("Unable to set session office id to " + office, e);
             }
@@ -0,0 +1,167 @@
+package cwms.cda.datasource;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Remembers the time zone and client info last applied to each physical connection, so that
+ * preparing a pooled connection again with the same values can skip the calls that would change
+ * nothing.
+ *
+ * <p>The session user, session key and office are never skipped. Who a request runs as must not
+ * rest on what this class believes about a connection, so those calls always go to the database
+ * and only take part here by forgetting all that is known when they fail.
+ *
+ * <p>Connections are told apart by what they unwrap to, which for the Tomcat pool is the
+ * driver's connection, and are held weakly. When a change fails part way, or anything else
+ * leaves the session in doubt, all that is known about the connection is forgotten. Setting
+ * {@value #ENABLED_KEY} to false applies every change.
+ */
+public final class SessionState {
+    public static final String ENABLED_KEY = "cwms.dataapi.connection.sessionMemo";
+    public static final String NAME = "sessionState";
+
+    private static final String TIME_ZONE = "timeZone";
+    private static final String CLIENT_INFO = "clientInfo";
+
+    private static final boolean ENABLED = !"false".equalsIgnoreCase(
+            System.getProperty(ENABLED_KEY, System.getenv(ENABLED_KEY)));
+
+    private static final Map<Connection, Map<String, String>> states =
+            Collections.synchronizedMap(new WeakHashMap<>());
+
+    private static final Counter applied = new Counter();
+    private static final Counter skipped = new Counter();
+
+    /**
+     * A call that changes the session of the connection.
+     */
+    @FunctionalInterface
+    public interface SessionCall {
+        void run() throws SQLException;
+    }
+
+    private SessionState() {
+    }
+
+    /**
+     * Sets the session user, which also sets the office to that user's default.
+     *
+     * @param office the office the call sets after the user, or null if it doesn't
+     */
+    public static void setUser(Connection conn, String user, @Nullable String office,
+                               SessionCall call) throws SQLException {
+        always(conn, call);
+    }
+
+    /**
+     * Sets the session from a session key, which sets the user and office to whatever the
+     * session holds.
+     */
+    public static void setSessionId(Connection conn, String sessionKey, SessionCall call)
+            throws SQLException {
+        always(conn, call);
+    }
+
+    public static void setOffice(Connection conn, @Nullable String office, SessionCall call)
+            throws SQLException {
+        always(conn, call);
+    }
+
+    public static void setTimeZone(Connection conn, String timeZone, SessionCall call)
+            throws SQLException {
+        apply(conn, TIME_ZONE, timeZone, call);
+    }
+
+    /**
+     * @param clientInfo all the client info values the call sets, in a fixed order
+     */
+    public static void setClientInfo(Connection conn, String clientInfo, SessionCall call)
+            throws SQLException {
+        apply(conn, CLIENT_INFO, clientInfo, call);
+    }
+
+    /**
+     * For changes made on connections that can't be told apart, such as through a DSLContext
+     * that borrows from the pool.
+     */
+    public static void forgetAll() {
+        states.clear();
+    }
+
+    /**
+     * For changes made to the session of this connection some other way.
+     */
+    public static void forget(Connection conn) {
+        states.remove(physical(conn));
+    }
+
+    private static void always(Connection conn, SessionCall call) throws SQLException {
+        try {
+            call.run();
+        } catch (SQLException | RuntimeException | Error ex) {
+            forget(conn);
+            throw ex;
+        }
+        applied.inc();
+    }
+
+    private static void apply(Connection conn, String key, String value, SessionCall call)
+            throws SQLException {
+        if (!ENABLED) {
+            call.run();
+            return;
+        }
+        Map<String, String> state = states.computeIfAbsent(physical(conn),
+                k -> new ConcurrentHashMap<>());
+        if (value.equals(state.get(key))) {
+            skipped.inc();
+            return;
+        }
+        try {
+            call.run();
+        } catch (SQLException | RuntimeException | Error ex) {
+            state.clear();
+            throw ex;
+        }
+        state.put(key, value);
+        applied.inc();
+    }
+
+    static Connection physical(Connection conn) {
+        Connection retval = conn;
+        try {
+            for (int i = 0; i < 4 && retval.isWrapperFor(Connection.class); i++) {
+                Connection next = retval.unwrap(Connection.class);
+                if (next == null || next == retval) {
+                    break;
+                }
+                retval = next;
+            }
+        } catch (SQLException | RuntimeException ex) {
+            // what we have is as far as it unwraps
+        }
+        return retval;
+    }
+
+    public static void registerMetrics(@Nullable MetricRegistry metrics) {
+        if (metrics == null) {
+            return;
+        }
+        String appliedName = MetricRegistry.name(SessionState.class.getName(), NAME, "applied");
+        if (metrics.getCounters().get(appliedName) == null) {
+            metrics.register(appliedName, applied);
+        }
+        String skippedName = MetricRegistry.name(SessionState.class.getName(), NAME, "skipped");
+        if (metrics.getCounters().get(skippedName) == null) {
+            metrics.register(skippedName, skipped);
+        }
+    }
+}
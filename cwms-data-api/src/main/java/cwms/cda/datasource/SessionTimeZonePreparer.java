@@ -34,7 +34,7 @@ public class SessionTimeZonePreparer implements ConnectionPreparer {
 
     @Override
     public Connection prepare(Connection conn) throws SQLException {
-        setSessionTimeZoneUtc(conn);
+        SessionState.setTimeZone(conn, "UTC", () -> setSessionTimeZoneUtc(conn));
         return conn;
     }
 
@@ -29,7 +29,9 @@ import cwms.cda.formatters.annotations.FormattableWith;
 
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
@@ -60,6 +62,9 @@ public class Formats {
     public static final String GEOJSON = "application/geo+json";
     public static final String PGJSON = "application/vnd.pg+json";
     public static final String NAMED_PGJSON = "application/vnd.named+pg+json";
+    public static final String CBOR = "application/cbor";
+    public static final String SMILE = "application/x-jackson-smile";
+    public static final String ARROW = "application/vnd.apache.arrow.stream";
     public static final String DEFAULT = "*/*";
 
     public static final String JSON_LEGACY = "json";
@@ -77,7 +82,7 @@ public class Formats {
     static {
         contentTypeList.addAll(
                 Stream.of(DEFAULT, JSON, JSONV1, XML, XMLV1, XMLV2, WML2, JSONV2,
-                        TAB, CSV, GEOJSON, PGJSON, NAMED_PGJSON)
+                        TAB, CSV, GEOJSON, PGJSON, NAMED_PGJSON, CBOR, SMILE, ARROW)
                         .map(ContentType::new)
                         .collect(Collectors.toList()));
     }
@@ -103,6 +108,14 @@ public class Formats {
     private Formats() {
     }
 
+    /**
+     * Whether the content type is a binary format. They only exist for the version 2 data model.
+     */
+    public static boolean isBinary(ContentType contentType) {
+        String type = contentType.getType();
+        return CBOR.equals(type) || SMILE.equals(type) || ARROW.equals(type);
+    }
+
     public static String getLegacyTypeFromContentType(ContentType contentType)
     {
         return typeMap.entrySet()
@@ -128,6 +141,46 @@ public class Formats {
 
     }
 
+    private void writeFormatted(ContentType type, CwmsDTOBase toFormat, OutputStream out)
+            throws IOException {
+        Objects.requireNonNull(toFormat, "Object to be formatted should not be null");
+        OutputFormatter outputFormatter = getOutputFormatter(type, toFormat.getClass());
+
+        if (outputFormatter != null) {
+            outputFormatter.format(toFormat, out);
+        } else {
+            String message = String.format("No Format for this content-type and data-type : (%s, %s)",
+                    type.toString(), toFormat.getClass().getName());
+            throw new UnsupportedFormatException(message);
+        }
+    }
+
+    private byte[] getFormattedBytes(ContentType type, CwmsDTOBase toFormat) throws FormattingException {
+        Objects.requireNonNull(toFormat, "Object to be formatted should not be null");
+        OutputFormatter outputFormatter = getOutputFormatter(type, toFormat.getClass());
+
+        if (outputFormatter != null) {
+            return outputFormatter.formatBytes(toFormat);
+        } else {
+            String message = String.format("No Format for this content-type and data-type : (%s, %s)",
+                    type.toString(), toFormat.getClass().getName());
+            throw new UnsupportedFormatException(message);
+        }
+    }
+
+    private byte[] getFormattedBytes(ContentType type, List<? extends CwmsDTOBase> dtos, Class<?
+            extends CwmsDTOBase> rootType) throws FormattingException {
+        OutputFormatter outputFormatter = getOutputFormatter(type, rootType);
+
+        if (outputFormatter != null) {
+            return outputFormatter.formatBytes(dtos);
+        } else {
+            String message = String.format("No Format for this content-type and data type : (%s, %s)",
+                    type.toString(), rootType.getName());
+            throw new UnsupportedFormatException(message);
+        }
+    }
+
     private String getFormatted(ContentType type, List<? extends CwmsDTOBase> dtos, Class<?
             extends CwmsDTOBase> rootType) throws FormattingException {
         for (ContentType key : formatters.keySet()) {
@@ -223,11 +276,32 @@ public class Formats {
         return formats.getFormatted(type, toFormat);
     }
 
+    /**
+     * Writes the formatted object directly to the given stream, which is left open.
+     */
+    public static void format(ContentType type, CwmsDTOBase toFormat, OutputStream out)
+            throws IOException {
+        formats.writeFormatted(type, toFormat, out);
+    }
+
     public static String format(ContentType type, List<? extends CwmsDTOBase> toFormat, Class<?
             extends CwmsDTOBase> rootType) throws FormattingException {
         return formats.getFormatted(type, toFormat, rootType);
     }
 
+    /**
+     * Formats the object to bytes, for content types that can't be held in a String, such as
+     * {@link #CBOR}. Text formats are encoded as UTF-8.
+     */
+    public static byte[] formatBytes(ContentType type, CwmsDTOBase toFormat) throws FormattingException {
+        return formats.getFormattedBytes(type, toFormat);
+    }
+
+    public static byte[] formatBytes(ContentType type, List<? extends CwmsDTOBase> toFormat, Class<?
+            extends CwmsDTOBase> rootType) throws FormattingException {
+        return formats.getFormattedBytes(type, toFormat, rootType);
+    }
+
     public static <T extends CwmsDTOBase> T parseContent(ContentType type, String content, Class<T> rootType)
             throws FormattingException {
         return formats.parseContentFromType(type, content, rootType);
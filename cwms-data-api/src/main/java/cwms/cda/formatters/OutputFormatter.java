@@ -1,8 +1,12 @@
 package cwms.cda.formatters;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 
+import cwms.cda.api.errors.InvalidItemException;
 import cwms.cda.data.dto.CwmsDTOBase;
 
 public interface OutputFormatter {
@@ -11,6 +15,25 @@ public interface OutputFormatter {
     String getContentType();
     String format(CwmsDTOBase dto);
     String format(List<? extends CwmsDTOBase> dtoList);
+
+    /**
+     * Writes the formatted object to the given stream, which is left open.
+     * Formatters that can write incrementally should override this so large objects
+     * are not rendered to a String first.
+     */
+    default void format(CwmsDTOBase dto, OutputStream out) throws IOException {
+        out.write(format(dto).getBytes(StandardCharsets.UTF_8));
+    }
+    /**
+     * Formats the object to bytes. Binary formatters, whose output can't be a String, must
+     * override this.
+     */
+    default byte[] formatBytes(CwmsDTOBase dto) {
+        return format(dto).getBytes(StandardCharsets.UTF_8);
+    }
+    default byte[] formatBytes(List<? extends CwmsDTOBase> dtoList) {
+        return format(dtoList).getBytes(StandardCharsets.UTF_8);
+    }
     default <T extends CwmsDTOBase> T parseContent(String content, Class<T> type) {
         throw new UnsupportedOperationException(String.format(UNSUPPORTED_MESSAGE, getContentType()));
     }
@@ -20,4 +43,16 @@ public interface OutputFormatter {
     default <T extends CwmsDTOBase> T parseContent(InputStream content, Class<T> type) {
         throw new UnsupportedOperationException(String.format(UNSUPPORTED_MESSAGE, getContentType()));
     }
+
+    /**
+     * The exception for content that couldn't be parsed. Jackson wraps exceptions thrown by
+     * deserializers; an {@link InvalidItemException} is unwrapped so the content is reported
+     * as invalid rather than as a formatting failure.
+     */
+    static RuntimeException parseFailure(String message, IOException cause) {
+        if (cause.getCause() instanceof InvalidItemException) {
+            return (InvalidItemException) cause.getCause();
+        }
+        return new FormattingException(message, cause);
+    }
 }
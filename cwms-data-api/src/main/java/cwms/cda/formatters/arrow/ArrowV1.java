@@ -0,0 +1,351 @@
+package cwms.cda.formatters.arrow;
+
+import cwms.cda.data.dto.Catalog;
+import cwms.cda.data.dto.CwmsDTOBase;
+import cwms.cda.data.dto.CwmsDTOPaginated;
+import cwms.cda.data.dto.TimeSeries;
+import cwms.cda.data.dto.TimeSeriesExtents;
+import cwms.cda.data.dto.catalog.CatalogEntry;
+import cwms.cda.data.dto.catalog.LocationCatalogEntry;
+import cwms.cda.data.dto.catalog.TimeseriesCatalogEntry;
+import cwms.cda.formatters.Formats;
+import cwms.cda.formatters.FormattingException;
+import cwms.cda.formatters.OutputFormatter;
+import cwms.cda.formatters.UnsupportedFormatException;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.BigIntVector;
+import org.apache.arrow.vector.BitVector;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.Float8Vector;
+import org.apache.arrow.vector.TimeStampMilliTZVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.dictionary.DictionaryProvider;
+import org.apache.arrow.vector.ipc.ArrowStreamWriter;
+import org.apache.arrow.vector.types.FloatingPointPrecision;
+import org.apache.arrow.vector.types.TimeUnit;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.FieldType;
+import org.apache.arrow.vector.types.pojo.Schema;
+
+/**
+ * Formatter for the Apache Arrow IPC stream format, for clients that load results into data
+ * frames. Time series are written by {@link TimeSeriesArrowWriter}; catalogs are one row per
+ * entry, and for time series one row per entry and extent. The paging fields are in the
+ * schema metadata.
+ */
+public class ArrowV1 implements OutputFormatter {
+
+    static final int BATCH_ROWS = Integer.parseInt(
+            System.getProperty("cda.api.arrow.batch.rows", "65536"));
+
+    static final ArrowType UTF8 = ArrowType.Utf8.INSTANCE;
+    static final ArrowType INT64 = new ArrowType.Int(64, true);
+    static final ArrowType INT32 = new ArrowType.Int(32, true);
+    static final ArrowType FLOAT8 = new ArrowType.FloatingPoint(FloatingPointPrecision.DOUBLE);
+    static final ArrowType BOOL = ArrowType.Bool.INSTANCE;
+    static final ArrowType TIMESTAMP = new ArrowType.Timestamp(TimeUnit.MILLISECOND, "UTC");
+
+    // Every stream allocates from this, so the memory held by Arrow can be seen in one place.
+    private static final BufferAllocator ROOT_ALLOCATOR = new RootAllocator();
+
+    @Override
+    public String getContentType() {
+        return Formats.ARROW;
+    }
+
+    @Override
+    public String format(CwmsDTOBase dto) {
+        throw new FormattingException(getContentType() + " is a binary format and can't be "
+                + "formatted as text");
+    }
+
+    @Override
+    public String format(List<? extends CwmsDTOBase> dtoList) {
+        throw new FormattingException(getContentType() + " is a binary format and can't be "
+                + "formatted as text");
+    }
+
+    @Override
+    public byte[] formatBytes(CwmsDTOBase dto) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            format(dto, out);
+        } catch (IOException e) {
+            throw new FormattingException("Could not format :" + dto, e);
+        }
+        return out.toByteArray();
+    }
+
+    @Override
+    public byte[] formatBytes(List<? extends CwmsDTOBase> dtoList) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (TimeSeriesArrowWriter writer = TimeSeriesArrowWriter.forBatch(out)) {
+            for (CwmsDTOBase dto : dtoList) {
+                if (!(dto instanceof TimeSeries)) {
+                    throw new UnsupportedFormatException("Format " + getContentType()
+                            + " not implemented for lists of " + dto.getClass().getName());
+                }
+                writer.write((TimeSeries) dto);
+            }
+        } catch (IOException e) {
+            throw new FormattingException("Could not format :" + dtoList, e);
+        }
+        return out.toByteArray();
+    }
+
+    @Override
+    public void format(CwmsDTOBase dto, OutputStream out) throws IOException {
+        if (dto instanceof TimeSeries) {
+            try (TimeSeriesArrowWriter writer = TimeSeriesArrowWriter.forTimeSeries(out,
+                    (TimeSeries) dto)) {
+                writer.write((TimeSeries) dto);
+            }
+        } else if (dto instanceof Catalog) {
+            writeCatalog((Catalog) dto, out);
+        } else {
+            throw new UnsupportedFormatException("Format " + getContentType()
+                    + " not implemented for data of class:" + dto.getClass().getName());
+        }
+    }
+
+    private static void writeCatalog(Catalog catalog, OutputStream out) throws IOException {
+        Map<String, String> metadata = pageMetadata(catalog);
+        List<? extends CatalogEntry> entries = catalog.getEntries();
+        if (!entries.isEmpty() && entries.get(0) instanceof TimeseriesCatalogEntry) {
+            List<ExtentRow> rows = new ArrayList<>();
+            for (CatalogEntry entry : entries) {
+                TimeseriesCatalogEntry ts = (TimeseriesCatalogEntry) entry;
+                if (ts.getExtents() == null || ts.getExtents().isEmpty()) {
+                    rows.add(new ExtentRow(ts, null));
+                } else {
+                    ts.getExtents().forEach(e -> rows.add(new ExtentRow(ts, e)));
+                }
+            }
+            writeRows(rows, TIME_SERIES_CATALOG, metadata, out);
+        } else if (!entries.isEmpty()) {
+            List<LocationCatalogEntry> rows = new ArrayList<>(entries.size());
+            entries.forEach(e -> rows.add((LocationCatalogEntry) e));
+            writeRows(rows, LOCATION_CATALOG, metadata, out);
+        } else {
+            writeRows(new ArrayList<CatalogEntry>(), Arrays.asList(
+                    utf8("office", CatalogEntry::getOffice),
+                    utf8("name", (CatalogEntry e) -> null)), metadata, out);
+        }
+    }
+
+    static Map<String, String> pageMetadata(CwmsDTOPaginated dto) {
+        Map<String, String> metadata = new LinkedHashMap<>();
+        putIfPresent(metadata, "page", dto.getPage());
+        putIfPresent(metadata, "next-page", dto.getNextPage());
+        putIfPresent(metadata, "page-size", dto.getPageSize());
+        putIfPresent(metadata, "total", dto.getTotal());
+        return metadata;
+    }
+
+    static void putIfPresent(Map<String, String> metadata, String key, Object value) {
+        if (value != null) {
+            metadata.put(key, value.toString());
+        }
+    }
+
+    private static <T> void writeRows(List<T> rows, List<Column<T>> columns,
+                                      Map<String, String> metadata, OutputStream out)
+            throws IOException {
+        List<Field> fields = new ArrayList<>(columns.size());
+        columns.forEach(c -> fields.add(c.field));
+        try (BufferAllocator allocator = newAllocator("catalog");
+             VectorSchemaRoot root = VectorSchemaRoot.create(new Schema(fields, metadata),
+                     allocator);
+             ArrowStreamWriter writer = newStreamWriter(root, out)) {
+            writer.start();
+            root.allocateNew();
+            int count = 0;
+            for (T row : rows) {
+                for (int i = 0; i < columns.size(); i++) {
+                    columns.get(i).setter.set(root.getVector(i), count, row);
+                }
+                if (++count == BATCH_ROWS) {
+                    root.setRowCount(count);
+                    writer.writeBatch();
+                    root.getFieldVectors().forEach(FieldVector::reset);
+                    count = 0;
+                }
+            }
+            if (count > 0 || rows.isEmpty()) {
+                root.setRowCount(count);
+                writer.writeBatch();
+            }
+            writer.end();
+        }
+    }
+
+    static BufferAllocator newAllocator(String name) {
+        return ROOT_ALLOCATOR.newChildAllocator(name, 0, Long.MAX_VALUE);
+    }
+
+    /**
+     * Creates a writer to the stream that leaves the stream open when it is closed, as
+     * formatters must.
+     */
+    static ArrowStreamWriter newStreamWriter(VectorSchemaRoot root, OutputStream out) {
+        OutputStream shield = new FilterOutputStream(out) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                flush();
+            }
+        };
+        return new ArrowStreamWriter(root, new DictionaryProvider.MapDictionaryProvider(),
+                Channels.newChannel(shield));
+    }
+
+    static Field field(String name, ArrowType type) {
+        return new Field(name, FieldType.nullable(type), null);
+    }
+
+    static void setString(VarCharVector vector, int row, String value) {
+        if (value == null) {
+            vector.setNull(row);
+        } else {
+            vector.setSafe(row, value.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Sets a vector of a row from a field of the row.
+     */
+    private interface Setter<T> {
+        void set(FieldVector vector, int row, T value);
+    }
+
+    private static final class Column<T> {
+        private final Field field;
+        private final Setter<T> setter;
+
+        private Column(Field field, Setter<T> setter) {
+            this.field = field;
+            this.setter = setter;
+        }
+    }
+
+    private static <T> Column<T> utf8(String name, Function<T, String> getter) {
+        return new Column<>(field(name, UTF8),
+            (v, row, t) -> setString((VarCharVector) v, row, getter.apply(t)));
+    }
+
+    private static <T> Column<T> float8(String name, Function<T, Double> getter) {
+        return new Column<>(field(name, FLOAT8), (v, row, t) -> {
+            Double value = getter.apply(t);
+            if (value == null) {
+                ((Float8Vector) v).setNull(row);
+            } else {
+                ((Float8Vector) v).setSafe(row, value);
+            }
+        });
+    }
+
+    private static <T> Column<T> int64(String name, Function<T, Long> getter) {
+        return new Column<>(field(name, INT64), (v, row, t) -> {
+            Long value = getter.apply(t);
+            if (value == null) {
+                ((BigIntVector) v).setNull(row);
+            } else {
+                ((BigIntVector) v).setSafe(row, value);
+            }
+        });
+    }
+
+    private static <T> Column<T> bool(String name, Function<T, Boolean> getter) {
+        return new Column<>(field(name, BOOL), (v, row, t) -> {
+            Boolean value = getter.apply(t);
+            if (value == null) {
+                ((BitVector) v).setNull(row);
+            } else {
+                ((BitVector) v).setSafe(row, value ? 1 : 0);
+            }
+        });
+    }
+
+    private static <T> Column<T> timestamp(String name, Function<T, ZonedDateTime> getter) {
+        return new Column<>(field(name, TIMESTAMP), (v, row, t) -> {
+            ZonedDateTime value = getter.apply(t);
+            if (value == null) {
+                ((TimeStampMilliTZVector) v).setNull(row);
+            } else {
+                ((TimeStampMilliTZVector) v).setSafe(row, value.toInstant().toEpochMilli());
+            }
+        });
+    }
+
+    private static final class ExtentRow {
+        private final TimeseriesCatalogEntry entry;
+        private final TimeSeriesExtents extents;
+
+        private ExtentRow(TimeseriesCatalogEntry entry, TimeSeriesExtents extents) {
+            this.entry = entry;
+            this.extents = extents;
+        }
+
+        private ZonedDateTime extent(Function<TimeSeriesExtents, ZonedDateTime> getter) {
+            return extents == null ? null : getter.apply(extents);
+        }
+    }
+
+    private static final List<Column<ExtentRow>> TIME_SERIES_CATALOG = Arrays.asList(
+            utf8("office", r -> r.entry.getOffice()),
+            utf8("name", r -> r.entry.getName()),
+            utf8("units", r -> r.entry.getUnits()),
+            utf8("interval", r -> r.entry.getInterval()),
+            int64("interval_offset", r -> r.entry.getIntervalOffset()),
+            utf8("time_zone", r -> r.entry.getTimeZone()),
+            timestamp("version_time", r -> r.extent(TimeSeriesExtents::getVersionTime)),
+            timestamp("earliest_time", r -> r.extent(TimeSeriesExtents::getEarliestTime)),
+            timestamp("latest_time", r -> r.extent(TimeSeriesExtents::getLatestTime)),
+            timestamp("last_update", r -> r.extent(TimeSeriesExtents::getLastUpdate)));
+
+    // Aliases are left out, as they are a list for each location.
+    private static final List<Column<LocationCatalogEntry>> LOCATION_CATALOG = Arrays.asList(
+            utf8("office", LocationCatalogEntry::getOffice),
+            utf8("name", LocationCatalogEntry::getName),
+            utf8("nearest_city", LocationCatalogEntry::getNearestCity),
+            utf8("public_name", LocationCatalogEntry::getPublicName),
+            utf8("long_name", LocationCatalogEntry::getLongName),
+            utf8("description", LocationCatalogEntry::getDescription),
+            utf8("kind", LocationCatalogEntry::getKind),
+            utf8("type", LocationCatalogEntry::getType),
+            utf8("time_zone", LocationCatalogEntry::getTimeZone),
+            float8("latitude", LocationCatalogEntry::getLatitude),
+            float8("longitude", LocationCatalogEntry::getLongitude),
+            float8("published_latitude", LocationCatalogEntry::getPublishedLatitude),
+            float8("published_longitude", LocationCatalogEntry::getPublishedLongitude),
+            utf8("horizontal_datum", LocationCatalogEntry::getHorizontalDatum),
+            float8("elevation", LocationCatalogEntry::getElevation),
+            utf8("unit", LocationCatalogEntry::getUnit),
+            utf8("vertical_datum", LocationCatalogEntry::getVerticalDatum),
+            utf8("nation", LocationCatalogEntry::getNation),
+            utf8("state", LocationCatalogEntry::getState),
+            utf8("county", LocationCatalogEntry::getCounty),
+            utf8("bounding_office", LocationCatalogEntry::getBoundingOffice),
+            utf8("map_label", LocationCatalogEntry::getMapLabel),
+            bool("active", LocationCatalogEntry::getActive));
+}
@@ -0,0 +1,234 @@
+package cwms.cda.formatters.arrow;
+
+import static cwms.cda.formatters.arrow.ArrowV1.FLOAT8;
+import static cwms.cda.formatters.arrow.ArrowV1.INT32;
+import static cwms.cda.formatters.arrow.ArrowV1.TIMESTAMP;
+import static cwms.cda.formatters.arrow.ArrowV1.UTF8;
+import static cwms.cda.formatters.arrow.ArrowV1.field;
+import static cwms.cda.formatters.arrow.ArrowV1.putIfPresent;
+
+import cwms.cda.data.dto.TimeSeries;
+import cwms.cda.data.dto.TimeSeriesValues;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.Float8Vector;
+import org.apache.arrow.vector.IntVector;
+import org.apache.arrow.vector.TimeStampMilliTZVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.ipc.ArrowStreamWriter;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.Schema;
+
+/**
+ * Writes time series values as an Apache Arrow IPC stream, one row per value, with the
+ * date-times, values and quality codes in primitive vectors. Rows are sent in record batches
+ * as they are read, so time series with streamed values are never held in memory.
+ * <p>
+ * The writer for a single time series puts its fields, such as the units and the next page,
+ * in the schema metadata. The writer for a batch adds name, office and units columns, and an
+ * error column for the series that couldn't be retrieved, and sends each series when it is
+ * written.
+ */
+public final class TimeSeriesArrowWriter implements Closeable {
+    public static final String NAME = "name";
+    public static final String OFFICE = "office";
+    public static final String UNITS = "units";
+    public static final String DATE_TIME = "date_time";
+    public static final String VALUE = "value";
+    public static final String QUALITY_CODE = "quality_code";
+    public static final String ERROR = "error";
+
+    private final OutputStream out;
+    private final boolean batch;
+    private final BufferAllocator allocator;
+    private final VectorSchemaRoot root;
+    private final ArrowStreamWriter writer;
+
+    private final TimeStampMilliTZVector dateTimes;
+    private final Float8Vector values;
+    private final IntVector qualityCodes;
+    private final VarCharVector names;
+    private final VarCharVector offices;
+    private final VarCharVector units;
+    private final VarCharVector errors;
+
+    private String name;
+    private String office;
+    private String unit;
+    private int rows;
+
+    private TimeSeriesArrowWriter(OutputStream out, Map<String, String> metadata, boolean batch)
+            throws IOException {
+        this.out = out;
+        this.batch = batch;
+        List<Field> fields = new ArrayList<>();
+        if (batch) {
+            fields.add(field(NAME, UTF8));
+            fields.add(field(OFFICE, UTF8));
+            fields.add(field(UNITS, UTF8));
+        }
+        fields.add(field(DATE_TIME, TIMESTAMP));
+        fields.add(field(VALUE, FLOAT8));
+        fields.add(field(QUALITY_CODE, INT32));
+        if (batch) {
+            fields.add(field(ERROR, UTF8));
+        }
+
+        allocator = ArrowV1.newAllocator("time-series");
+        VectorSchemaRoot vectors = null;
+        try {
+            vectors = VectorSchemaRoot.create(new Schema(fields, metadata), allocator);
+            vectors.allocateNew();
+            writer = ArrowV1.newStreamWriter(vectors, out);
+            writer.start();
+        } catch (IOException | RuntimeException ex) {
+            if (vectors != null) {
+                vectors.close();
+            }
+            allocator.close();
+            throw ex;
+        }
+        root = vectors;
+        dateTimes = (TimeStampMilliTZVector) root.getVector(DATE_TIME);
+        values = (Float8Vector) root.getVector(VALUE);
+        qualityCodes = (IntVector) root.getVector(QUALITY_CODE);
+        // only in batches
+        names = (VarCharVector) root.getVector(NAME);
+        offices = (VarCharVector) root.getVector(OFFICE);
+        units = (VarCharVector) root.getVector(UNITS);
+        errors = (VarCharVector) root.getVector(ERROR);
+    }
+
+    /**
+     * Starts a stream for the values of one time series. Its fields are read now, so for
+     * streamed values the next page is only known if there is none.
+     */
+    public static TimeSeriesArrowWriter forTimeSeries(OutputStream out, TimeSeries ts)
+            throws IOException {
+        Map<String, String> metadata = ArrowV1.pageMetadata(ts);
+        putIfPresent(metadata, "name", ts.getName());
+        putIfPresent(metadata, "office-id", ts.getOfficeId());
+        putIfPresent(metadata, "units", ts.getUnits());
+        putIfPresent(metadata, "interval", ts.getInterval());
+        putIfPresent(metadata, "interval-offset", ts.getIntervalOffset());
+        putIfPresent(metadata, "time-zone", ts.getTimeZone());
+        putIfPresent(metadata, "begin", ts.getBegin());
+        putIfPresent(metadata, "end", ts.getEnd());
+        putIfPresent(metadata, "date-version-type", ts.getDateVersionType());
+        putIfPresent(metadata, "version-date", ts.getVersionDate());
+        return new TimeSeriesArrowWriter(out, metadata, false);
+    }
+
+    /**
+     * Starts a stream for the values of several time series.
+     */
+    public static TimeSeriesArrowWriter forBatch(OutputStream out) throws IOException {
+        return new TimeSeriesArrowWriter(out, Collections.emptyMap(), true);
+    }
+
+    public void write(TimeSeries ts) throws IOException {
+        name = ts.getName();
+        office = ts.getOfficeId();
+        unit = ts.getUnits();
+        Iterable<TimeSeries.Record> records = ts.getValueSource();
+        if (records instanceof TimeSeriesValues) {
+            TimeSeriesValues columns = (TimeSeriesValues) records;
+            for (int i = 0; i < columns.size(); i++) {
+                if (columns.isNull(i)) {
+                    values.setNull(rows);
+                } else {
+                    values.setSafe(rows, columns.getValue(i));
+                }
+                append(columns.getDateTime(i), columns.getQualityCode(i));
+            }
+        } else if (records != null) {
+            for (TimeSeries.Record rec : records) {
+                if (rec.getValue() == null) {
+                    values.setNull(rows);
+                } else {
+                    values.setSafe(rows, rec.getValue());
+                }
+                append(rec.getDateTime().getTime(), rec.getQualityCode());
+            }
+        }
+        if (batch) {
+            flush();
+        }
+    }
+
+    /**
+     * Writes a row with the error in place of the values of a time series of a batch.
+     */
+    public void writeError(String name, String office, String message) throws IOException {
+        if (!batch) {
+            throw new IllegalStateException("Errors are only written to batches");
+        }
+        this.name = name;
+        this.office = office;
+        this.unit = null;
+        ArrowV1.setString(errors, rows, message);
+        dateTimes.setNull(rows);
+        values.setNull(rows);
+        qualityCodes.setNull(rows);
+        setSeries();
+        rows++;
+        flush();
+    }
+
+    private void append(long dateTime, int qualityCode) throws IOException {
+        dateTimes.setSafe(rows, dateTime);
+        qualityCodes.setSafe(rows, qualityCode);
+        if (batch) {
+            errors.setNull(rows);
+            setSeries();
+        }
+        if (++rows == ArrowV1.BATCH_ROWS) {
+            writeBatch();
+        }
+    }
+
+    private void setSeries() {
+        ArrowV1.setString(names, rows, name);
+        ArrowV1.setString(offices, rows, office);
+        ArrowV1.setString(units, rows, unit);
+    }
+
+    private void writeBatch() throws IOException {
+        root.setRowCount(rows);
+        writer.writeBatch();
+        root.getFieldVectors().forEach(FieldVector::reset);
+        rows = 0;
+    }
+
+    /**
+     * Sends the rows written so far.
+     */
+    public void flush() throws IOException {
+        if (rows > 0) {
+            writeBatch();
+        }
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (rows > 0) {
+                writeBatch();
+            }
+            writer.end();
+        } finally {
+            writer.close();
+            root.close();
+            allocator.close();
+        }
+    }
+}
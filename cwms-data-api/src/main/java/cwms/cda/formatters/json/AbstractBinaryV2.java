@@ -0,0 +1,65 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Hydrologic Engineering Center
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package cwms.cda.formatters.json;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import cwms.cda.data.dto.CwmsDTOBase;
+import cwms.cda.formatters.FormattingException;
+import java.util.List;
+
+/**
+ * The JSON V2 data model written in a binary format. The output can't be held in a String,
+ * so it is only available from {@link #formatBytes(CwmsDTOBase)} and
+ * {@link #format(CwmsDTOBase, java.io.OutputStream)}, and content is only parsed from a stream.
+ */
+abstract class AbstractBinaryV2 extends JsonV2 {
+
+    AbstractBinaryV2(ObjectMapper om) {
+        super(buildObjectMapper(om));
+    }
+
+    @Override
+    public String format(CwmsDTOBase dto) {
+        throw new FormattingException(getContentType() + " is a binary format and can't be "
+                + "formatted as text");
+    }
+
+    @Override
+    public String format(List<? extends CwmsDTOBase> dtoList) {
+        throw new FormattingException(getContentType() + " is a binary format and can't be "
+                + "formatted as text");
+    }
+
+    @Override
+    public <T extends CwmsDTOBase> T parseContent(String content, Class<T> type) {
+        throw new UnsupportedOperationException(String.format(UNSUPPORTED_MESSAGE, getContentType()));
+    }
+
+    @Override
+    public <T extends CwmsDTOBase> List<T> parseContentList(String content, Class<T> type) {
+        throw new UnsupportedOperationException(String.format(UNSUPPORTED_MESSAGE, getContentType()));
+    }
+}
@@ -25,6 +25,7 @@
 package cwms.cda.formatters.json;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -39,6 +40,7 @@ import org.jetbrains.annotations.NotNull;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.List;
 
 /**
@@ -49,13 +51,27 @@ public class JsonV2 implements OutputFormatter {
     private final ObjectMapper om;
 
     public JsonV2() {
-        this.om = buildObjectMapper();
+        this(buildObjectMapper());
+    }
+
+    /**
+     * @param om a mapper set up by {@link #buildObjectMapper(ObjectMapper)}, which may write
+     *           another data format with the same data model
+     */
+    protected JsonV2(ObjectMapper om) {
+        this.om = om;
     }
 
     @NotNull
     public static ObjectMapper buildObjectMapper() {
-        ObjectMapper retVal = new ObjectMapper();
+        return buildObjectMapper(new ObjectMapper());
+    }
 
+    /**
+     * Applies the CDA JSON settings to the given mapper.
+     */
+    @NotNull
+    public static ObjectMapper buildObjectMapper(ObjectMapper retVal) {
         retVal.findAndRegisterModules();
         // Without these two disables an Instant gets written as 3333333.335000000
         retVal.disable(SerializationFeature.WRITE_DATE_TIMESTAMPS_AS_NANOSECONDS);
@@ -81,6 +97,13 @@ public class JsonV2 implements OutputFormatter {
         }
     }
 
+    @Override
+    public void format(CwmsDTOBase dto, OutputStream out) throws IOException {
+        om.writer()
+          .without(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+          .writeValue(out, dto);
+    }
+
     @Override
     public String format(List<? extends CwmsDTOBase> dtoList) {
         try {
@@ -90,12 +113,30 @@ public class JsonV2 implements OutputFormatter {
         }
     }
 
+    @Override
+    public byte[] formatBytes(CwmsDTOBase dto) {
+        try {
+            return om.writeValueAsBytes(dto);
+        } catch (JsonProcessingException e) {
+            throw new FormattingException("Could not format :" + dto, e);
+        }
+    }
+
+    @Override
+    public byte[] formatBytes(List<? extends CwmsDTOBase> dtoList) {
+        try {
+            return om.writeValueAsBytes(dtoList);
+        } catch (JsonProcessingException e) {
+            throw new FormattingException("Could not format :" + dtoList, e);
+        }
+    }
+
     @Override
     public <T extends CwmsDTOBase> T parseContent(String content, Class<T> type) {
         try {
             return om.readValue(content, type);
         } catch (JsonProcessingException e) {
-            throw new FormattingException(String.format(DESERIALIZE_CONTENT_MESSAGE, content, type), e);
+            throw OutputFormatter.parseFailure(String.format(DESERIALIZE_CONTENT_MESSAGE, content, type), e);
         }
     }
 
@@ -104,7 +145,7 @@ public class JsonV2 implements OutputFormatter {
         try {
             return om.readValue(content, type);
         } catch (IOException e) {
-            throw new FormattingException(String.format(DESERIALIZE_CONTENT_MESSAGE, content, type), e);
+            throw OutputFormatter.parseFailure(String.format(DESERIALIZE_CONTENT_MESSAGE, content, type), e);
         }
     }
 
@@ -113,7 +154,7 @@ public class JsonV2 implements OutputFormatter {
         try {
             return om.readValue(content, om.getTypeFactory().constructCollectionType(List.class, type));
         } catch (IOException e) {
-            throw new FormattingException(String.format(DESERIALIZE_CONTENT_MESSAGE, content, type), e);
+            throw OutputFormatter.parseFailure(String.format(DESERIALIZE_CONTENT_MESSAGE, content, type), e);
         }
     }
 }
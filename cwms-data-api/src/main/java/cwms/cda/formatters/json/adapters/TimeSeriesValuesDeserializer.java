@@ -0,0 +1,187 @@
+package cwms.cda.formatters.json.adapters;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import cwms.cda.api.errors.InvalidItemException;
+import cwms.cda.data.dto.TimeSeries;
+import cwms.cda.data.dto.TimeSeriesValues;
+import java.io.IOException;
+import java.time.Instant;
+
+/**
+ * Reads time series values straight into a {@link TimeSeriesValues}, without creating an
+ * object per point. Points may be {@code [date-time, value, quality-code]} arrays (JSON) or
+ * objects with those fields (XML). Date-times are epoch milliseconds or date strings.
+ * Date-times must be in ascending order without duplicates; this is checked as each point is
+ * read, so a bad request fails before the rest of the values are read.
+ */
+public class TimeSeriesValuesDeserializer extends StdDeserializer<TimeSeriesValues> {
+
+    public TimeSeriesValuesDeserializer() {
+        super(TimeSeriesValues.class);
+    }
+
+    @Override
+    public TimeSeriesValues deserialize(JsonParser p, DeserializationContext ctxt)
+            throws IOException {
+        TimeSeriesValues retval = new TimeSeriesValues();
+        // For XML this also turns the wrapping element into an array of its children
+        if (p.isExpectedStartArrayToken()) {
+            while (p.nextToken() != JsonToken.END_ARRAY) {
+                readPoint(p, ctxt, retval);
+                checkOrder(retval);
+            }
+        } else if (p.currentToken() != JsonToken.VALUE_STRING || !p.getText().trim().isEmpty()) {
+            return (TimeSeriesValues) ctxt.handleUnexpectedToken(TimeSeriesValues.class, p);
+        }
+        retval.trimToSize();
+        return retval;
+    }
+
+    @Override
+    public TimeSeriesValues getNullValue(DeserializationContext ctxt) {
+        return new TimeSeriesValues(0);
+    }
+
+    private void readPoint(JsonParser p, DeserializationContext ctxt, TimeSeriesValues values)
+            throws IOException {
+        long dateTime = 0L;
+        Double value = null;
+        int qualityCode = 0;
+
+        JsonToken token = p.currentToken();
+        if (token == JsonToken.START_ARRAY) {
+            int column = 0;
+            while (p.nextToken() != JsonToken.END_ARRAY) {
+                switch (column++) {
+                    case 0:
+                        dateTime = readDateTime(p, ctxt);
+                        break;
+                    case 1:
+                        value = readValue(p, ctxt);
+                        break;
+                    case 2:
+                        qualityCode = readQualityCode(p, ctxt);
+                        break;
+                    default:
+                        ctxt.reportInputMismatch(this,
+                                "Unexpected time series value; expected at most 3 columns");
+                }
+            }
+        } else if (token == JsonToken.START_OBJECT) {
+            while (p.nextToken() == JsonToken.FIELD_NAME) {
+                String field = p.currentName();
+                p.nextToken();
+                switch (field) {
+                    case "date-time":
+                        dateTime = readDateTime(p, ctxt);
+                        break;
+                    case "value":
+                        value = readValue(p, ctxt);
+                        break;
+                    case "quality-code":
+                        qualityCode = readQualityCode(p, ctxt);
+                        break;
+                    default:
+                        ctxt.handleUnknownProperty(p, this, TimeSeries.Record.class, field);
+                }
+            }
+        } else {
+            ctxt.handleUnexpectedToken(TimeSeries.Record.class, p);
+            return;
+        }
+        values.add(dateTime, value, qualityCode);
+    }
+
+    private static void checkOrder(TimeSeriesValues values) {
+        int last = values.size() - 1;
+        if (last < 1) {
+            return;
+        }
+        long previous = values.getDateTime(last - 1);
+        long current = values.getDateTime(last);
+        if (current == previous) {
+            throw new InvalidItemException("Duplicate time series value at "
+                    + Instant.ofEpochMilli(current) + " (value " + last + ")");
+        } else if (current < previous) {
+            throw new InvalidItemException("Time series values must be in ascending order; "
+                    + Instant.ofEpochMilli(current) + " (value " + last + ") follows "
+                    + Instant.ofEpochMilli(previous));
+        }
+    }
+
+    private long readDateTime(JsonParser p, DeserializationContext ctxt) throws IOException {
+        if (p.currentToken() == JsonToken.VALUE_NUMBER_INT) {
+            return p.getLongValue();
+        }
+        String text = p.getValueAsString();
+        if (text != null) {
+            text = text.trim();
+            if (!text.isEmpty() && isInteger(text)) {
+                return Long.parseLong(text);
+            }
+        }
+        return _parseDate(p, ctxt).getTime();
+    }
+
+    private Double readValue(JsonParser p, DeserializationContext ctxt) throws IOException {
+        JsonToken token = p.currentToken();
+        if (token == JsonToken.VALUE_NUMBER_FLOAT || token == JsonToken.VALUE_NUMBER_INT) {
+            return p.getDoubleValue();
+        }
+        if (token == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (token == JsonToken.VALUE_STRING) {
+            String text = p.getText().trim();
+            if (text.isEmpty()) {
+                return null;
+            }
+            try {
+                return Double.parseDouble(text);
+            } catch (NumberFormatException e) {
+                return (Double) ctxt.handleWeirdStringValue(Double.class, text,
+                        "not a valid time series value");
+            }
+        }
+        return (Double) ctxt.handleUnexpectedToken(Double.class, p);
+    }
+
+    private int readQualityCode(JsonParser p, DeserializationContext ctxt) throws IOException {
+        JsonToken token = p.currentToken();
+        if (token == JsonToken.VALUE_NUMBER_INT) {
+            return p.getIntValue();
+        }
+        if (token == JsonToken.VALUE_NULL) {
+            return 0;
+        }
+        if (token == JsonToken.VALUE_STRING) {
+            String text = p.getText().trim();
+            if (text.isEmpty()) {
+                return 0;
+            }
+            try {
+                return Integer.parseInt(text);
+            } catch (NumberFormatException e) {
+                return (Integer) ctxt.handleWeirdStringValue(Integer.class, text,
+                        "not a valid quality code");
+            }
+        }
+        return (Integer) ctxt.handleUnexpectedToken(Integer.class, p);
+    }
+
+    private static boolean isInteger(String text) {
+        int start = text.charAt(0) == '-' ? 1 : 0;
+        if (start == text.length()) {
+            return false;
+        }
+        for (int i = start; i < text.length(); i++) {
+            if (!Character.isDigit(text.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
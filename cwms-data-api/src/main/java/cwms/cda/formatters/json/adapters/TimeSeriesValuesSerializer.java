@@ -0,0 +1,83 @@
+package cwms.cda.formatters.json.adapters;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.BeanProperty;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.ContextualSerializer;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import cwms.cda.data.dto.TimeSeries;
+import cwms.cda.data.dto.TimeSeriesValues;
+import java.io.IOException;
+
+/**
+ * Writes time series values without creating an object per point.
+ * Each point is written as {@code [date-time, value, quality-code]}, or as an object with those
+ * fields when the property's format shape is {@link JsonFormat.Shape#OBJECT} (as for XML).
+ */
+public class TimeSeriesValuesSerializer extends StdSerializer<Iterable<TimeSeries.Record>>
+        implements ContextualSerializer {
+
+    private final boolean asArray;
+
+    public TimeSeriesValuesSerializer() {
+        this(true);
+    }
+
+    @SuppressWarnings("unchecked")
+    private TimeSeriesValuesSerializer(boolean asArray) {
+        super((Class<Iterable<TimeSeries.Record>>) (Class<?>) Iterable.class);
+        this.asArray = asArray;
+    }
+
+    @Override
+    public JsonSerializer<?> createContextual(SerializerProvider prov, BeanProperty property) {
+        JsonFormat.Value format = findFormatOverrides(prov, property, handledType());
+        boolean array = format == null || format.getShape() != JsonFormat.Shape.OBJECT;
+        return array == asArray ? this : new TimeSeriesValuesSerializer(array);
+    }
+
+    @Override
+    public void serialize(Iterable<TimeSeries.Record> value, JsonGenerator gen,
+                          SerializerProvider provider) throws IOException {
+        gen.writeStartArray();
+        if (value instanceof TimeSeriesValues) {
+            TimeSeriesValues columns = (TimeSeriesValues) value;
+            for (int i = 0; i < columns.size(); i++) {
+                writePoint(gen, columns.getDateTime(i), columns.isNull(i), columns.getValue(i),
+                        columns.getQualityCode(i));
+            }
+        } else {
+            for (TimeSeries.Record rec : value) {
+                Double val = rec.getValue();
+                writePoint(gen, rec.getDateTime().getTime(), val == null,
+                        val == null ? Double.NaN : val, rec.getQualityCode());
+            }
+        }
+        gen.writeEndArray();
+    }
+
+    private void writePoint(JsonGenerator gen, long dateTime, boolean isNull, double value,
+                            int qualityCode) throws IOException {
+        if (asArray) {
+            gen.writeStartArray();
+            gen.writeNumber(dateTime);
+            if (isNull) {
+                gen.writeNull();
+            } else {
+                gen.writeNumber(value);
+            }
+            gen.writeNumber(qualityCode);
+            gen.writeEndArray();
+        } else {
+            gen.writeStartObject();
+            gen.writeNumberField("date-time", dateTime);
+            if (!isNull) {
+                gen.writeNumberField("value", value);
+            }
+            gen.writeNumberField("quality-code", qualityCode);
+            gen.writeEndObject();
+        }
+    }
+}
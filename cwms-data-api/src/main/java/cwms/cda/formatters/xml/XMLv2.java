@@ -1,6 +1,7 @@
 package cwms.cda.formatters.xml;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.PropertyNamingStrategies;
@@ -10,19 +11,21 @@ import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import cwms.cda.data.dto.CwmsDTOBase;
 import cwms.cda.data.dto.TimeSeries;
 import cwms.cda.formatters.Formats;
-import cwms.cda.formatters.FormattingException;
 import cwms.cda.formatters.OutputFormatter;
 import io.javalin.http.InternalServerErrorResponse;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 public class XMLv2 implements OutputFormatter {
     private static final Logger logger = Logger.getLogger(XMLv2.class.getName());
+    // Configured once and shared; building a mapper per call throws away its serializer caches
+    private static final XmlMapper MAPPER = buildXmlMapper();
 
     public XMLv2() {
     }
@@ -35,7 +38,7 @@ public class XMLv2 implements OutputFormatter {
     @Override
     public String format(CwmsDTOBase dto) {
         try {
-            return buildXmlMapper().writeValueAsString(dto);
+            return MAPPER.writeValueAsString(dto);
         } catch (JsonProcessingException ex) {
             String msg = dto != null ?
                     "Error rendering '" + dto + "' to XML"
@@ -46,10 +49,17 @@ public class XMLv2 implements OutputFormatter {
         }
     }
 
+    @Override
+    public void format(CwmsDTOBase dto, OutputStream out) throws IOException {
+        MAPPER.writer()
+                        .without(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+                        .writeValue(out, dto);
+    }
+
     @Override
     public String format(List<? extends CwmsDTOBase> dtoList) {
         try {
-            return buildXmlMapper().writeValueAsString(dtoList);
+            return MAPPER.writeValueAsString(dtoList);
         } catch (JsonProcessingException ex) {
             String msg = dtoList != null ?
                     "Error rendering '" + dtoList + "' to XML"
@@ -63,20 +73,18 @@ public class XMLv2 implements OutputFormatter {
     @Override
     public <T extends CwmsDTOBase> T parseContent(String content, Class<T> type) {
         try {
-            XmlMapper retval = buildXmlMapper();
-            return retval.readValue(content, type);
+            return MAPPER.readValue(content, type);
         } catch (IOException e) {
-            throw new FormattingException("Could not deserialize:" + content, e);
+            throw OutputFormatter.parseFailure("Could not deserialize:" + content, e);
         }
     }
 
     @Override
     public <T extends CwmsDTOBase> T parseContent(InputStream content, Class<T> type) {
         try {
-            XmlMapper retval = buildXmlMapper();
-            return retval.readValue(content, type);
+            return MAPPER.readValue(content, type);
         } catch (IOException e) {
-            throw new FormattingException("Could not deserialize:" + content, e);
+            throw OutputFormatter.parseFailure("Could not deserialize:" + content, e);
         }
     }
 
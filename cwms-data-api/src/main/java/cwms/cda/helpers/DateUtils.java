@@ -36,6 +36,10 @@ public class DateUtils {
             + "$" // then String must immediately end
             );
 
+    // An ISO-8601 period or duration, optionally signed, taken relative to now
+    private static final Pattern RELATIVE = Pattern.compile("\\s*[-+]?[pP].*");
+    private static final Pattern DURATION = Pattern.compile("\\s*[-+]?[pP][tT].*");
+
     private DateUtils() {
         // utility class
     }
@@ -53,15 +57,25 @@ public class DateUtils {
 
     public static ZonedDateTime parseUserDate(String text, ZoneId tz, ZonedDateTime now) {
 
-        if (text.startsWith("PT")) {
-            return parseUserDuration(text, now);
-        } else if (text.startsWith("P")) {
-            return parserUserPeriod(text, now);
+        if (DURATION.matcher(text).matches()) {
+            return parseUserDuration(text.trim(), now);
+        } else if (isRelative(text)) {
+            return parserUserPeriod(text.trim(), now);
         } else {
             return parseFullDate(text, tz);
         }
     }
 
+    /**
+     * Whether a date-time given by a user, such as PT-24H or -P1D, is relative to when it is
+     * parsed.
+     * @param text The string to check
+     * @return true if the string is a period or duration rather than a date
+     */
+    public static boolean isRelative(String text) {
+        return text != null && RELATIVE.matcher(text).matches();
+    }
+
     private static ZonedDateTime parseFullDate(String text, ZoneId tz) {
 
         if (hasZone(text)) {
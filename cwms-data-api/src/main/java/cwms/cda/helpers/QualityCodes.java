@@ -0,0 +1,151 @@
+package cwms.cda.helpers;
+
+/**
+ * Normalizes CWMS data quality codes in the JVM, giving the same result as
+ * {@code CWMS_TS.NORMALIZE_QUALITY} without a call into PL/SQL for every value.
+ *
+ * <pre>
+ *      3                   2                   1
+ *    2 1 0 9 8 7 6 5 4 3 2 1 0 9 8 7 6 5 4 3 2 1 0 9 8 7 6 5 4 3 2 1
+ *    P - - - - - T T T - T - T T T T T M M M M C C C D R R V V V V S
+ *    |           <---------+---------> <--+--> <-+-> | <+> <--+--> |
+ *    |                     |              |      |   |  |     |    +-- Screened
+ *    |                     |              |      |   |  |     +------- Validity flags
+ *    |                     |              |      |   |  +------------- Value range
+ *    |                     |              |      |   +---------------- Different
+ *    |                     |              |      +-------------------- Replacement cause
+ *    |                     |              +--------------------------- Replacement method
+ *    |                     +------------------------------------------ Test failed flags
+ *    +---------------------------------------------------------------- Protected
+ * </pre>
+ *
+ * <p>The rules applied are:
+ * <ol>
+ *     <li>Unless the screened bit is set, no other bit is set (the code is 0).</li>
+ *     <li>Unused bits are cleared.</li>
+ *     <li>Only one validity flag is kept, in order of precedence rejected, questionable,
+ *     missing, okay.</li>
+ *     <li>Replacement cause and method are at most 4.</li>
+ *     <li>The different bit is set if and only if there is a replacement cause or method.</li>
+ * </ol>
+ * The codes are unsigned 32-bit values in the database; the result is the same bits as a
+ * signed int, so protected codes are negative.
+ */
+public final class QualityCodes {
+    /** The code the database substitutes for a value without one: screened and missing. */
+    public static final int MISSING = 5;
+
+    static final int SCREENED = 0x1;
+    static final int OKAY = 0x2;
+    static final int MISSING_FLAG = 0x4;
+    static final int QUESTIONABLE = 0x8;
+    static final int REJECTED = 0x10;
+    static final int VALIDITY_MASK = OKAY | MISSING_FLAG | QUESTIONABLE | REJECTED;
+    static final int DIFFERENT = 0x80;
+    static final int REPLACEMENT_CAUSE_SHIFT = 8;
+    static final int REPLACEMENT_CAUSE_MASK = 0x7 << REPLACEMENT_CAUSE_SHIFT;
+    static final int REPLACEMENT_METHOD_SHIFT = 11;
+    static final int REPLACEMENT_METHOD_MASK = 0xF << REPLACEMENT_METHOD_SHIFT;
+    static final int MAX_REPLACEMENT = 4;
+    static final int USED_BITS = 0x835FFFFF;
+
+    private static final int LOW_BITS = 16;
+    private static final int LOW_MASK = (1 << LOW_BITS) - 1;
+
+    // Every rule but the unused bit one only involves the low 16 bits, so those are looked up
+    // and the used high bits are copied as is.
+    private static final int[] LOW_TABLE = new int[1 << LOW_BITS];
+
+    static {
+        for (int i = 0; i < LOW_TABLE.length; i++) {
+            LOW_TABLE[i] = normalizeByRules(i) & LOW_MASK;
+        }
+    }
+
+    private QualityCodes() {
+        // utility class
+    }
+
+    /**
+     * @param quality a quality code, signed or unsigned; null is treated as {@link #MISSING}
+     * @return the normalized quality code
+     */
+    public static int normalize(Number quality) {
+        if (quality == null) {
+            return normalize(MISSING);
+        }
+        return normalize(quality.longValue());
+    }
+
+    public static int normalize(long quality) {
+        int bits = (int) quality;
+        if ((bits & SCREENED) == 0) {
+            return 0;
+        }
+        return LOW_TABLE[bits & LOW_MASK] | (bits & USED_BITS & ~LOW_MASK);
+    }
+
+    /**
+     * Combines the quality codes of values that are reduced to one.
+     *
+     * @return whichever code has the worse validity, in order rejected, questionable, missing,
+     *         not screened or unknown, okay; the first if they are as bad as each other
+     */
+    public static int worse(int first, int second) {
+        return validityRank(second) > validityRank(first) ? second : first;
+    }
+
+    private static int validityRank(int quality) {
+        if ((quality & SCREENED) == 0) {
+            return 1;
+        } else if ((quality & REJECTED) != 0) {
+            return 4;
+        } else if ((quality & QUESTIONABLE) != 0) {
+            return 3;
+        } else if ((quality & MISSING_FLAG) != 0) {
+            return 2;
+        } else if ((quality & OKAY) != 0) {
+            return 0;
+        }
+        return 1;
+    }
+
+    /**
+     * The rules applied one at a time, as the database does. {@link #normalize(long)} must
+     * always give the same result.
+     */
+    static int normalizeByRules(long quality) {
+        int bits = (int) quality;
+
+        if ((bits & SCREENED) == 0) {
+            return 0;
+        }
+
+        bits &= USED_BITS;
+
+        int validity = bits & VALIDITY_MASK;
+        bits &= ~VALIDITY_MASK;
+        if ((validity & REJECTED) != 0) {
+            bits |= REJECTED;
+        } else if ((validity & QUESTIONABLE) != 0) {
+            bits |= QUESTIONABLE;
+        } else if ((validity & MISSING_FLAG) != 0) {
+            bits |= MISSING_FLAG;
+        } else if ((validity & OKAY) != 0) {
+            bits |= OKAY;
+        }
+
+        int cause = Math.min((bits & REPLACEMENT_CAUSE_MASK) >>> REPLACEMENT_CAUSE_SHIFT,
+                MAX_REPLACEMENT);
+        int method = Math.min((bits & REPLACEMENT_METHOD_MASK) >>> REPLACEMENT_METHOD_SHIFT,
+                MAX_REPLACEMENT);
+        bits &= ~(REPLACEMENT_CAUSE_MASK | REPLACEMENT_METHOD_MASK | DIFFERENT);
+        bits |= cause << REPLACEMENT_CAUSE_SHIFT;
+        bits |= method << REPLACEMENT_METHOD_SHIFT;
+        if (cause != 0 || method != 0) {
+            bits |= DIFFERENT;
+        }
+
+        return bits;
+    }
+}
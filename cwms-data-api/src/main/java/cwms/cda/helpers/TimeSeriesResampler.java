@@ -0,0 +1,323 @@
+package cwms.cda.helpers;
+
+import cwms.cda.api.enums.ResampleMethod;
+import cwms.cda.data.dto.TimeSeries;
+import cwms.cda.data.dto.TimeSeriesValues;
+
+/**
+ * Reduces time series values to at most a given number of points, for charting.
+ * Each method reads the values once, in order, so they can come straight from the database;
+ * besides the result only the values of one or two buckets are held.
+ */
+public final class TimeSeriesResampler {
+
+    private TimeSeriesResampler() {
+        // utility class
+    }
+
+    /**
+     * @param values the values, in ascending date-time order
+     * @param maxPoints the most values to return
+     * @return the values themselves if there are no more than {@code maxPoints}
+     */
+    public static TimeSeriesValues resample(TimeSeriesValues values, int maxPoints,
+                                            ResampleMethod method) {
+        Sampler sampler = sampler(values.isEmpty() ? 0L : values.getDateTime(0),
+                values.isEmpty() ? 0L : values.getDateTime(values.size() - 1), maxPoints,
+                method);
+        if (values.size() <= maxPoints) {
+            return values;
+        }
+        for (int i = 0; i < values.size(); i++) {
+            sampler.add(values.getDateTime(i), values.isNull(i), values.getValue(i),
+                    values.getQualityCode(i));
+        }
+        return sampler.finish();
+    }
+
+    /**
+     * Starts reducing values that are read one at a time. The time span is split into buckets
+     * of equal duration; values outside it go in the first or last bucket.
+     *
+     * @param begin the start of the time span, in milliseconds
+     * @param end the end of the time span, in milliseconds
+     * @param maxPoints the most values to return
+     */
+    public static Sampler sampler(long begin, long end, int maxPoints, ResampleMethod method) {
+        if (maxPoints < 1) {
+            throw new IllegalArgumentException("The maximum number of points must be at least 1");
+        }
+        if (method == ResampleMethod.LTTB) {
+            return new LargestTriangleThreeBuckets(begin, end, maxPoints);
+        }
+        return new Bucketed(begin, end, maxPoints, method);
+    }
+
+    /**
+     * Takes values in ascending date-time order and returns the reduced ones, or all of them if
+     * there are no more than the maximum.
+     */
+    public abstract static class Sampler {
+        final int maxPoints;
+        // every value, until there are too many
+        private TimeSeriesValues all = new TimeSeriesValues();
+
+        private Sampler(int maxPoints) {
+            this.maxPoints = maxPoints;
+        }
+
+        public final void add(TimeSeries.Record rec) {
+            Double value = rec.getValue();
+            add(rec.getDateTime().getTime(), value == null, value == null ? Double.NaN : value,
+                    rec.getQualityCode());
+        }
+
+        public final void add(long dateTime, boolean isNull, double value, int qualityCode) {
+            if (all != null) {
+                if (isNull) {
+                    all.addNull(dateTime, qualityCode);
+                } else {
+                    all.add(dateTime, value, qualityCode);
+                }
+                if (all.size() > maxPoints) {
+                    all = null;
+                }
+            }
+            accept(dateTime, isNull, value, qualityCode);
+        }
+
+        public final TimeSeriesValues finish() {
+            if (all != null) {
+                return all;
+            }
+            TimeSeriesValues retval = reduced();
+            retval.trimToSize();
+            return retval;
+        }
+
+        abstract void accept(long dateTime, boolean isNull, double value, int qualityCode);
+
+        abstract TimeSeriesValues reduced();
+    }
+
+    /**
+     * Keeps one value for each bucket that has any. Missing values are only kept for buckets
+     * with nothing else.
+     */
+    private static final class Bucketed extends Sampler {
+        private final ResampleMethod method;
+        private final long begin;
+        private final long width;
+        private final TimeSeriesValues out;
+
+        private long bucket = -1;
+        // the first value of the bucket, which stands for it when it has nothing else
+        private long firstDateTime;
+        private int firstQuality;
+        // the value selected so far, or for a mean the sum
+        private int count;
+        private long dateTime;
+        private double value;
+        private int quality;
+
+        private Bucketed(long begin, long end, int maxPoints, ResampleMethod method) {
+            super(maxPoints);
+            this.method = method;
+            this.begin = begin;
+            // Wide enough that a value at the end falls in the last bucket
+            this.width = Math.max(0L, end - begin) / maxPoints + 1;
+            this.out = new TimeSeriesValues(maxPoints);
+        }
+
+        @Override
+        void accept(long dateTime, boolean isNull, double value, int qualityCode) {
+            long b = Math.min(Math.max(0L, (dateTime - begin) / width), maxPoints - 1L);
+            if (b != bucket) {
+                flush();
+                bucket = b;
+                firstDateTime = dateTime;
+                firstQuality = qualityCode;
+                count = 0;
+            }
+            if (isNull) {
+                return;
+            }
+            if (method == ResampleMethod.MEAN) {
+                this.value = count == 0 ? value : this.value + value;
+                this.quality = count == 0 ? qualityCode : QualityCodes.worse(quality, qualityCode);
+                this.dateTime = firstDateTime;
+            } else if (count == 0
+                    || method == ResampleMethod.LAST
+                    || (method == ResampleMethod.MIN && value < this.value)
+                    || (method == ResampleMethod.MAX && value > this.value)) {
+                this.dateTime = dateTime;
+                this.value = value;
+                this.quality = qualityCode;
+            }
+            count++;
+        }
+
+        private void flush() {
+            if (bucket < 0) {
+                return;
+            }
+            if (count == 0) {
+                out.addNull(firstDateTime, firstQuality);
+            } else if (method == ResampleMethod.MEAN) {
+                out.add(dateTime, value / count, quality);
+            } else {
+                out.add(dateTime, value, quality);
+            }
+        }
+
+        @Override
+        TimeSeriesValues reduced() {
+            flush();
+            bucket = -1;
+            return out;
+        }
+    }
+
+    /**
+     * Largest-Triangle-Three-Buckets (Steinarsson, 2013). Keeps the first and last values and,
+     * from each bucket between them, the value making the largest triangle with the value kept
+     * from the previous bucket and the average of the next bucket. Missing values are left out.
+     * The buckets are of equal duration rather than equal count, so the values don't have to be
+     * counted first.
+     */
+    private static final class LargestTriangleThreeBuckets extends Sampler {
+        private final long begin;
+        private final long width;
+        private final TimeSeriesValues out;
+
+        // the values that aren't missing, until there are too many
+        private TimeSeriesValues present = new TimeSeriesValues();
+        private boolean started;
+        private double previousX;
+        private double previousY;
+        private TimeSeriesValues current = new TimeSeriesValues();
+        private long currentBucket;
+        private TimeSeriesValues next = new TimeSeriesValues();
+        private long nextBucket;
+        // the latest value, held back in case it is the last
+        private boolean hasLast;
+        private long lastDateTime;
+        private double lastValue;
+        private int lastQuality;
+
+        private LargestTriangleThreeBuckets(long begin, long end, int maxPoints) {
+            super(maxPoints);
+            this.begin = begin;
+            this.width = maxPoints < 3 ? 1L : Math.max(0L, end - begin) / (maxPoints - 2) + 1;
+            this.out = new TimeSeriesValues(maxPoints);
+        }
+
+        @Override
+        void accept(long dateTime, boolean isNull, double value, int qualityCode) {
+            if (isNull) {
+                return;
+            }
+            if (present != null) {
+                present.add(dateTime, value, qualityCode);
+                if (present.size() > maxPoints) {
+                    present = null;
+                }
+            }
+            if (!started) {
+                keep(dateTime, value, qualityCode);
+                started = true;
+                return;
+            }
+            if (hasLast) {
+                place(lastDateTime, lastValue, lastQuality);
+            }
+            hasLast = true;
+            lastDateTime = dateTime;
+            lastValue = value;
+            lastQuality = qualityCode;
+        }
+
+        private void place(long dateTime, double value, int qualityCode) {
+            if (maxPoints < 3) {
+                return;
+            }
+            long b = Math.min(Math.max(0L, (dateTime - begin) / width), maxPoints - 3L);
+            if (current.isEmpty() || b == currentBucket) {
+                current.add(dateTime, value, qualityCode);
+                currentBucket = b;
+            } else if (next.isEmpty() || b == nextBucket) {
+                next.add(dateTime, value, qualityCode);
+                nextBucket = b;
+            } else {
+                selectFromCurrent(averageX(next), averageY(next));
+                TimeSeriesValues emptied = current;
+                current = next;
+                currentBucket = nextBucket;
+                next = emptied;
+                next.clear();
+                next.add(dateTime, value, qualityCode);
+                nextBucket = b;
+            }
+        }
+
+        private double averageX(TimeSeriesValues bucket) {
+            double sum = 0.0;
+            for (int i = 0; i < bucket.size(); i++) {
+                sum += bucket.getDateTime(i) - begin;
+            }
+            return sum / bucket.size();
+        }
+
+        private double averageY(TimeSeriesValues bucket) {
+            double sum = 0.0;
+            for (int i = 0; i < bucket.size(); i++) {
+                sum += bucket.getValue(i);
+            }
+            return sum / bucket.size();
+        }
+
+        private void selectFromCurrent(double averageX, double averageY) {
+            double maxArea = -1.0;
+            int selected = 0;
+            for (int i = 0; i < current.size(); i++) {
+                double x = current.getDateTime(i) - begin;
+                double y = current.getValue(i);
+                // Twice the area, which is enough for comparing
+                double area = Math.abs((previousX - averageX) * (y - previousY)
+                        - (previousX - x) * (averageY - previousY));
+                if (area > maxArea) {
+                    maxArea = area;
+                    selected = i;
+                }
+            }
+            keep(current.getDateTime(selected), current.getValue(selected),
+                    current.getQualityCode(selected));
+        }
+
+        private void keep(long dateTime, double value, int qualityCode) {
+            out.add(dateTime, value, qualityCode);
+            previousX = dateTime - begin;
+            previousY = value;
+        }
+
+        @Override
+        TimeSeriesValues reduced() {
+            if (present != null) {
+                return present;
+            }
+            if (!current.isEmpty()) {
+                if (next.isEmpty()) {
+                    selectFromCurrent(lastDateTime - begin, lastValue);
+                } else {
+                    selectFromCurrent(averageX(next), averageY(next));
+                    current = next;
+                    selectFromCurrent(lastDateTime - begin, lastValue);
+                }
+            }
+            if (hasLast && maxPoints > 1) {
+                keep(lastDateTime, lastValue, lastQuality);
+            }
+            return out;
+        }
+    }
+}
@@ -19,12 +19,9 @@ import io.swagger.v3.oas.models.security.SecurityScheme;
  */
 public class GuestAccessManager extends CdaAccessManager{
 
-    private AuthDao authDao = null;
-
     @Override
     public void manage(Handler handler, Context ctx, Set<RouteRole> routeRoles) throws Exception {
-        init(ctx);
-        authDao.prepareGuestContext(ctx);
+        getAuthDao(ctx).prepareGuestContext(ctx);
         handler.handle(ctx);
     }
 
@@ -43,7 +40,7 @@ public class GuestAccessManager extends CdaAccessManager{
         return null;
     }
     
-    private void init(Context ctx) {
-        authDao = AuthDao.getInstance(JooqDao.getDslContext(ctx),ctx.attribute(ApiServlet.OFFICE_ID));
+    private static AuthDao getAuthDao(Context ctx) {
+        return AuthDao.getInstance(JooqDao.getDslContext(ctx),ctx.attribute(ApiServlet.OFFICE_ID));
     }
 }
@@ -0,0 +1,174 @@
+package cwms.cda.security;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.flogger.FluentLogger;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwsHeader;
+import io.jsonwebtoken.SigningKeyResolverAdapter;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.security.Key;
+import java.security.KeyFactory;
+import java.security.NoSuchAlgorithmException;
+import java.security.spec.InvalidKeySpecException;
+import java.security.spec.RSAPublicKeySpec;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resolves the public keys that tokens are signed with from the JWKS of the realm.
+ *
+ * <p>The keys are a map that is replaced whole once a new set has been read, so requests never
+ * wait on a download or see a partial set. A background thread reloads them periodically; a
+ * token signed with a key that isn't known yet makes a request load them at once, but not more
+ * often than every {@link #MIN_REFETCH_SECONDS}. When loading fails the previous keys are kept.
+ */
+final class JwksKeyResolver extends SigningKeyResolverAdapter {
+    private static final FluentLogger log = FluentLogger.forEnclosingClass();
+
+    public static final String MIN_REFETCH_SECONDS =
+            "cwms.dataapi.access.openid.jwksMinRefetchSeconds";
+    private static final int TIMEOUT_MILLIS = 5000;
+
+    private static final ScheduledExecutorService REFRESHER =
+            Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                    .setNameFormat("cda-jwks-refresh-%d")
+                    .setDaemon(true)
+                    .build());
+
+    private final URL jwksUrl;
+    private final long minRefetchMillis;
+    private KeyFactory keyFactory = null;
+    private volatile Map<String, Key> keys = Collections.emptyMap();
+    // when keys were last requested, guarded by this
+    private long lastFetch;
+
+    JwksKeyResolver(URL jwksUrl, long minRefetchSeconds) {
+        this.jwksUrl = jwksUrl;
+        this.minRefetchMillis = TimeUnit.SECONDS.toMillis(minRefetchSeconds);
+        try {
+            keyFactory = KeyFactory.getInstance("RSA");
+        } catch (NoSuchAlgorithmException ex) {
+            log.atSevere().withCause(ex).log("Unable to initialize key factory.");
+        }
+    }
+
+    JwksKeyResolver(URL jwksUrl) {
+        this(jwksUrl, Integer.getInteger(MIN_REFETCH_SECONDS, 30));
+    }
+
+    /**
+     * Load the keys now, and again every refreshMinutes in the background. Less than a minute,
+     * which used to mean checking on every request, is taken as a minute; a token with a key
+     * that isn't known yet still loads them at once.
+     * @return this resolver
+     */
+    JwksKeyResolver startRefreshing(int refreshMinutes) {
+        REFRESHER.scheduleWithFixedDelay(this::refresh, 0, Math.max(1, refreshMinutes),
+                TimeUnit.MINUTES);
+        return this;
+    }
+
+    /**
+     * Load the keys.
+     * @return false if they couldn't be loaded and the previous keys are still used
+     */
+    synchronized boolean refresh() {
+        lastFetch = System.currentTimeMillis();
+        log.atInfo().log("Checking for new key at %s", jwksUrl);
+        try {
+            Map<String, Key> loaded = load();
+            if (loaded != null) {
+                keys = Collections.unmodifiableMap(loaded);
+                return true;
+            }
+        } catch (IOException | RuntimeException ex) {
+            log.atSevere().withCause(ex).log("Unable to update key. Will continue to use previous key.");
+        } catch (InvalidKeySpecException ex) {
+            log.atSevere().withCause(ex).log("New Public Key was not valid. Will continue to use previous key.");
+        }
+        return false;
+    }
+
+    /**
+     * @return the key with the given id, or null if the realm doesn't have one
+     */
+    Key getKey(String kid) {
+        Key key = keys.get(kid);
+        if (key == null) {
+            key = refetchFor(kid);
+        }
+        return key;
+    }
+
+    private synchronized Key refetchFor(String kid) {
+        // another request may have just loaded it
+        Key key = keys.get(kid);
+        if (key == null && System.currentTimeMillis() - lastFetch >= minRefetchMillis) {
+            log.atInfo().log("Unknown key id '%s'", kid);
+            refresh();
+            key = keys.get(kid);
+        }
+        return key;
+    }
+
+    private Map<String, Key> load() throws IOException, InvalidKeySpecException {
+        HttpURLConnection http = null;
+        try {
+            http = (HttpURLConnection) jwksUrl.openConnection();
+            http.setRequestMethod("GET");
+            http.setInstanceFollowRedirects(true);
+            http.setConnectTimeout(TIMEOUT_MILLIS);
+            http.setReadTimeout(TIMEOUT_MILLIS);
+            int status = http.getResponseCode();
+            if (status != 200) {
+                log.atSevere().log("Unable to retrieve actual keys. Response code %d", status);
+                return null;
+            }
+            Map<String, Key> retval = new HashMap<>();
+            ObjectMapper mapper = new ObjectMapper();
+            JsonNode jwks = mapper.readTree(http.getInputStream()).get("keys");
+            for (JsonNode key : jwks) {
+                if (!"RSA".equals(key.path("kty").asText("RSA")) || !key.has("n")) {
+                    continue; // we only deal with RSA keys right now.
+                }
+                String kid = key.get("kid").textValue();
+                Base64.Decoder b64 = Base64.getUrlDecoder(); // https://datatracker.ietf.org/doc/id/draft-jones-json-web-key-01.html#RFC4648
+                String nStr = key.get("n").textValue();
+                String eStr = key.get("e").textValue();
+                log.atInfo().log("Loading Key %s with parameters (n,e) -> (%s,%s)", kid, nStr, eStr);
+                BigInteger n = new BigInteger(1, b64.decode(nStr));
+                BigInteger e = new BigInteger(1, b64.decode(eStr));
+                retval.put(kid, keyFactory.generatePublic(new RSAPublicKeySpec(n, e)));
+            }
+            return retval;
+        } finally {
+            if (http != null) {
+                http.disconnect();
+            }
+        }
+    }
+
+    @Override
+    public Key resolveSigningKey(JwsHeader header, Claims claims) {
+        if (!header.getAlgorithm().toLowerCase().startsWith("rs")) {
+            log.atWarning().log("Request with invalid algorithm '%s'", header.getAlgorithm());
+            return null; // we only deal with RSA keys right now.
+        }
+        Key key = getKey(header.getKeyId());
+        if (key == null) {
+            log.atSevere().atMostEvery(10, TimeUnit.SECONDS)
+               .log("Key not found for id '%s'", header.getKeyId());
+        }
+        return key;
+    }
+}
@@ -17,21 +17,17 @@ public class KeyAccessManager extends CdaAccessManager {
 
     public static final String AUTH_HEADER = "Authorization";
 
-    private static AuthDao authDao;
-
-
     @Override
     public void manage(Handler handler, @NotNull Context ctx, @NotNull Set<RouteRole> routeRoles) throws Exception {
-        init(ctx);
         String key = getApiKey(ctx);
-        DataApiPrincipal p = authDao.getByApiKey(key);
+        DataApiPrincipal p = getAuthDao(ctx).getByApiKey(key);
         AuthDao.isAuthorized(ctx, p, routeRoles);
         AuthDao.prepareContextWithUser(ctx, p);
         handler.handle(ctx);
     }
 
-    private void init(Context ctx) {
-        authDao = AuthDao.getInstance(JooqDao.getDslContext(ctx),
+    private static AuthDao getAuthDao(Context ctx) {
+        return AuthDao.getInstance(JooqDao.getDslContext(ctx),
                 ctx.attribute(ApiServlet.OFFICE_ID));
     }
 
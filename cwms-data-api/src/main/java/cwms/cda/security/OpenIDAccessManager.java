@@ -1,37 +1,23 @@
 package cwms.cda.security;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.flogger.FluentLogger;
 import cwms.cda.ApiServlet;
 import cwms.cda.data.dao.AuthDao;
 import cwms.cda.data.dao.JooqDao;
+import cwms.cda.data.dao.PrincipalCache;
 import cwms.cda.spi.CdaAccessManager;
 import io.javalin.core.security.RouteRole;
 import io.javalin.http.Context;
 import io.javalin.http.Handler;
 import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.Jws;
-import io.jsonwebtoken.JwsHeader;
 import io.jsonwebtoken.JwtException;
 import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
-import io.jsonwebtoken.SigningKeyResolverAdapter;
 import io.swagger.v3.oas.models.security.SecurityScheme;
 import java.io.IOException;
-import java.math.BigInteger;
-import java.net.HttpURLConnection;
 import java.net.URL;
-import java.security.Key;
-import java.security.KeyFactory;
-import java.security.NoSuchAlgorithmException;
-import java.security.spec.InvalidKeySpecException;
-import java.security.spec.RSAPublicKeySpec;
-import java.time.ZonedDateTime;
-import java.util.Base64;
-import java.util.Base64.Decoder;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Date;
 import java.util.Set;
 import javax.servlet.http.HttpServletResponse;
 import org.jetbrains.annotations.NotNull;
@@ -42,6 +28,8 @@ import org.jetbrains.annotations.NotNull;
 public class OpenIDAccessManager extends CdaAccessManager {
     private static final FluentLogger log = FluentLogger.forEnclosingClass();
     public static final String AUTHORIZATION = "Authorization";
+    // api keys are alphanumeric, so this can't collide with one in the principal cache
+    private static final String EDIPI_CREDENTIAL = "edipi:";
     private JwtParser jwtParser = null;
     private OpenIDConfig config = null;
 
@@ -51,7 +39,8 @@ public class OpenIDAccessManager extends CdaAccessManager {
             config = new OpenIDConfig(new URL(wellKnownUrl), authUrl);
             jwtParser = Jwts.parserBuilder()
                         .requireIssuer(issuer)
-                        .setSigningKeyResolver(new UrlResolver(config.getJwksUrl(),realmKeyTimeout))
+                        .setSigningKeyResolver(new JwksKeyResolver(config.getJwksUrl())
+                                                       .startRefreshing(realmKeyTimeout))
                         .build();
         } catch (IOException ex) {
             log.atSevere().withCause(ex).log("Unable to initialize realm.");
@@ -66,14 +55,22 @@ public class OpenIDAccessManager extends CdaAccessManager {
         handler.handle(ctx);
     }
 
+    /**
+     * The user of a valid token. Users are cached by EDIPI until the token expires, or the
+     * cache entry does, whichever is first.
+     */
     private DataApiPrincipal getUserFromToken(Context ctx) throws CwmsAuthException {
         try {
             Jws<Claims> token = jwtParser.parseClaimsJws(getToken(ctx));
             String username = token.getBody().get("preferred_username",String.class);
-            AuthDao dao = AuthDao.getInstance(JooqDao.getDslContext(ctx),ctx.attribute(ApiServlet.OFFICE_ID));
             String edipiStr = username.substring(username.lastIndexOf(".") + 1);
             long edipi = Long.parseLong(edipiStr);
-            return dao.getPrincipalFromEdipi(edipi);
+            Date expires = token.getBody().getExpiration();
+            return PrincipalCache.get(EDIPI_CREDENTIAL + edipi, () -> {
+                AuthDao dao = AuthDao.getInstance(JooqDao.getDslContext(ctx),ctx.attribute(ApiServlet.OFFICE_ID));
+                return new PrincipalCache.Entry(dao.getPrincipalFromEdipi(edipi),
+                                                expires == null ? null : expires.toInstant());
+            });
         } catch (NumberFormatException | JwtException ex) {
             throw new CwmsAuthException("JWT not valid",ex,HttpServletResponse.SC_UNAUTHORIZED);
         }
@@ -114,87 +111,4 @@ public class OpenIDAccessManager extends CdaAccessManager {
         }
         return header.trim().toLowerCase().startsWith("bearer");
     }
-
-
-    private static class UrlResolver extends SigningKeyResolverAdapter {
-        private final URL jwksUrl;
-        private ZonedDateTime lastCheck;
-        private final Map<String,Key> realmPublicKeys = new HashMap<>();
-        private final int realmPublicKeyTimeoutMinutes;
-        private KeyFactory keyFactory = null;
-
-        public UrlResolver(URL jwksUrl, int keyTimeoutMinutes) {
-            this.jwksUrl = jwksUrl;
-            this.realmPublicKeyTimeoutMinutes = keyTimeoutMinutes;
-            try {
-                keyFactory = KeyFactory.getInstance("RSA");
-            } catch (NoSuchAlgorithmException ex) {
-                log.atSevere().withCause(ex).log("Unable to initialize key factory.");
-            }
-        }
-
-        /**
-         * TODO: This needs more, some configurations may be more complex (like the
-         * authelia test environment) than others.
-         */
-        private void updateKey() {
-            if (realmPublicKeys.isEmpty() || ZonedDateTime.now().isAfter(lastCheck.plusMinutes(realmPublicKeyTimeoutMinutes))) {
-                log.atInfo().log("Checking for new key at %s",jwksUrl);
-                try {
-                    realmPublicKeys.clear();
-                    updateSigningKey();
-                } catch (IOException ex) {
-                    log.atSevere().withCause(ex).log("Unable to update key. Will continue to use previous key.");
-                } catch (InvalidKeySpecException ex) {
-                    log.atSevere().withCause(ex).log("New Public Key was not valid. Will continue to use previous key.");
-                }
-                lastCheck = ZonedDateTime.now();
-            }
-        }
-
-        private void updateSigningKey() throws IOException, InvalidKeySpecException {
-            HttpURLConnection http = null;
-            try {
-                http = (HttpURLConnection)jwksUrl.openConnection();
-                http.setRequestMethod("GET");
-                http.setInstanceFollowRedirects(true);
-                int status = http.getResponseCode();
-                if (status == 200) {
-                    ObjectMapper mapper = new ObjectMapper();
-                    JsonNode keys = mapper.readTree(http.getInputStream()).get("keys");
-                    for (JsonNode key: keys) {
-                        String kid = key.get("kid").textValue();
-                        Decoder b64 = Base64.getUrlDecoder(); // https://datatracker.ietf.org/doc/id/draft-jones-json-web-key-01.html#RFC4648
-                        String nStr = key.get("n").textValue();
-                        String eStr = key.get("e").textValue();
-                        log.atInfo().log("Loading Key %s with parameters (n,e) -> (%s,%s)",kid,nStr,eStr);
-                        BigInteger n = new BigInteger(1,b64.decode(nStr));
-                        BigInteger e = new BigInteger(1,b64.decode(eStr));
-                        Key pubKey = keyFactory.generatePublic(new RSAPublicKeySpec(n, e));
-                        realmPublicKeys.put(kid,pubKey);
-                    }
-                } else {
-                    log.atSevere().log("Unable to retrieve actual keys. Response code %d",status);
-                }
-            } finally {
-                if (http != null) {
-                    http.disconnect();
-                }
-            }
-        }
-
-        @Override
-        public Key resolveSigningKey(JwsHeader header, Claims claims) {
-            if (!header.getAlgorithm().toLowerCase().startsWith("rs")) {
-                log.atWarning().log("Request with invalid algorithm '%s'",header.getAlgorithm());
-                return null; // we only deal with RSA keys right now.
-            }
-            updateKey();
-            Key key = realmPublicKeys.get(header.getKeyId());
-            if (key == null) {
-                log.atSevere().log("Key not found for id '%s'",header.getKeyId());
-            }
-            return key;
-        }
-    }
 }
@@ -1,4 +1,4 @@
-SELECT unique user_group_id          
+SELECT unique username, user_group_id          
      FROM    (SELECT username,
                      db_office_id,
                      user_group_id,
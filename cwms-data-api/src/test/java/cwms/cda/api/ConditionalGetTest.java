@@ -0,0 +1,29 @@
+package cwms.cda.api;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Instant;
+import org.junit.jupiter.api.Test;
+
+class ConditionalGetTest {
+
+    @Test
+    void testWeakComparison() {
+        String etag = "W/\"abc\"";
+        assertTrue(ConditionalGet.matches("W/\"abc\"", etag));
+        assertTrue(ConditionalGet.matches("\"abc\"", etag));
+        assertTrue(ConditionalGet.matches("\"xyz\", W/\"abc\"", etag));
+        assertTrue(ConditionalGet.matches("*", etag));
+        assertFalse(ConditionalGet.matches("W/\"abd\"", etag));
+    }
+
+    @Test
+    void testModifiedSince() {
+        Instant lastModified = Instant.parse("2024-03-05T10:15:30.750Z");
+        assertFalse(ConditionalGet.isModifiedSince(lastModified, "Tue, 5 Mar 2024 10:15:30 GMT"));
+        assertFalse(ConditionalGet.isModifiedSince(lastModified, "Tue, 5 Mar 2024 11:00:00 GMT"));
+        assertTrue(ConditionalGet.isModifiedSince(lastModified, "Tue, 5 Mar 2024 10:15:29 GMT"));
+        assertTrue(ConditionalGet.isModifiedSince(lastModified, "yesterday"));
+    }
+}
@@ -20,10 +20,15 @@ import cwms.cda.formatters.Formats;
 import io.javalin.core.util.Header;
 import io.javalin.core.validation.JavalinValidation;
 import io.javalin.http.Context;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import javax.sql.rowset.serial.SerialClob;
 import org.junit.jupiter.api.Test;
 
 class ControllersTest {
@@ -413,4 +418,40 @@ class ControllersTest {
         assertThrows(RequiredQueryParameterException.class,
             () -> Controllers.requiredParamAs(ctx, Controllers.OFFICE, String.class));
     }
-}
\ No newline at end of file
+
+    @Test
+    void testWriteClob() throws Exception {
+        final HttpServletRequest request = mock(HttpServletRequest.class);
+        final HttpServletResponse response = mock(HttpServletResponse.class);
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        when(response.getOutputStream()).thenReturn(new ServletOutputStream() {
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setWriteListener(WriteListener writeListener) {
+            }
+
+            @Override
+            public void write(int b) {
+                body.write(b);
+            }
+        });
+        Context ctx = new Context(request, response, new LinkedHashMap<String, String>());
+
+        StringBuilder document = new StringBuilder("<ratings office-id=\"SWT\">");
+        for (int i = 0; i < 5000; i++) {
+            document.append("<point>").append(i).append(" \u00b0</point>");
+        }
+        document.append("</ratings>");
+
+        long written = Controllers.writeClob(ctx, new SerialClob(document.toString().toCharArray()));
+        byte[] expected = document.toString().getBytes(StandardCharsets.UTF_8);
+        assertEquals(expected.length, written);
+        assertEquals(document.toString(), new String(body.toByteArray(), StandardCharsets.UTF_8));
+
+        assertEquals(0, Controllers.writeClob(ctx, null));
+    }
+}
@@ -0,0 +1,57 @@
+package cwms.cda.api;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import cwms.cda.data.dto.TimeSeries;
+import cwms.cda.formatters.FormattingException;
+import cwms.cda.formatters.json.JsonV2;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class TimeSeriesBulkControllerTest extends ControllerTest {
+
+    private String singleLine() throws Exception {
+        String json = loadResourceAsString("cwms/cda/api/timeseries_create.json");
+        ObjectMapper om = JsonV2.buildObjectMapper();
+        return om.writeValueAsString(om.readTree(json));
+    }
+
+    private static InputStream stream(String body) {
+        return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void test_parse_array() throws Exception {
+        String ts = singleLine();
+        List<TimeSeries> input = TimeSeriesBulkController.parse(stream("[" + ts + "," + ts + "]"));
+
+        assertEquals(2, input.size());
+        for (TimeSeries series : input) {
+            assertEquals("RYAN3.Stage.Inst.5Minutes.0.ZSTORE_TS_TEST", series.getName());
+            assertEquals("LRL", series.getOfficeId());
+            assertTrue(series.getValues().size() > 0);
+        }
+    }
+
+    @Test
+    void test_parse_ndjson() throws Exception {
+        String ts = singleLine();
+        List<TimeSeries> input = TimeSeriesBulkController.parse(stream(ts + "\n" + ts + "\n" + ts + "\n"));
+
+        assertEquals(3, input.size());
+        assertEquals(input.get(0).getValues().size(), input.get(2).getValues().size());
+    }
+
+    @Test
+    void test_parse_malformed() throws Exception {
+        String ts = singleLine();
+        assertThrows(FormattingException.class,
+                () -> TimeSeriesBulkController.parse(stream(ts + "\n{\"name\":")));
+    }
+}
@@ -0,0 +1,64 @@
+package cwms.cda.api;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.codahale.metrics.MetricRegistry;
+import cwms.cda.api.enums.UnitSystem;
+import cwms.cda.api.errors.NotFoundException;
+import cwms.cda.data.dao.TimeSeriesDao;
+import io.javalin.http.Context;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.jooq.DSLContext;
+import org.junit.jupiter.api.Test;
+
+class TimeSeriesChangesControllerTest {
+
+    @Test
+    void testUnknownNameIsNotFound() throws IOException {
+        String office = "SPK";
+        String tsId = "NOWHERE.Stage.Inst.1Hour.0.none";
+        TimeSeriesDao dao = mock(TimeSeriesDao.class);
+        when(dao.streamChanges(eq(office), eq(tsId), isNull(), isNull(), eq(UnitSystem.EN),
+                any(), anyInt(), any()))
+                .thenThrow(new NotFoundException("Unable to find time series " + tsId));
+
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        when(request.getQueryString()).thenReturn("office=" + office + "&name=" + tsId
+                + "&changed-since=2024-01-01T00:00:00Z");
+        when(request.getRequestURL())
+                .thenReturn(new StringBuffer("http://127.0.0.1:7001/timeseries/changes"));
+        Map<String, ?> map = new LinkedHashMap<>();
+        Context ctx = new Context(request, response, map);
+
+        TimeSeriesChangesController controller =
+                new TimeSeriesChangesController(new MetricRegistry()) {
+                    @Override
+                    protected DSLContext getDslContext(Context ctx) {
+                        return null;
+                    }
+
+                    @Override
+                    protected TimeSeriesDao getTimeSeriesDao(DSLContext dsl) {
+                        return dao;
+                    }
+                };
+
+        // Left to the servlet's handler, which answers 404, with nothing yet sent
+        assertThrows(NotFoundException.class, () -> controller.handle(ctx));
+        verify(response, never()).getOutputStream();
+        verify(response, never()).setStatus(HttpServletResponse.SC_OK);
+    }
+}
@@ -14,6 +14,7 @@ import static org.mockito.Mockito.when;
 import com.codahale.metrics.MetricRegistry;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import cwms.cda.api.enums.CountMode;
 import cwms.cda.data.dao.TimeSeriesDao;
 import cwms.cda.data.dto.TimeSeries;
 import cwms.cda.formatters.ContentType;
@@ -64,10 +65,11 @@ class TimeSeriesControllerTest extends ControllerTest {
         //    ZonedDateTime end,
         //    ZonedDateTime versionDate
         //    boolean trim
+        //    CountMode count
 
         when(
                 dao.getTimeseries(eq(""), eq(500), eq(tsId), eq(officeId), eq("EN"),
-                         isNotNull(), isNotNull(), isNull(), eq(true) )).thenReturn(expected);
+                         isNotNull(), isNotNull(), isNull(), eq(true), eq(CountMode.EXACT) )).thenReturn(expected);
 
 
         // build mock request and response
@@ -113,7 +115,7 @@ class TimeSeriesControllerTest extends ControllerTest {
         // Check that the controller accessed our mock dao in the expected way
         verify(dao, times(1)).
                 getTimeseries(eq(""), eq(500), eq(tsId), eq(officeId), eq("EN"),
-                         isNotNull(), isNotNull(), isNull(), eq(true));//
+                         isNotNull(), isNotNull(), isNull(), eq(true), eq(CountMode.EXACT));//
 
         // Make sure controller thought it was happy
         verify(response).setStatus(200);
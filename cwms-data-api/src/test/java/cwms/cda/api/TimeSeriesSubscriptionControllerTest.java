@@ -0,0 +1,90 @@
+package cwms.cda.api;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+class TimeSeriesSubscriptionControllerTest {
+
+    private static final class RecordingSink implements TimeSeriesSubscriptionController.Sink {
+        private final List<String[]> sent = new ArrayList<>();
+        private boolean closed;
+
+        @Override
+        public void send(String event, String data, String id) {
+            sent.add(new String[]{event, data, id});
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    @Test
+    void testEventsSentInOrder() {
+        RecordingSink sink = new RecordingSink();
+        TimeSeriesSubscriptionController.Subscriber subscriber =
+                new TimeSeriesSubscriptionController.Subscriber(sink, 2, Runnable::run, "start",
+                        () -> { });
+
+        subscriber.offer("values", "{}", "a");
+        subscriber.offer("keep-alive", "", null);
+        subscriber.offer("values", "{}", "b");
+
+        assertEquals(3, sink.sent.size());
+        assertEquals("a", sink.sent.get(0)[2]);
+        assertEquals("keep-alive", sink.sent.get(1)[0]);
+        assertEquals("b", sink.sent.get(2)[2]);
+        assertFalse(sink.closed);
+    }
+
+    @Test
+    void testOverflowClosesWithLastSentToken() {
+        RecordingSink sink = new RecordingSink();
+        List<Runnable> queued = new ArrayList<>();
+        AtomicInteger overflows = new AtomicInteger();
+        TimeSeriesSubscriptionController.Subscriber subscriber =
+                new TimeSeriesSubscriptionController.Subscriber(sink, 2, queued::add, "start",
+                        overflows::incrementAndGet);
+
+        // nothing is sent until the executor runs the drain, so the buffer fills
+        subscriber.offer("values", "{}", "a");
+        subscriber.offer("values", "{}", "b");
+        subscriber.offer("values", "{}", "c");
+        subscriber.offer("values", "{}", "d");
+        assertEquals(1, overflows.get());
+        assertEquals(1, queued.size());
+
+        queued.get(0).run();
+        assertEquals(1, sink.sent.size());
+        assertEquals(TimeSeriesSubscriptionController.OVERFLOW_EVENT, sink.sent.get(0)[0]);
+        assertEquals("start", sink.sent.get(0)[2]);
+        assertTrue(sink.sent.get(0)[1].contains("start"));
+        assertTrue(sink.closed);
+
+        subscriber.offer("values", "{}", "e");
+        assertEquals(1, sink.sent.size());
+    }
+
+    @Test
+    void testCloseWhenSent() {
+        RecordingSink sink = new RecordingSink();
+        List<Runnable> queued = new ArrayList<>();
+        TimeSeriesSubscriptionController.Subscriber subscriber =
+                new TimeSeriesSubscriptionController.Subscriber(sink, 10, queued::add, "start",
+                        () -> { });
+
+        subscriber.offer(TimeSeriesSubscriptionController.ERROR_EVENT, "{}", null);
+        subscriber.closeWhenSent();
+        queued.get(0).run();
+
+        assertEquals(1, sink.sent.size());
+        assertTrue(sink.closed);
+    }
+}
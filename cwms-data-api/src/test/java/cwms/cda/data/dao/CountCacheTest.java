@@ -0,0 +1,68 @@
+package cwms.cda.data.dao;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import cwms.cda.api.enums.CountMode;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class CountCacheTest {
+
+    private final AtomicInteger counts = new AtomicInteger();
+
+    private Integer count() {
+        counts.incrementAndGet();
+        return 1234;
+    }
+
+    @BeforeEach
+    void clear() {
+        CountCache.invalidateAll();
+        counts.set(0);
+    }
+
+    @Test
+    void testKeyIgnoresCase() {
+        assertEquals(CountCache.key("catalog", "spk", ".*elev.*", true),
+                CountCache.key("catalog", "SPK", ".*ELEV.*", true));
+    }
+
+    @Test
+    void testNoneNeverCounts() {
+        List<Object> key = CountCache.key("catalog", "SPK");
+        assertNull(CountCache.total(CountMode.NONE, key, 10, 10, this::count, () -> 1));
+        assertNull(CountCache.total(CountMode.NONE, key, 3, 10, this::count, () -> 1));
+        assertEquals(0, counts.get());
+    }
+
+    @Test
+    void testShortPageIsTheTotal() {
+        List<Object> key = CountCache.key("catalog", "SPK");
+        assertEquals(3, CountCache.total(CountMode.EXACT, key, 3, 10, this::count, () -> 1));
+        assertEquals(0, counts.get());
+    }
+
+    @Test
+    void testExactIsCached() {
+        List<Object> key = CountCache.key("catalog", "SPK");
+        assertEquals(1234, CountCache.total(CountMode.EXACT, key, 10, 10, this::count, () -> 1));
+        assertEquals(1234, CountCache.total(CountMode.EXACT, CountCache.key("catalog", "spk"),
+                10, 10, this::count, () -> 1));
+        assertEquals(1, counts.get());
+    }
+
+    @Test
+    void testEstimatePrefersCachedExact() {
+        List<Object> key = CountCache.key("catalog", "SPK");
+        assertEquals(1000, CountCache.total(CountMode.ESTIMATE, key, 10, 10, this::count,
+                () -> 1000));
+        assertNull(CountCache.total(CountMode.ESTIMATE, key, 10, 10, this::count, () -> null));
+        CountCache.total(CountMode.EXACT, key, 10, 10, this::count, () -> 1000);
+        assertEquals(1234, CountCache.total(CountMode.ESTIMATE, key, 10, 10, this::count,
+                () -> 1000));
+        assertEquals(1, counts.get());
+    }
+}
@@ -0,0 +1,79 @@
+package cwms.cda.data.dao;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class IdIndexTest {
+    private static final String[] IDS = {
+        "ALDER SPRINGS.FLOW.INST.1HOUR.0.RAW",
+        "BLACK BUTTE.ELEV.INST.15MINUTES.0.RAW",
+        "BLACK BUTTE.FLOW-OUT.AVE.1HOUR.1HOUR.REV",
+        "BLACK BUTTE.STOR.INST.1HOUR.0.CALC",
+        "FOLSOM.ELEV.INST.1HOUR.0.RAW",
+        "FOLSOM-POWERHOUSE.FLOW.INST.1HOUR.0.RAW",
+    };
+
+    private final IdIndex index = new IdIndex(IDS);
+
+    private List<String> matching(String regex) {
+        Pattern pattern = Pattern.compile(regex, Pattern.CASE_INSENSITIVE);
+        List<String> retval = new ArrayList<>();
+        for (String id : IDS) {
+            if (pattern.matcher(id).find()) {
+                retval.add(id);
+            }
+        }
+        return retval;
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {".*", "black", "^black butte\\.elev", "^Fol", "Flow.*1Hour",
+        "\\.Elev\\.", "Butte\\.(Elev|Stor)", "^[a-c].*raw$", "elevx?\\.inst", "flow(-out)?\\.ave",
+        "1\\d+minutes", "s{2}", "Fo+lsom", "^f", "nothing here"})
+    void testCandidatesIncludeEveryMatch(String regex) {
+        int[] candidates = index.candidates(regex);
+        List<String> found = new ArrayList<>();
+        for (int pos = 0; pos < IDS.length; pos++) {
+            boolean candidate = candidates == null || Arrays.binarySearch(candidates, pos) >= 0;
+            if (candidate && Pattern.compile(regex, Pattern.CASE_INSENSITIVE)
+                    .matcher(IDS[pos]).find()) {
+                found.add(IDS[pos]);
+            }
+        }
+        assertEquals(matching(regex), found);
+    }
+
+    @Test
+    void testLiteralsNarrowCandidates() {
+        assertArrayEquals(new int[]{1, 2, 3}, index.candidates("^Black Butte"));
+        assertArrayEquals(new int[]{1, 4}, index.candidates("\\.elev\\."));
+        assertArrayEquals(new int[0], index.candidates("nothing here"));
+        assertNull(index.candidates(".*"));
+        assertNull(index.candidates("black|folsom"));
+    }
+
+    @Test
+    void testLiterals() {
+        IdIndex.Literals literals = IdIndex.Literals.of("^Folsom.*Elev\\.In?st");
+        assertEquals("FOLSOM", literals.prefix);
+        assertEquals(Arrays.asList("FOLSOM", "ELEV.I", "ST"), literals.runs);
+        assertTrue(IdIndex.Literals.of("[[:alpha:]]+").runs.isEmpty());
+    }
+
+    @Test
+    void testAfter() {
+        assertEquals(0, index.after("A"));
+        assertEquals(2, index.after(IDS[1]));
+        assertEquals(IDS.length, index.after("Z"));
+    }
+}
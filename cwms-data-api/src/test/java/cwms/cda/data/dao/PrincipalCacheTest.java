@@ -0,0 +1,84 @@
+package cwms.cda.data.dao;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import cwms.cda.security.CwmsAuthException;
+import cwms.cda.security.DataApiPrincipal;
+import cwms.cda.security.Role;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class PrincipalCacheTest {
+
+    private final AtomicInteger lookups = new AtomicInteger();
+
+    private PrincipalCache.Entry lookup(String user) {
+        return lookup(user, null);
+    }
+
+    private PrincipalCache.Entry lookup(String user, Instant expires) {
+        lookups.incrementAndGet();
+        return new PrincipalCache.Entry(
+                new DataApiPrincipal(user, Collections.singleton(new Role("CWMS Users"))), expires);
+    }
+
+    @BeforeEach
+    void clear() {
+        PrincipalCache.invalidateAll();
+        lookups.set(0);
+    }
+
+    @Test
+    void testKeyIsLookedUpOnce() {
+        DataApiPrincipal first = PrincipalCache.get("key1", () -> lookup("USER1"));
+        DataApiPrincipal second = PrincipalCache.get("key1", () -> lookup("USER1"));
+        assertSame(first, second);
+        PrincipalCache.get("key2", () -> lookup("USER1"));
+        assertEquals(2, lookups.get());
+    }
+
+    @Test
+    void testFailuresAreNotCached() {
+        assertThrows(CwmsAuthException.class, () -> PrincipalCache.get("bad", () -> {
+            lookups.incrementAndGet();
+            throw new CwmsAuthException("No user for key");
+        }));
+        PrincipalCache.get("bad", () -> lookup("USER1"));
+        assertEquals(2, lookups.get());
+    }
+
+    @Test
+    void testInvalidateUserDropsOnlyTheirKeys() {
+        PrincipalCache.get("key1", () -> lookup("USER1"));
+        PrincipalCache.get("key2", () -> lookup("USER2"));
+        PrincipalCache.invalidateUser("user1");
+        PrincipalCache.get("key1", () -> lookup("USER1"));
+        PrincipalCache.get("key2", () -> lookup("USER2"));
+        assertEquals(3, lookups.get());
+    }
+
+    @Test
+    void testExpiredKeyIsLookedUpAgain() {
+        PrincipalCache.get("key1", () -> lookup("USER1", Instant.now().plusSeconds(600)));
+        PrincipalCache.get("key1", () -> lookup("USER1"));
+        assertEquals(1, lookups.get());
+        PrincipalCache.get("key2", () -> lookup("USER1", Instant.now().minusSeconds(1)));
+        PrincipalCache.get("key2", () -> lookup("USER1"));
+        assertEquals(3, lookups.get());
+    }
+
+    @Test
+    void testLookupRacingAnInvalidationIsNotCached() {
+        PrincipalCache.get("key1", () -> {
+            PrincipalCache.invalidateUser("USER1");
+            return lookup("USER1");
+        });
+        PrincipalCache.get("key1", () -> lookup("USER1"));
+        assertEquals(2, lookups.get());
+    }
+}
@@ -0,0 +1,47 @@
+package cwms.cda.data.dao;
+
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import cwms.cda.data.dto.TsvDqu;
+import java.util.Date;
+import org.junit.jupiter.api.Test;
+
+class RecentValueCacheTest {
+
+    private static TsvDqu at(long millis, double value) {
+        return new TsvDqu.Builder()
+                .withDateTime(new Date(millis))
+                .withValue(value)
+                .build();
+    }
+
+    @Test
+    void testNewerEnteredValueReplaces() {
+        TsvDqu cached = at(1000L, 1.0);
+        TsvDqu entered = at(2000L, 2.0);
+        assertSame(entered, RecentValueCache.newer(cached, entered));
+    }
+
+    @Test
+    void testRevisedValueReplaces() {
+        TsvDqu cached = at(1000L, 1.0);
+        TsvDqu revised = at(1000L, 1.5);
+        assertSame(revised, RecentValueCache.newer(cached, revised));
+    }
+
+    @Test
+    void testOlderEnteredValueKeepsCached() {
+        TsvDqu cached = at(2000L, 1.0);
+        TsvDqu backfilled = at(1000L, 2.0);
+        assertSame(cached, RecentValueCache.newer(cached, backfilled));
+    }
+
+    @Test
+    void testNothingEntered() {
+        TsvDqu cached = at(1000L, 1.0);
+        assertSame(cached, RecentValueCache.newer(cached, null));
+        assertNull(RecentValueCache.newer(null, null));
+        assertSame(cached, RecentValueCache.newer(null, cached));
+    }
+}
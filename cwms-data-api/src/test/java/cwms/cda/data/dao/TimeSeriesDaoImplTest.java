@@ -0,0 +1,41 @@
+package cwms.cda.data.dao;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.sql.Timestamp;
+import java.time.ZonedDateTime;
+import org.junit.jupiter.api.Test;
+
+class TimeSeriesDaoImplTest {
+
+    private static final ZonedDateTime BEGIN = ZonedDateTime.parse("2021-06-01T00:00:00Z");
+    private static final ZonedDateTime END = ZonedDateTime.parse("2021-06-02T00:00:00Z");
+
+    @Test
+    void testEstimateCountRegular() {
+        // both ends of the window are inclusive
+        assertEquals(Integer.valueOf(25), TimeSeriesDaoImpl.estimateCount(BEGIN, END, 60, null, null, false));
+        assertEquals(Integer.valueOf(289), TimeSeriesDaoImpl.estimateCount(BEGIN, END, 5, null, null, false));
+    }
+
+    @Test
+    void testEstimateCountIrregular() {
+        assertNull(TimeSeriesDaoImpl.estimateCount(BEGIN, END, 0, null, null, false));
+    }
+
+    @Test
+    void testEstimateCountTrimmedToExtents() {
+        Timestamp earliest = Timestamp.from(BEGIN.plusHours(12).toInstant());
+        Timestamp latest = Timestamp.from(END.plusDays(10).toInstant());
+        assertEquals(Integer.valueOf(13), TimeSeriesDaoImpl.estimateCount(BEGIN, END, 60, earliest, latest, true));
+
+        // unknown extents leave the window as is
+        assertEquals(Integer.valueOf(25), TimeSeriesDaoImpl.estimateCount(BEGIN, END, 60, null, null, true));
+        assertEquals(Integer.valueOf(13), TimeSeriesDaoImpl.estimateCount(BEGIN, END, 60, earliest, null, true));
+
+        // stored data entirely outside the window
+        Timestamp later = Timestamp.from(END.plusDays(1).toInstant());
+        assertEquals(Integer.valueOf(0), TimeSeriesDaoImpl.estimateCount(BEGIN, END, 60, later, latest, true));
+    }
+}
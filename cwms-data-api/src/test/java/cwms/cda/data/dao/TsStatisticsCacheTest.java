@@ -0,0 +1,90 @@
+package cwms.cda.data.dao;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import cwms.cda.api.enums.StatisticsBucket;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class TsStatisticsCacheTest {
+    private static final ZoneId PACIFIC = ZoneId.of("America/Los_Angeles");
+
+    @Test
+    void testWholeWindow() {
+        Instant begin = Instant.parse("2024-01-01T00:00:00Z");
+        Instant end = Instant.parse("2024-01-03T00:00:00Z");
+        List<TsStatisticsCache.Period> periods = TsStatisticsCache.periods(begin, end,
+                ZoneId.of("UTC"), null);
+        assertEquals(1, periods.size());
+        assertEquals(begin, periods.get(0).getBegin().toInstant());
+        assertEquals(end, periods.get(0).getEnd().toInstant());
+    }
+
+    @Test
+    void testDaysAreCutToWindow() {
+        ZonedDateTime begin = ZonedDateTime.of(2024, 3, 9, 12, 0, 0, 0, PACIFIC);
+        ZonedDateTime end = ZonedDateTime.of(2024, 3, 11, 6, 0, 0, 0, PACIFIC);
+        List<TsStatisticsCache.Period> periods = TsStatisticsCache.periods(begin.toInstant(),
+                end.toInstant(), PACIFIC, StatisticsBucket.DAY);
+
+        assertEquals(3, periods.size());
+        assertEquals(begin, periods.get(0).getBegin());
+        assertEquals(ZonedDateTime.of(2024, 3, 10, 0, 0, 0, 0, PACIFIC),
+                periods.get(0).getEnd());
+        // the day clocks change is 23 hours long
+        assertEquals(23 * 3600L, periods.get(1).getEnd().toEpochSecond()
+                - periods.get(1).getBegin().toEpochSecond());
+        assertEquals(end, periods.get(2).getEnd());
+    }
+
+    @Test
+    void testRepeatedHourIsSeparate() {
+        // clocks fall back at 2:00 PDT, so 1:00 to 2:00 happens twice
+        Instant begin = ZonedDateTime.of(2024, 11, 3, 0, 0, 0, 0, PACIFIC).toInstant();
+        Instant end = ZonedDateTime.of(2024, 11, 3, 3, 0, 0, 0, PACIFIC).toInstant();
+        List<TsStatisticsCache.Period> periods = TsStatisticsCache.periods(begin, end, PACIFIC,
+                StatisticsBucket.HOUR);
+
+        assertEquals(4, periods.size());
+        assertEquals(LocalDateTime.of(2024, 11, 3, 8, 0), periods.get(1).getBucketStart());
+        assertEquals(LocalDateTime.of(2024, 11, 3, 9, 0), periods.get(2).getBucketStart());
+        assertEquals(periods.get(1).getBegin().toLocalDateTime(),
+                periods.get(2).getBegin().toLocalDateTime());
+    }
+
+    @Test
+    void testWaterYears() {
+        ZonedDateTime begin = ZonedDateTime.of(2022, 6, 1, 0, 0, 0, 0, PACIFIC);
+        ZonedDateTime end = ZonedDateTime.of(2024, 10, 1, 0, 0, 0, 0, PACIFIC);
+        List<TsStatisticsCache.Period> periods = TsStatisticsCache.periods(begin.toInstant(),
+                end.toInstant(), PACIFIC, StatisticsBucket.WATER_YEAR);
+
+        assertEquals(3, periods.size());
+        assertEquals(begin, periods.get(0).getBegin());
+        assertEquals(ZonedDateTime.of(2022, 10, 1, 0, 0, 0, 0, PACIFIC),
+                periods.get(0).getEnd());
+        assertEquals(ZonedDateTime.of(2023, 10, 1, 0, 0, 0, 0, PACIFIC),
+                periods.get(2).getBegin());
+        assertEquals(end, periods.get(2).getEnd());
+    }
+
+    @Test
+    void testExpectedCount() {
+        Instant begin = Instant.parse("2024-01-01T00:00:00Z");
+        Instant end = Instant.parse("2024-01-02T00:00:00Z");
+        assertEquals(24L, TsStatisticsCache.expectedCount(begin, end, 60, 0));
+        assertEquals(96L, TsStatisticsCache.expectedCount(begin, end, 15, 0));
+        // hourly at 30 past
+        assertEquals(24L, TsStatisticsCache.expectedCount(begin.plusSeconds(60), end, 60, 30));
+        assertEquals(23L, TsStatisticsCache.expectedCount(begin.plusSeconds(3600), end, 60, 30));
+        assertEquals(1L, TsStatisticsCache.expectedCount(begin, end, 1440, 0));
+        assertNull(TsStatisticsCache.expectedCount(begin, end, 0, 0));
+        // local regular intervals have no fixed offset
+        assertNull(TsStatisticsCache.expectedCount(begin, end, 60, Integer.MIN_VALUE));
+    }
+}
@@ -45,4 +45,17 @@ class CatalogTest
 		assertNull(page.getSearchOffice());
 		assertEquals(page.getCurOffice(),fromString.getCurOffice());
 	}
+
+	@Test
+	void test_catalog_page_without_total() {
+		CatalogRequestParameters params = new CatalogRequestParameters.Builder()
+				.withIdLike(".*")
+				.build();
+
+		final CatalogPage page = new CatalogPage("SPK/a", params);
+		final String pageString = Catalog.encodeCursor(page.toString(), 10, (Integer) null);
+		final CatalogPage fromString = new CatalogPage(pageString);
+		assertNull(fromString.getTotal());
+		assertEquals(10, fromString.getPageSize());
+	}
 }
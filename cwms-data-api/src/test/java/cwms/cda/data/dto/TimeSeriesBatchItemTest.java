@@ -0,0 +1,58 @@
+package cwms.cda.data.dto;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import cwms.cda.api.errors.FieldException;
+import cwms.cda.formatters.ContentType;
+import cwms.cda.formatters.Formats;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class TimeSeriesBatchItemTest {
+
+    private static final ContentType CONTENT_TYPE = new ContentType(Formats.JSONV2);
+
+    @Test
+    void test_parse_list() {
+        String json = "[{\"name\":\"Alder Springs.Precip-Cumulative.Inst.15Minutes.0.raw-cda\","
+                + "\"office\":\"SPK\",\"unit\":\"SI\",\"begin\":\"PT-48H\",\"trim\":false,"
+                + "\"page-size\":-1},"
+                + "{\"name\":\"Other.Stage.Inst.1Hour.0.test\",\"office\":\"SWT\","
+                + "\"version-date\":\"2024-01-01T00:00:00Z\"}]";
+        List<TimeSeriesBatchItem> items = Formats.parseContentList(CONTENT_TYPE, json,
+                TimeSeriesBatchItem.class);
+
+        assertEquals(2, items.size());
+        TimeSeriesBatchItem first = items.get(0);
+        assertEquals("Alder Springs.Precip-Cumulative.Inst.15Minutes.0.raw-cda", first.getName());
+        assertEquals("SPK", first.getOffice());
+        assertEquals("SI", first.getUnit());
+        assertEquals("PT-48H", first.getBegin());
+        assertNull(first.getEnd());
+        assertFalse(first.getTrim());
+        assertEquals(Integer.valueOf(-1), first.getPageSize());
+
+        TimeSeriesBatchItem second = items.get(1);
+        assertEquals("SWT", second.getOffice());
+        assertEquals("2024-01-01T00:00:00Z", second.getVersionDate());
+        assertNull(second.getTrim());
+        assertNull(second.getPageSize());
+    }
+
+    @Test
+    void test_validate_missing_office() {
+        String json = "[{\"name\":\"Other.Stage.Inst.1Hour.0.test\"}]";
+        assertThrows(FieldException.class, () -> Formats.parseContentList(CONTENT_TYPE, json,
+                TimeSeriesBatchItem.class));
+    }
+
+    @Test
+    void test_validate_bad_timezone() {
+        TimeSeriesBatchItem item = new TimeSeriesBatchItem("Other.Stage.Inst.1Hour.0.test", "SWT");
+        item.setTimezone("Not a Time Zone");
+        assertThrows(FieldException.class, item::validate);
+    }
+}
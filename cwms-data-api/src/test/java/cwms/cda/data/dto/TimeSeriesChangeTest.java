@@ -0,0 +1,68 @@
+package cwms.cda.data.dto;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import cwms.cda.formatters.json.JsonV2;
+import java.time.Instant;
+import org.junit.jupiter.api.Test;
+
+class TimeSeriesChangeTest {
+
+    private static TimeSeriesChange change(Instant versionDate) {
+        return new TimeSeriesChange("Alder Springs.Precip-Cumulative.Inst.15Minutes.0.Calc-val",
+                "in", 1234L, Instant.parse("2024-03-05T10:15:00Z"), versionDate,
+                Instant.parse("2024-03-05T10:17:42.123456Z"), 1.5, 3L);
+    }
+
+    @Test
+    void testResumeTokenRoundTrip() {
+        TimeSeriesChange.Position position = TimeSeriesChange.Position.after(
+                change(Instant.parse("1111-11-11T00:00:00Z")));
+        TimeSeriesChange.Position resumed = TimeSeriesChange.Position.fromToken(position.toToken());
+
+        // the data entry date keeps its fraction, so nothing entered in the same
+        // millisecond is skipped
+        assertEquals(Instant.parse("2024-03-05T10:17:42.123456Z"), resumed.getDataEntryDate());
+        assertEquals(1234L, resumed.getTsCode());
+        assertEquals(Instant.parse("2024-03-05T10:15:00Z"), resumed.getDateTime());
+        assertEquals(Instant.parse("1111-11-11T00:00:00Z"), resumed.getVersionDate());
+    }
+
+    @Test
+    void testChangedSinceToken() {
+        Instant since = Instant.parse("2024-03-01T00:00:00Z");
+        TimeSeriesChange.Position resumed = TimeSeriesChange.Position.fromToken(
+                TimeSeriesChange.Position.after(since).toToken());
+
+        assertEquals(since, resumed.getDataEntryDate());
+        assertNull(resumed.getTsCode());
+        assertNull(resumed.getVersionDate());
+    }
+
+    @Test
+    void testInvalidToken() {
+        assertThrows(IllegalArgumentException.class,
+                () -> TimeSeriesChange.Position.fromToken("bm90IGEgdG9rZW4="));
+        assertThrows(IllegalArgumentException.class,
+                () -> TimeSeriesChange.Position.fromToken("***"));
+    }
+
+    @Test
+    void testSerialization() throws Exception {
+        ObjectMapper om = JsonV2.buildObjectMapper();
+        JsonNode node = om.readTree(om.writeValueAsString(change(null)));
+
+        assertEquals("in", node.get("units").asText());
+        assertEquals(1.5, node.get("value").asDouble());
+        assertEquals(3, node.get("quality-code").asInt());
+        assertTrue(node.has("data-entry-date"));
+        assertFalse(node.has("version-date"));
+        assertFalse(node.has("ts-code"));
+    }
+}
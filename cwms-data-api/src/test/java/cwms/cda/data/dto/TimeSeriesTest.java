@@ -1,11 +1,15 @@
 package cwms.cda.data.dto;
 
+import cwms.cda.api.errors.InvalidItemException;
 import cwms.cda.formatters.json.JsonV2;
+import java.sql.Timestamp;
 import java.time.Duration;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.core.JsonProcessingException;
@@ -22,6 +26,7 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class TimeSeriesTest
@@ -76,6 +81,124 @@ public class TimeSeriesTest
 	}
 
 
+	@Test
+	void testStreamedValuesMatchBuffered() throws JsonProcessingException
+	{
+		ZonedDateTime start = ZonedDateTime.parse("2021-06-21T14:00:00-07:00[PST8PDT]");
+		ZonedDateTime end = ZonedDateTime.parse("2021-06-22T14:00:00-07:00[PST8PDT]");
+		String tsId = "RYAN3.Stage.Inst.5Minutes.0.ZSTORE_TS_TEST";
+
+		List<TimeSeries.Record> records = new ArrayList<>();
+		long millis = start.toInstant().toEpochMilli();
+		for(int i = 0; i < 5; i++)
+		{
+			records.add(new TimeSeries.Record(new Timestamp(millis + i * 300000L), i == 2 ? null : (double) i, 0));
+		}
+
+		TimeSeries buffered = new TimeSeries(null, 3, null, tsId, "LRL", start, end, "ft", Duration.ZERO);
+		for(TimeSeries.Record r : records)
+		{
+			buffered.addValue(r.getDateTime(), r.getValue(), r.getQualityCode());
+		}
+
+		TimeSeries streamed = new TimeSeries(null, 3, null, tsId, "LRL", start, end, "ft", Duration.ZERO);
+		streamed.streamValues(records.iterator());
+		assertEquals(buffered.getPage(), streamed.getPage());
+		assertNull(streamed.getNextPage());
+
+		ObjectMapper om = buildObjectMapper();
+		String streamedBody = om.writeValueAsString(streamed);
+		assertEquals(buffered.getNextPage(), streamed.getNextPage());
+		assertEquals(om.writeValueAsString(buffered), streamedBody);
+
+		TimeSeries parsed = om.readValue(streamedBody, TimeSeries.class);
+		assertEquals(buffered.getValues(), parsed.getValues());
+
+		assertThrows(IllegalStateException.class, streamed::getValues);
+		assertThrows(IllegalStateException.class, () -> streamed.getValueSource().iterator());
+	}
+
+	@Test
+	void testMissingValuesRoundtrip() throws JsonProcessingException
+	{
+		TimeSeries ts = buildTimeSeries();
+		long millis = ts.getBegin().toInstant().toEpochMilli();
+		ts.addValue(millis, 1.5, 0);
+		ts.addValue(millis + 900000L, null, 5);
+		ts.addValue(millis + 1800000L, 3.25, 3);
+
+		TimeSeriesValues arrays = ts.getValueArrays();
+		assertEquals(3, arrays.size());
+		assertTrue(arrays.isNull(1));
+		assertTrue(Double.isNaN(arrays.getValues()[1]));
+		assertNull(ts.getValues().get(1).getValue());
+
+		ObjectMapper om = buildObjectMapper();
+		String json = om.writeValueAsString(ts);
+		assertTrue(json.contains("[" + (millis + 900000L) + ",null,5]"));
+		TimeSeries fromJson = om.readValue(json, TimeSeries.class);
+		assertEquals(ts.getValues(), fromJson.getValues());
+
+		XMLv2 xmlV2 = new XMLv2();
+		TimeSeries fromXml = xmlV2.parseContent(xmlV2.format(ts), TimeSeries.class);
+		assertEquals(ts.getValues(), fromXml.getValues());
+	}
+
+	@Test
+	void testValuesSlice()
+	{
+		TimeSeriesValues values = new TimeSeriesValues();
+		for (int i = 0; i < 10; i++)
+		{
+			values.add(i * 1000L, i % 3 == 0 ? null : (double) i, i);
+		}
+
+		TimeSeriesValues slice = values.slice(3, 7);
+		assertEquals(4, slice.size());
+		assertEquals(3000L, slice.getDateTime(0));
+		assertEquals(6000L, slice.getDateTime(3));
+		assertTrue(slice.isNull(0));
+		assertFalse(slice.isNull(1));
+		assertTrue(slice.isNull(3));
+		assertEquals(5.0, slice.getValue(2));
+		assertEquals(values.subList(3, 7), slice);
+
+		assertEquals(0, values.slice(10, 10).size());
+		assertThrows(IndexOutOfBoundsException.class, () -> values.slice(5, 11));
+	}
+
+	@Test
+	void testOutOfOrderValuesRejected()
+	{
+		TimeSeries ts = buildTimeSeries();
+		long millis = ts.getBegin().toInstant().toEpochMilli();
+		ts.addValue(millis + 900000L, 1.5, 0);
+		ts.addValue(millis, 2.5, 0);
+		assertUnreadable(ts);
+	}
+
+	@Test
+	void testDuplicateValuesRejected()
+	{
+		TimeSeries ts = buildTimeSeries();
+		long millis = ts.getBegin().toInstant().toEpochMilli();
+		ts.addValue(millis, 1.5, 0);
+		ts.addValue(millis + 900000L, 2.5, 0);
+		ts.addValue(millis + 900000L, 3.5, 0);
+		assertUnreadable(ts);
+	}
+
+	private void assertUnreadable(TimeSeries ts)
+	{
+		JsonV2 jsonV2 = new JsonV2();
+		String json = jsonV2.format(ts);
+		assertThrows(InvalidItemException.class, () -> jsonV2.parseContent(json, TimeSeries.class));
+
+		XMLv2 xmlV2 = new XMLv2();
+		String xml = xmlV2.format(ts);
+		assertThrows(InvalidItemException.class, () -> xmlV2.parseContent(xml, TimeSeries.class));
+	}
+
 	@NotNull
 	private TimeSeries buildTimeSeries()
 	{
@@ -0,0 +1,90 @@
+package cwms.cda.datasource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import javax.sql.DataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class RequestScopedDataSourceTest {
+
+    private DataSource pool;
+    private Connection connection;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        pool = mock(DataSource.class);
+        connection = mock(Connection.class);
+        when(pool.getConnection()).thenReturn(connection);
+        when(connection.getAutoCommit()).thenReturn(true);
+    }
+
+    @Test
+    void testBorrowsShareOneConnection() throws SQLException {
+        RequestScopedDataSource ds = new RequestScopedDataSource(pool, pool, null);
+        Connection first = ds.getConnection();
+        first.close();
+        Connection second = ds.getConnection();
+        second.close();
+        assertSame(first, second);
+        verify(pool, times(1)).getConnection();
+        verify(connection, never()).close();
+        assertEquals(2, ds.getBorrows());
+
+        ds.release();
+        ds.release();
+        verify(connection, times(1)).close();
+    }
+
+    @Test
+    void testBorrowAfterReleaseIsNotPinned() throws SQLException {
+        RequestScopedDataSource ds = new RequestScopedDataSource(pool, pool, null);
+        ds.getConnection();
+        ds.release();
+
+        Connection late = mock(Connection.class);
+        when(pool.getConnection()).thenReturn(late);
+        Connection borrowed = ds.getConnection();
+        assertSame(late, borrowed);
+        borrowed.close();
+        verify(late).close();
+        ds.release();
+        verify(connection, times(1)).close();
+    }
+
+    @Test
+    void testReleaseRollsBackOpenTransaction() throws SQLException {
+        when(connection.getAutoCommit()).thenReturn(false);
+        RequestScopedDataSource ds = new RequestScopedDataSource(pool, pool, null);
+        ds.getConnection().setAutoCommit(false);
+        ds.release();
+        verify(connection).rollback();
+        verify(connection).setAutoCommit(true);
+        verify(connection).close();
+    }
+
+    @Test
+    void testIsForTracksPreparer() throws SQLException {
+        ConnectionPreparingDataSource source = new ConnectionPreparingDataSource(c -> c, pool);
+        RequestScopedDataSource ds = new RequestScopedDataSource(source, source, null);
+        assertTrue(ds.isFor(source));
+        assertFalse(ds.isFor(pool));
+        source.setPreparer(new DelegatingConnectionPreparer(source.getPreparer(), c -> c));
+        assertFalse(ds.isFor(source));
+
+        ds.getConnection();
+        RequestScopedDataSource next = new RequestScopedDataSource(source, source, ds);
+        next.getConnection();
+        assertEquals(2, next.getBorrows());
+    }
+}
@@ -0,0 +1,76 @@
+package cwms.cda.datasource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+class SessionStateTest {
+
+    private final AtomicInteger calls = new AtomicInteger();
+
+    private SessionState.SessionCall counted() {
+        return calls::incrementAndGet;
+    }
+
+    @Test
+    void testRepeatedTimeZoneIsSkipped() throws SQLException {
+        Connection conn = mock(Connection.class);
+        SessionState.setTimeZone(conn, "UTC", counted());
+        SessionState.setTimeZone(conn, "UTC", counted());
+        assertEquals(1, calls.get());
+        SessionState.setTimeZone(mock(Connection.class), "UTC", counted());
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    void testUserAndOfficeAreAlwaysApplied() throws SQLException {
+        Connection conn = mock(Connection.class);
+        SessionState.setUser(conn, "q0user", "SPK", counted());
+        SessionState.setOffice(conn, "SPK", counted());
+        SessionState.setUser(conn, "q0user", "SPK", counted());
+        SessionState.setSessionId(conn, "key", counted());
+        SessionState.setSessionId(conn, "key", counted());
+        SessionState.setOffice(conn, "SPK", counted());
+        assertEquals(6, calls.get());
+    }
+
+    @Test
+    void testFailureForgetsState() throws SQLException {
+        Connection conn = mock(Connection.class);
+        SessionState.setTimeZone(conn, "UTC", counted());
+        SessionState.setClientInfo(conn, "a|b", counted());
+        assertThrows(SQLException.class, () -> SessionState.setOffice(conn, "SWT", () -> {
+            throw new SQLException("no such office");
+        }));
+        SessionState.setTimeZone(conn, "UTC", counted());
+        SessionState.setClientInfo(conn, "a|b", counted());
+        assertEquals(4, calls.get());
+
+        assertThrows(SQLException.class, () -> SessionState.setClientInfo(conn, "c|d", () -> {
+            throw new SQLException("closed");
+        }));
+        SessionState.setTimeZone(conn, "UTC", counted());
+        assertEquals(5, calls.get());
+    }
+
+    @Test
+    void testWrappedConnectionSharesState() throws SQLException {
+        Connection physical = mock(Connection.class);
+        Connection pooled = mock(Connection.class);
+        when(pooled.isWrapperFor(Connection.class)).thenReturn(true);
+        when(pooled.unwrap(Connection.class)).thenReturn(physical);
+        SessionState.setClientInfo(physical, "a|b", counted());
+        SessionState.setClientInfo(pooled, "a|b", counted());
+        assertEquals(1, calls.get());
+
+        SessionState.forget(pooled);
+        SessionState.setClientInfo(physical, "a|b", counted());
+        assertEquals(2, calls.get());
+    }
+}
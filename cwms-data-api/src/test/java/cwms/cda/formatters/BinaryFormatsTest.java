@@ -0,0 +1,125 @@
+package cwms.cda.formatters;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import cwms.cda.data.dto.TimeSeries;
+import cwms.cda.formatters.json.CborV2;
+import cwms.cda.formatters.json.JsonV2;
+import cwms.cda.formatters.json.SmileV2;
+import cwms.cda.formatters.xml.XMLv2;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class BinaryFormatsTest {
+
+    private static TimeSeries buildTimeSeries(int count) {
+        ZonedDateTime begin = ZonedDateTime.parse("2021-06-21T08:00:00-07:00[PST8PDT]");
+        TimeSeries ts = new TimeSeries(null, -1, count, "Test.Test.Elev.Inst.1Hour.0.RAW", "SPK",
+                begin, begin.plusHours(count), "ft", Duration.ofHours(1));
+        for (int i = 0; i < count; i++) {
+            ts.addValue(begin.plusHours(i).toInstant().toEpochMilli(), 1000.0 + (i % 97) / 8.0, 0);
+        }
+        return ts;
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {Formats.CBOR, Formats.SMILE})
+    void testNegotiatedAndRoundTrips(String header) throws IOException {
+        ContentType contentType = Formats.parseHeader(header, TimeSeries.class);
+        assertEquals(header, contentType.getType());
+        assertTrue(Formats.isBinary(contentType));
+
+        TimeSeries ts = buildTimeSeries(48);
+        byte[] bytes = Formats.formatBytes(contentType, ts);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Formats.format(contentType, ts, out);
+        assertArrayEquals(bytes, out.toByteArray());
+
+        TimeSeries parsed = Formats.parseContent(contentType, new ByteArrayInputStream(bytes),
+                TimeSeries.class);
+        assertEquals(ts.getName(), parsed.getName());
+        assertEquals(ts.getUnits(), parsed.getUnits());
+        assertEquals(ts.getValues().size(), parsed.getValues().size());
+        assertEquals(ts.getValues().get(47).getValue(), parsed.getValues().get(47).getValue());
+        assertEquals(ts.getValues().get(47).getDateTime(),
+                parsed.getValues().get(47).getDateTime());
+    }
+
+    @Test
+    void testTextFormatsAreUnchanged() {
+        assertFalse(Formats.isBinary(new ContentType(Formats.JSONV2)));
+        TimeSeries ts = buildTimeSeries(2);
+        ContentType contentType = new ContentType(Formats.JSONV2);
+        assertEquals(Formats.format(contentType, ts),
+                new String(Formats.formatBytes(contentType, ts), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testBinaryIsNotText() {
+        TimeSeries ts = buildTimeSeries(2);
+        assertThrows(FormattingException.class, () -> new CborV2().format(ts));
+        assertThrows(FormattingException.class,
+                () -> Formats.format(new ContentType(Formats.SMILE), ts));
+    }
+
+    /**
+     * Compares the size of a large page, and the time to write and read it, across the
+     * formats. Run with the formatBenchmark task.
+     */
+    @Test
+    @Tag("benchmark")
+    void benchmarkTimeSeriesFormats() throws IOException {
+        int iterations = Integer.getInteger("benchmark.iterations", 20);
+        TimeSeries ts = buildTimeSeries(Integer.getInteger("benchmark.values", 100_000));
+
+        Map<String, OutputFormatter> formatters = new LinkedHashMap<>();
+        formatters.put(Formats.JSONV2, new JsonV2());
+        formatters.put(Formats.XMLV2, new XMLv2());
+        formatters.put(Formats.CBOR, new CborV2());
+        formatters.put(Formats.SMILE, new SmileV2());
+
+        System.out.printf("%-30s %12s %12s %12s%n", "format", "bytes", "encode ms", "decode ms");
+        for (Map.Entry<String, OutputFormatter> entry : formatters.entrySet()) {
+            OutputFormatter formatter = entry.getValue();
+            byte[] bytes = formatter.formatBytes(ts);
+            // warm up
+            for (int i = 0; i < iterations; i++) {
+                formatter.formatBytes(ts);
+                formatter.parseContent(new ByteArrayInputStream(bytes), TimeSeries.class);
+            }
+
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                bytes = formatter.formatBytes(ts);
+            }
+            long encode = System.nanoTime() - start;
+
+            TimeSeries parsed = null;
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                parsed = formatter.parseContent(new ByteArrayInputStream(bytes), TimeSeries.class);
+            }
+            long decode = System.nanoTime() - start;
+
+            assertEquals(ts.getValues().size(), parsed.getValues().size());
+            System.out.printf("%-30s %12d %12.2f %12.2f%n", entry.getKey(), bytes.length,
+                    TimeUnit.NANOSECONDS.toMicros(encode) / 1000.0 / iterations,
+                    TimeUnit.NANOSECONDS.toMicros(decode) / 1000.0 / iterations);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package cwms.cda.formatters.arrow;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import cwms.cda.data.dto.Catalog;
+import cwms.cda.data.dto.TimeSeries;
+import cwms.cda.data.dto.TimeSeriesExtents;
+import cwms.cda.data.dto.catalog.TimeseriesCatalogEntry;
+import cwms.cda.formatters.ContentType;
+import cwms.cda.formatters.Formats;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.Float8Vector;
+import org.apache.arrow.vector.IntVector;
+import org.apache.arrow.vector.TimeStampMilliTZVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.ipc.ArrowStreamReader;
+import org.junit.jupiter.api.Test;
+
+class ArrowV1Test {
+    private static final ZonedDateTime BEGIN = ZonedDateTime.parse("2021-06-21T08:00:00-07:00[PST8PDT]");
+
+    private static TimeSeries buildTimeSeries(String name, int count) {
+        TimeSeries ts = new TimeSeries(null, -1, count, name, "SPK", BEGIN,
+                BEGIN.plusHours(count), "ft", Duration.ofHours(1));
+        for (int i = 0; i < count; i++) {
+            ts.addValue(BEGIN.plusHours(i).toInstant().toEpochMilli(), i == 1 ? null : i * 1.5, 3);
+        }
+        return ts;
+    }
+
+    @Test
+    void testTimeSeries() throws IOException {
+        TimeSeries ts = buildTimeSeries("Test.Elev.Inst.1Hour.0.RAW", 3);
+        ContentType contentType = Formats.parseHeader(Formats.ARROW, TimeSeries.class);
+        byte[] bytes = Formats.formatBytes(contentType, ts);
+
+        try (BufferAllocator allocator = new RootAllocator();
+             ArrowStreamReader reader = new ArrowStreamReader(new ByteArrayInputStream(bytes),
+                     allocator)) {
+            VectorSchemaRoot root = reader.getVectorSchemaRoot();
+            assertEquals("ft", root.getSchema().getCustomMetadata().get("units"));
+            assertEquals("Test.Elev.Inst.1Hour.0.RAW",
+                    root.getSchema().getCustomMetadata().get("name"));
+            assertTrue(reader.loadNextBatch());
+            assertEquals(3, root.getRowCount());
+
+            TimeStampMilliTZVector dateTimes =
+                    (TimeStampMilliTZVector) root.getVector(TimeSeriesArrowWriter.DATE_TIME);
+            Float8Vector values = (Float8Vector) root.getVector(TimeSeriesArrowWriter.VALUE);
+            IntVector qualityCodes = (IntVector) root.getVector(TimeSeriesArrowWriter.QUALITY_CODE);
+            assertEquals(BEGIN.plusHours(2).toInstant().toEpochMilli(), dateTimes.get(2));
+            assertEquals(3.0, values.get(2));
+            assertTrue(values.isNull(1));
+            assertEquals(3, qualityCodes.get(0));
+            assertFalse(reader.loadNextBatch());
+        }
+    }
+
+    @Test
+    void testBatchWithError() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (TimeSeriesArrowWriter writer = TimeSeriesArrowWriter.forBatch(out)) {
+            writer.write(buildTimeSeries("A.Elev.Inst.1Hour.0.RAW", 2));
+            writer.writeError("B.Elev.Inst.1Hour.0.RAW", "SPK", "not found");
+            writer.write(buildTimeSeries("C.Elev.Inst.1Hour.0.RAW", 1));
+        }
+
+        try (BufferAllocator allocator = new RootAllocator();
+             ArrowStreamReader reader = new ArrowStreamReader(
+                     new ByteArrayInputStream(out.toByteArray()), allocator)) {
+            VectorSchemaRoot root = reader.getVectorSchemaRoot();
+            // each series is sent as it is written
+            int[] rows = {2, 1, 1};
+            String[] errors = {null, "not found", null};
+            for (int i = 0; i < rows.length; i++) {
+                assertTrue(reader.loadNextBatch());
+                assertEquals(rows[i], root.getRowCount());
+                VarCharVector error = (VarCharVector) root.getVector(TimeSeriesArrowWriter.ERROR);
+                assertEquals(errors[i], error.isNull(0) ? null : new String(error.get(0)));
+            }
+            VarCharVector names = (VarCharVector) root.getVector(TimeSeriesArrowWriter.NAME);
+            assertEquals("C.Elev.Inst.1Hour.0.RAW", new String(names.get(0)));
+            assertFalse(reader.loadNextBatch());
+        }
+    }
+
+    @Test
+    void testTimeSeriesCatalog() throws IOException {
+        ZonedDateTime latest = BEGIN.plusDays(1);
+        TimeseriesCatalogEntry withExtents = new TimeseriesCatalogEntry.Builder()
+                .officeId("SPK")
+                .cwmsTsId("A.Elev.Inst.1Hour.0.RAW")
+                .units("ft")
+                .withExtents(Collections.singletonList(
+                        new TimeSeriesExtents(null, BEGIN, latest, latest)))
+                .build();
+        TimeseriesCatalogEntry withoutExtents = new TimeseriesCatalogEntry.Builder()
+                .officeId("SPK")
+                .cwmsTsId("B.Elev.Inst.1Hour.0.RAW")
+                .build();
+        Catalog catalog = new Catalog(null, 2, 10, Arrays.asList(withExtents, withoutExtents));
+
+        byte[] bytes = new ArrowV1().formatBytes(catalog);
+        try (BufferAllocator allocator = new RootAllocator();
+             ArrowStreamReader reader = new ArrowStreamReader(new ByteArrayInputStream(bytes),
+                     allocator)) {
+            VectorSchemaRoot root = reader.getVectorSchemaRoot();
+            assertEquals("2", root.getSchema().getCustomMetadata().get("total"));
+            assertNull(root.getSchema().getCustomMetadata().get("next-page"));
+            assertTrue(reader.loadNextBatch());
+            assertEquals(2, root.getRowCount());
+            TimeStampMilliTZVector earliest =
+                    (TimeStampMilliTZVector) root.getVector("earliest_time");
+            assertEquals(BEGIN.toInstant().toEpochMilli(), earliest.get(0));
+            assertTrue(earliest.isNull(1));
+        }
+    }
+}
@@ -124,6 +124,28 @@ class DateUtilsTest {
         assertEquals(ptZdt.toInstant(), ptChZdt.toInstant(), "PT-24H should be the same in any zone");
     }
 
+    @Test
+    void test_signed_relative_dates(){
+        ZonedDateTime now = ZonedDateTime.of(2024, 3, 10, 12, 0, 0, 0, ZoneId.of("UTC"));
+        ZoneId utcZone = ZoneId.of("UTC");
+        assertEquals(now.minusDays(1), DateUtils.parseUserDate("-P1D", utcZone, now));
+        assertEquals(now.minusHours(6), DateUtils.parseUserDate("-PT6H", utcZone, now));
+        assertEquals(now.plusHours(6), DateUtils.parseUserDate("+PT6H", utcZone, now));
+    }
+
+    @Test
+    void test_is_relative(){
+        assertTrue(DateUtils.isRelative("PT-24H"));
+        assertTrue(DateUtils.isRelative("P-1D"));
+        assertTrue(DateUtils.isRelative("-P1D"));
+        assertTrue(DateUtils.isRelative("-PT6H"));
+        assertTrue(DateUtils.isRelative("+P1M"));
+        assertTrue(DateUtils.isRelative("pt-1h"));
+        assertFalse(DateUtils.isRelative(null));
+        assertFalse(DateUtils.isRelative("2021-06-10T13:00:00-07:00"));
+        assertFalse(DateUtils.isRelative("2021-06-10"));
+    }
+
     @Test
     void test_controllers_example_date(){
         ZonedDateTime zdt =  DateUtils.parseUserDate(Controllers.EXAMPLE_DATE, "UTC");
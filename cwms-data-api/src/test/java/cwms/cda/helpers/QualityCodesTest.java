@@ -0,0 +1,94 @@
+package cwms.cda.helpers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.params.provider.Arguments.arguments;
+
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+class QualityCodesTest {
+
+    /**
+     * Quality codes and what CWMS_TS.NORMALIZE_QUALITY makes of them, covering each rule and
+     * each high bit. {@link QualityCodesTestIT} checks the same pairs against the database.
+     */
+    static Stream<Arguments> normalizedCodes() {
+        return Stream.of(
+                // not screened
+                arguments(0x00000000L, 0x00000000),
+                arguments(0x00000002L, 0x00000000),
+                arguments(0x80000002L, 0x00000000),
+                arguments(0xFFFFFFFEL, 0x00000000),
+                // already normal
+                arguments(0x00000001L, 0x00000001),
+                arguments(0x00000003L, 0x00000003),
+                arguments(0x00000005L, 0x00000005),
+                arguments(0x00000009L, 0x00000009),
+                arguments(0x00000011L, 0x00000011),
+                // validity precedence
+                arguments(0x00000007L, 0x00000005),
+                arguments(0x0000000FL, 0x00000009),
+                arguments(0x0000001FL, 0x00000011),
+                // value range is kept as is
+                arguments(0x00000063L, 0x00000063),
+                // replacement cause and method limits, and the different bit
+                arguments(0x00000083L, 0x00000003),
+                arguments(0x00000103L, 0x00000183),
+                arguments(0x00000403L, 0x00000483),
+                arguments(0x00000503L, 0x00000483),
+                arguments(0x00000703L, 0x00000483),
+                arguments(0x00002003L, 0x00002083),
+                arguments(0x00002803L, 0x00002083),
+                arguments(0x00007803L, 0x00002083),
+                arguments(0x00007F03L, 0x00002483),
+                arguments(0x00007F83L, 0x00002483),
+                // either side of the split between the looked up and the copied bits
+                arguments(0x00008001L, 0x00008001),
+                arguments(0x0000FFFFL, 0x0000A4F1),
+                arguments(0x00010001L, 0x00010001),
+                // used high bits: test failed flags, protection
+                arguments(0x00100001L, 0x00100001),
+                arguments(0x00400001L, 0x00400001),
+                arguments(0x01000001L, 0x01000001),
+                arguments(0x02000001L, 0x02000001),
+                arguments(0x80000001L, 0x80000001),
+                arguments(0x82008009L, 0x82008009),
+                // unused high bits
+                arguments(0x00200001L, 0x00000001),
+                arguments(0x00800001L, 0x00000001),
+                arguments(0x7C000001L, 0x00000001),
+                arguments(0x7CA00003L, 0x00000003),
+                arguments(0xFFFF0001L, 0x835F0001),
+                arguments(0xFFFFFFFFL, 0x835FA4F1));
+    }
+
+    @ParameterizedTest
+    @MethodSource("normalizedCodes")
+    void testNormalize(long quality, int expected) {
+        assertEquals(expected, QualityCodes.normalize(quality));
+    }
+
+    @Test
+    void testWorse() {
+        assertEquals(17, QualityCodes.worse(3, 17));
+        assertEquals(9, QualityCodes.worse(9, 5));
+        assertEquals(5, QualityCodes.worse(3, 5));
+        assertEquals(0, QualityCodes.worse(3, 0));
+        assertEquals(0x80000011, QualityCodes.worse(0x80000011, 0x11));
+    }
+
+    @Test
+    void testSignedCodes() {
+        assertEquals(0x80000003, QualityCodes.normalize(0x80000003));
+        assertEquals(0x835FA4F1, QualityCodes.normalize(-1));
+        assertEquals(0, QualityCodes.normalize(-2));
+    }
+
+    @Test
+    void testNullIsMissing() {
+        assertEquals(5, QualityCodes.normalize((Number) null));
+    }
+}
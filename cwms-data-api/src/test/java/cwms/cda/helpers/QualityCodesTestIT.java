@@ -0,0 +1,77 @@
+package cwms.cda.helpers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import cwms.cda.api.DataApiTestIT;
+import fixtures.CwmsDataApiSetupCallback;
+import mil.army.usace.hec.test.database.CwmsDatabaseContainer;
+import org.jooq.Record;
+import org.jooq.Result;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+/**
+ * Checks {@link QualityCodes} against the database's own CWMS_TS.NORMALIZE_QUALITY for every
+ * combination of the low 16 bits (which hold all but the unused bit rule) under several
+ * patterns of the high bits, for a sample spread over all 32 bits, and for the fixed pairs the
+ * unit test relies on.
+ */
+@Tag("integration")
+class QualityCodesTestIT extends DataApiTestIT {
+    private static final int SAMPLE_SIZE = 65536;
+
+    @ParameterizedTest
+    @ValueSource(longs = {0x00000000L, 0x00010000L, 0x02400000L, 0x7C000000L, 0x80000000L,
+            0xFFFF0000L})
+    void testMatchesDatabase(long highBits) throws Exception {
+        CwmsDatabaseContainer<?> db = CwmsDataApiSetupCallback.getDatabaseLink();
+        db.connection(c -> {
+            Result<Record> rows = dslContext(c).resultQuery(
+                    "select q, cwms_20.cwms_ts.normalize_quality(q) from "
+                            + "(select level - 1 + ? q from dual connect by level <= 65536)",
+                    highBits)
+                    .fetch();
+            assertEquals(65536, rows.size());
+            assertRows(rows);
+        });
+    }
+
+    @Test
+    void testSampleOfAllBitsMatchesDatabase() throws Exception {
+        CwmsDatabaseContainer<?> db = CwmsDataApiSetupCallback.getDatabaseLink();
+        db.connection(c -> {
+            // a multiplicative hash of 1..n, which sets every high bit in some of the codes
+            Result<Record> rows = dslContext(c).resultQuery(
+                    "select q, cwms_20.cwms_ts.normalize_quality(q) from "
+                            + "(select mod(level * 2654435761, 4294967296) q from dual "
+                            + "connect by level <= ?)",
+                    SAMPLE_SIZE)
+                    .fetch();
+            assertEquals(SAMPLE_SIZE, rows.size());
+            assertRows(rows);
+        });
+    }
+
+    @ParameterizedTest
+    @MethodSource("cwms.cda.helpers.QualityCodesTest#normalizedCodes")
+    void testUnitTestCodesMatchDatabase(long quality, int expected) throws Exception {
+        CwmsDatabaseContainer<?> db = CwmsDataApiSetupCallback.getDatabaseLink();
+        db.connection(c -> {
+            Long normalized = dslContext(c).resultQuery(
+                    "select cwms_20.cwms_ts.normalize_quality(?) from dual", quality)
+                    .fetchOne(0, Long.class);
+            assertEquals(expected, normalized.intValue(), "quality code " + quality);
+        });
+    }
+
+    private static void assertRows(Result<Record> rows) {
+        for (Record row : rows) {
+            long quality = row.get(0, Long.class);
+            assertEquals(row.get(1, Long.class).intValue(), QualityCodes.normalize(quality),
+                    "quality code " + quality);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package cwms.cda.helpers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import cwms.cda.api.enums.ResampleMethod;
+import cwms.cda.data.dto.TimeSeriesValues;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+class TimeSeriesResamplerTest {
+    private static final long HOUR = 3_600_000L;
+
+    private static TimeSeriesValues hourly(double... values) {
+        TimeSeriesValues retval = new TimeSeriesValues(values.length);
+        for (int i = 0; i < values.length; i++) {
+            if (Double.isNaN(values[i])) {
+                retval.addNull(i * HOUR, 5);
+            } else {
+                retval.add(i * HOUR, values[i], 3);
+            }
+        }
+        return retval;
+    }
+
+    @ParameterizedTest
+    @EnumSource(ResampleMethod.class)
+    void testSmallSeriesUnchanged(ResampleMethod method) {
+        TimeSeriesValues values = hourly(1, 2, 3);
+        assertSame(values, TimeSeriesResampler.resample(values, 3, method));
+    }
+
+    @Test
+    void testInvalidMaxPoints() {
+        TimeSeriesValues values = hourly(1, 2, 3);
+        assertThrows(IllegalArgumentException.class,
+                () -> TimeSeriesResampler.resample(values, 0, ResampleMethod.MEAN));
+    }
+
+    @Test
+    void testBuckets() {
+        TimeSeriesValues values = hourly(1, 5, 3, 4, 2, 8, 7, 6);
+
+        TimeSeriesValues min = TimeSeriesResampler.resample(values, 2, ResampleMethod.MIN);
+        assertEquals(2, min.size());
+        assertEquals(1.0, min.getValue(0));
+        assertEquals(0L, min.getDateTime(0));
+        assertEquals(2.0, min.getValue(1));
+        assertEquals(4 * HOUR, min.getDateTime(1));
+
+        TimeSeriesValues max = TimeSeriesResampler.resample(values, 2, ResampleMethod.MAX);
+        assertEquals(5.0, max.getValue(0));
+        assertEquals(8.0, max.getValue(1));
+        assertEquals(5 * HOUR, max.getDateTime(1));
+
+        TimeSeriesValues mean = TimeSeriesResampler.resample(values, 2, ResampleMethod.MEAN);
+        assertEquals(3.25, mean.getValue(0));
+        assertEquals(5.75, mean.getValue(1));
+        assertEquals(3, mean.getQualityCode(0));
+
+        TimeSeriesValues first = TimeSeriesResampler.resample(values, 2, ResampleMethod.FIRST);
+        assertEquals(1.0, first.getValue(0));
+        assertEquals(2.0, first.getValue(1));
+
+        TimeSeriesValues last = TimeSeriesResampler.resample(values, 2, ResampleMethod.LAST);
+        assertEquals(4.0, last.getValue(0));
+        assertEquals(6.0, last.getValue(1));
+    }
+
+    @Test
+    void testMissingValues() {
+        TimeSeriesValues values = hourly(Double.NaN, Double.NaN, Double.NaN, Double.NaN,
+                Double.NaN, 2, Double.NaN, 4);
+
+        TimeSeriesValues mean = TimeSeriesResampler.resample(values, 2, ResampleMethod.MEAN);
+        assertEquals(2, mean.size());
+        assertTrue(mean.isNull(0));
+        assertEquals(5, mean.getQualityCode(0));
+        assertFalse(mean.isNull(1));
+        assertEquals(3.0, mean.getValue(1));
+
+        TimeSeriesValues lttb = TimeSeriesResampler.resample(values, 3, ResampleMethod.LTTB);
+        assertEquals(2, lttb.size());
+        assertEquals(5 * HOUR, lttb.getDateTime(0));
+        assertEquals(7 * HOUR, lttb.getDateTime(1));
+    }
+
+    @Test
+    void testMeanHasWorstQuality() {
+        TimeSeriesValues values = new TimeSeriesValues();
+        values.add(0L, 1.0, 3);
+        values.add(HOUR, 2.0, 9);
+        values.add(2 * HOUR, 3.0, 0);
+        values.add(3 * HOUR, 4.0, 17);
+
+        TimeSeriesValues mean = TimeSeriesResampler.resample(values, 2, ResampleMethod.MEAN);
+        assertEquals(9, mean.getQualityCode(0));
+        assertEquals(17, mean.getQualityCode(1));
+    }
+
+    @ParameterizedTest
+    @EnumSource(ResampleMethod.class)
+    void testSamplerOverWindow(ResampleMethod method) {
+        TimeSeriesResampler.Sampler sampler =
+                TimeSeriesResampler.sampler(0L, 999 * HOUR, 10, method);
+        for (int i = 0; i < 1000; i++) {
+            sampler.add(i * HOUR, false, Math.sin(i / 10.0), 3);
+        }
+        TimeSeriesValues reduced = sampler.finish();
+        assertEquals(10, reduced.size());
+        for (int i = 1; i < reduced.size(); i++) {
+            assertTrue(reduced.getDateTime(i) > reduced.getDateTime(i - 1));
+        }
+    }
+
+    @Test
+    void testLttbKeepsPeaks() {
+        double[] raw = new double[100];
+        raw[37] = 50;
+        raw[71] = -20;
+        TimeSeriesValues lttb = TimeSeriesResampler.resample(hourly(raw), 10, ResampleMethod.LTTB);
+
+        assertEquals(10, lttb.size());
+        assertEquals(0L, lttb.getDateTime(0));
+        assertEquals(99 * HOUR, lttb.getDateTime(9));
+        boolean peak = false;
+        boolean trough = false;
+        for (int i = 1; i < lttb.size(); i++) {
+            assertTrue(lttb.getDateTime(i) > lttb.getDateTime(i - 1));
+            peak |= lttb.getValue(i) == 50.0;
+            trough |= lttb.getValue(i) == -20.0;
+        }
+        assertTrue(peak);
+        assertTrue(trough);
+    }
+}
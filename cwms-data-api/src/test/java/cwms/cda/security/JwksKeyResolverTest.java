@@ -0,0 +1,159 @@
+package cwms.cda.security;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.sun.net.httpserver.HttpServer;
+import io.jsonwebtoken.Jwts;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.Key;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.interfaces.RSAPublicKey;
+import java.util.Base64;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class JwksKeyResolverTest {
+    private static KeyPair first;
+    private static KeyPair second;
+
+    private HttpServer server;
+    private URL jwksUrl;
+    private final AtomicInteger requests = new AtomicInteger();
+    private volatile String body = "{\"keys\":[]}";
+    private volatile int status = 200;
+
+    @BeforeAll
+    static void generateKeys() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        first = generator.generateKeyPair();
+        second = generator.generateKeyPair();
+    }
+
+    @BeforeEach
+    void startServer() throws Exception {
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        server = HttpServer.create(new InetSocketAddress(loopback, 0), 0);
+        server.createContext("/jwks", exchange -> {
+            requests.incrementAndGet();
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(status, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        });
+        server.start();
+        jwksUrl = new URL("http://" + loopback.getHostAddress() + ":"
+                + server.getAddress().getPort() + "/jwks");
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    private static String jwk(String kid, KeyPair pair) {
+        RSAPublicKey key = (RSAPublicKey) pair.getPublic();
+        return "{\"kid\":\"" + kid + "\",\"kty\":\"RSA\",\"alg\":\"RS256\",\"use\":\"sig\","
+                + "\"n\":\"" + encode(key.getModulus()) + "\","
+                + "\"e\":\"" + encode(key.getPublicExponent()) + "\"}";
+    }
+
+    private static String jwks(String... jwks) {
+        return "{\"keys\":[" + String.join(",", jwks) + "]}";
+    }
+
+    private static String encode(BigInteger value) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.toByteArray());
+    }
+
+    private static BigInteger modulus(Key key) {
+        return ((RSAPublicKey) key).getModulus();
+    }
+
+    @Test
+    void testKeysAreLoaded() {
+        body = jwks(jwk("k1", first), "{\"kid\":\"ec\",\"kty\":\"EC\",\"crv\":\"P-256\"}");
+        JwksKeyResolver resolver = new JwksKeyResolver(jwksUrl, 60);
+        assertTrue(resolver.refresh());
+        assertEquals(modulus(first.getPublic()), modulus(resolver.getKey("k1")));
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    void testUnknownKeyRefetchIsRateLimited() {
+        body = jwks(jwk("k1", first));
+        JwksKeyResolver resolver = new JwksKeyResolver(jwksUrl, 60);
+        assertNotNull(resolver.getKey("k1"));
+        body = jwks(jwk("k1", first), jwk("k2", second));
+        assertNull(resolver.getKey("k2"));
+        assertNull(resolver.getKey("k3"));
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    void testUnknownKeyIsFetched() {
+        body = jwks(jwk("k1", first));
+        JwksKeyResolver resolver = new JwksKeyResolver(jwksUrl, 0);
+        assertTrue(resolver.refresh());
+        body = jwks(jwk("k2", second));
+        assertEquals(modulus(second.getPublic()), modulus(resolver.getKey("k2")));
+        assertNotNull(resolver.getKey("k2"));
+        assertEquals(2, requests.get());
+    }
+
+    @Test
+    void testZeroRefreshMinutesStillRefreshes() throws InterruptedException {
+        body = jwks(jwk("k1", first));
+        JwksKeyResolver resolver = new JwksKeyResolver(jwksUrl, 60).startRefreshing(0);
+        for (int i = 0; i < 100 && requests.get() == 0; i++) {
+            Thread.sleep(50);
+        }
+        assertEquals(1, requests.get());
+        assertNotNull(resolver.getKey("k1"));
+    }
+
+    @Test
+    void testFailedRefreshKeepsKeys() {
+        body = jwks(jwk("k1", first));
+        JwksKeyResolver resolver = new JwksKeyResolver(jwksUrl, 0);
+        assertTrue(resolver.refresh());
+        status = 500;
+        assertFalse(resolver.refresh());
+        status = 200;
+        body = "not json";
+        assertFalse(resolver.refresh());
+        assertNotNull(resolver.getKey("k1"));
+    }
+
+    @Test
+    void testTokenIsVerified() {
+        body = jwks(jwk("k1", first));
+        JwksKeyResolver resolver = new JwksKeyResolver(jwksUrl, 60);
+        String token = Jwts.builder()
+                           .setHeaderParam("kid", "k1")
+                           .setSubject("l2.user.1234567890")
+                           .signWith(first.getPrivate())
+                           .compact();
+        String subject = Jwts.parserBuilder()
+                             .setSigningKeyResolver(resolver)
+                             .build()
+                             .parseClaimsJws(token)
+                             .getBody()
+                             .getSubject();
+        assertEquals("l2.user.1234567890", subject);
+    }
+}